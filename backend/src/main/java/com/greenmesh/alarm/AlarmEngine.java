@@ -0,0 +1,169 @@
+package com.greenmesh.alarm;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.MeasurementListener;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawSampleListener;
+import com.greenmesh.telemetry.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the enabled CFG_ALARM_RULE rows against incoming samples and queues the resulting open/clear transitions for
+ * {@link AlarmEventWriter}. By default samples are taken as soon as they are committed to RAW_TIMESERIES, so alarms
+ * do not wait for the cleaning pipeline's settle delay; {@code app.alarm.feed=measurement} evaluates the cleaned
+ * TS_MEASUREMENT batches instead. Rules are recompiled on a fixed delay; latest values and open alarms carry over,
+ * and alarms left open by a previous run are picked up from EVT_ALARM at startup.
+ */
+@Component
+public class AlarmEngine implements MeasurementListener, RawSampleListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AlarmEngine.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MasterDataStore masterData;
+    private final AlarmEventWriter writer;
+    private final boolean enabled;
+    private final boolean rawFeed;
+    private AlarmEvaluator evaluator;
+    private List<String> reportedErrors = List.of();
+
+    public AlarmEngine(JdbcTemplate jdbcTemplate,
+                       MasterDataStore masterData,
+                       AlarmEventWriter writer,
+                       @Value("${app.alarm.enabled:true}") boolean enabled,
+                       @Value("${app.alarm.feed:raw}") String feed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.masterData = masterData;
+        this.writer = writer;
+        this.enabled = enabled;
+        this.rawFeed = switch (feed.trim().toLowerCase(Locale.ROOT)) {
+            case "raw" -> true;
+            case "measurement" -> false;
+            default -> throw new IllegalArgumentException("app.alarm.feed must be raw or measurement: " + feed);
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.alarm.reload-ms:60000}", initialDelayString = "${app.alarm.reload-ms:60000}")
+    public void scheduledReload() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reload();
+        } catch (RuntimeException ex) {
+            log.warn("Alarm rule reload failed", ex);
+        }
+    }
+
+    public void reload() {
+        List<AlarmRule> rules = jdbcTemplate.query("""
+                SELECT RULE_ID, PARK_ID, NAME, CATEGORY, EXPRESSION, THRESHOLD, SEVERITY
+                FROM CFG_ALARM_RULE
+                WHERE ENABLED = 'Y'
+                ORDER BY RULE_ID
+                """, (rs, rowNum) -> new AlarmRule(
+                rs.getLong("RULE_ID"),
+                rs.getLong("PARK_ID"),
+                rs.getString("NAME"),
+                rs.getString("CATEGORY"),
+                rs.getString("EXPRESSION"),
+                rs.getObject("THRESHOLD") != null ? rs.getDouble("THRESHOLD") : null,
+                rs.getString("SEVERITY")));
+        AlarmEvaluator next = new AlarmEvaluator(rules, new EventSink());
+        synchronized (this) {
+            // warn once per broken rule rather than on every reload
+            for (String error : next.errors()) {
+                if (!reportedErrors.contains(error)) {
+                    log.warn("Skipping alarm {}", error);
+                }
+            }
+            reportedErrors = next.errors();
+            if (evaluator != null) {
+                next.carryOver(evaluator, System.currentTimeMillis());
+            } else {
+                jdbcTemplate.query("""
+                        SELECT RULE_ID, START_TS FROM EVT_ALARM
+                        WHERE END_TS IS NULL AND STATUS = 'ACTIVE' AND RULE_ID IS NOT NULL
+                        """, rs -> {
+                    next.restoreOpen(rs.getLong(1), rs.getTimestamp(2).getTime());
+                });
+            }
+            evaluator = next;
+        }
+        log.debug("Alarm engine running {} rules over {} points", next.ruleCount(), next.pointCount());
+    }
+
+    @Override
+    public void onRawSamples(SampleBatch batch) {
+        if (enabled && rawFeed) {
+            evaluate(batch);
+        }
+    }
+
+    @Override
+    public void onMeasurements(SampleBatch batch) {
+        if (enabled && !rawFeed) {
+            evaluate(batch);
+        }
+    }
+
+    // Raw samples are not spike-flagged yet; the evaluator drops anything older than a point's latest value, so
+    // out-of-order and redelivered samples cannot flap an alarm.
+    private void evaluate(SampleBatch batch) {
+        synchronized (this) {
+            if (evaluator == null) {
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                double value = batch.value(i);
+                byte quality = batch.quality(i);
+                if (Double.isNaN(value) || quality == QualityFlags.BAD || quality == QualityFlags.SPIKE) {
+                    continue;
+                }
+                evaluator.accept(batch.pointId(i), batch.timestamp(i), value);
+            }
+        }
+    }
+
+    public synchronized boolean isOpen(long ruleId) {
+        return evaluator != null && evaluator.isOpen(ruleId);
+    }
+
+    private final class EventSink implements AlarmEvaluator.Sink {
+
+        @Override
+        public void opened(AlarmRule rule, long pointId, long startTs, double lhs, double rhs) {
+            String message = String.format(Locale.ROOT, "%s: %s (%.4g vs %.4g)", rule.name(), rule.expression(),
+                    lhs, rhs);
+            MasterDataSnapshot.MeterPoint point = masterData.snapshot().meterPoint(pointId);
+            writer.submit(new AlarmEvent(true, rule.ruleId(), rule.parkId(),
+                    point != null ? point.entId() : null,
+                    point != null ? point.assetId() : null,
+                    rule.severity(), rule.category(), pointId, startTs, 0, message));
+        }
+
+        @Override
+        public void cleared(AlarmRule rule, long pointId, long startTs, long endTs) {
+            writer.submit(new AlarmEvent(false, rule.ruleId(), rule.parkId(), null, null, rule.severity(),
+                    rule.category(), pointId, startTs, endTs, null));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.greenmesh.alarm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.telemetry.LongIndexMap;
+
+/**
+ * Evaluates compiled rules sample by sample. Rules are indexed by every point they reference, so a sample costs
+ * one hash lookup plus the rules on that point; points without rules fall out after the lookup. Latest values and
+ * per-rule state (pending since, open since) live in primitive arrays.
+ * <p>
+ * Not thread-safe; a single evaluator is fed under one lock.
+ */
+public final class AlarmEvaluator {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    public interface Sink {
+        void opened(AlarmRule rule, long pointId, long startTs, double lhs, double rhs);
+
+        void cleared(AlarmRule rule, long pointId, long startTs, long endTs);
+    }
+
+    private final Sink sink;
+    private final AlarmRule[] rules;
+    private final RuleExpression[] expressions;
+    private final Map<Long, Integer> ruleIndex = new HashMap<>();
+    private final LongIndexMap slots = new LongIndexMap(1024);
+    private final double[] values;
+    private final long[] valueTs;
+    private final int[][] rulesBySlot;
+    private final long[] pendingSince;
+    private final long[] openSince;
+    private final List<String> errors = new ArrayList<>();
+
+    public AlarmEvaluator(List<AlarmRule> candidates, Sink sink) {
+        this.sink = sink;
+        List<AlarmRule> compiledRules = new ArrayList<>(candidates.size());
+        List<RuleExpression> compiled = new ArrayList<>(candidates.size());
+        for (AlarmRule rule : candidates) {
+            try {
+                compiled.add(RuleExpression.compile(rule.expression(), rule.threshold(), slots::getOrAdd));
+                compiledRules.add(rule);
+            } catch (IllegalArgumentException ex) {
+                errors.add("rule " + rule.ruleId() + " (" + rule.name() + "): " + ex.getMessage());
+            }
+        }
+        this.rules = compiledRules.toArray(new AlarmRule[0]);
+        this.expressions = compiled.toArray(new RuleExpression[0]);
+        int slotCount = slots.size();
+        this.values = new double[slotCount];
+        this.valueTs = new long[slotCount];
+        Arrays.fill(values, Double.NaN);
+        Arrays.fill(valueTs, NONE);
+
+        int[] perSlot = new int[slotCount];
+        for (RuleExpression e : expressions) {
+            for (long pointId : e.pointIds()) {
+                perSlot[slots.get(pointId)]++;
+            }
+        }
+        this.rulesBySlot = new int[slotCount][];
+        for (int s = 0; s < slotCount; s++) {
+            rulesBySlot[s] = new int[perSlot[s]];
+            perSlot[s] = 0;
+        }
+        for (int r = 0; r < expressions.length; r++) {
+            ruleIndex.put(rules[r].ruleId(), r);
+            for (long pointId : expressions[r].pointIds()) {
+                int s = slots.get(pointId);
+                rulesBySlot[s][perSlot[s]++] = r;
+            }
+        }
+        this.pendingSince = new long[rules.length];
+        this.openSince = new long[rules.length];
+        Arrays.fill(pendingSince, NONE);
+        Arrays.fill(openSince, NONE);
+    }
+
+    /**
+     * Rules that did not compile, as human-readable messages; they are left out of evaluation.
+     */
+    public List<String> errors() {
+        return List.copyOf(errors);
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    public int pointCount() {
+        return values.length;
+    }
+
+    /**
+     * Samples older than the last one seen for the point are ignored; NaN values must be filtered by the caller.
+     */
+    public void accept(long pointId, long ts, double value) {
+        int slot = slots.get(pointId);
+        if (slot < 0 || ts < valueTs[slot]) {
+            return;
+        }
+        values[slot] = value;
+        valueTs[slot] = ts;
+        for (int r : rulesBySlot[slot]) {
+            evaluate(r, ts);
+        }
+    }
+
+    /**
+     * Marks a rule as already open, e.g. from an EVT_ALARM row left open by a previous run.
+     */
+    public void restoreOpen(long ruleId, long startTs) {
+        Integer r = ruleIndex.get(ruleId);
+        if (r != null) {
+            openSince[r] = startTs;
+        }
+    }
+
+    public boolean isOpen(long ruleId) {
+        Integer r = ruleIndex.get(ruleId);
+        return r != null && openSince[r] != NONE;
+    }
+
+    /**
+     * Takes over latest values and rule state from the evaluator this one replaces. Alarms still open on rules
+     * that no longer exist are cleared at {@code now}.
+     */
+    public void carryOver(AlarmEvaluator previous, long now) {
+        for (long pointId : previous.slots.keys()) {
+            int from = previous.slots.get(pointId);
+            int to = slots.get(pointId);
+            if (to >= 0) {
+                values[to] = previous.values[from];
+                valueTs[to] = previous.valueTs[from];
+            }
+        }
+        for (int p = 0; p < previous.rules.length; p++) {
+            Integer r = ruleIndex.get(previous.rules[p].ruleId());
+            if (r != null) {
+                pendingSince[r] = previous.pendingSince[p];
+                openSince[r] = previous.openSince[p];
+            } else if (previous.openSince[p] != NONE) {
+                sink.cleared(previous.rules[p], previous.expressions[p].primaryPointId(), previous.openSince[p], now);
+            }
+        }
+    }
+
+    private void evaluate(int r, long ts) {
+        RuleExpression e = expressions[r];
+        double l = e.lhs().eval(values);
+        double rv = e.rhs().eval(values);
+        if (Double.isNaN(l) || Double.isNaN(rv)) {
+            // some referenced point has not reported yet
+            return;
+        }
+        if (openSince[r] != NONE) {
+            if (e.cleared(l, rv)) {
+                sink.cleared(rules[r], e.primaryPointId(), openSince[r], ts);
+                openSince[r] = NONE;
+                pendingSince[r] = NONE;
+            }
+            return;
+        }
+        if (!e.breached(l, rv)) {
+            pendingSince[r] = NONE;
+            return;
+        }
+        if (pendingSince[r] == NONE) {
+            pendingSince[r] = ts;
+        }
+        if (ts - pendingSince[r] >= e.forMillis()) {
+            openSince[r] = pendingSince[r];
+            sink.opened(rules[r], e.primaryPointId(), openSince[r], l, rv);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.greenmesh.alarm;
+
+/**
+ * An alarm transition queued for EVT_ALARM. Open events insert a row; clear events close the row identified by
+ * (parkId, startTs, ruleId).
+ */
+public record AlarmEvent(boolean open, long ruleId, long parkId, Long entId, Long assetId, String level,
+                         String category, long objectId, long startTs, long endTs, String message) {}
@@ -0,0 +1,104 @@
+package com.greenmesh.alarm;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.greenmesh.jdbc.BufferedBatchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Buffers alarm transitions and writes them to EVT_ALARM in JDBC batches on a short fixed delay, so the engine
+ * never waits on the database. Inserts of a flush run before its updates, which lets an alarm opened and cleared
+ * within the same interval close its own row. Queueing, retry and poison-row handling are those of
+ * {@link BufferedBatchWriter}.
+ */
+@Component
+public class AlarmEventWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(AlarmEventWriter.class);
+
+    private static final String INSERT_SQL = """
+            INSERT INTO EVT_ALARM (PARK_ID, ENT_ID, ASSET_ID, LEVEL, CATEGORY, OBJECT_TYPE, OBJECT_ID, START_TS,
+                                   STATUS, RULE_ID, MESSAGE)
+            VALUES (?,?,?,?,?,'METER_POINT',?,?,'ACTIVE',?,?)
+            """;
+    private static final String CLEAR_SQL = """
+            UPDATE EVT_ALARM SET END_TS = ?, STATUS = 'CLEARED'
+            WHERE PARK_ID = ? AND START_TS = ? AND RULE_ID = ? AND END_TS IS NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BufferedBatchWriter<AlarmEvent> queue;
+
+    public AlarmEventWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            @Value("${app.alarm.max-pending:100000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new BufferedBatchWriter<>("EVT_ALARM", transactionTemplate, maxPending, this::write);
+    }
+
+    public void submit(AlarmEvent event) {
+        queue.submit(event);
+    }
+
+    public int pendingCount() {
+        return queue.pendingCount();
+    }
+
+    public long droppedCount() {
+        return queue.droppedCount();
+    }
+
+    @Scheduled(fixedDelayString = "${app.alarm.flush-ms:200}", initialDelayString = "${app.alarm.flush-ms:200}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (DataAccessException ex) {
+            log.warn("Alarm event flush failed; will retry", ex);
+        }
+    }
+
+    /**
+     * Writes everything queued so far; returns the number of events written.
+     */
+    public int flush() {
+        return queue.flush();
+    }
+
+    private void write(List<AlarmEvent> batch) {
+        List<AlarmEvent> opens = new ArrayList<>();
+        List<AlarmEvent> clears = new ArrayList<>();
+        for (AlarmEvent e : batch) {
+            (e.open() ? opens : clears).add(e);
+        }
+        if (!opens.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, opens, opens.size(), (ps, e) -> {
+                ps.setLong(1, e.parkId());
+                ps.setObject(2, e.entId(), Types.BIGINT);
+                ps.setObject(3, e.assetId(), Types.BIGINT);
+                ps.setString(4, e.level());
+                ps.setString(5, e.category());
+                ps.setLong(6, e.objectId());
+                ps.setTimestamp(7, new Timestamp(e.startTs()));
+                ps.setLong(8, e.ruleId());
+                ps.setString(9, e.message());
+            });
+        }
+        if (!clears.isEmpty()) {
+            jdbcTemplate.batchUpdate(CLEAR_SQL, clears, clears.size(), (ps, e) -> {
+                ps.setTimestamp(1, new Timestamp(e.endTs()));
+                ps.setLong(2, e.parkId());
+                ps.setTimestamp(3, new Timestamp(e.startTs()));
+                ps.setLong(4, e.ruleId());
+            });
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.greenmesh.alarm;
+
+/**
+ * An enabled CFG_ALARM_RULE row.
+ */
+public record AlarmRule(long ruleId, long parkId, String name, String category, String expression, Double threshold,
+                        String severity) {}
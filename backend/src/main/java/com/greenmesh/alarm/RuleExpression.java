@@ -0,0 +1,345 @@
+package com.greenmesh.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongToIntFunction;
+
+/**
+ * A CFG_ALARM_RULE.EXPRESSION compiled once into a tree of operand nodes that read point values from a slot array.
+ * <pre>
+ *   rule       := comparison [ "for" duration ] [ "hysteresis" number ]
+ *   comparison := sum ( "&gt;" | "&gt;=" | "&lt;" | "&lt;=" ) sum
+ *   sum        := product { ("+" | "-") product }
+ *   product    := unary { ("*" | "/") unary }
+ *   unary      := "-" unary | number | "$" pointId | "threshold" | fn "(" sum { "," sum } ")" | "(" sum ")"
+ *   fn         := abs | min | max
+ *   duration   := number ( "ms" | "s" | "m" | "h" )
+ * </pre>
+ * e.g. {@code $101 < threshold for 10s hysteresis 0.05}, {@code abs($101 - 50) > 0.2}, {@code $201 - $202 > 8 for 5m}.
+ * The alarm opens once the comparison has held for the duration and clears when it is false by more than the
+ * hysteresis margin.
+ */
+public final class RuleExpression {
+
+    public enum Comparison { GT, GE, LT, LE }
+
+    /**
+     * Evaluates against the latest values, indexed by the slots handed out during compilation; NaN propagates.
+     */
+    public interface Operand {
+        double eval(double[] values);
+    }
+
+    private final Operand lhs;
+    private final Operand rhs;
+    private final Comparison comparison;
+    private final long forMillis;
+    private final double hysteresis;
+    private final long[] pointIds;
+
+    private RuleExpression(Operand lhs, Operand rhs, Comparison comparison, long forMillis, double hysteresis,
+                           long[] pointIds) {
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.comparison = comparison;
+        this.forMillis = forMillis;
+        this.hysteresis = hysteresis;
+        this.pointIds = pointIds;
+    }
+
+    /**
+     * @param threshold value of the {@code threshold} keyword (CFG_ALARM_RULE.THRESHOLD), may be null if unused
+     * @param slotOf    maps each referenced point id to its index in the value array passed to {@link Operand#eval}
+     * @throws IllegalArgumentException if the text does not parse
+     */
+    public static RuleExpression compile(String text, Double threshold, LongToIntFunction slotOf) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("empty expression");
+        }
+        return new Parser(text, threshold, slotOf).rule();
+    }
+
+    public Operand lhs() {
+        return lhs;
+    }
+
+    public Operand rhs() {
+        return rhs;
+    }
+
+    public Comparison comparison() {
+        return comparison;
+    }
+
+    public long forMillis() {
+        return forMillis;
+    }
+
+    public double hysteresis() {
+        return hysteresis;
+    }
+
+    /**
+     * The first point referenced; alarms are raised against it.
+     */
+    public long primaryPointId() {
+        return pointIds[0];
+    }
+
+    /**
+     * Distinct referenced point ids in order of first appearance.
+     */
+    public long[] pointIds() {
+        return pointIds.clone();
+    }
+
+    public boolean breached(double l, double r) {
+        return switch (comparison) {
+            case GT -> l > r;
+            case GE -> l >= r;
+            case LT -> l < r;
+            case LE -> l <= r;
+        };
+    }
+
+    public boolean cleared(double l, double r) {
+        return switch (comparison) {
+            case GT -> l <= r - hysteresis;
+            case GE -> l < r - hysteresis;
+            case LT -> l >= r + hysteresis;
+            case LE -> l > r + hysteresis;
+        };
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final Double threshold;
+        private final LongToIntFunction slotOf;
+        private final List<Long> points = new ArrayList<>();
+        private int pos;
+
+        Parser(String text, Double threshold, LongToIntFunction slotOf) {
+            this.text = text;
+            this.threshold = threshold;
+            this.slotOf = slotOf;
+        }
+
+        RuleExpression rule() {
+            Operand l = sum();
+            Comparison cmp = comparison();
+            Operand r = sum();
+            long forMillis = 0;
+            double hysteresis = 0;
+            if (keyword("for")) {
+                forMillis = duration();
+            }
+            if (keyword("hysteresis")) {
+                hysteresis = number();
+                if (hysteresis < 0) {
+                    throw error("hysteresis must not be negative");
+                }
+            }
+            skipSpace();
+            if (pos < text.length()) {
+                throw error("unexpected '" + text.substring(pos) + "'");
+            }
+            if (points.isEmpty()) {
+                throw error("expression references no point");
+            }
+            long[] ids = points.stream().mapToLong(Long::longValue).toArray();
+            return new RuleExpression(l, r, cmp, forMillis, hysteresis, ids);
+        }
+
+        private Comparison comparison() {
+            skipSpace();
+            if (consume(">=")) {
+                return Comparison.GE;
+            }
+            if (consume("<=")) {
+                return Comparison.LE;
+            }
+            if (consume(">")) {
+                return Comparison.GT;
+            }
+            if (consume("<")) {
+                return Comparison.LT;
+            }
+            throw error("expected a comparison (>, >=, <, <=)");
+        }
+
+        private Operand sum() {
+            Operand acc = product();
+            while (true) {
+                skipSpace();
+                if (consume("+")) {
+                    Operand a = acc, b = product();
+                    acc = v -> a.eval(v) + b.eval(v);
+                } else if (consume("-")) {
+                    Operand a = acc, b = product();
+                    acc = v -> a.eval(v) - b.eval(v);
+                } else {
+                    return acc;
+                }
+            }
+        }
+
+        private Operand product() {
+            Operand acc = unary();
+            while (true) {
+                skipSpace();
+                if (consume("*")) {
+                    Operand a = acc, b = unary();
+                    acc = v -> a.eval(v) * b.eval(v);
+                } else if (consume("/")) {
+                    Operand a = acc, b = unary();
+                    acc = v -> a.eval(v) / b.eval(v);
+                } else {
+                    return acc;
+                }
+            }
+        }
+
+        private Operand unary() {
+            skipSpace();
+            if (consume("-")) {
+                Operand a = unary();
+                return v -> -a.eval(v);
+            }
+            if (consume("(")) {
+                Operand inner = sum();
+                expect(")");
+                return inner;
+            }
+            if (consume("$")) {
+                int start = pos;
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+                if (start == pos) {
+                    throw error("expected a point id after '$'");
+                }
+                long pointId = Long.parseLong(text.substring(start, pos));
+                if (!points.contains(pointId)) {
+                    points.add(pointId);
+                }
+                int slot = slotOf.applyAsInt(pointId);
+                return v -> v[slot];
+            }
+            if (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                double c = number();
+                return v -> c;
+            }
+            String word = word();
+            switch (word) {
+                case "threshold" -> {
+                    if (threshold == null) {
+                        throw error("rule has no THRESHOLD");
+                    }
+                    double c = threshold;
+                    return v -> c;
+                }
+                case "abs" -> {
+                    Operand[] args = args(1);
+                    Operand a = args[0];
+                    return v -> Math.abs(a.eval(v));
+                }
+                case "min" -> {
+                    Operand[] args = args(2);
+                    Operand a = args[0], b = args[1];
+                    return v -> Math.min(a.eval(v), b.eval(v));
+                }
+                case "max" -> {
+                    Operand[] args = args(2);
+                    Operand a = args[0], b = args[1];
+                    return v -> Math.max(a.eval(v), b.eval(v));
+                }
+                default -> throw error(word.isEmpty() ? "expected an operand" : "unknown name '" + word + "'");
+            }
+        }
+
+        private Operand[] args(int count) {
+            expect("(");
+            Operand[] args = new Operand[count];
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    expect(",");
+                }
+                args[i] = sum();
+            }
+            expect(")");
+            return args;
+        }
+
+        private long duration() {
+            double amount = number();
+            String unit = word();
+            long millis = switch (unit) {
+                case "ms" -> 1;
+                case "s" -> 1_000;
+                case "m" -> 60_000;
+                case "h" -> 3_600_000;
+                default -> throw error("expected a duration unit (ms, s, m, h)");
+            };
+            return Math.round(amount * millis);
+        }
+
+        private double number() {
+            skipSpace();
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException ex) {
+                pos = start;
+                throw error("expected a number");
+            }
+        }
+
+        private boolean keyword(String keyword) {
+            skipSpace();
+            int start = pos;
+            if (word().equals(keyword)) {
+                return true;
+            }
+            pos = start;
+            return false;
+        }
+
+        private String word() {
+            skipSpace();
+            int start = pos;
+            while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            return text.substring(start, pos).toLowerCase(Locale.ROOT);
+        }
+
+        private void expect(String token) {
+            skipSpace();
+            if (!consume(token)) {
+                throw error("expected '" + token + "'");
+            }
+        }
+
+        private boolean consume(String token) {
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in \"" + text + "\"");
+        }
+    }
+}
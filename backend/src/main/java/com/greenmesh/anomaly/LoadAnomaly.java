@@ -0,0 +1,7 @@
+package com.greenmesh.anomaly;
+
+/**
+ * A scored load anomaly queued for LOG_LOAD_ANOMALY; {@code type} is one of the {@link LoadAnomalyDetector}
+ * constants.
+ */
+public record LoadAnomaly(long entId, long pointId, long ts, String type, double score, String message) {}
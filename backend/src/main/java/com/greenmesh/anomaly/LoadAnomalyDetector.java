@@ -0,0 +1,263 @@
+package com.greenmesh.anomaly;
+
+import java.util.Arrays;
+
+import com.greenmesh.telemetry.LongIndexMap;
+
+/**
+ * Scores load samples one by one against a per-series seasonal baseline: an EWMA mean per hour of day for workdays
+ * and for rest days, scaled by an EWMA factor per day of week, with an EWMA variance per hour of day. Each series
+ * owns fixed-size slices of primitive arrays behind a {@link LongIndexMap} (about 390 bytes per series), so state
+ * does not grow with history and a sample costs one hash lookup and a few float operations.
+ * <p>
+ * The EWMAs are time-weighted, so the sampling interval does not change how many days they remember; while a slot
+ * has been seen on fewer days than its memory it averages over the days it has. An hour is scored once it has been
+ * seen on {@code warmupDays} days and its day of week on two. Detected:
+ * <ul>
+ *   <li>{@link #SURGE}/{@link #DROP}: a sample {@code threshold} standard deviations off the baseline;</li>
+ *   <li>{@link #LEVEL_SHIFT}: a CUSUM of the (clipped) deviations beyond {@code cusumDrift}, integrated over time,
+ *       reaching {@code cusumLimit} sigma-hours;</li>
+ *   <li>{@link #STUCK}: {@code stuckSamples} identical readings from a series whose baseline varies.</li>
+ * </ul>
+ * At most one event per series per {@code cooldownMs}, except STUCK which fires once per run of readings.
+ * Anomalous samples move the baseline at a tenth of the normal rate, so a lasting change is eventually learnt.
+ * <p>
+ * Not thread-safe; a single detector is fed under one lock.
+ */
+public final class LoadAnomalyDetector {
+
+    public static final String SURGE = "SURGE";
+    public static final String DROP = "DROP";
+    public static final String LEVEL_SHIFT = "LEVEL_SHIFT";
+    public static final String STUCK = "STUCK";
+
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final int HOURS = 24;
+    private static final int DAYS = 7;
+    // days 5 and 6 (Saturday, Sunday) use the rest-day profile
+    private static final int FIRST_REST_DAY = 5;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final float ANOMALOUS_RATE = 0.1f;
+    private static final double MAX_FACTOR = 10;
+    private static final double MIN_MEAN = 1e-6;
+
+    public interface Sink {
+        void detected(long seriesId, long ts, String type, double score, double value, double expected);
+    }
+
+    /**
+     * {@code minSigma} is an absolute floor on the standard deviation (in the unit of the values),
+     * {@code minSigmaFraction} one relative to the expected value.
+     */
+    public record Settings(double memoryDays, double memoryWeeks, int warmupDays, double threshold, double cusumDrift,
+                           double cusumLimit, int stuckSamples, long cooldownMs, double minSigma,
+                           double minSigmaFraction) {}
+
+    private final Settings settings;
+    private final Sink sink;
+    private final LongIndexMap index = new LongIndexMap(1024);
+    private int capacity;
+    private long[] ids;
+    // [series][workday, rest day][hour]
+    private float[] mean;
+    private float[] variance;
+    private byte[] hourVisits;
+    private float[] dowFactor;
+    private byte[] dowVisits;
+    private long[] lastTs;
+    private float[] lastValue;
+    private byte[] lastHour;
+    private byte[] lastDow;
+    private int[] repeats;
+    private float[] cusumUp;
+    private float[] cusumDown;
+    private long[] lastEventTs;
+
+    public LoadAnomalyDetector(Settings settings, Sink sink) {
+        this.settings = settings;
+        this.sink = sink;
+        allocate(1024);
+    }
+
+    /**
+     * Scores and learns one sample; {@code hourOfDay} (0-23) and {@code dayOfWeek} (0 = Monday to 6 = Sunday) are
+     * the caller's seasonal slots, so holidays can be passed as a Sunday. Samples not newer than the series' last
+     * one are ignored; returns whether it was taken.
+     */
+    public boolean accept(long seriesId, long ts, double value, int hourOfDay, int dayOfWeek) {
+        return accept(seriesId, ts, value, hourOfDay, dayOfWeek, true);
+    }
+
+    /**
+     * Learns one sample like {@link #accept} but reports nothing, e.g. when replaying history to warm the baseline;
+     * outliers still move it at the reduced rate.
+     */
+    public boolean learn(long seriesId, long ts, double value, int hourOfDay, int dayOfWeek) {
+        return accept(seriesId, ts, value, hourOfDay, dayOfWeek, false);
+    }
+
+    private boolean accept(long seriesId, long ts, double value, int hourOfDay, int dayOfWeek, boolean report) {
+        int s = index.get(seriesId);
+        if (s < 0) {
+            s = index.getOrAdd(seriesId);
+            if (s == capacity) {
+                allocate(capacity * 2);
+            }
+            ids[s] = seriesId;
+        }
+        long previous = lastTs[s];
+        if (previous != NONE && ts <= previous) {
+            return false;
+        }
+        int h = s * HOURS + hourOfDay;
+        int p = (s * 2 + (dayOfWeek >= FIRST_REST_DAY ? 1 : 0)) * HOURS + hourOfDay;
+        int d = s * DAYS + dayOfWeek;
+        long gap = previous == NONE ? Long.MAX_VALUE : ts - previous;
+        if (gap >= HOUR_MS || lastHour[s] != hourOfDay) {
+            hourVisits[h] = (byte) Math.min(hourVisits[h] + 1, Byte.MAX_VALUE);
+        }
+        if (gap >= DAY_MS || lastDow[s] != dayOfWeek) {
+            dowVisits[d] = (byte) Math.min(dowVisits[d] + 1, Byte.MAX_VALUE);
+        }
+        float x = (float) value;
+        repeats[s] = previous != NONE && x == lastValue[s] ? repeats[s] + 1 : 1;
+        lastTs[s] = ts;
+        lastValue[s] = x;
+        lastHour[s] = (byte) hourOfDay;
+        lastDow[s] = (byte) dayOfWeek;
+        if (previous == NONE) {
+            learn(s, h, p, d, dayOfWeek, 0, value, 1f);
+            return true;
+        }
+
+        long dt = Math.min(gap, HOUR_MS);
+        double m = mean[p];
+        double factor = dowFactor[d];
+        double z = 0;
+        boolean scored = false;
+        if (m == m && factor == factor && hourVisits[h] >= settings.warmupDays() && dowVisits[d] >= 2) {
+            double expected = m * factor;
+            double sd = Math.max(Math.max(Math.sqrt(variance[h]) * factor,
+                    settings.minSigmaFraction() * Math.abs(expected)), settings.minSigma());
+            z = (value - expected) / sd;
+            scored = true;
+            if (report) {
+                score(s, h, ts, dt, value, expected, z);
+            }
+        }
+        float rate = scored && Math.abs(z) >= settings.threshold() ? ANOMALOUS_RATE : 1f;
+        learn(s, h, p, d, dayOfWeek, dt, value, rate);
+        return true;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Bytes held by the per-series arrays at their current capacity (the index not included).
+     */
+    public long stateBytes() {
+        long perSeries = 8 + 2 * HOURS * 4L + HOURS * (4L + 1) + DAYS * (4L + 1) + 8 + 4 + 1 + 1 + 4 + 4 + 4 + 8;
+        return perSeries * capacity;
+    }
+
+    private void score(int s, int h, long ts, long dt, double value, double expected, double z) {
+        double threshold = settings.threshold();
+        String type = null;
+        double score = 0;
+        boolean stuck = repeats[s] == settings.stuckSamples() && variance[h] > 0;
+        if (stuck) {
+            sink.detected(ids[s], ts, STUCK, repeats[s], value, expected);
+        } else if (z >= threshold) {
+            type = SURGE;
+            score = z;
+        } else if (z <= -threshold) {
+            type = DROP;
+            score = z;
+        }
+        double clipped = Math.max(-threshold, Math.min(threshold, z));
+        double hours = dt / (double) HOUR_MS;
+        cusumUp[s] = (float) Math.max(0, cusumUp[s] + (clipped - settings.cusumDrift()) * hours);
+        cusumDown[s] = (float) Math.max(0, cusumDown[s] + (-clipped - settings.cusumDrift()) * hours);
+        if (type == null && !stuck && Math.max(cusumUp[s], cusumDown[s]) >= settings.cusumLimit()) {
+            type = LEVEL_SHIFT;
+            score = cusumUp[s] >= cusumDown[s] ? cusumUp[s] : -cusumDown[s];
+            cusumUp[s] = 0;
+            cusumDown[s] = 0;
+        }
+        if (type != null && (lastEventTs[s] == NONE || ts - lastEventTs[s] >= settings.cooldownMs())) {
+            lastEventTs[s] = ts;
+            sink.detected(ids[s], ts, type, score, value, expected);
+        }
+    }
+
+    private void learn(int s, int h, int p, int d, int dayOfWeek, long dt, double value, float rate) {
+        double factor = dowFactor[d];
+        double y = factor == factor && factor > MIN_MEAN ? value / factor : value;
+        double m = mean[p];
+        if (m != m) {
+            mean[p] = (float) y;
+        } else {
+            // profile memory counts days of the same kind (workdays or rest days)
+            int first = dayOfWeek >= FIRST_REST_DAY ? FIRST_REST_DAY : 0;
+            int last = dayOfWeek >= FIRST_REST_DAY ? DAYS : FIRST_REST_DAY;
+            int days = 0;
+            for (int day = first; day < last; day++) {
+                days += dowVisits[s * DAYS + day];
+            }
+            double a = rate * alpha(dt, Math.min(days, settings.memoryDays()) * HOUR_MS);
+            double r = y - m;
+            mean[p] = (float) (m + a * r);
+            double v = rate * alpha(dt, Math.min(hourVisits[h], settings.memoryDays()) * HOUR_MS);
+            variance[h] = (float) ((1 - v) * (variance[h] + v * r * r));
+        }
+        double base = mean[p];
+        if (base > MIN_MEAN) {
+            double ratio = Math.min(Math.max(value / base, 0), MAX_FACTOR);
+            if (factor != factor) {
+                dowFactor[d] = (float) ratio;
+            } else {
+                double a = rate * alpha(dt, Math.min(dowVisits[d], settings.memoryWeeks()) * DAY_MS);
+                dowFactor[d] = (float) (factor + a * (ratio - factor));
+            }
+        }
+    }
+
+    private static double alpha(long dt, double memoryMs) {
+        return memoryMs > 0 ? Math.min(1, dt / memoryMs) : 1;
+    }
+
+    private void allocate(int size) {
+        ids = ids == null ? new long[size] : Arrays.copyOf(ids, size);
+        mean = grow(mean, size * 2 * HOURS, Float.NaN);
+        variance = grow(variance, size * HOURS, 0f);
+        hourVisits = hourVisits == null ? new byte[size * HOURS] : Arrays.copyOf(hourVisits, size * HOURS);
+        dowFactor = grow(dowFactor, size * DAYS, Float.NaN);
+        dowVisits = dowVisits == null ? new byte[size * DAYS] : Arrays.copyOf(dowVisits, size * DAYS);
+        lastTs = grow(lastTs, size);
+        lastValue = grow(lastValue, size, 0f);
+        lastHour = lastHour == null ? new byte[size] : Arrays.copyOf(lastHour, size);
+        lastDow = lastDow == null ? new byte[size] : Arrays.copyOf(lastDow, size);
+        repeats = repeats == null ? new int[size] : Arrays.copyOf(repeats, size);
+        cusumUp = grow(cusumUp, size, 0f);
+        cusumDown = grow(cusumDown, size, 0f);
+        lastEventTs = grow(lastEventTs, size);
+        capacity = size;
+    }
+
+    private static float[] grow(float[] array, int length, float fill) {
+        int from = array == null ? 0 : array.length;
+        float[] out = array == null ? new float[length] : Arrays.copyOf(array, length);
+        Arrays.fill(out, from, length, fill);
+        return out;
+    }
+
+    private static long[] grow(long[] array, int length) {
+        int from = array == null ? 0 : array.length;
+        long[] out = array == null ? new long[length] : Arrays.copyOf(array, length);
+        Arrays.fill(out, from, length, NONE);
+        return out;
+    }
+}
@@ -0,0 +1,281 @@
+package com.greenmesh.anomaly;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.LongIndexMap;
+import com.greenmesh.telemetry.MeasurementListener;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RollupLevel;
+import com.greenmesh.telemetry.RollupService;
+import com.greenmesh.telemetry.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feeds every sample committed to TS_MEASUREMENT from an enterprise's electricity power points (W/kW/MW, scaled to
+ * kW) into one {@link LoadAnomalyDetector} and queues what it finds for {@link LoadAnomalyWriter}. Hours and days
+ * follow the rollup zone; DIM_CALENDAR holidays are scored as Sundays and make-up workdays as Wednesdays. Which
+ * points are load points is re-derived when the master data changes; the calendar is reloaded on a fixed delay.
+ * <p>
+ * Detector state is not persisted: at startup the baselines are replayed from the last {@code history-days} of 1h
+ * TS_ROLLUP averages without reporting, so scoring resumes right away instead of after {@code warmup-days}.
+ */
+@Component
+public class LoadAnomalyEngine implements MeasurementListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadAnomalyEngine.class);
+
+    private static final long HOUR_MS = 3_600_000L;
+    private static final int SUNDAY = 6;
+    private static final int WEDNESDAY = 2;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MasterDataStore masterData;
+    private final LoadAnomalyWriter writer;
+    private final ZoneId zone;
+    private final boolean enabled;
+    private final String energyType;
+    private final int historyDays;
+    private final LoadAnomalyDetector detector;
+    private volatile Map<LocalDate, Boolean> workdays = Map.of();
+    // load points by master data version: scale to kW (0 = not a load point) and owning enterprise
+    private long pointsVersion = Long.MIN_VALUE;
+    private LongIndexMap points = new LongIndexMap(1024);
+    private double[] scales = new double[1024];
+    private long[] entIds = new long[1024];
+    private long dayStartMs = Long.MAX_VALUE;
+    private long dayEndMs = Long.MIN_VALUE;
+    private int daySlot;
+
+    public LoadAnomalyEngine(JdbcTemplate jdbcTemplate,
+                             MasterDataStore masterData,
+                             LoadAnomalyWriter writer,
+                             RollupService rollups,
+                             @Value("${app.anomaly.load.enabled:true}") boolean enabled,
+                             @Value("${app.anomaly.load.energy-type:ELEC}") String energyType,
+                             @Value("${app.anomaly.load.history-days:14}") int historyDays,
+                             @Value("${app.anomaly.load.memory-days:14}") double memoryDays,
+                             @Value("${app.anomaly.load.memory-weeks:4}") double memoryWeeks,
+                             @Value("${app.anomaly.load.warmup-days:3}") int warmupDays,
+                             @Value("${app.anomaly.load.threshold:4}") double threshold,
+                             @Value("${app.anomaly.load.cusum-drift:1}") double cusumDrift,
+                             @Value("${app.anomaly.load.cusum-limit:4}") double cusumLimit,
+                             @Value("${app.anomaly.load.stuck-samples:30}") int stuckSamples,
+                             @Value("${app.anomaly.load.cooldown-ms:3600000}") long cooldownMs,
+                             @Value("${app.anomaly.load.min-sigma-kw:0.5}") double minSigmaKw,
+                             @Value("${app.anomaly.load.min-sigma-fraction:0.02}") double minSigmaFraction) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.masterData = masterData;
+        this.writer = writer;
+        this.zone = rollups.zone();
+        this.enabled = enabled;
+        this.energyType = energyType;
+        this.historyDays = historyDays;
+        this.detector = new LoadAnomalyDetector(new LoadAnomalyDetector.Settings(memoryDays, memoryWeeks, warmupDays,
+                threshold, cusumDrift, cusumLimit, stuckSamples, cooldownMs, minSigmaKw, minSigmaFraction),
+                this::detected);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            reloadCalendar();
+            warm(Instant.now().toEpochMilli());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.anomaly.load.reload-ms:3600000}",
+            initialDelayString = "${app.anomaly.load.reload-ms:3600000}")
+    public void scheduledReload() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reloadCalendar();
+        } catch (RuntimeException ex) {
+            log.warn("Load anomaly calendar reload failed", ex);
+        }
+    }
+
+    public void reloadCalendar() {
+        Map<LocalDate, Boolean> next = new HashMap<>();
+        jdbcTemplate.query("SELECT CAL_DATE, IS_WORKDAY FROM DIM_CALENDAR WHERE IS_WORKDAY IS NOT NULL", rs -> {
+            next.put(rs.getDate(1).toLocalDate(), "Y".equalsIgnoreCase(rs.getString(2).trim()));
+        });
+        synchronized (this) {
+            workdays = next;
+            dayStartMs = Long.MAX_VALUE;
+            dayEndMs = Long.MIN_VALUE;
+            log.debug("Load anomaly detector tracking {} series in {} KB", detector.size(),
+                    detector.stateBytes() / 1024);
+        }
+    }
+
+    /**
+     * Replays the hourly averages of the {@code history-days} before the current hour into the detector without
+     * reporting; returns the number of hours learnt. Points are loaded a chunk at a time outside the lock, so a
+     * point whose live samples arrive before its chunk keeps learning from those alone.
+     */
+    public int warm(long nowMs) {
+        if (historyDays <= 0) {
+            return 0;
+        }
+        List<Long> candidates = new ArrayList<>();
+        for (MasterDataSnapshot.MeterPoint point : masterData.snapshot().meterPoints(null, null, null, energyType)) {
+            if (point.entId() != null) {
+                candidates.add(point.id());
+            }
+        }
+        Collections.sort(candidates);
+        long to = RollupLevel.HOUR.floor(nowMs, zone);
+        long from = to - historyDays * 24 * HOUR_MS;
+        int learnt = 0;
+        for (int start = 0; start < candidates.size(); start += BatchUpserts.IN_CHUNK) {
+            List<Long> chunk = candidates.subList(start, Math.min(candidates.size(), start + BatchUpserts.IN_CHUNK));
+            List<Object> args = new ArrayList<>(chunk.size() + 3);
+            args.add(RollupLevel.HOUR.code());
+            args.add(new Timestamp(from));
+            args.add(new Timestamp(to));
+            args.addAll(chunk);
+            SampleBatch history = new SampleBatch(1024);
+            jdbcTemplate.query("""
+                    SELECT POINT_ID, BUCKET_TS, AVG_V FROM TS_ROLLUP
+                    WHERE AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS < ? AND AVG_V IS NOT NULL AND POINT_ID IN (%s)
+                    ORDER BY POINT_ID, BUCKET_TS
+                    """.formatted(String.join(",", Collections.nCopies(chunk.size(), "?"))), rs -> {
+                history.add(rs.getLong(1), rs.getTimestamp(2).getTime(), rs.getDouble(3), QualityFlags.GOOD, null);
+            }, args.toArray());
+            synchronized (this) {
+                learnt += feed(history, false);
+            }
+        }
+        log.info("Load anomaly baselines warmed from {} hours of 1h rollups ({} series)", learnt, seriesCount());
+        return learnt;
+    }
+
+    @Override
+    public void onMeasurements(SampleBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            feed(batch, true);
+        }
+    }
+
+    // caller holds the lock; returns the samples the detector took
+    private int feed(SampleBatch batch, boolean report) {
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        if (snapshot.version() != pointsVersion) {
+            points = new LongIndexMap(Math.max(1024, points.size()));
+            pointsVersion = snapshot.version();
+        }
+        int taken = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            double value = batch.value(i);
+            byte quality = batch.quality(i);
+            if (Double.isNaN(value) || quality == QualityFlags.BAD || quality == QualityFlags.SPIKE) {
+                continue;
+            }
+            long pointId = batch.pointId(i);
+            int slot = points.get(pointId);
+            if (slot < 0) {
+                slot = classify(snapshot, pointId);
+            }
+            if (scales[slot] == 0) {
+                continue;
+            }
+            long ts = batch.timestamp(i);
+            if (ts < dayStartMs || ts >= dayEndMs) {
+                day(ts);
+            }
+            int hour = (int) Math.min(23, (ts - dayStartMs) / HOUR_MS);
+            double kw = value * scales[slot];
+            boolean took = report
+                    ? detector.accept(pointId, ts, kw, hour, daySlot)
+                    : detector.learn(pointId, ts, kw, hour, daySlot);
+            if (took) {
+                taken++;
+            }
+        }
+        return taken;
+    }
+
+    public synchronized int seriesCount() {
+        return detector.size();
+    }
+
+    public synchronized long stateBytes() {
+        return detector.stateBytes();
+    }
+
+    private int classify(MasterDataSnapshot snapshot, long pointId) {
+        int slot = points.getOrAdd(pointId);
+        if (slot == scales.length) {
+            scales = Arrays.copyOf(scales, slot * 2);
+            entIds = Arrays.copyOf(entIds, slot * 2);
+        }
+        MasterDataSnapshot.MeterPoint point = snapshot.meterPoint(pointId);
+        double scale = 0;
+        if (point != null && point.entId() != null && energyType.equals(point.energyType()) && point.unit() != null) {
+            scale = switch (point.unit().trim().toLowerCase(Locale.ROOT)) {
+                case "w" -> 0.001;
+                case "kw" -> 1;
+                case "mw" -> 1000;
+                default -> 0;
+            };
+        }
+        scales[slot] = scale;
+        entIds[slot] = scale != 0 ? point.entId() : 0;
+        return slot;
+    }
+
+    private void day(long ts) {
+        LocalDate date = Instant.ofEpochMilli(ts).atZone(zone).toLocalDate();
+        dayStartMs = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        dayEndMs = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        boolean weekend = date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+        Boolean workday = workdays.get(date);
+        if (workday == null || workday != weekend) {
+            daySlot = date.getDayOfWeek().getValue() - 1;
+        } else {
+            daySlot = workday ? WEDNESDAY : SUNDAY;
+        }
+    }
+
+    private void detected(long pointId, long ts, String type, double score, double value, double expected) {
+        int slot = points.get(pointId);
+        if (slot < 0 || scales[slot] == 0) {
+            return;
+        }
+        String message = switch (type) {
+            case LoadAnomalyDetector.STUCK -> String.format(Locale.ROOT,
+                    "point %d: %.0f identical readings of %.4g kW", pointId, score, value);
+            case LoadAnomalyDetector.LEVEL_SHIFT -> String.format(Locale.ROOT,
+                    "point %d: sustained deviation, %.4g kW vs expected %.4g kW", pointId, value, expected);
+            default -> String.format(Locale.ROOT, "point %d: %.4g kW vs expected %.4g kW (%.1f sigma)", pointId,
+                    value, expected, score);
+        };
+        writer.submit(new LoadAnomaly(entIds[slot], pointId, ts, type, score, message));
+    }
+}
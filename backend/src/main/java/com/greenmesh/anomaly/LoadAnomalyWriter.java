@@ -0,0 +1,79 @@
+package com.greenmesh.anomaly;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import com.greenmesh.jdbc.BufferedBatchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Buffers detected anomalies and inserts them into LOG_LOAD_ANOMALY in JDBC batches on a short fixed delay, so
+ * scoring never waits on the database. Queueing, retry and poison-row handling are those of
+ * {@link BufferedBatchWriter}.
+ */
+@Component
+public class LoadAnomalyWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadAnomalyWriter.class);
+
+    private static final String INSERT_SQL = """
+            INSERT INTO LOG_LOAD_ANOMALY (ENT_ID, POINT_ID, TS, ANOMALY_TYPE, SCORE, MESSAGE)
+            VALUES (?,?,?,?,?,?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BufferedBatchWriter<LoadAnomaly> queue;
+
+    public LoadAnomalyWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             @Value("${app.anomaly.load.max-pending:100000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new BufferedBatchWriter<>("LOG_LOAD_ANOMALY", transactionTemplate, maxPending, this::write);
+    }
+
+    public void submit(LoadAnomaly anomaly) {
+        queue.submit(anomaly);
+    }
+
+    public int pendingCount() {
+        return queue.pendingCount();
+    }
+
+    public long droppedCount() {
+        return queue.droppedCount();
+    }
+
+    @Scheduled(fixedDelayString = "${app.anomaly.load.flush-ms:200}",
+            initialDelayString = "${app.anomaly.load.flush-ms:200}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (DataAccessException ex) {
+            log.warn("Load anomaly flush failed; will retry", ex);
+        }
+    }
+
+    /**
+     * Writes everything queued so far; returns the number of anomalies written.
+     */
+    public int flush() {
+        return queue.flush();
+    }
+
+    private void write(List<LoadAnomaly> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, a) -> {
+            ps.setLong(1, a.entId());
+            ps.setLong(2, a.pointId());
+            ps.setTimestamp(3, new Timestamp(a.ts()));
+            ps.setString(4, a.type());
+            ps.setDouble(5, Math.round(a.score() * 1e6) / 1e6);
+            ps.setString(6, a.message());
+        });
+    }
+}
@@ -0,0 +1,187 @@
+package com.greenmesh.api;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.carbon.CarbonAccountingService;
+import com.greenmesh.masterdata.IntervalIndex;
+import com.greenmesh.masterdata.TimeSlotSnapshot;
+import com.greenmesh.masterdata.TimeSlotStore;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/carbon")
+public class CarbonController {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CarbonAccountingService accounting;
+    private final TimeSlotStore timeSlots;
+
+    public CarbonController(JdbcTemplate jdbcTemplate, CarbonAccountingService accounting, TimeSlotStore timeSlots) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.accounting = accounting;
+        this.timeSlots = timeSlots;
+    }
+
+    @GetMapping("/intensity")
+    public ResponseEntity<List<IntensitySlot>> listIntensity(@RequestParam String region,
+                                                             @RequestParam String start,
+                                                             @RequestParam String end,
+                                                             WebRequest request) {
+        long startMs = Instant.parse(start).toEpochMilli();
+        long endMs = Instant.parse(end).toEpochMilli();
+        if (endMs <= startMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must be after start");
+        }
+        TimeSlotSnapshot snapshot = timeSlots.snapshot();
+        return ETags.cached(request, snapshot.etag(), () -> {
+            IntervalIndex.Series series = snapshot.intensity().series(region);
+            List<IntensitySlot> slots = new ArrayList<>();
+            for (int i = series.firstEndingAfter(startMs); i < series.size() && series.from(i) < endMs; i++) {
+                slots.add(new IntensitySlot(series.id(i), region, Instant.ofEpochMilli(series.from(i)),
+                        Instant.ofEpochMilli(series.to(i)), series.value(i), series.label(i)));
+            }
+            return slots;
+        });
+    }
+
+    @GetMapping(value = "/intensity", params = "stepMin")
+    public ResponseEntity<SlotGrid> intensityGrid(@RequestParam String region,
+                                                  @RequestParam String start,
+                                                  @RequestParam String end,
+                                                  @RequestParam int stepMin,
+                                                  WebRequest request) {
+        TimeSlotSnapshot snapshot = timeSlots.snapshot();
+        return ETags.cached(request, snapshot.etag(),
+                () -> SlotGrid.of(snapshot.intensity().series(region), start, end, stepMin));
+    }
+
+    @GetMapping("/accounting")
+    public List<Accounting> listAccounting(@RequestParam(required = false) Long parkId,
+                                           @RequestParam(required = false) String start,
+                                           @RequestParam(required = false) String end) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT ID, PARK_ID, PERIOD_START, PERIOD_END, TOTAL_ENERGY_KWH, TOTAL_CARBON_KG, CARBON_ENERGY_RATIO,
+                       METHOD_VERSION, STATUS
+                FROM FACT_CARBON_ACCOUNTING
+                """);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (parkId != null) {
+            conditions.add("PARK_ID = ?");
+            args.add(parkId);
+        }
+        if (StringUtils.hasText(start)) {
+            conditions.add("PERIOD_END > ?");
+            args.add(Timestamp.from(Instant.parse(start)));
+        }
+        if (StringUtils.hasText(end)) {
+            conditions.add("PERIOD_START < ?");
+            args.add(Timestamp.from(Instant.parse(end)));
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY PARK_ID, PERIOD_START");
+        return jdbcTemplate.query(sql.toString(), new AccountingMapper(), args.toArray());
+    }
+
+    @GetMapping("/accounting/{id}")
+    public Map<String, Object> getAccounting(@PathVariable long id) {
+        Accounting accountingRow;
+        try {
+            accountingRow = jdbcTemplate.queryForObject("""
+                    SELECT ID, PARK_ID, PERIOD_START, PERIOD_END, TOTAL_ENERGY_KWH, TOTAL_CARBON_KG, CARBON_ENERGY_RATIO,
+                           METHOD_VERSION, STATUS
+                    FROM FACT_CARBON_ACCOUNTING WHERE ID = ?
+                    """, new AccountingMapper(), id);
+        } catch (EmptyResultDataAccessException ex) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown accounting " + id);
+        }
+        List<AccountingDetail> details = jdbcTemplate.query("""
+                SELECT ID, ENT_ID, ENERGY_TYPE, ENERGY_AMOUNT, FACTOR_USED, CARBON_AMOUNT, SOURCE_DESCRIPTION
+                FROM FACT_CARBON_ACCOUNTING_DETAIL
+                WHERE ACCOUNTING_ID = ?
+                ORDER BY ENT_ID, ENERGY_TYPE
+                """, new AccountingDetailMapper(), id);
+        Map<String, Object> result = new HashMap<>();
+        result.put("accounting", accountingRow);
+        result.put("details", details);
+        return result;
+    }
+
+    @PostMapping("/accounting/run")
+    public CarbonAccountingService.Result runAccounting(@RequestParam long parkId,
+                                                        @RequestParam String from,
+                                                        @RequestParam String to) {
+        LocalDate fromDay = LocalDate.parse(from);
+        LocalDate toDay = LocalDate.parse(to);
+        if (!fromDay.isBefore(toDay) || fromDay.plusYears(1).isBefore(toDay)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to, at most one year apart");
+        }
+        try {
+            return accounting.run(parkId, fromDay, toDay);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    record IntensitySlot(Long id, String region, Instant ts, Instant validUntil, Double gridCarbonFactorGPerKwh,
+                         String source) {}
+
+    record Accounting(Long id, Long parkId, Instant periodStart, Instant periodEnd, Double totalEnergyKwh,
+                      Double totalCarbonKg, Double carbonEnergyRatio, String methodVersion, String status) {}
+
+    record AccountingDetail(Long id, Long entId, String energyType, Double energyAmount, Double factorUsed,
+                            Double carbonAmount, String sourceDescription) {}
+
+    static class AccountingMapper implements RowMapper<Accounting> {
+        @Override
+        public Accounting mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new Accounting(
+                    rs.getLong("ID"),
+                    rs.getLong("PARK_ID"),
+                    rs.getTimestamp("PERIOD_START").toInstant(),
+                    rs.getTimestamp("PERIOD_END").toInstant(),
+                    rs.getObject("TOTAL_ENERGY_KWH") != null ? rs.getDouble("TOTAL_ENERGY_KWH") : null,
+                    rs.getObject("TOTAL_CARBON_KG") != null ? rs.getDouble("TOTAL_CARBON_KG") : null,
+                    rs.getObject("CARBON_ENERGY_RATIO") != null ? rs.getDouble("CARBON_ENERGY_RATIO") : null,
+                    rs.getString("METHOD_VERSION"),
+                    rs.getString("STATUS"));
+        }
+    }
+
+    static class AccountingDetailMapper implements RowMapper<AccountingDetail> {
+        @Override
+        public AccountingDetail mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new AccountingDetail(
+                    rs.getLong("ID"),
+                    rs.getObject("ENT_ID") != null ? rs.getLong("ENT_ID") : null,
+                    rs.getString("ENERGY_TYPE"),
+                    rs.getObject("ENERGY_AMOUNT") != null ? rs.getDouble("ENERGY_AMOUNT") : null,
+                    rs.getObject("FACTOR_USED") != null ? rs.getDouble("FACTOR_USED") : null,
+                    rs.getObject("CARBON_AMOUNT") != null ? rs.getDouble("CARBON_AMOUNT") : null,
+                    rs.getString("SOURCE_DESCRIPTION"));
+        }
+    }
+}
@@ -10,6 +10,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.greenmesh.dispatch.DispatchOptimizer;
+import com.greenmesh.dispatch.PlanSimulationService;
+import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -23,15 +26,21 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api/dispatch")
 public class DispatchController {
 
     private final JdbcTemplate jdbcTemplate;
+    private final DispatchOptimizer optimizer;
+    private final PlanSimulationService simulation;
 
-    public DispatchController(JdbcTemplate jdbcTemplate) {
+    public DispatchController(JdbcTemplate jdbcTemplate, DispatchOptimizer optimizer,
+                              PlanSimulationService simulation) {
         this.jdbcTemplate = jdbcTemplate;
+        this.optimizer = optimizer;
+        this.simulation = simulation;
     }
 
     @GetMapping("/plans")
@@ -125,6 +134,49 @@ public class DispatchController {
         return getPlan(planId);
     }
 
+    @PostMapping("/optimize")
+    public DispatchOptimizer.Result optimize(@RequestParam(required = false) Long parkId,
+                                             @RequestParam(required = false) String horizonStart,
+                                             @RequestParam(defaultValue = "96") int intervals,
+                                             @RequestParam(defaultValue = "15") int intervalMin) {
+        if (intervals < 1 || intervals > 2880 || intervalMin < 1 || intervalMin > 1440) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "intervals must be 1..2880 and intervalMin 1..1440");
+        }
+        Instant start;
+        if (StringUtils.hasText(horizonStart)) {
+            start = Instant.parse(horizonStart);
+        } else {
+            long stepMs = intervalMin * 60_000L;
+            start = Instant.ofEpochMilli((System.currentTimeMillis() / stepMs + 1) * stepMs);
+        }
+        return optimizer.optimize(parkId, start, intervals, intervalMin);
+    }
+
+    @PostMapping("/plans/{id}/simulate")
+    public PlanSimulationService.Report simulate(@PathVariable long id,
+                                                 @RequestParam(defaultValue = "2000") int scenarios,
+                                                 @RequestParam(defaultValue = "1") long seed) {
+        if (scenarios < 1 || scenarios > 100_000) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "scenarios must be 1..100000");
+        }
+        try {
+            return simulation.simulate(id, scenarios, seed);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    @GetMapping("/plans/{id}/kpi")
+    public List<SimulationKpi> listKpi(@PathVariable long id) {
+        return jdbcTemplate.query("""
+                SELECT ID, PLAN_ID, PROFILE_ID, SIMULATED_COST, SIMULATED_CARBON, SIMULATED_RISK_SCORE, PASS_FLAG
+                FROM KPI_SIMULATION_RESULT
+                WHERE PLAN_ID = ?
+                ORDER BY ID DESC
+                """, new SimulationKpiMapper(), id);
+    }
+
     private long fetchLatestPlanId() {
         Long id = jdbcTemplate.queryForObject(
                 "SELECT PLAN_ID FROM DISPATCH_PLAN ORDER BY PLAN_ID DESC FETCH FIRST 1 ROWS ONLY",
@@ -141,6 +193,9 @@ public class DispatchController {
     record DispatchPlanDetail(Long id, Long planId, Instant ts, Long assetId,
                               Double pSetKw, Double qSetKvar, Double heatSetMw, Double socTarget) {}
 
+    record SimulationKpi(Long id, Long planId, Long profileId, Double simulatedCost, Double simulatedCarbon,
+                         Double simulatedRiskScore, boolean pass) {}
+
     record DispatchPlanCreateRequest(Long parkId, String horizonStart, String horizonEnd,
                                      Integer intervalMin, Long strategyProfileId, String status,
                                      List<DispatchPlanDetailRequest> details) {}
@@ -177,4 +232,18 @@ public class DispatchController {
                     rs.getObject("SOC_TARGET") != null ? rs.getDouble("SOC_TARGET") : null);
         }
     }
+
+    static class SimulationKpiMapper implements RowMapper<SimulationKpi> {
+        @Override
+        public SimulationKpi mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new SimulationKpi(
+                    rs.getLong("ID"),
+                    rs.getLong("PLAN_ID"),
+                    rs.getObject("PROFILE_ID") != null ? rs.getLong("PROFILE_ID") : null,
+                    rs.getObject("SIMULATED_COST") != null ? rs.getDouble("SIMULATED_COST") : null,
+                    rs.getObject("SIMULATED_CARBON") != null ? rs.getDouble("SIMULATED_CARBON") : null,
+                    rs.getObject("SIMULATED_RISK_SCORE") != null ? rs.getDouble("SIMULATED_RISK_SCORE") : null,
+                    "Y".equalsIgnoreCase(rs.getString("PASS_FLAG")));
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package com.greenmesh.api;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Conditional GET for responses built from an in-memory snapshot.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * 304 when the client already holds {@code etag}, otherwise the body with the ETag and {@code no-cache}; callers
+     * take the etag and the body from the same snapshot.
+     */
+    static <T> ResponseEntity<T> cached(WebRequest request, String etag, Supplier<T> body) {
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .body(body.get());
+    }
+}
@@ -1,74 +1,101 @@
 package com.greenmesh.api;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.greenmesh.forecast.ForecastEvaluator;
+import com.greenmesh.forecast.GenForecastCurves;
+import com.greenmesh.forecast.GenForecastIngest;
+import com.greenmesh.forecast.LoadForecastEngine;
+import com.greenmesh.forecast.PhysicalForecastEngine;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api/forecast")
 public class ForecastController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    static final int MAX_COLUMNAR_ASSETS = 2000;
+    static final int MAX_COLUMNAR_DAYS = 31;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ForecastEvaluator evaluator;
+    private final GenForecastCurves curves;
+    private final GenForecastIngest ingest;
+    private final PhysicalForecastEngine physicalEngine;
+    private final LoadForecastEngine loadEngine;
+    private final MasterDataStore masterData;
 
-    public ForecastController(JdbcTemplate jdbcTemplate) {
+    public ForecastController(JdbcTemplate jdbcTemplate, ForecastEvaluator evaluator, GenForecastCurves curves,
+                              GenForecastIngest ingest, PhysicalForecastEngine physicalEngine,
+                              LoadForecastEngine loadEngine, MasterDataStore masterData) {
         this.jdbcTemplate = jdbcTemplate;
+        this.evaluator = evaluator;
+        this.curves = curves;
+        this.ingest = ingest;
+        this.physicalEngine = physicalEngine;
+        this.loadEngine = loadEngine;
+        this.masterData = masterData;
     }
 
-    @PostMapping("/gen/batch")
-    public Map<String, Object> saveGenerationForecast(@RequestBody List<GenForecastWrite> payload) {
-        if (payload == null || payload.isEmpty()) {
-            return Map.of("inserted", 0);
-        }
-        String sql = """
-                INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, P10, P90, MODEL_VERSION, SCENARIO)
-                VALUES (?,?,?,?,?,?,?,?)
-                """;
-        int[] res = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                GenForecastWrite item = payload.get(i);
-                ps.setLong(1, item.assetId());
-                ps.setTimestamp(2, Timestamp.from(Instant.parse(item.forecastIssueTs())));
-                ps.setTimestamp(3, Timestamp.from(Instant.parse(item.ts())));
-                setBigDecimal(ps, 4, item.pKwPred());
-                setBigDecimal(ps, 5, item.p10());
-                setBigDecimal(ps, 6, item.p90());
-                ps.setString(7, item.modelVersion());
-                ps.setString(8, item.scenario());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return payload.size();
-            }
-        });
-        int inserted = Arrays.stream(res).sum();
-        return Map.of("inserted", inserted);
+    /**
+     * Streams a JSON array (or NDJSON) of forecast points into GEN_FORECAST; re-sending a batch is a no-op.
+     */
+    @PostMapping(value = "/gen/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public GenForecastIngest.IngestReport saveGenerationForecast(InputStream body,
+                                                                 @RequestParam(defaultValue = "false") boolean supersede)
+            throws IOException {
+        return ingest.ingest(body, supersede);
     }
 
+    /**
+     * {@code issueTs} returns that issue as stored; otherwise {@code mode} resolves overlapping issues
+     * ({@code latest}, the default, {@code blend}) or returns every row ({@code all}).
+     */
     @GetMapping("/gen")
     public List<GenForecastView> getGenerationForecast(@RequestParam long assetId,
                                                        @RequestParam String start,
                                                        @RequestParam String end,
-                                                       @RequestParam(required = false) String issueTs) {
+                                                       @RequestParam(required = false) String issueTs,
+                                                       @RequestParam(defaultValue = "latest") String mode,
+                                                       @RequestParam(required = false) String asOf,
+                                                       @RequestParam(required = false) String scenario) {
+        if (!StringUtils.hasText(issueTs) && !"all".equalsIgnoreCase(mode)) {
+            GenForecastCurves.Curve curve = curves.curve(assetId, emptyToNull(scenario), Instant.parse(start),
+                    Instant.parse(end), parseMode(mode, "latest, blend or all"), parseOptional(asOf));
+            List<GenForecastView> rows = new ArrayList<>(curve.size());
+            for (int i = 0; i < curve.size(); i++) {
+                rows.add(new GenForecastView(assetId, Instant.ofEpochMilli(curve.issue(i)),
+                        Instant.ofEpochMilli(curve.ts(i)), BigDecimal.valueOf(curve.p50(i)), decimal(curve.p10(i)),
+                        decimal(curve.p90(i)), curve.modelVersion(i), curve.scenario(i)));
+            }
+            return rows;
+        }
         StringBuilder sql = new StringBuilder("""
                 SELECT ASSET_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, P10, P90, MODEL_VERSION, SCENARIO
                 FROM GEN_FORECAST
@@ -83,24 +110,241 @@ public class ForecastController {
             sql.append(" AND FORECAST_ISSUE_TS = ?");
             args.add(Timestamp.from(Instant.parse(issueTs)));
         }
+        if (StringUtils.hasText(scenario)) {
+            sql.append(" AND SCENARIO = ?");
+            args.add(scenario);
+        }
         sql.append(" ORDER BY TS");
         return jdbcTemplate.query(sql.toString(), args.toArray(), new GenForecastMapper());
     }
 
-    private void setBigDecimal(PreparedStatement ps, int idx, BigDecimal val) throws SQLException {
-        if (val == null) {
-            ps.setNull(idx, java.sql.Types.DECIMAL);
+    /**
+     * Resolved curves of many assets in one response, selected by ids or by park (and asset type).
+     */
+    @GetMapping("/gen/columns")
+    public GenColumns getGenerationColumns(@RequestParam(required = false) String assetIds,
+                                           @RequestParam(required = false) Long parkId,
+                                           @RequestParam(required = false) String assetType,
+                                           @RequestParam String start,
+                                           @RequestParam String end,
+                                           @RequestParam(defaultValue = "latest") String mode,
+                                           @RequestParam(required = false) String asOf,
+                                           @RequestParam(required = false) String scenario) {
+        List<Long> ids;
+        if (StringUtils.hasText(assetIds)) {
+            ids = Arrays.stream(assetIds.split(","))
+                    .filter(StringUtils::hasText)
+                    .map(String::trim)
+                    .map(Long::valueOf)
+                    .distinct()
+                    .toList();
+        } else if (parkId != null) {
+            ids = masterData.snapshot().assets(parkId, null, emptyToNull(assetType)).stream()
+                    .map(MasterDataSnapshot.Asset::id)
+                    .toList();
         } else {
-            ps.setBigDecimal(idx, val);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "assetIds or parkId is required");
+        }
+        if (ids.size() > MAX_COLUMNAR_ASSETS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Selector matches " + ids.size() + " assets, limit is " + MAX_COLUMNAR_ASSETS);
+        }
+        Instant startTs = Instant.parse(start);
+        Instant endTs = Instant.parse(end);
+        if (endTs.isBefore(startTs) || Duration.between(startTs, endTs).toDays() >= MAX_COLUMNAR_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "end must not be before start, at most " + MAX_COLUMNAR_DAYS + " days apart");
+        }
+        GenForecastCurves.Mode resolution = parseMode(mode, "latest or blend");
+        Map<Long, GenForecastCurves.Curve> resolved = curves.curves(ids, emptyToNull(scenario), startTs, endTs,
+                resolution, parseOptional(asOf));
+
+        long[] shared = null;
+        boolean aligned = true;
+        for (GenForecastCurves.Curve c : resolved.values()) {
+            long[] ts = c.timestamps();
+            if (shared == null) {
+                shared = ts;
+            } else if (!Arrays.equals(shared, ts)) {
+                aligned = false;
+                break;
+            }
+        }
+        List<GenColumn> columns = new ArrayList<>(resolved.size());
+        for (Map.Entry<Long, GenForecastCurves.Curve> e : resolved.entrySet()) {
+            GenForecastCurves.Curve c = e.getValue();
+            Double[] p10 = new Double[c.size()];
+            Double[] p90 = new Double[c.size()];
+            for (int i = 0; i < c.size(); i++) {
+                p10[i] = Double.isNaN(c.p10(i)) ? null : c.p10(i);
+                p90[i] = Double.isNaN(c.p90(i)) ? null : c.p90(i);
+            }
+            columns.add(new GenColumn(e.getKey(), aligned ? null : c.timestamps(), c.issues(), c.p50(), p10, p90));
         }
+        return new GenColumns(resolution.name().toLowerCase(Locale.ROOT), aligned ? shared : null, columns);
     }
 
-    record GenForecastWrite(long assetId, String forecastIssueTs, String ts, BigDecimal pKwPred,
-                            BigDecimal p10, BigDecimal p90, String modelVersion, String scenario) {}
+    /**
+     * Recomputes the built-in physical forecast from one weather issue, for all parks or one.
+     */
+    @PostMapping("/physical/run")
+    public PhysicalForecastEngine.Result runPhysicalForecast(@RequestParam String issueTs,
+                                                             @RequestParam(required = false) Long parkId) {
+        return physicalEngine.run(Instant.parse(issueTs), parkId);
+    }
+
+    /**
+     * Issues the load forecast for the hour containing {@code asOf} (default now), for all enterprises, one park or
+     * one enterprise.
+     */
+    @PostMapping("/load/run")
+    public LoadForecastEngine.Result runLoadForecast(@RequestParam(required = false) Long parkId,
+                                                     @RequestParam(required = false) Long entId,
+                                                     @RequestParam(required = false) String asOf) {
+        Instant at = parseOptional(asOf);
+        return loadEngine.run(at != null ? at : Instant.now(), parkId, entId);
+    }
+
+    /**
+     * {@code issueTs} returns that issue; otherwise each hour comes from the latest issue covering it.
+     */
+    @GetMapping("/load")
+    public List<LoadForecastView> getLoadForecast(@RequestParam long entId,
+                                                  @RequestParam String start,
+                                                  @RequestParam String end,
+                                                  @RequestParam(required = false) String issueTs) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT ENT_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, P10, P90, MODEL_VERSION
+                FROM LOAD_FORECAST
+                WHERE ENT_ID = ?
+                  AND TS BETWEEN ? AND ?
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(entId);
+        args.add(Timestamp.from(Instant.parse(start)));
+        args.add(Timestamp.from(Instant.parse(end)));
+        if (StringUtils.hasText(issueTs)) {
+            sql.append(" AND FORECAST_ISSUE_TS = ?");
+            args.add(Timestamp.from(Instant.parse(issueTs)));
+        }
+        sql.append(" ORDER BY TS, FORECAST_ISSUE_TS DESC");
+        List<LoadForecastView> rows = new ArrayList<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            Instant ts = rs.getTimestamp("TS").toInstant();
+            if (!rows.isEmpty() && rows.get(rows.size() - 1).ts().equals(ts)) {
+                return;
+            }
+            rows.add(new LoadForecastView(rs.getLong("ENT_ID"), rs.getTimestamp("FORECAST_ISSUE_TS").toInstant(), ts,
+                    rs.getBigDecimal("P_KW_PRED"), rs.getBigDecimal("P10"), rs.getBigDecimal("P90"),
+                    rs.getString("MODEL_VERSION")));
+        }, args.toArray());
+        return rows;
+    }
+
+    @PostMapping("/eval/run")
+    public ForecastEvaluator.Result runEvaluation() {
+        return evaluator.evaluateNew();
+    }
+
+    @PostMapping("/eval/rebuild")
+    public ForecastEvaluator.Result rebuildEvaluation(@RequestParam String issueFrom,
+                                                      @RequestParam String issueTo,
+                                                      @RequestParam(required = false) Long assetId) {
+        Instant from = Instant.parse(issueFrom);
+        Instant to = Instant.parse(issueTo);
+        if (!from.isBefore(to) || Duration.between(from, to).toDays() > 400) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "issueFrom must be before issueTo, at most 400 days apart");
+        }
+        return evaluator.reevaluate(from, to, assetId);
+    }
+
+    /**
+     * Errors pooled over issues, per scenario, model version and horizon bucket.
+     */
+    @GetMapping("/eval")
+    public List<EvalSummary> getEvaluation(@RequestParam(required = false) Long assetId,
+                                           @RequestParam(required = false) String scenario,
+                                           @RequestParam(required = false) String modelVersion,
+                                           @RequestParam String issueFrom,
+                                           @RequestParam String issueTo) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT SCENARIO, MODEL_VERSION, HORIZON_MIN, COUNT(*) AS ISSUES, SUM(SAMPLE_COUNT) AS SAMPLES,
+                       SUM(SUM_ABS_ERR) AS SUM_ABS_ERR, SUM(SUM_ERR) AS SUM_ERR,
+                       SUM(SUM_APE) AS SUM_APE, SUM(APE_COUNT) AS APE_COUNT
+                FROM LOG_FORECAST_EVAL
+                WHERE FORECAST_ISSUE_TS >= ? AND FORECAST_ISSUE_TS < ? AND SAMPLE_COUNT > 0
+                """);
+        List<Object> args = new java.util.ArrayList<>();
+        args.add(Timestamp.from(Instant.parse(issueFrom)));
+        args.add(Timestamp.from(Instant.parse(issueTo)));
+        if (assetId != null) {
+            sql.append(" AND ASSET_ID = ?");
+            args.add(assetId);
+        }
+        if (StringUtils.hasText(scenario)) {
+            sql.append(" AND SCENARIO = ?");
+            args.add(scenario);
+        }
+        if (StringUtils.hasText(modelVersion)) {
+            sql.append(" AND MODEL_VERSION = ?");
+            args.add(modelVersion);
+        }
+        sql.append(" GROUP BY SCENARIO, MODEL_VERSION, HORIZON_MIN ORDER BY SCENARIO, MODEL_VERSION, HORIZON_MIN");
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            long samples = rs.getLong("SAMPLES");
+            long apeCount = rs.getLong("APE_COUNT");
+            return new EvalSummary(
+                    rs.getString("SCENARIO"),
+                    rs.getString("MODEL_VERSION"),
+                    rs.getInt("HORIZON_MIN"),
+                    rs.getLong("ISSUES"),
+                    samples,
+                    rs.getDouble("SUM_ABS_ERR") / samples,
+                    apeCount > 0 ? rs.getDouble("SUM_APE") / apeCount : null,
+                    rs.getDouble("SUM_ERR") / samples);
+        }, args.toArray());
+    }
+
+    private static GenForecastCurves.Mode parseMode(String mode, String accepted) {
+        try {
+            return GenForecastCurves.Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "mode must be " + accepted);
+        }
+    }
+
+    private static Instant parseOptional(String ts) {
+        return StringUtils.hasText(ts) ? Instant.parse(ts) : null;
+    }
+
+    private static String emptyToNull(String value) {
+        return StringUtils.hasText(value) ? value : null;
+    }
+
+    private static BigDecimal decimal(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    record EvalSummary(String scenario, String modelVersion, int horizonMin, long issues, long samples, double mae,
+                       Double mape, double bias) {}
+
+    /**
+     * {@code timestamps} (epoch ms) is set when all series share it; otherwise each column carries its own.
+     * {@code issueTs} gives the issue each point was taken from.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record GenColumns(String mode, long[] timestamps, List<GenColumn> series) {}
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record GenColumn(long assetId, long[] timestamps, long[] issueTs, double[] p50, Double[] p10, Double[] p90) {}
 
     record GenForecastView(long assetId, Instant forecastIssueTs, Instant ts, BigDecimal pKwPred,
                            BigDecimal p10, BigDecimal p90, String modelVersion, String scenario) {}
 
+    record LoadForecastView(long entId, Instant forecastIssueTs, Instant ts, BigDecimal pKwPred, BigDecimal p10,
+                            BigDecimal p90, String modelVersion) {}
+
     static class GenForecastMapper implements RowMapper<GenForecastView> {
         @Override
         public GenForecastView mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -0,0 +1,65 @@
+package com.greenmesh.api;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.microgrid.MicrogridEngine;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/mg")
+public class MicrogridController {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MicrogridEngine engine;
+
+    public MicrogridController(JdbcTemplate jdbcTemplate, MicrogridEngine engine) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.engine = engine;
+    }
+
+    @GetMapping("/topology")
+    public MicrogridEngine.GridView topology(@RequestParam long parkId) {
+        MicrogridEngine.GridView view = engine.view(parkId);
+        if (view == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No microgrid topology for park " + parkId);
+        }
+        return view;
+    }
+
+    @PostMapping("/topology/reload")
+    public Map<String, Object> reload() {
+        return Map.of("parks", engine.reload());
+    }
+
+    @GetMapping("/state/latest")
+    public RuntimeState latestState(@RequestParam long parkId) {
+        List<RuntimeState> rows = jdbcTemplate.query("""
+                SELECT TS, MODE, ISLAND_FLAG, P_TOTAL_KW, Q_TOTAL_KVAR, FREQ_HZ, SPINNING_RESERVE_KW
+                FROM MG_RUNTIME_STATE WHERE PARK_ID = ?
+                ORDER BY TS DESC, ID DESC FETCH FIRST 1 ROWS ONLY
+                """, (rs, rowNum) -> new RuntimeState(
+                rs.getTimestamp("TS").toInstant(),
+                rs.getString("MODE"),
+                "Y".equalsIgnoreCase(rs.getString("ISLAND_FLAG")),
+                rs.getObject("P_TOTAL_KW") != null ? rs.getDouble("P_TOTAL_KW") : null,
+                rs.getObject("Q_TOTAL_KVAR") != null ? rs.getDouble("Q_TOTAL_KVAR") : null,
+                rs.getObject("FREQ_HZ") != null ? rs.getDouble("FREQ_HZ") : null,
+                rs.getObject("SPINNING_RESERVE_KW") != null ? rs.getDouble("SPINNING_RESERVE_KW") : null), parkId);
+        if (rows.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No runtime state for park " + parkId);
+        }
+        return rows.get(0);
+    }
+
+    record RuntimeState(Instant ts, String mode, boolean islandFlag, Double pTotalKw, Double qTotalKvar,
+                        Double freqHz, Double spinningReserveKw) {}
+}
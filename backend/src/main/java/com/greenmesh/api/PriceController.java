@@ -0,0 +1,63 @@
+package com.greenmesh.api;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.greenmesh.masterdata.IntervalIndex;
+import com.greenmesh.masterdata.TimeSlotSnapshot;
+import com.greenmesh.masterdata.TimeSlotStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/price")
+public class PriceController {
+
+    private final TimeSlotStore timeSlots;
+
+    public PriceController(TimeSlotStore timeSlots) {
+        this.timeSlots = timeSlots;
+    }
+
+    @GetMapping("/slots")
+    public ResponseEntity<List<PriceSlot>> listSlots(@RequestParam long zoneId,
+                                                     @RequestParam String start,
+                                                     @RequestParam String end,
+                                                     WebRequest request) {
+        long startMs = Instant.parse(start).toEpochMilli();
+        long endMs = Instant.parse(end).toEpochMilli();
+        if (endMs <= startMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must be after start");
+        }
+        TimeSlotSnapshot snapshot = timeSlots.snapshot();
+        return ETags.cached(request, snapshot.etag(), () -> {
+            IntervalIndex.Series series = snapshot.prices().series(zoneId);
+            List<PriceSlot> slots = new ArrayList<>();
+            for (int i = series.firstEndingAfter(startMs); i < series.size() && series.from(i) < endMs; i++) {
+                slots.add(new PriceSlot(series.id(i), zoneId, Instant.ofEpochMilli(series.from(i)),
+                        Instant.ofEpochMilli(series.to(i)), series.value(i), series.label(i)));
+            }
+            return slots;
+        });
+    }
+
+    @GetMapping(value = "/slots", params = "stepMin")
+    public ResponseEntity<SlotGrid> priceGrid(@RequestParam long zoneId,
+                                              @RequestParam String start,
+                                              @RequestParam String end,
+                                              @RequestParam int stepMin,
+                                              WebRequest request) {
+        TimeSlotSnapshot snapshot = timeSlots.snapshot();
+        return ETags.cached(request, snapshot.etag(),
+                () -> SlotGrid.of(snapshot.prices().series(zoneId), start, end, stepMin));
+    }
+
+    record PriceSlot(Long id, Long zoneId, Instant startTs, Instant endTs, Double pricePerKwh, String priceType) {}
+}
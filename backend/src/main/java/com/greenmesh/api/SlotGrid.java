@@ -0,0 +1,38 @@
+package com.greenmesh.api;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.greenmesh.masterdata.IntervalIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Values of a tariff or intensity series at {@code start + k * stepMin} (null where no slot applies).
+ */
+record SlotGrid(Instant start, int stepMin, List<Double> values) {
+
+    static final int MAX_GRID_POINTS = 100_000;
+
+    static SlotGrid of(IntervalIndex.Series series, String start, String end, int stepMin) {
+        Instant startTs = Instant.parse(start);
+        long startMs = startTs.toEpochMilli();
+        long endMs = Instant.parse(end).toEpochMilli();
+        if (stepMin <= 0 || endMs <= startMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "stepMin must be positive and end after start");
+        }
+        long stepMs = stepMin * 60_000L;
+        long points = (endMs - startMs + stepMs - 1) / stepMs;
+        if (points > MAX_GRID_POINTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Grid exceeds " + MAX_GRID_POINTS + " points; use a larger stepMin");
+        }
+        double[] values = series.valuesOn(startMs, stepMs, new double[(int) points], Double.NaN);
+        List<Double> out = new ArrayList<>(values.length);
+        for (double v : values) {
+            out.add(Double.isNaN(v) ? null : v);
+        }
+        return new SlotGrid(startTs, stepMin, out);
+    }
+}
@@ -1,35 +1,103 @@
 package com.greenmesh.api;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import com.greenmesh.coldstore.ColdSegment;
+import com.greenmesh.coldstore.ColdSegmentStore;
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.telemetry.ColumnarSeriesQuery;
+import com.greenmesh.telemetry.Downsampler;
+import com.greenmesh.telemetry.IngestValidator;
+import com.greenmesh.telemetry.LatestValueStore;
+import com.greenmesh.telemetry.MeasurementExporter;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawIngestConsumer;
+import com.greenmesh.telemetry.RawIngestPublisher;
+import com.greenmesh.telemetry.RawTimeseriesWriter;
+import com.greenmesh.telemetry.RollupLevel;
+import com.greenmesh.telemetry.RollupService;
+import com.greenmesh.telemetry.SampleBatch;
+import com.greenmesh.telemetry.StreamingRawIngest;
+import com.greenmesh.telemetry.TieredMeasurementReader;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/timeseries")
 public class TimeseriesController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_COLUMNAR_SERIES = 2000;
+    private static final int MAX_DOWNSAMPLE_POINTS = 20_000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final RawTimeseriesWriter rawWriter;
+    private final IngestValidator ingestValidator;
+    private final StreamingRawIngest streamingIngest;
+    private final ObjectProvider<RawIngestPublisher> ingestPublisher;
+    private final ObjectProvider<RawIngestConsumer> ingestConsumer;
+    private final LatestValueStore latestValues;
+    private final RollupService rollups;
+    private final MeasurementExporter exporter;
+    private final ColumnarSeriesQuery columnarQuery;
+    private final TieredMeasurementReader measurementReader;
+    private final ColdSegmentStore coldStore;
 
-    public TimeseriesController(JdbcTemplate jdbcTemplate) {
+    public TimeseriesController(JdbcTemplate jdbcTemplate,
+                                RawTimeseriesWriter rawWriter,
+                                IngestValidator ingestValidator,
+                                StreamingRawIngest streamingIngest,
+                                ObjectProvider<RawIngestPublisher> ingestPublisher,
+                                ObjectProvider<RawIngestConsumer> ingestConsumer,
+                                LatestValueStore latestValues,
+                                RollupService rollups,
+                                MeasurementExporter exporter,
+                                ColumnarSeriesQuery columnarQuery,
+                                TieredMeasurementReader measurementReader,
+                                ColdSegmentStore coldStore) {
         this.jdbcTemplate = jdbcTemplate;
+        this.rawWriter = rawWriter;
+        this.ingestValidator = ingestValidator;
+        this.streamingIngest = streamingIngest;
+        this.ingestPublisher = ingestPublisher;
+        this.ingestConsumer = ingestConsumer;
+        this.latestValues = latestValues;
+        this.rollups = rollups;
+        this.exporter = exporter;
+        this.columnarQuery = columnarQuery;
+        this.measurementReader = measurementReader;
+        this.coldStore = coldStore;
     }
 
     @PostMapping("/raw/batch")
@@ -37,66 +105,319 @@ public class TimeseriesController {
         if (payload == null || payload.isEmpty()) {
             return Map.of("inserted", 0);
         }
-        String sql = "INSERT INTO RAW_TIMESERIES (POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM) VALUES (?,?,?,?,?)";
-        int[] res = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                RawPointValue item = payload.get(i);
-                ps.setLong(1, item.pointId());
-                ps.setTimestamp(2, Timestamp.from(Instant.parse(item.ts())));
-                if (item.value() != null) {
-                    ps.setBigDecimal(3, item.value());
-                } else {
-                    ps.setNull(3, java.sql.Types.DECIMAL);
-                }
-                ps.setString(4, item.qualityFlag());
-                ps.setString(5, item.sourceSystem());
+        SampleBatch batch = new SampleBatch(payload.size());
+        for (RawPointValue item : payload) {
+            batch.add(item.pointId(),
+                    Instant.parse(item.ts()).toEpochMilli(),
+                    item.value() != null ? item.value().doubleValue() : Double.NaN,
+                    QualityFlags.code(item.qualityFlag()),
+                    item.sourceSystem());
+        }
+        IngestValidator.Rejects invalid = ingestValidator.screen(batch);
+        RawIngestPublisher publisher = ingestPublisher.getIfAvailable();
+        if (publisher != null) {
+            RawIngestPublisher.Published published = publisher.publish(batch);
+            if (published.accepted() == 0 && published.failed() > 0) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Raw ingest topic unavailable: " + published.firstError());
             }
+            return Map.of("accepted", published.accepted(), "failed", published.failed(), "mode", "async",
+                    "rejected", invalid.count(), "rejects", invalid.items());
+        }
+        return Map.of("inserted", rawWriter.insert(batch), "rejected", invalid.count(), "rejects", invalid.items());
+    }
 
-            @Override
-            public int getBatchSize() {
-                return payload.size();
-            }
-        });
-        int inserted = Arrays.stream(res).sum();
-        return Map.of("inserted", inserted);
+    @PostMapping(value = "/raw/stream", consumes = NDJSON)
+    public StreamingRawIngest.IngestReport ingestRawNdjson(InputStream body,
+                                                           @RequestParam(required = false) String source) throws IOException {
+        return streamingIngest.ingestNdjson(body, source);
+    }
+
+    @PostMapping(value = "/raw/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public StreamingRawIngest.IngestReport ingestRawFrames(InputStream body,
+                                                           @RequestParam(required = false) String source) throws IOException {
+        return streamingIngest.ingestBinary(body, source);
+    }
+
+    @GetMapping("/raw/ingest-status")
+    public Map<String, Object> ingestStatus() {
+        RawIngestConsumer consumer = ingestConsumer.getIfAvailable();
+        if (consumer == null) {
+            return Map.of("mode", "sync");
+        }
+        return Map.of(
+                "mode", "async",
+                "consumerLag", consumer.totalLag(),
+                "partitionLag", consumer.partitionLag());
     }
 
     @GetMapping("/measurements")
-    public List<Measurement> queryMeasurements(@RequestParam long pointId,
-                                               @RequestParam String start,
-                                               @RequestParam String end,
-                                               @RequestParam(defaultValue = "5000") int limit) {
-        String sql = """
-                SELECT POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL
-                FROM TS_MEASUREMENT
-                WHERE POINT_ID = ?
-                  AND TS BETWEEN ? AND ?
-                ORDER BY TS
-                """;
+    public List<?> queryMeasurements(@RequestParam long pointId,
+                                     @RequestParam String start,
+                                     @RequestParam String end,
+                                     @RequestParam(defaultValue = "5000") int limit,
+                                     @RequestParam(required = false) String resolution,
+                                     @RequestParam(required = false) Integer maxPoints,
+                                     @RequestParam(required = false) String mode,
+                                     @RequestParam(defaultValue = "1500") int points) {
         Instant startTs = Instant.parse(start);
         Instant endTs = Instant.parse(end);
-        RowMapper<Measurement> mapper = new MeasurementMapper();
-        return jdbcTemplate.query(con -> {
-            PreparedStatement ps = con.prepareStatement(sql);
-            ps.setLong(1, pointId);
-            ps.setTimestamp(2, Timestamp.from(startTs));
-            ps.setTimestamp(3, Timestamp.from(endTs));
-            ps.setMaxRows(limit);
-            return ps;
-        }, mapper);
+        if (StringUtils.hasText(mode)) {
+            if (points > MAX_DOWNSAMPLE_POINTS) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "points is " + points + ", limit is " + MAX_DOWNSAMPLE_POINTS);
+            }
+            // the point budget comes from `points`; only an explicit resolution switches the source to rollups
+            RollupLevel source = resolveLevel(List.of(pointId), startTs, endTs, resolution, null);
+            return downsample(pointId, startTs, endTs, source, mode, points);
+        }
+        RollupLevel level = resolveLevel(List.of(pointId), startTs, endTs, resolution, maxPoints);
+        if (level != null) {
+            return rollups.read(pointId, level, startTs, endTs, limit).stream()
+                    .map(r -> new RollupMeasurement(r.pointId(), r.bucketTs(), r.avg(), r.min(), r.max(), r.sum(),
+                            r.count(), r.first(), r.last(), r.aggLevel()))
+                    .toList();
+        }
+        List<Measurement> result = new ArrayList<>();
+        TieredMeasurementReader.Scan scan = new TieredMeasurementReader.Scan(List.of(pointId), startTs, endTs, true,
+                null, limit);
+        measurementReader.scan(scan, 5000, (id, ts, value, quality) -> result.add(new Measurement(id, ts,
+                Double.isNaN(value) ? null : BigDecimal.valueOf(value), QualityFlags.name(quality), "raw")));
+        return result;
+    }
+
+    @GetMapping("/columns")
+    public ColumnarSeriesQuery.Result queryColumns(@RequestParam(required = false) String pointIds,
+                                                   @RequestParam(required = false) Long parkId,
+                                                   @RequestParam(required = false) Long assetId,
+                                                   @RequestParam(required = false) String measType,
+                                                   @RequestParam(required = false) String energyType,
+                                                   @RequestParam(defaultValue = "false") boolean keyPoints,
+                                                   @RequestParam(required = false) String category,
+                                                   @RequestParam String start,
+                                                   @RequestParam String end,
+                                                   @RequestParam(required = false) String resolution,
+                                                   @RequestParam(required = false) Integer maxPoints) {
+        ColumnarSeriesQuery.Selector selector = new ColumnarSeriesQuery.Selector(
+                StringUtils.hasText(pointIds) ? parseIds(pointIds) : null,
+                parkId, assetId, measType, energyType, keyPoints, category);
+        if (selector.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "pointIds or a parkId/assetId/measType/energyType/keyPoints/category filter is required");
+        }
+        List<Long> ids = columnarQuery.resolvePoints(selector);
+        if (ids.size() > MAX_COLUMNAR_SERIES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Selector matches " + ids.size() + " points, limit is " + MAX_COLUMNAR_SERIES);
+        }
+        Instant startTs = Instant.parse(start);
+        Instant endTs = Instant.parse(end);
+        if (ids.isEmpty()) {
+            return new ColumnarSeriesQuery.Result("raw", new long[0], List.of());
+        }
+        RollupLevel level = resolveLevel(ids, startTs, endTs, resolution, maxPoints);
+        try {
+            return columnarQuery.query(ids, startTs, endTs, level, "raw".equalsIgnoreCase(resolution));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportMeasurements(
+            @RequestParam String pointIds,
+            @RequestParam String start,
+            @RequestParam String end,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") long limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        List<Long> ids = parseIds(pointIds);
+        if (ids.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "pointIds is required");
+        }
+        Instant startTs = Instant.parse(start);
+        Instant endTs = Instant.parse(end);
+        MeasurementExporter.Cursor after;
+        try {
+            after = StringUtils.hasText(cursor) ? MeasurementExporter.Cursor.decode(cursor) : null;
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream zipped = new GZIPOutputStream(out, 64 * 1024);
+                exporter.export(ids, startTs, endTs, after, limit, zipped);
+                zipped.finish();
+            } else {
+                exporter.export(ids, startTs, endTs, after, limit, out);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    @GetMapping("/cold/status")
+    public Map<String, Object> coldStatus() {
+        List<ColdSegment> segments = coldStore.all();
+        long bytes = 0;
+        long samples = 0;
+        for (ColdSegment segment : segments) {
+            bytes += segment.sizeBytes();
+            samples += segment.totalSamples();
+        }
+        return Map.of(
+                "segments", segments.size(),
+                "bytes", bytes,
+                "samples", samples,
+                "bytesPerSample", samples > 0 ? (double) bytes / samples : 0.0);
+    }
+
+    @PostMapping("/rollups/rebuild")
+    public Map<RollupLevel, Integer> rebuildRollups(@RequestParam(required = false) Long pointId,
+                                                    @RequestParam String start,
+                                                    @RequestParam String end) {
+        return rollups.rebuild(pointId, Instant.parse(start), Instant.parse(end));
+    }
+
+    private List<Measurement> downsample(long pointId, Instant start, Instant end, RollupLevel level,
+                                         String mode, int points) {
+        Downsampler downsampler;
+        try {
+            downsampler = Downsampler.of(mode, start.toEpochMilli(), end.toEpochMilli(), Math.max(points, 4));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        if (level == null) {
+            measurementReader.scan(TieredMeasurementReader.Scan.range(List.of(pointId), start, end), 5000,
+                    (id, ts, value, quality) -> {
+                        if (!Double.isNaN(value)) {
+                            downsampler.add(ts.toEpochMilli(), value);
+                        }
+                        return true;
+                    });
+        } else {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(
+                        "SELECT BUCKET_TS, AVG_V FROM TS_ROLLUP WHERE POINT_ID = ? AND BUCKET_TS BETWEEN ? AND ? AND AGG_LEVEL = ? ORDER BY BUCKET_TS");
+                ps.setLong(1, pointId);
+                ps.setTimestamp(2, Timestamp.from(start));
+                ps.setTimestamp(3, Timestamp.from(end));
+                ps.setString(4, level.code());
+                ps.setFetchSize(5000);
+                return ps;
+            }, rs -> {
+                double value = rs.getDouble(2);
+                if (!rs.wasNull()) {
+                    downsampler.add(rs.getTimestamp(1).getTime(), value);
+                }
+            });
+        }
+        Downsampler.Series series = downsampler.finish();
+        String aggLevel = mode.toLowerCase(Locale.ROOT);
+        List<Measurement> result = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            result.add(new Measurement(pointId, Instant.ofEpochMilli(series.timestamp(i)),
+                    BigDecimal.valueOf(series.value(i)), null, aggLevel));
+        }
+        return result;
+    }
+
+    private RollupLevel resolveLevel(List<Long> pointIds, Instant start, Instant end, String resolution,
+                                     Integer maxPoints) {
+        if (StringUtils.hasText(resolution) && !"auto".equalsIgnoreCase(resolution)) {
+            if ("raw".equalsIgnoreCase(resolution)) {
+                return null;
+            }
+            try {
+                return RollupLevel.fromCode(resolution);
+            } catch (IllegalArgumentException ex) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+            }
+        }
+        if (maxPoints == null || maxPoints <= 0) {
+            return null;
+        }
+        long rangeMs = Math.max(1, end.toEpochMilli() - start.toEpochMilli());
+        // the densest point decides whether raw rows still fit the budget
+        Integer interval = null;
+        for (int from = 0; from < pointIds.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> part = pointIds.subList(from, Math.min(pointIds.size(), from + BatchUpserts.IN_CHUNK));
+            String inClause = part.stream().map(id -> "?").collect(Collectors.joining(","));
+            Integer partMin = jdbcTemplate.queryForObject(
+                    "SELECT MIN(SAMPLING_INTERVAL_S) FROM DIM_METER_POINT WHERE SAMPLING_INTERVAL_S > 0 AND POINT_ID IN ("
+                            + inClause + ")",
+                    Integer.class, part.toArray());
+            if (partMin != null && (interval == null || partMin < interval)) {
+                interval = partMin;
+            }
+        }
+        long rawIntervalMs = interval != null ? interval * 1000L : RollupLevel.MINUTE.lengthMs();
+        if (Math.ceilDiv(rangeMs, rawIntervalMs) <= maxPoints) {
+            return null;
+        }
+        return RollupLevel.finestWithin(rangeMs, maxPoints);
     }
 
     @GetMapping("/latest")
     public List<Measurement> queryLatest(@RequestParam String pointIds) {
-        List<Long> ids = Arrays.stream(pointIds.split(","))
+        List<Long> ids = parseIds(pointIds);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<LatestValueStore.Latest> cached = new ArrayList<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        latestValues.lookup(ids, cached, missing);
+
+        List<Measurement> result = new ArrayList<>(ids.size());
+        for (LatestValueStore.Latest latest : cached) {
+            result.add(new Measurement(latest.pointId(),
+                    Instant.ofEpochMilli(latest.ts()),
+                    Double.isNaN(latest.value()) ? null : BigDecimal.valueOf(latest.value()),
+                    QualityFlags.name(latest.quality()),
+                    "raw"));
+        }
+        if (!missing.isEmpty()) {
+            List<Measurement> loaded = new ArrayList<>(queryLatestFromDb(missing));
+            if (loaded.size() < missing.size()) {
+                // points without hot rows may still have history in the cold tier
+                Set<Long> found = loaded.stream().map(Measurement::pointId).collect(Collectors.toSet());
+                for (Long id : missing) {
+                    if (!found.contains(id)) {
+                        coldStore.readLatest(id, (ts, value, quality) -> loaded.add(new Measurement(id,
+                                Instant.ofEpochMilli(ts), Double.isNaN(value) ? null : BigDecimal.valueOf(value),
+                                QualityFlags.name(quality), "raw")));
+                    }
+                }
+            }
+            SampleBatch seen = new SampleBatch(loaded.size());
+            for (Measurement m : loaded) {
+                seen.add(m.pointId(), m.ts().toEpochMilli(),
+                        m.value() != null ? m.value().doubleValue() : Double.NaN,
+                        QualityFlags.code(m.qualityFlag()), null);
+            }
+            latestValues.onMeasurements(seen);
+            result.addAll(loaded);
+        }
+        result.sort(Comparator.comparingLong(Measurement::pointId));
+        return result;
+    }
+
+    private static List<Long> parseIds(String pointIds) {
+        return Arrays.stream(pointIds.split(","))
                 .filter(StringUtils::hasText)
                 .map(String::trim)
                 .map(Long::valueOf)
+                .distinct()
                 .toList();
-        if (ids.isEmpty()) {
-            return List.of();
-        }
+    }
+
+    private List<Measurement> queryLatestFromDb(List<Long> ids) {
         String inClause = ids.stream().map(id -> "?").collect(Collectors.joining(","));
         String sql = """
                 SELECT t.POINT_ID, t.TS, t.VALUE, t.QUALITY_FLAG, t.AGG_LEVEL
@@ -116,6 +437,9 @@ public class TimeseriesController {
 
     record Measurement(long pointId, Instant ts, BigDecimal value, String qualityFlag, String aggLevel) {}
 
+    record RollupMeasurement(long pointId, Instant ts, BigDecimal value, BigDecimal min, BigDecimal max,
+                             BigDecimal sum, long count, BigDecimal first, BigDecimal last, String aggLevel) {}
+
     static class MeasurementMapper implements RowMapper<Measurement> {
         @Override
         public Measurement mapRow(ResultSet rs, int rowNum) throws SQLException {
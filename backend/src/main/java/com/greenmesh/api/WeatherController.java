@@ -0,0 +1,78 @@
+package com.greenmesh.api;
+
+import java.io.InputStream;
+import java.util.List;
+
+import com.greenmesh.weather.WeatherImportService;
+import com.greenmesh.weather.WeatherKind;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/weather")
+public class WeatherController {
+
+    static final String CSV = "text/csv";
+    static final String FRAMES = "application/vnd.greenmesh.weather-frames";
+
+    private final WeatherImportService importService;
+
+    public WeatherController(WeatherImportService importService) {
+        this.importService = importService;
+    }
+
+    /**
+     * Bulk loads observations or NWP forecasts; the call returns when the file is written, progress of running
+     * imports is visible under {@code /import/jobs}.
+     */
+    @PostMapping(value = "/import", consumes = CSV)
+    public WeatherImportService.JobStatus importCsv(@RequestParam String kind,
+                                                    @RequestParam(required = false) Long parkId,
+                                                    InputStream body) {
+        return checked(importService.importCsv(kind(kind), body, parkId));
+    }
+
+    @PostMapping(value = "/import", consumes = {FRAMES, "application/octet-stream"})
+    public WeatherImportService.JobStatus importFrames(@RequestParam String kind,
+                                                       @RequestParam(required = false) Long parkId,
+                                                       InputStream body) {
+        return checked(importService.importFrames(kind(kind), body, parkId));
+    }
+
+    @GetMapping("/import/jobs")
+    public List<WeatherImportService.JobStatus> importJobs() {
+        return importService.jobs();
+    }
+
+    @GetMapping("/import/jobs/{id}")
+    public WeatherImportService.JobStatus importJob(@PathVariable long id) {
+        WeatherImportService.JobStatus job = importService.job(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No import job " + id);
+        }
+        return job;
+    }
+
+    private static WeatherKind kind(String kind) {
+        try {
+            return WeatherKind.parse(kind);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "kind must be obs or forecast");
+        }
+    }
+
+    // an unreadable file (header, magic) fails the whole job; bad rows are only counted
+    private static WeatherImportService.JobStatus checked(WeatherImportService.JobStatus status) {
+        if ("FAILED".equals(status.status())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    status.errors().isEmpty() ? "Weather import failed" : status.errors().get(0));
+        }
+        return status;
+    }
+}
@@ -0,0 +1,526 @@
+package com.greenmesh.carbon;
+
+import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.masterdata.IntervalIndex;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataSnapshot.MeterPoint;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.masterdata.TimeSlotSnapshot;
+import com.greenmesh.masterdata.TimeSlotStore;
+import com.greenmesh.telemetry.RollupLevel;
+import com.greenmesh.telemetry.RollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Daily carbon accounts per park in FACT_CARBON_ACCOUNTING, with one FACT_CARBON_ACCOUNTING_DETAIL row per
+ * enterprise and energy type; days are local to the park's DIM_PARK timezone. Energy comes from the 1h TS_ROLLUP
+ * buckets of enterprise meter points, chosen per enterprise and energy type the way the load forecast chooses them:
+ * rate points (kW, m3/h, ...) contribute their hourly average when there are any, and only otherwise the amount
+ * points (kWh, m3, ...) do. Amount points are cumulative registers and are differenced between consecutive hourly
+ * readings, unless their MEAS_TYPE is one of the configured interval types, whose readings are summed. Each hour of
+ * electricity is priced at the region's CARBON_INTENSITY_TIMESLOT value when one exists and at the effective
+ * DIM_CARBON_FACTOR otherwise, both resolved through the {@link TimeSlotStore} interval indexes.
+ * <p>
+ * Every account stores the method in METHOD_VERSION and a fingerprint of its inputs (hourly rollup aggregates,
+ * intensity values, the factors and point mapping in force) in INPUT_FINGERPRINT. A run derives every day's
+ * fingerprint from per-hour aggregates of the park's source points and rebuilds only the days whose method or
+ * fingerprint moved: late data, rollup corrections and factor revisions are picked up without rescanning unchanged
+ * days.
+ */
+@Service
+public class CarbonAccountingService {
+
+    static final String METHOD = "cf3";
+
+    private static final Logger log = LoggerFactory.getLogger(CarbonAccountingService.class);
+    private static final String ELECTRICITY = "ELEC";
+    private static final long HOUR_MS = 3_600_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MasterDataStore masterData;
+    private final TimeSlotStore timeSlots;
+    private final ZoneId defaultZone;
+    private final boolean enabled;
+    private final int lookbackDays;
+    private final Set<String> intervalMeasTypes;
+
+    public CarbonAccountingService(JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   MasterDataStore masterData,
+                                   TimeSlotStore timeSlots,
+                                   RollupService rollups,
+                                   @Value("${app.carbon.accounting.enabled:true}") boolean enabled,
+                                   @Value("${app.carbon.accounting.lookback-days:35}") int lookbackDays,
+                                   @Value("${app.carbon.accounting.interval-meas-types:INTERVAL_ENERGY}")
+                                   Set<String> intervalMeasTypes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.masterData = masterData;
+        this.timeSlots = timeSlots;
+        // for parks without a timezone of their own
+        this.defaultZone = rollups.zone();
+        this.enabled = enabled;
+        this.lookbackDays = lookbackDays;
+        this.intervalMeasTypes = intervalMeasTypes.stream()
+                .map(type -> type.trim().toUpperCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Scheduled(fixedDelayString = "${app.carbon.accounting.interval-ms:600000}",
+            initialDelayString = "${app.carbon.accounting.interval-ms:600000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        for (MasterDataSnapshot.Park park : masterData.snapshot().parks()) {
+            LocalDate today = LocalDate.now(zone(park));
+            try {
+                run(park.id(), today.minusDays(lookbackDays), today.plusDays(1));
+            } catch (RuntimeException ex) {
+                log.warn("Carbon accounting failed for park {}", park.id(), ex);
+            }
+        }
+    }
+
+    /**
+     * Brings the accounts of days [from, to) up to date for one park.
+     */
+    public synchronized Result run(long parkId, LocalDate from, LocalDate to) {
+        long started = System.nanoTime();
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        MasterDataSnapshot.Park park = snapshot.park(parkId);
+        if (park == null) {
+            throw new IllegalArgumentException("Unknown park " + parkId);
+        }
+        ZoneId zone = zone(park);
+        long startMs = from.atStartOfDay(zone).toInstant().toEpochMilli();
+        long endMs = to.atStartOfDay(zone).toInstant().toEpochMilli();
+        Map<Long, Source> sources = sources(snapshot, parkId, intervalMeasTypes);
+        TimeSlotSnapshot slots = timeSlots.snapshot();
+        IntervalIndex.Series intensity = slots.intensity().series(park.region());
+        Set<String> energyTypes = new TreeSet<>();
+        sources.values().forEach(source -> energyTypes.add(source.energyType));
+
+        // fingerprint every day from aggregates only
+        Map<LocalDate, MessageDigest> digests = new TreeMap<>();
+        String mapping = mappingSignature(sources);
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            MessageDigest digest = sha256();
+            update(digest, mapping);
+            for (String energyType : energyTypes) {
+                TimeSlotSnapshot.FactorHit f = slots.factor(park.region(), energyType, day);
+                update(digest, energyType + ":" + (f != null ? f.factorId() + ":" + f.value() : "-"));
+            }
+            digests.put(day, digest);
+        }
+        // hourly aggregates of the source points only, summed across id chunks before they are hashed; the hour
+        // before the range is read too, as a register's first difference depends on it
+        Map<Long, HourAggregate> hours = new TreeMap<>();
+        List<Long> ids = List.copyOf(sources.keySet());
+        for (int i = 0; i < ids.size(); i += BatchUpserts.IN_CHUNK) {
+            List<Long> part = ids.subList(i, Math.min(ids.size(), i + BatchUpserts.IN_CHUNK));
+            List<Object> args = new ArrayList<>(part);
+            args.add(RollupLevel.HOUR.code());
+            args.add(new Timestamp(startMs - HOUR_MS));
+            args.add(new Timestamp(endMs));
+            jdbcTemplate.query("""
+                    SELECT BUCKET_TS, COUNT(*), SUM(CNT), SUM(SUM_V), SUM(AVG_V), SUM(LAST_V) FROM TS_ROLLUP
+                    WHERE POINT_ID IN (%s) AND AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS < ?
+                    GROUP BY BUCKET_TS
+                    """.formatted(part.stream().map(id -> "?").collect(Collectors.joining(","))),
+                    rs -> {
+                        hours.computeIfAbsent(rs.getTimestamp(1).getTime(), bucket -> new HourAggregate())
+                                .add(rs.getLong(2), rs.getLong(3), rs.getBigDecimal(4), rs.getBigDecimal(5),
+                                        rs.getBigDecimal(6));
+                    }, args.toArray());
+        }
+        boolean counters = sources.values().stream().anyMatch(Source::counter);
+        Set<LocalDate> hasEnergy = new HashSet<>();
+        hours.forEach((bucket, hour) -> {
+            LocalDate day = Instant.ofEpochMilli(bucket).atZone(zone).toLocalDate();
+            MessageDigest digest = digests.get(day);
+            if (digest != null) {
+                update(digest, bucket + ":" + hour);
+                hasEnergy.add(day);
+            }
+            LocalDate next = Instant.ofEpochMilli(bucket + HOUR_MS).atZone(zone).toLocalDate();
+            if (counters && !next.equals(day) && digests.containsKey(next)) {
+                update(digests.get(next), "prev:" + bucket + ":" + hour);
+            }
+        });
+        for (int i = intensity.firstEndingAfter(startMs); i < intensity.size() && intensity.from(i) < endMs; i++) {
+            String part = "ci:" + intensity.from(i) + ":" + intensity.to(i) + ":" + intensity.value(i);
+            LocalDate first = Instant.ofEpochMilli(Math.max(startMs, intensity.from(i))).atZone(zone).toLocalDate();
+            LocalDate last = Instant.ofEpochMilli(Math.min(endMs, intensity.to(i)) - 1).atZone(zone).toLocalDate();
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                update(digests.get(day), part);
+            }
+        }
+        Map<LocalDate, String> fingerprints = new TreeMap<>();
+        digests.forEach((day, digest) -> fingerprints.put(day, HexFormat.of().formatHex(digest.digest(), 0, 16)));
+
+        Map<LocalDate, Existing> existing = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT ID, PERIOD_START, METHOD_VERSION, INPUT_FINGERPRINT, STATUS FROM FACT_CARBON_ACCOUNTING
+                WHERE PARK_ID = ? AND PERIOD_START >= ? AND PERIOD_START < ?
+                """, rs -> {
+            LocalDate day = rs.getTimestamp(2).toInstant().atZone(zone).toLocalDate();
+            existing.put(day, new Existing(rs.getLong(1), rs.getString(3), rs.getString(4), rs.getString(5)));
+        }, parkId, new Timestamp(startMs), new Timestamp(endMs));
+
+        LocalDate today = LocalDate.now(zone);
+        List<LocalDate> stale = new ArrayList<>();
+        List<Long> orphaned = new ArrayList<>();
+        for (Map.Entry<LocalDate, String> e : fingerprints.entrySet()) {
+            LocalDate day = e.getKey();
+            Existing row = existing.get(day);
+            String status = day.isBefore(today) ? "FINAL" : "PROVISIONAL";
+            if (!hasEnergy.contains(day)) {
+                if (row != null) {
+                    orphaned.add(row.id());
+                }
+            } else if (row == null || !METHOD.equals(row.method()) || !e.getValue().equals(row.fingerprint())
+                    || !status.equals(row.status())) {
+                stale.add(day);
+            }
+        }
+
+        List<Account> accounts = stale.isEmpty() ? List.of()
+                : compute(parkId, zone, stale, sources, intensity, slots, park.region());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Long id : orphaned) {
+                delete(id);
+            }
+            for (Account account : accounts) {
+                Existing row = existing.get(account.day);
+                if (row != null) {
+                    delete(row.id());
+                }
+                // rollups without values leave a day without lines
+                if (!account.lines.isEmpty()) {
+                    write(parkId, zone, account, fingerprints.get(account.day),
+                            account.day.isBefore(today) ? "FINAL" : "PROVISIONAL");
+                }
+            }
+        });
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        if (!stale.isEmpty() || !orphaned.isEmpty()) {
+            log.info("Carbon accounting for park {}: {} of {} days recomputed, {} removed in {} ms",
+                    parkId, accounts.size(), fingerprints.size(), orphaned.size(), elapsedMs);
+        }
+        return new Result(parkId, fingerprints.size(), accounts.size(), orphaned.size(), elapsedMs);
+    }
+
+    private List<Account> compute(long parkId, ZoneId zone, List<LocalDate> days, Map<Long, Source> sources,
+                                  IntervalIndex.Series intensity, TimeSlotSnapshot slots, String region) {
+        Map<LocalDate, Account> accounts = new TreeMap<>();
+        for (LocalDate day : days) {
+            accounts.put(day, new Account(day));
+        }
+        long fromMs = days.get(0).atStartOfDay(zone).toInstant().toEpochMilli();
+        long toMs = days.get(days.size() - 1).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        // per point in bucket order, so each register reading can be differenced against the one before it
+        long[] previous = {-1};
+        double[] previousLast = {Double.NaN};
+        jdbcTemplate.query("""
+                SELECT r.POINT_ID, r.BUCKET_TS, r.AVG_V, r.SUM_V, r.FIRST_V, r.LAST_V
+                FROM TS_ROLLUP r
+                JOIN DIM_METER_POINT p ON p.POINT_ID = r.POINT_ID
+                WHERE p.PARK_ID = ? AND p.ENT_ID IS NOT NULL AND r.AGG_LEVEL = ?
+                  AND r.BUCKET_TS >= ? AND r.BUCKET_TS < ?
+                ORDER BY r.POINT_ID, r.BUCKET_TS
+                """, rs -> {
+            long pointId = rs.getLong(1);
+            Source source = sources.get(pointId);
+            if (source == null) {
+                return;
+            }
+            long bucket = rs.getTimestamp(2).getTime();
+            double raw;
+            if (source.counter) {
+                double last = rs.getDouble(6);
+                if (rs.wasNull()) {
+                    return;
+                }
+                double first = rs.getDouble(5);
+                boolean hasFirst = !rs.wasNull();
+                raw = previous[0] == pointId ? last - previousLast[0] : hasFirst ? last - first : 0;
+                if (raw < 0) {
+                    // the register was reset or replaced within the hour
+                    raw = hasFirst ? Math.max(0, last - first) : 0;
+                }
+                previous[0] = pointId;
+                previousLast[0] = last;
+            } else {
+                raw = source.rate ? rs.getDouble(3) : rs.getDouble(4);
+                if (rs.wasNull()) {
+                    return;
+                }
+            }
+            Account account = accounts.get(Instant.ofEpochMilli(bucket).atZone(zone).toLocalDate());
+            if (account == null) {
+                return;
+            }
+            double amount = raw * source.scale;
+            Line line = account.lines.computeIfAbsent(source.entId + "|" + source.energyType,
+                    k -> new Line(source.entId, source.energyType));
+            line.energy += amount;
+            double grid = ELECTRICITY.equals(source.energyType) ? intensity.valueAt(bucket, Double.NaN) : Double.NaN;
+            if (!Double.isNaN(grid)) {
+                // g/kWh
+                line.carbon += amount * grid / 1000.0;
+                line.intensityHours.add(bucket);
+                return;
+            }
+            TimeSlotSnapshot.FactorHit factor = account.factors.computeIfAbsent(source.energyType,
+                    type -> Optional.ofNullable(slots.factor(region, type, account.day))).orElse(null);
+            if (factor != null) {
+                line.carbon += amount * factor.value();
+                line.factorIds.add(factor.factorId());
+            } else {
+                line.unfactored += amount;
+            }
+        }, parkId, RollupLevel.HOUR.code(), new Timestamp(fromMs - HOUR_MS), new Timestamp(toMs));
+        return List.copyOf(accounts.values());
+    }
+
+    private void write(long parkId, ZoneId zone, Account account, String fingerprint, String status) {
+        double energy = 0;
+        double carbon = 0;
+        for (Line line : account.lines.values()) {
+            // only electricity-equivalent kWh count towards the park's energy total
+            if (line.energyType.equals(ELECTRICITY)) {
+                energy += line.energy;
+            }
+            carbon += line.carbon;
+        }
+        long periodStart = account.day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long periodEnd = account.day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        double totalEnergy = energy;
+        double totalCarbon = carbon;
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO FACT_CARBON_ACCOUNTING
+                    (PARK_ID, PERIOD_START, PERIOD_END, TOTAL_ENERGY_KWH, TOTAL_CARBON_KG, CARBON_ENERGY_RATIO,
+                     METHOD_VERSION, INPUT_FINGERPRINT, STATUS)
+                    VALUES (?,?,?,?,?,?,?,?,?)
+                    """, new String[]{"ID"});
+            ps.setLong(1, parkId);
+            ps.setTimestamp(2, new Timestamp(periodStart));
+            ps.setTimestamp(3, new Timestamp(periodEnd));
+            ps.setDouble(4, round(totalEnergy));
+            ps.setDouble(5, round(totalCarbon));
+            ps.setObject(6, totalEnergy > 0 ? round(totalCarbon / totalEnergy) : null);
+            ps.setString(7, METHOD);
+            ps.setString(8, fingerprint);
+            ps.setString(9, status);
+            return ps;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        long accountingId = key != null ? key.longValue() : jdbcTemplate.queryForObject(
+                "SELECT MAX(ID) FROM FACT_CARBON_ACCOUNTING WHERE PARK_ID = ?", Long.class, parkId);
+
+        List<Line> lines = new ArrayList<>(account.lines.values());
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO FACT_CARBON_ACCOUNTING_DETAIL
+                (ACCOUNTING_ID, ENT_ID, ENERGY_TYPE, ENERGY_AMOUNT, FACTOR_USED, CARBON_AMOUNT, SOURCE_DESCRIPTION)
+                VALUES (?,?,?,?,?,?,?)
+                """, lines, lines.size(), (ps, line) -> {
+            ps.setLong(1, accountingId);
+            ps.setLong(2, line.entId);
+            ps.setString(3, line.energyType);
+            ps.setDouble(4, round(line.energy));
+            double factored = line.energy - line.unfactored;
+            ps.setObject(5, factored != 0 ? round(line.carbon / factored) : null);
+            ps.setDouble(6, round(line.carbon));
+            ps.setString(7, line.describe());
+        });
+    }
+
+    private ZoneId zone(MasterDataSnapshot.Park park) {
+        return park.timezone() != null ? ZoneId.of(park.timezone()) : defaultZone;
+    }
+
+    private void delete(long accountingId) {
+        jdbcTemplate.update("DELETE FROM FACT_CARBON_ACCOUNTING_DETAIL WHERE ACCOUNTING_ID = ?", accountingId);
+        jdbcTemplate.update("DELETE FROM FACT_CARBON_ACCOUNTING WHERE ID = ?", accountingId);
+    }
+
+    /**
+     * Enterprise meter points whose unit makes them an energy measurement, keyed by point id: per enterprise and
+     * energy type the rate points when there are any, the amount points otherwise, so the same energy is never
+     * counted from both.
+     */
+    private static Map<Long, Source> sources(MasterDataSnapshot snapshot, long parkId, Set<String> intervalMeasTypes) {
+        Map<Long, Source> candidates = new TreeMap<>();
+        Set<String> withRate = new HashSet<>();
+        for (MeterPoint p : snapshot.meterPoints(parkId, null, null, null)) {
+            if (p.entId() == null || p.energyType() == null || p.unit() == null) {
+                continue;
+            }
+            Source source = Source.of(p, intervalMeasTypes);
+            if (source != null) {
+                candidates.put(p.id(), source);
+                if (source.rate) {
+                    withRate.add(source.entId + "|" + source.energyType);
+                }
+            }
+        }
+        Map<Long, Source> sources = new TreeMap<>();
+        candidates.forEach((id, source) -> {
+            if (source.rate || !withRate.contains(source.entId + "|" + source.energyType)) {
+                sources.put(id, source);
+            }
+        });
+        return sources;
+    }
+
+    private static String mappingSignature(Map<Long, Source> sources) {
+        StringBuilder sb = new StringBuilder();
+        sources.forEach((id, s) -> sb.append(id).append('>').append(s.entId).append(s.energyType)
+                .append(s.rate ? 'r' : s.counter ? 'c' : 'a').append(s.scale).append(';'));
+        return sb.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        digest.update(part.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1_000_000) / 1_000_000.0;
+    }
+
+    /**
+     * How a point's hourly rollup turns into an energy amount: rate units contribute their average over the hour,
+     * amount units the register's advance since the previous hour (or their sum for interval types), all scaled to
+     * the factor's base unit (kWh for electricity).
+     */
+    private record Source(long entId, String energyType, boolean rate, boolean counter, double scale) {
+
+        static Source of(MeterPoint p, Set<String> intervalMeasTypes) {
+            String unit = p.unit().trim();
+            boolean counter = p.measType() == null
+                    || !intervalMeasTypes.contains(p.measType().trim().toUpperCase(Locale.ROOT));
+            return switch (unit.toLowerCase(Locale.ROOT)) {
+                case "w" -> new Source(p.entId(), p.energyType(), true, false, 0.001);
+                case "kw" -> new Source(p.entId(), p.energyType(), true, false, 1);
+                case "mw" -> new Source(p.entId(), p.energyType(), true, false, 1000);
+                case "wh" -> new Source(p.entId(), p.energyType(), false, counter, 0.001);
+                case "kwh" -> new Source(p.entId(), p.energyType(), false, counter, 1);
+                case "mwh" -> new Source(p.entId(), p.energyType(), false, counter, 1000);
+                case "m3", "nm3", "t", "gj" -> new Source(p.entId(), p.energyType(), false, counter, 1);
+                default -> unit.endsWith("/h") ? new Source(p.entId(), p.energyType(), true, false, 1) : null;
+            };
+        }
+    }
+
+    private record Existing(long id, String method, String fingerprint, String status) {}
+
+    private static final class HourAggregate {
+        long rows;
+        long samples;
+        BigDecimal sum;
+        BigDecimal avg;
+        BigDecimal last;
+
+        void add(long rows, long samples, BigDecimal sum, BigDecimal avg, BigDecimal last) {
+            this.rows += rows;
+            this.samples += samples;
+            this.sum = add(this.sum, sum);
+            this.avg = add(this.avg, avg);
+            this.last = add(this.last, last);
+        }
+
+        private static BigDecimal add(BigDecimal total, BigDecimal part) {
+            return total == null ? part : part == null ? total : total.add(part);
+        }
+
+        @Override
+        public String toString() {
+            return rows + ":" + samples + ":" + sum + ":" + avg + ":" + last;
+        }
+    }
+
+    private static final class Account {
+        final LocalDate day;
+        final Map<String, Optional<TimeSlotSnapshot.FactorHit>> factors = new HashMap<>();
+        final Map<String, Line> lines = new TreeMap<>();
+
+        Account(LocalDate day) {
+            this.day = day;
+        }
+    }
+
+    private static final class Line {
+        final long entId;
+        final String energyType;
+        final Set<Long> intensityHours = new HashSet<>();
+        final Set<Long> factorIds = new TreeSet<>();
+        double energy;
+        double carbon;
+        double unfactored;
+
+        Line(long entId, String energyType) {
+            this.entId = entId;
+            this.energyType = energyType;
+        }
+
+        String describe() {
+            List<String> parts = new ArrayList<>();
+            if (!intensityHours.isEmpty()) {
+                parts.add("CARBON_INTENSITY_TIMESLOT " + intensityHours.size() + "h");
+            }
+            if (!factorIds.isEmpty()) {
+                parts.add("DIM_CARBON_FACTOR " + factorIds);
+            }
+            if (unfactored > 0) {
+                parts.add("no factor for " + round(unfactored));
+            }
+            String text = String.join("; ", parts);
+            return text.length() > 256 ? text.substring(0, 256) : text;
+        }
+    }
+
+    public record Result(long parkId, int days, int recomputed, int removed, long elapsedMs) {}
+}
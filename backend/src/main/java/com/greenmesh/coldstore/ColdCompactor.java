@@ -0,0 +1,374 @@
+package com.greenmesh.coldstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.greenmesh.jdbc.PartitionArchiver;
+import com.greenmesh.telemetry.QualityFlags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves closed windows of TS_MEASUREMENT into the cold tier. A window is due once it ends more than
+ * {@code app.coldstore.hot-days} ago and still has hot rows; rows that arrive late for an already compacted window
+ * are folded in on a later run by rewriting that window's segment (existing cold samples merged with hot rows,
+ * hot wins). The new segment is installed before the hot rows are deleted, so readers always find the data in at
+ * least one tier.
+ * <p>
+ * The window is read without locks and the hot rows are then deleted in chunks of at most
+ * {@code delete-chunk-rows} rows of one point, each in its own short transaction: the chunk is re-read
+ * {@code FOR UPDATE} and only deleted when every row still matches the installed segment and the delete removes no
+ * more rows than were checked. A chunk touched by a correction or a late insert stays hot (and wins over the
+ * segment) and the window is merged again.
+ */
+@Component
+public class ColdCompactor implements PartitionArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(ColdCompactor.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ColdSegmentStore store;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int hotDays;
+    private final int maxWindowsPerRun;
+    private final int deleteChunkRows;
+
+    public ColdCompactor(JdbcTemplate jdbcTemplate,
+                         ColdSegmentStore store,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${app.coldstore.enabled:false}") boolean enabled,
+                         @Value("${app.coldstore.hot-days:7}") int hotDays,
+                         @Value("${app.coldstore.max-windows-per-run:4}") int maxWindowsPerRun,
+                         @Value("${app.coldstore.delete-chunk-rows:5000}") int deleteChunkRows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.store = store;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.hotDays = hotDays;
+        this.maxWindowsPerRun = maxWindowsPerRun;
+        this.deleteChunkRows = Math.max(1, deleteChunkRows);
+    }
+
+    @Scheduled(fixedDelayString = "${app.coldstore.interval-ms:600000}", initialDelayString = "${app.coldstore.initial-delay-ms:60000}")
+    public void scheduledCompact() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            compactDue(System.currentTimeMillis() - hotDays * 86_400_000L, maxWindowsPerRun);
+        } catch (RuntimeException ex) {
+            log.warn("Cold compaction failed", ex);
+        }
+    }
+
+    /**
+     * Compacts up to {@code maxWindows} windows that end at or before {@code cutoff}, oldest first.
+     */
+    public synchronized List<WindowResult> compactDue(long cutoff, int maxWindows) {
+        long cutoffWindow = store.windowStart(cutoff);
+        List<WindowResult> results = new ArrayList<>();
+        while (results.size() < maxWindows) {
+            Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(TS) FROM TS_MEASUREMENT WHERE TS < ?",
+                    Timestamp.class, new Timestamp(cutoffWindow));
+            if (oldest == null) {
+                break;
+            }
+            results.add(compactWindow(store.windowStart(oldest.getTime())));
+        }
+        return results;
+    }
+
+    /**
+     * Expired TS_MEASUREMENT partitions are compacted rather than lost; compaction already removes the hot rows.
+     */
+    @Override
+    public boolean supports(String table) {
+        return "TS_MEASUREMENT".equals(table);
+    }
+
+    @Override
+    public synchronized void archive(String table, LocalDateTime from, LocalDateTime to) {
+        Timestamp lo = Timestamp.valueOf(from);
+        Timestamp hi = Timestamp.valueOf(to);
+        while (true) {
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(TS) FROM TS_MEASUREMENT WHERE TS >= ? AND TS < ?", Timestamp.class, lo, hi);
+            if (oldest == null) {
+                return;
+            }
+            compactWindow(store.windowStart(oldest.getTime()));
+        }
+    }
+
+    public synchronized WindowResult compactWindow(long windowStart) {
+        for (int attempt = 1; ; attempt++) {
+            WindowResult result = merge(windowStart);
+            if (result.keptRows() == 0) {
+                return result;
+            }
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new IllegalStateException("Window " + new Timestamp(windowStart).toInstant()
+                        + " kept receiving rows during compaction; " + result.keptRows() + " rows stay hot");
+            }
+            log.info("Window {}: {} rows changed during compaction, merging again",
+                    new Timestamp(windowStart).toInstant(), result.keptRows());
+        }
+    }
+
+    private WindowResult merge(long windowStart) {
+        long windowEnd = windowStart + store.windowMs();
+        ColdSegment existing = store.get(windowStart);
+        BlockMerger merger;
+        try {
+            merger = new BlockMerger(existing, store.newWriter(windowStart));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        long[] hotRows = {0};
+        // {pointId, firstTs, lastTs} of each run of at most deleteChunkRows hot rows of one point
+        List<long[]> chunks = new ArrayList<>();
+        long[] chunkRows = {0};
+        ColdSegment installed;
+        try (merger) {
+            jdbcTemplate.query(con -> {
+                var ps = con.prepareStatement("""
+                        SELECT POINT_ID, TS, VALUE, QUALITY_FLAG
+                        FROM TS_MEASUREMENT
+                        WHERE TS >= ? AND TS < ?
+                        ORDER BY POINT_ID, TS
+                        """, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setTimestamp(1, new Timestamp(windowStart));
+                ps.setTimestamp(2, new Timestamp(windowEnd));
+                ps.setFetchSize(5000);
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                long pointId = rs.getLong(1);
+                long ts = rs.getTimestamp(2).getTime();
+                double value = rs.getDouble(3);
+                if (rs.wasNull()) {
+                    value = Double.NaN;
+                }
+                merger.hot(pointId, ts, value, QualityFlags.code(rs.getString(4)));
+                hotRows[0]++;
+                long[] chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                if (chunk == null || chunk[0] != pointId || chunkRows[0] == deleteChunkRows) {
+                    chunks.add(new long[]{pointId, ts, ts});
+                    chunkRows[0] = 1;
+                } else {
+                    chunk[2] = ts;
+                    chunkRows[0]++;
+                }
+            });
+            installed = merger.finish();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        store.install(installed);
+
+        long kept = 0;
+        for (long[] chunk : chunks) {
+            Long stillHot = transactionTemplate.execute(status -> {
+                long rows = deleteChunk(installed, chunk[0], chunk[1], chunk[2]);
+                if (rows < 0) {
+                    // the installed segment is still a valid (older) view; hot rows win over it until the retry
+                    status.setRollbackOnly();
+                }
+                return rows < 0 ? -rows : 0L;
+            });
+            kept += stillHot != null ? stillHot : 0;
+        }
+        WindowResult result = new WindowResult(windowStart, hotRows[0], installed.totalSamples(),
+                installed.blockCount(), installed.sizeBytes(), kept);
+        log.info("Compacted window {}: {} hot rows -> {} samples in {} blocks, {} bytes, {} rows left hot",
+                new Timestamp(windowStart).toInstant(), result.hotRows(), result.samples(), result.blocks(),
+                result.bytes(), result.keptRows());
+        return result;
+    }
+
+    /**
+     * Locks the point's hot rows in [firstTs, lastTs] and deletes them if every one is in the segment unchanged.
+     * Returns the number of rows deleted, or minus the number of rows found when the chunk has to stay hot.
+     */
+    private long deleteChunk(ColdSegment segment, long pointId, long firstTs, long lastTs) {
+        int block = segment.find(pointId);
+        ColdSegment.Cursor cold = block >= 0 ? segment.cursor(block, firstTs, lastTs + 1) : null;
+        long[] locked = {0};
+        boolean[] matches = {cold != null};
+        jdbcTemplate.query("""
+                SELECT TS, VALUE, QUALITY_FLAG
+                FROM TS_MEASUREMENT
+                WHERE POINT_ID = ? AND TS >= ? AND TS <= ?
+                ORDER BY TS
+                FOR UPDATE
+                """, rs -> {
+            locked[0]++;
+            if (!matches[0]) {
+                return;
+            }
+            long ts = rs.getTimestamp(1).getTime();
+            double value = rs.getDouble(2);
+            if (rs.wasNull()) {
+                value = Double.NaN;
+            }
+            byte quality = QualityFlags.code(rs.getString(3));
+            // the segment may hold older cold samples between the hot ones
+            boolean found = false;
+            while (cold.next()) {
+                if (cold.ts() >= ts) {
+                    found = cold.ts() == ts;
+                    break;
+                }
+            }
+            matches[0] = found && Double.compare(cold.value(), value) == 0 && cold.quality() == quality;
+        }, pointId, new Timestamp(firstTs), new Timestamp(lastTs));
+        if (!matches[0]) {
+            return -locked[0];
+        }
+        int deleted = jdbcTemplate.update("DELETE FROM TS_MEASUREMENT WHERE POINT_ID = ? AND TS >= ? AND TS <= ?",
+                pointId, new Timestamp(firstTs), new Timestamp(lastTs));
+        // a row inserted after the locking read would be deleted unseen
+        return deleted == locked[0] ? deleted : -deleted;
+    }
+
+    public record WindowResult(long windowStart, long hotRows, long samples, int blocks, long bytes, long keptRows) {}
+
+    /**
+     * Walks the existing segment's blocks and the hot rows (both ordered by point) in step, writing one merged
+     * block per point.
+     */
+    private static final class BlockMerger implements AutoCloseable {
+        private final ColdSegment existing;
+        private final ColdSegment.Writer writer;
+        private int nextExisting;
+        private long point = Long.MIN_VALUE;
+        private long[] ts = new long[1024];
+        private double[] values = new double[1024];
+        private byte[] qualities = new byte[1024];
+        private int size;
+        // cold samples of the current point, merged as hot rows arrive
+        private long[] coldTs = new long[0];
+        private double[] coldValues = new double[0];
+        private byte[] coldQualities = new byte[0];
+        private int coldSize;
+        private int coldPos;
+
+        BlockMerger(ColdSegment existing, ColdSegment.Writer writer) {
+            this.existing = existing;
+            this.writer = writer;
+        }
+
+        void hot(long pointId, long tsMillis, double value, byte quality) throws SQLException {
+            try {
+                if (pointId != point) {
+                    closePoint();
+                    copyExistingBefore(pointId);
+                    openPoint(pointId);
+                }
+                while (coldPos < coldSize && coldTs[coldPos] < tsMillis) {
+                    append(coldTs[coldPos], coldValues[coldPos], coldQualities[coldPos]);
+                    coldPos++;
+                }
+                if (coldPos < coldSize && coldTs[coldPos] == tsMillis) {
+                    coldPos++;
+                }
+                if (size > 0 && ts[size - 1] == tsMillis) {
+                    // two hot rows within the same millisecond: keep the later one
+                    size--;
+                }
+                append(tsMillis, value, quality);
+            } catch (IOException ex) {
+                throw new SQLException("Writing cold segment failed", ex);
+            }
+        }
+
+        ColdSegment finish() throws IOException {
+            closePoint();
+            copyExistingBefore(Long.MAX_VALUE);
+            return writer.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        private void openPoint(long pointId) {
+            point = pointId;
+            size = 0;
+            coldSize = 0;
+            coldPos = 0;
+            if (existing == null) {
+                return;
+            }
+            int block = existing.find(pointId);
+            if (block < 0) {
+                return;
+            }
+            nextExisting = Math.max(nextExisting, block + 1);
+            int n = existing.sampleCount(block);
+            if (coldTs.length < n) {
+                coldTs = new long[n];
+                coldValues = new double[n];
+                coldQualities = new byte[n];
+            }
+            existing.read(block, Long.MIN_VALUE, Long.MAX_VALUE, (t, v, q) -> {
+                coldTs[coldSize] = t;
+                coldValues[coldSize] = v;
+                coldQualities[coldSize] = q;
+                coldSize++;
+                return true;
+            });
+        }
+
+        private void closePoint() throws IOException {
+            if (point == Long.MIN_VALUE) {
+                return;
+            }
+            while (coldPos < coldSize) {
+                append(coldTs[coldPos], coldValues[coldPos], coldQualities[coldPos]);
+                coldPos++;
+            }
+            writer.add(point, ts, values, qualities, size);
+            point = Long.MIN_VALUE;
+        }
+
+        // existing blocks of points without hot rows are copied through unchanged
+        private void copyExistingBefore(long pointId) throws IOException {
+            if (existing == null) {
+                return;
+            }
+            while (nextExisting < existing.blockCount() && existing.pointId(nextExisting) < pointId) {
+                int block = nextExisting++;
+                openPoint(existing.pointId(block));
+                closePoint();
+            }
+        }
+
+        private void append(long t, double v, byte q) {
+            if (size == ts.length) {
+                ts = Arrays.copyOf(ts, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                qualities = Arrays.copyOf(qualities, size * 2);
+            }
+            ts[size] = t;
+            values[size] = v;
+            qualities[size] = q;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.greenmesh.coldstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One immutable, memory-mapped segment file holding a time window's Gorilla blocks, one block per point.
+ * <p>
+ * File layout (big-endian): header {@code magic:int, version:short, windowStart:long, windowEnd:long}, the blocks
+ * back to back, an index of {@code pointId:long, minTs:long, maxTs:long, count:int, offset:long, length:int} sorted
+ * by point id, and a footer {@code blockCount:int, indexOffset:long, magic:int}.
+ */
+public final class ColdSegment {
+
+    static final int MAGIC = 0x474D5347; // "GMSG"
+    static final short VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 8;
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 8 + 4 + 8 + 4;
+    private static final int FOOTER_BYTES = 4 + 8 + 4;
+
+    private final Path path;
+    private final long windowStart;
+    private final long windowEnd;
+    private final MappedByteBuffer data;
+    private final long[] pointIds;
+    private final long[] minTs;
+    private final long[] maxTs;
+    private final int[] counts;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private ColdSegment(Path path, long windowStart, long windowEnd, MappedByteBuffer data, long[] pointIds,
+                        long[] minTs, long[] maxTs, int[] counts, int[] offsets, int[] lengths) {
+        this.path = path;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.data = data;
+        this.pointIds = pointIds;
+        this.minTs = minTs;
+        this.maxTs = maxTs;
+        this.counts = counts;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    public static ColdSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + FOOTER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC || data.getShort(4) != VERSION || data.getInt((int) size - 4) != MAGIC) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            long windowStart = data.getLong(6);
+            long windowEnd = data.getLong(14);
+            int footer = (int) size - FOOTER_BYTES;
+            int blocks = data.getInt(footer);
+            int idx = (int) data.getLong(footer + 4);
+            long[] pointIds = new long[blocks];
+            long[] minTs = new long[blocks];
+            long[] maxTs = new long[blocks];
+            int[] counts = new int[blocks];
+            int[] offsets = new int[blocks];
+            int[] lengths = new int[blocks];
+            for (int b = 0; b < blocks; b++, idx += INDEX_ENTRY_BYTES) {
+                pointIds[b] = data.getLong(idx);
+                minTs[b] = data.getLong(idx + 8);
+                maxTs[b] = data.getLong(idx + 16);
+                counts[b] = data.getInt(idx + 24);
+                offsets[b] = (int) data.getLong(idx + 28);
+                lengths[b] = data.getInt(idx + 36);
+            }
+            return new ColdSegment(path, windowStart, windowEnd, data, pointIds, minTs, maxTs, counts, offsets, lengths);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long windowStart() {
+        return windowStart;
+    }
+
+    public long windowEnd() {
+        return windowEnd;
+    }
+
+    public int blockCount() {
+        return pointIds.length;
+    }
+
+    public long pointId(int block) {
+        return pointIds[block];
+    }
+
+    public int sampleCount(int block) {
+        return counts[block];
+    }
+
+    public long totalSamples() {
+        long total = 0;
+        for (int c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    public long sizeBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * Block index for {@code pointId}, or -1.
+     */
+    public int find(long pointId) {
+        int i = Arrays.binarySearch(pointIds, pointId);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * Streams the block's samples with {@code from <= ts < to}; returns false if the consumer stopped early.
+     */
+    public boolean read(int block, long from, long to, GorillaCodec.SampleConsumer consumer) {
+        Cursor cursor = cursor(block, from, to);
+        while (cursor.next()) {
+            if (!consumer.accept(cursor.ts(), cursor.value(), cursor.quality())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A cursor over the block's samples with {@code from <= ts < to}, decoded as it advances.
+     */
+    public Cursor cursor(int block, long from, long to) {
+        if (maxTs[block] < from || minTs[block] >= to) {
+            return new Cursor(null, from, to);
+        }
+        return new Cursor(new GorillaCodec.Cursor(data, offsets[block], lengths[block]), from, to);
+    }
+
+    public static final class Cursor {
+        private final GorillaCodec.Cursor in;
+        private final long from;
+        private final long to;
+        private boolean done;
+
+        private Cursor(GorillaCodec.Cursor in, long from, long to) {
+            this.in = in;
+            this.from = from;
+            this.to = to;
+            this.done = in == null;
+        }
+
+        /**
+         * Moves to the next sample in range; false once there is none.
+         */
+        public boolean next() {
+            while (!done && in.next()) {
+                if (in.ts() >= to) {
+                    break;
+                }
+                if (in.ts() >= from) {
+                    return true;
+                }
+            }
+            done = true;
+            return false;
+        }
+
+        public long ts() {
+            return in.ts();
+        }
+
+        public double value() {
+            return in.value();
+        }
+
+        public byte quality() {
+            return in.quality();
+        }
+    }
+
+    /**
+     * Builds a segment file; blocks must be added in ascending point id order. The file is written under a
+     * temporary name and moved into place on {@link #finish()}.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private ByteBuffer index = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 256);
+        private long position;
+        private long lastPointId = Long.MIN_VALUE;
+        private int blocks;
+        private boolean finished;
+
+        public Writer(Path target, long windowStart, long windowEnd) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putShort(VERSION).putLong(windowStart).putLong(windowEnd).flip();
+            write(header);
+        }
+
+        public void add(long pointId, long[] timestamps, double[] values, byte[] qualities, int count)
+                throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (pointId <= lastPointId) {
+                throw new IllegalArgumentException("Blocks must be added in ascending point order");
+            }
+            lastPointId = pointId;
+            byte[] block = GorillaCodec.encode(timestamps, values, qualities, count);
+            if (index.remaining() < INDEX_ENTRY_BYTES) {
+                ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2);
+                index.flip();
+                grown.put(index);
+                index = grown;
+            }
+            index.putLong(pointId).putLong(timestamps[0]).putLong(timestamps[count - 1]).putInt(count)
+                    .putLong(position).putInt(block.length);
+            write(ByteBuffer.wrap(block));
+            blocks++;
+        }
+
+        public ColdSegment finish() throws IOException {
+            long indexOffset = position;
+            index.flip();
+            write(index);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+            footer.putInt(blocks).putLong(indexOffset).putInt(MAGIC).flip();
+            write(footer);
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+            return open(target);
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.greenmesh.coldstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of the cold tier: at most one live segment per fixed UTC time window, stored as
+ * {@code seg-<windowStart>-<generation>.gms} under {@code app.coldstore.dir}. Rewriting a window installs a new
+ * generation and removes the old file; readers still holding the old mapping keep a valid view.
+ */
+@Component
+public class ColdSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ColdSegmentStore.class);
+    private static final Pattern FILE_NAME = Pattern.compile("seg-(-?\\d+)-(\\d+)\\.gms");
+
+    private final Path dir;
+    private final long windowMs;
+    private final ConcurrentNavigableMap<Long, ColdSegment> segments = new ConcurrentSkipListMap<>();
+
+    public ColdSegmentStore(@Value("${app.coldstore.dir:./data/cold}") String dir,
+                            @Value("${app.coldstore.window-hours:24}") int windowHours) {
+        this.dir = Paths.get(dir);
+        this.windowMs = windowHours * 3_600_000L;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.gms")) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (!m.matches()) {
+                    continue;
+                }
+                long window = Long.parseLong(m.group(1));
+                ColdSegment current = segments.get(window);
+                if (current != null && generation(current.path()) > Long.parseLong(m.group(2))) {
+                    continue;
+                }
+                try {
+                    segments.put(window, ColdSegment.open(file));
+                } catch (IOException ex) {
+                    log.warn("Skipping unreadable cold segment {}", file, ex);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot list cold segments in " + dir, ex);
+        }
+        log.info("Cold store: {} segments loaded from {}", segments.size(), dir.toAbsolutePath());
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    public long windowMs() {
+        return windowMs;
+    }
+
+    public long windowStart(long ts) {
+        return Math.floorDiv(ts, windowMs) * windowMs;
+    }
+
+    public ColdSegment get(long windowStart) {
+        return segments.get(windowStart);
+    }
+
+    /**
+     * Segments whose window overlaps {@code [from, to)}, in time order.
+     */
+    public Collection<ColdSegment> overlapping(long from, long to) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        return segments.subMap(windowStart(from), true, to, false).values();
+    }
+
+    /**
+     * Hands the newest cold sample of {@code pointId} to {@code consumer}; returns false if the point has none.
+     */
+    public boolean readLatest(long pointId, GorillaCodec.SampleConsumer consumer) {
+        for (ColdSegment segment : segments.descendingMap().values()) {
+            int block = segment.find(pointId);
+            if (block < 0) {
+                continue;
+            }
+            long[] ts = new long[1];
+            double[] value = new double[1];
+            byte[] quality = new byte[1];
+            segment.read(block, Long.MIN_VALUE, Long.MAX_VALUE, (t, v, q) -> {
+                ts[0] = t;
+                value[0] = v;
+                quality[0] = q;
+                return true;
+            });
+            consumer.accept(ts[0], value[0], quality[0]);
+            return true;
+        }
+        return false;
+    }
+
+    public List<ColdSegment> all() {
+        return new ArrayList<>(segments.values());
+    }
+
+    public ColdSegment.Writer newWriter(long windowStart) throws IOException {
+        Files.createDirectories(dir);
+        long gen = System.currentTimeMillis();
+        ColdSegment current = segments.get(windowStart);
+        if (current != null) {
+            gen = Math.max(gen, generation(current.path()) + 1);
+        }
+        Path target = dir.resolve("seg-" + windowStart + "-" + gen + ".gms");
+        return new ColdSegment.Writer(target, windowStart, windowStart + windowMs);
+    }
+
+    public void install(ColdSegment segment) {
+        ColdSegment previous = segments.put(segment.windowStart(), segment);
+        if (previous != null && !previous.path().equals(segment.path())) {
+            try {
+                Files.deleteIfExists(previous.path());
+            } catch (IOException ex) {
+                log.warn("Could not delete superseded segment {}", previous.path(), ex);
+            }
+        }
+    }
+
+    private static long generation(Path path) {
+        Matcher m = FILE_NAME.matcher(path.getFileName().toString());
+        return m.matches() ? Long.parseLong(m.group(2)) : 0;
+    }
+}
@@ -0,0 +1,290 @@
+package com.greenmesh.coldstore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style block codec for one point's samples: delta-of-delta timestamps, XOR-compressed doubles and
+ * run-length quality codes. A regularly sampled series costs about 1-2 bytes per sample.
+ * <p>
+ * Layout: varint count, varint runs, (varint length, byte quality) per run, then a bit stream holding the first
+ * timestamp and value in 64 bits each, the first delta in 64 bits, and per subsequent sample a delta-of-delta
+ * ({@code 0}, {@code 10}+7, {@code 110}+9, {@code 1110}+12 or {@code 1111}+64 bits) followed by the value XOR
+ * ({@code 0} if equal, {@code 10}+bits within the previous window, or {@code 11}+6-bit leading zeros+6-bit length+bits).
+ */
+public final class GorillaCodec {
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        /**
+         * Returns false to stop decoding.
+         */
+        boolean accept(long ts, double value, byte quality);
+    }
+
+    private GorillaCodec() {
+    }
+
+    public static byte[] encode(long[] timestamps, double[] values, byte[] qualities, int count) {
+        BitWriter out = new BitWriter(Math.max(64, count * 2));
+        writeVarint(out, count);
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || qualities[i] != qualities[i - 1]) {
+                runs++;
+            }
+        }
+        writeVarint(out, runs);
+        for (int i = 0; i < count; ) {
+            int j = i;
+            while (j < count && qualities[j] == qualities[i]) {
+                j++;
+            }
+            writeVarint(out, j - i);
+            out.writeBits(qualities[i] & 0xFF, 8);
+            i = j;
+        }
+        if (count == 0) {
+            return out.toByteArray();
+        }
+
+        out.writeBits(timestamps[0], 64);
+        long prevBits = Double.doubleToRawLongBits(values[0]);
+        out.writeBits(prevBits, 64);
+        long prevDelta = 0;
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - timestamps[i - 1];
+            if (i == 1) {
+                out.writeBits(delta, 64);
+            } else {
+                long dod = delta - prevDelta;
+                if (dod == 0) {
+                    out.writeBits(0, 1);
+                } else if (dod >= -63 && dod <= 64) {
+                    out.writeBits(0b10, 2);
+                    out.writeBits(dod + 63, 7);
+                } else if (dod >= -255 && dod <= 256) {
+                    out.writeBits(0b110, 3);
+                    out.writeBits(dod + 255, 9);
+                } else if (dod >= -2047 && dod <= 2048) {
+                    out.writeBits(0b1110, 4);
+                    out.writeBits(dod + 2047, 12);
+                } else {
+                    out.writeBits(0b1111, 4);
+                    out.writeBits(dod, 64);
+                }
+            }
+            prevDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ prevBits;
+            if (xor == 0) {
+                out.writeBits(0, 1);
+            } else {
+                int leading = Long.numberOfLeadingZeros(xor);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    out.writeBits(0b10, 2);
+                    out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.writeBits(0b11, 2);
+                    out.writeBits(leading, 6);
+                    out.writeBits(meaningful - 1, 6);
+                    out.writeBits(xor >>> trailing, meaningful);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            prevBits = bits;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the block at {@code [offset, offset + length)} of {@code buffer} without changing its position.
+     */
+    public static void decode(ByteBuffer buffer, int offset, int length, SampleConsumer consumer) {
+        Cursor cursor = new Cursor(buffer, offset, length);
+        while (cursor.next()) {
+            if (!consumer.accept(cursor.ts(), cursor.value(), cursor.quality())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pull-style decoder over one block, so several blocks can be merged sample by sample without materializing them.
+     */
+    public static final class Cursor {
+        private final BitReader in;
+        private final int count;
+        private final int[] runLengths;
+        private final byte[] runQualities;
+        private int index;
+        private int run;
+        private int leftInRun;
+        private long ts;
+        private long bits;
+        private long delta;
+        private int leading;
+        private int trailing;
+
+        public Cursor(ByteBuffer buffer, int offset, int length) {
+            in = new BitReader(buffer, offset, length);
+            count = (int) readVarint(in);
+            int runCount = (int) readVarint(in);
+            runLengths = new int[runCount];
+            runQualities = new byte[runCount];
+            for (int r = 0; r < runCount; r++) {
+                runLengths[r] = (int) readVarint(in);
+                runQualities[r] = (byte) in.readBits(8);
+            }
+        }
+
+        /**
+         * Moves to the next sample; false once the block is exhausted.
+         */
+        public boolean next() {
+            if (index == count) {
+                return false;
+            }
+            if (index == 0) {
+                ts = in.readBits(64);
+                bits = in.readBits(64);
+                leftInRun = runLengths[0];
+            } else {
+                if (index == 1) {
+                    delta = in.readBits(64);
+                } else if (in.readBits(1) != 0) {
+                    long dod;
+                    if (in.readBits(1) == 0) {
+                        dod = in.readBits(7) - 63;
+                    } else if (in.readBits(1) == 0) {
+                        dod = in.readBits(9) - 255;
+                    } else if (in.readBits(1) == 0) {
+                        dod = in.readBits(12) - 2047;
+                    } else {
+                        dod = in.readBits(64);
+                    }
+                    delta += dod;
+                }
+                ts += delta;
+
+                if (in.readBits(1) != 0) {
+                    if (in.readBits(1) != 0) {
+                        leading = (int) in.readBits(6);
+                        int meaningful = (int) in.readBits(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    long xor = in.readBits(64 - leading - trailing) << trailing;
+                    bits ^= xor;
+                }
+                if (leftInRun == 0) {
+                    run++;
+                    leftInRun = runLengths[run];
+                }
+            }
+            leftInRun--;
+            index++;
+            return true;
+        }
+
+        public long ts() {
+            return ts;
+        }
+
+        public double value() {
+            return Double.longBitsToDouble(bits);
+        }
+
+        public byte quality() {
+            return runQualities[run];
+        }
+    }
+
+    private static void writeVarint(BitWriter out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeBits((value & 0x7F) | 0x80, 8);
+            value >>>= 7;
+        }
+        out.writeBits(value, 8);
+    }
+
+    private static long readVarint(BitReader in) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            long b = in.readBits(8);
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    static final class BitWriter {
+        private byte[] buf;
+        private long bitPos;
+
+        BitWriter(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        /**
+         * Appends the low {@code n} bits of {@code value}, most significant first.
+         */
+        void writeBits(long value, int n) {
+            int remaining = n;
+            while (remaining > 0) {
+                int byteIdx = (int) (bitPos >>> 3);
+                if (byteIdx == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int free = 8 - (int) (bitPos & 7);
+                int take = Math.min(free, remaining);
+                int chunk = (int) ((value >>> (remaining - take)) & ((1L << take) - 1));
+                buf[byteIdx] |= (byte) (chunk << (free - take));
+                bitPos += take;
+                remaining -= take;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, (int) ((bitPos + 7) >>> 3));
+        }
+    }
+
+    static final class BitReader {
+        private final ByteBuffer buf;
+        private final int base;
+        private final long limitBits;
+        private long bitPos;
+
+        BitReader(ByteBuffer buf, int offset, int length) {
+            this.buf = buf;
+            this.base = offset;
+            this.limitBits = (long) length << 3;
+        }
+
+        long readBits(int n) {
+            if (bitPos + n > limitBits) {
+                throw new IllegalStateException("Corrupt block: read past end");
+            }
+            long result = 0;
+            int remaining = n;
+            while (remaining > 0) {
+                int avail = 8 - (int) (bitPos & 7);
+                int take = Math.min(avail, remaining);
+                int b = buf.get(base + (int) (bitPos >>> 3)) & 0xFF;
+                result = (result << take) | ((b >>> (avail - take)) & ((1 << take) - 1));
+                bitPos += take;
+                remaining -= take;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.greenmesh.config;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+
+/**
+ * Async raw telemetry ingest: HTTP publishes samples keyed by pointId, a batch listener writes RAW_TIMESERIES.
+ * A batch that still fails after the bounded retries is parked on {@code <topic>-dlt} so its partition moves on.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.ingest.kafka", name = "enabled", havingValue = "true")
+public class KafkaIngestConfig {
+
+    @Bean
+    public NewTopic rawIngestTopic(@Value("${app.ingest.kafka.topic}") String topic,
+                                   @Value("${app.ingest.kafka.partitions:6}") int partitions) {
+        return TopicBuilder.name(topic).partitions(partitions).replicas(1).build();
+    }
+
+    @Bean
+    public NewTopic rawIngestDeadLetterTopic(@Value("${app.ingest.kafka.topic}") String topic,
+                                             @Value("${app.ingest.kafka.partitions:6}") int partitions) {
+        // same partition count: the recoverer keeps each record's partition
+        return TopicBuilder.name(topic + "-dlt").partitions(partitions).replicas(1).build();
+    }
+
+    @Bean
+    public KafkaTemplate<Long, byte[]> rawIngestKafkaTemplate(KafkaProperties kafkaProperties,
+                                                             ObjectProvider<SslBundles> sslBundles) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties(sslBundles.getIfAvailable());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.putIfAbsent(ProducerConfig.ACKS_CONFIG, "all");
+        props.putIfAbsent(ProducerConfig.LINGER_MS_CONFIG, 10);
+        props.putIfAbsent(ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024);
+        props.putIfAbsent(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Long, byte[]> rawIngestListenerFactory(
+            KafkaProperties kafkaProperties,
+            ObjectProvider<SslBundles> sslBundles,
+            KafkaTemplate<Long, byte[]> rawIngestKafkaTemplate,
+            @Value("${app.ingest.kafka.group-id:greenmesh-raw-writer}") String groupId,
+            @Value("${app.ingest.kafka.consumer-concurrency:3}") int concurrency,
+            @Value("${app.ingest.kafka.max-poll-records:5000}") int maxPollRecords,
+            @Value("${app.ingest.kafka.retry-attempts:10}") int retryAttempts,
+            @Value("${app.ingest.kafka.retry-max-interval-ms:60000}") long retryMaxIntervalMs) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(sslBundles.getIfAvailable());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, LongDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.putIfAbsent(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // let the broker accumulate records so each poll turns into one large JDBC batch
+        props.putIfAbsent(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 64 * 1024);
+        props.putIfAbsent(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 200);
+
+        ConcurrentKafkaListenerContainerFactory<Long, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        // offsets are committed only after the batch is written: at-least-once, made safe by idempotent inserts
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        // 1 s doubling up to the cap rides out a short database outage before a batch is dead-lettered
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(retryAttempts);
+        backOff.setInitialInterval(1000L);
+        backOff.setMultiplier(2.0);
+        backOff.setMaxInterval(retryMaxIntervalMs);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(
+                new DeadLetterPublishingRecoverer(rawIngestKafkaTemplate), backOff));
+        return factory;
+    }
+}
@@ -0,0 +1,289 @@
+package com.greenmesh.dispatch;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.TimeSlotSnapshot;
+import com.greenmesh.masterdata.TimeSlotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Set-based loaders for the optimizer and the plan simulator: storage parameters, tariff and forecasts, all put on
+ * the plan's interval grid for every requested park in one query per table (tariff from the {@link TimeSlotStore}).
+ */
+@Component
+class DispatchInputs {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchInputs.class);
+    private static final double DEFAULT_EFFICIENCY = 0.95;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeSlotStore timeSlots;
+    private final String genScenario;
+
+    DispatchInputs(JdbcTemplate jdbcTemplate, TimeSlotStore timeSlots,
+                   @Value("${app.dispatch.gen-forecast-scenario:base}") String genScenario) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeSlots = timeSlots;
+        this.genScenario = genScenario;
+    }
+
+    /**
+     * Storage assets by park, with the last SOC reported at or before {@code asOfMs} (mid-band if none).
+     *
+     * @param parkId restricts to one park, or null for all
+     */
+    Map<Long, List<StorageUnit>> storageUnits(Long parkId, long asOfMs) {
+        Map<Long, Double> socByAsset = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT s.ASSET_ID, s.SOC_PERCENT
+                FROM STORAGE_STATE s
+                WHERE s.SOC_PERCENT IS NOT NULL
+                  AND s.TS = (SELECT MAX(x.TS) FROM STORAGE_STATE x
+                              WHERE x.ASSET_ID = s.ASSET_ID AND x.TS <= ? AND x.SOC_PERCENT IS NOT NULL)
+                """, rs -> {
+            socByAsset.put(rs.getLong(1), rs.getDouble(2) / 100.0);
+        }, new Timestamp(asOfMs));
+
+        Map<Long, List<StorageUnit>> units = new TreeMap<>();
+        StringBuilder sql = new StringBuilder("""
+                SELECT e.ASSET_ID, a.PARK_ID, e.ENERGY_KWH, e.POWER_KW, e.SOC_MIN, e.SOC_MAX,
+                       e.CHARGE_EFF, e.DISCHARGE_EFF, e.CYCLE_DEGRADE_COST_PER_KWH
+                FROM STORAGE_ASSET_EXT e
+                JOIN DIM_ASSET a ON a.ASSET_ID = e.ASSET_ID
+                WHERE e.ENERGY_KWH > 0 AND e.POWER_KW > 0
+                  AND (a.STATUS IS NULL OR a.STATUS <> 'DECOMMISSIONED')
+                """);
+        List<Object> args = new ArrayList<>();
+        if (parkId != null) {
+            sql.append(" AND a.PARK_ID = ?");
+            args.add(parkId);
+        }
+        sql.append(" ORDER BY a.PARK_ID, e.ASSET_ID");
+        jdbcTemplate.query(sql.toString(), rs -> {
+            long assetId = rs.getLong("ASSET_ID");
+            double socMin = fraction(rs.getObject("SOC_MIN") != null ? rs.getDouble("SOC_MIN") : 0.0);
+            double socMax = fraction(rs.getObject("SOC_MAX") != null ? rs.getDouble("SOC_MAX") : 1.0);
+            if (socMax <= socMin) {
+                log.warn("Storage asset {} has SOC_MAX <= SOC_MIN, skipping", assetId);
+                return;
+            }
+            double soc = socByAsset.getOrDefault(assetId, (socMin + socMax) / 2);
+            StorageUnit unit = new StorageUnit(assetId, rs.getLong("PARK_ID"),
+                    rs.getDouble("ENERGY_KWH"), rs.getDouble("POWER_KW"), socMin, socMax,
+                    efficiency(rs.getObject("CHARGE_EFF") != null ? rs.getDouble("CHARGE_EFF") : DEFAULT_EFFICIENCY),
+                    efficiency(rs.getObject("DISCHARGE_EFF") != null ? rs.getDouble("DISCHARGE_EFF") : DEFAULT_EFFICIENCY),
+                    rs.getDouble("CYCLE_DEGRADE_COST_PER_KWH"),
+                    Math.min(socMax, Math.max(socMin, soc)));
+            units.computeIfAbsent(unit.parkId(), k -> new ArrayList<>()).add(unit);
+        }, args.toArray());
+        return units;
+    }
+
+    /**
+     * Import price per interval for the park's first price zone; intervals without a slot take the previous slot's
+     * price (or the first one seen, at the start of the horizon). Parks without any slot in the horizon are absent.
+     */
+    Map<Long, double[]> prices(MasterDataSnapshot snapshot, Iterable<Long> parkIds, Grid grid) {
+        TimeSlotSnapshot slots = timeSlots.snapshot();
+        Map<Long, double[]> prices = new HashMap<>();
+        for (long parkId : parkIds) {
+            List<MasterDataSnapshot.PriceZone> zones = snapshot.priceZones(parkId);
+            if (zones.isEmpty()) {
+                continue;
+            }
+            // an interval is priced by the slot covering its start
+            double[] price = slots.prices().series(zones.get(0).id())
+                    .valuesOn(grid.startMs(), grid.stepMs(), new double[grid.intervals()], Double.NaN);
+            int first = 0;
+            while (first < price.length && Double.isNaN(price[first])) {
+                first++;
+            }
+            if (first == price.length) {
+                continue;
+            }
+            for (int t = 0; t < price.length; t++) {
+                if (Double.isNaN(price[t])) {
+                    price[t] = t < first ? price[first] : price[t - 1];
+                }
+            }
+            prices.put(parkId, price);
+        }
+        return prices;
+    }
+
+    /**
+     * Park-level load and generation forecasts (kW) with their P10/P90 bands. Only the latest issue of each
+     * forecast timestamp is used; several points inside one interval are averaged, and a missing band edge falls
+     * back to the point forecast. Band edges of different series are added as if fully correlated, which widens
+     * rather than narrows the park band.
+     */
+    Map<Long, Forecasts> forecasts(MasterDataSnapshot snapshot, Iterable<Long> parkIds, Grid grid) {
+        Map<Long, Long> parkByEnt = new HashMap<>();
+        Map<Long, Long> parkByGenAsset = new HashMap<>();
+        Map<Long, Forecasts> result = new HashMap<>();
+        for (long parkId : parkIds) {
+            result.put(parkId, new Forecasts(grid.intervals()));
+            for (MasterDataSnapshot.Enterprise ent : snapshot.enterprises(parkId)) {
+                parkByEnt.put(ent.id(), parkId);
+            }
+            for (MasterDataSnapshot.Asset asset : snapshot.assets(parkId, null, null)) {
+                if (!"BESS".equalsIgnoreCase(asset.assetType())) {
+                    parkByGenAsset.put(asset.id(), parkId);
+                }
+            }
+        }
+        accumulate(result, grid, parkByEnt, false, """
+                SELECT ENT_ID, TS, P_KW_PRED, P10, P90
+                FROM LOAD_FORECAST
+                WHERE TS >= ? AND TS < ? AND P_KW_PRED IS NOT NULL
+                ORDER BY ENT_ID, TS, FORECAST_ISSUE_TS DESC
+                """);
+        accumulate(result, grid, parkByGenAsset, true, """
+                SELECT ASSET_ID, TS, P_KW_PRED, P10, P90
+                FROM GEN_FORECAST
+                WHERE TS >= ? AND TS < ? AND SCENARIO = ? AND P_KW_PRED IS NOT NULL
+                ORDER BY ASSET_ID, TS, FORECAST_ISSUE_TS DESC
+                """, genScenario);
+        return result;
+    }
+
+    /**
+     * {@code sql} takes the grid bounds, then {@code args}.
+     */
+    private void accumulate(Map<Long, Forecasts> result, Grid grid, Map<Long, Long> parkOf, boolean generation,
+                            String sql, Object... args) {
+        if (parkOf.isEmpty()) {
+            return;
+        }
+        Object[] params = new Object[args.length + 2];
+        params[0] = new Timestamp(grid.startMs());
+        params[1] = new Timestamp(grid.endMs());
+        System.arraycopy(args, 0, params, 2, args.length);
+        Series series = new Series(grid.intervals());
+        long[] current = {Long.MIN_VALUE, Long.MIN_VALUE};
+        jdbcTemplate.query(sql, rs -> {
+            long key = rs.getLong(1);
+            long ts = rs.getTimestamp(2).getTime();
+            if (key != current[0]) {
+                series.flushInto(result.get(parkOf.get(current[0])), generation);
+                current[0] = key;
+            } else if (ts == current[1]) {
+                // older issue of a timestamp already taken from the latest issue
+                return;
+            }
+            current[1] = ts;
+            double p50 = rs.getDouble(3);
+            double p10 = rs.getObject(4) != null ? rs.getDouble(4) : p50;
+            double p90 = rs.getObject(5) != null ? rs.getDouble(5) : p50;
+            series.add(grid.floorIndex(ts), Math.min(p10, p50), p50, Math.max(p90, p50));
+        }, params);
+        series.flushInto(result.get(parkOf.get(current[0])), generation);
+    }
+
+    private static double fraction(double value) {
+        // the column is documented as a fraction but some vendors' sheets are keyed in percent
+        return value > 1 ? value / 100.0 : value;
+    }
+
+    private static double efficiency(double value) {
+        double eff = fraction(value);
+        return eff > 0 ? eff : DEFAULT_EFFICIENCY;
+    }
+
+    record Grid(long startMs, long stepMs, int intervals) {
+        long endMs() {
+            return startMs + intervals * stepMs;
+        }
+
+        double hours() {
+            return stepMs / 3_600_000.0;
+        }
+
+        int floorIndex(long ts) {
+            return (int) Math.floorDiv(ts - startMs, stepMs);
+        }
+    }
+
+    /**
+     * Park totals per interval, one array per band.
+     */
+    static final class Forecasts {
+        final double[] loadP10;
+        final double[] loadP50;
+        final double[] loadP90;
+        final double[] genP10;
+        final double[] genP50;
+        final double[] genP90;
+
+        Forecasts(int intervals) {
+            loadP10 = new double[intervals];
+            loadP50 = new double[intervals];
+            loadP90 = new double[intervals];
+            genP10 = new double[intervals];
+            genP50 = new double[intervals];
+            genP90 = new double[intervals];
+        }
+
+        /**
+         * Expected load minus generation (positive = import).
+         */
+        double[] netLoad() {
+            double[] net = new double[loadP50.length];
+            for (int t = 0; t < net.length; t++) {
+                net[t] = loadP50[t] - genP50[t];
+            }
+            return net;
+        }
+    }
+
+    private static final class Series {
+        private final double[] p10;
+        private final double[] p50;
+        private final double[] p90;
+        private final int[] count;
+
+        Series(int intervals) {
+            p10 = new double[intervals];
+            p50 = new double[intervals];
+            p90 = new double[intervals];
+            count = new int[intervals];
+        }
+
+        void add(int t, double lo, double mid, double hi) {
+            p10[t] += lo;
+            p50[t] += mid;
+            p90[t] += hi;
+            count[t]++;
+        }
+
+        void flushInto(Forecasts target, boolean generation) {
+            if (target != null) {
+                double[] lo = generation ? target.genP10 : target.loadP10;
+                double[] mid = generation ? target.genP50 : target.loadP50;
+                double[] hi = generation ? target.genP90 : target.loadP90;
+                for (int t = 0; t < count.length; t++) {
+                    if (count[t] > 0) {
+                        lo[t] += p10[t] / count[t];
+                        mid[t] += p50[t] / count[t];
+                        hi[t] += p90[t] / count[t];
+                    }
+                }
+            }
+            Arrays.fill(p10, 0);
+            Arrays.fill(p50, 0);
+            Arrays.fill(p90, 0);
+            Arrays.fill(count, 0);
+        }
+    }
+}
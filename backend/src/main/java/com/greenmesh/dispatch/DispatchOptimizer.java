@@ -0,0 +1,211 @@
+package com.greenmesh.dispatch;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.greenmesh.dispatch.DispatchInputs.Grid;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Builds DRAFT dispatch plans for every storage asset in STORAGE_ASSET_EXT. Inputs (tariff slots, latest-issue
+ * generation and load forecasts, last known SOC) are read set-based for all parks at once and bucketed onto the
+ * plan's interval grid; each asset then gets its own {@link StorageDispatchSolver} run on the worker pool, against
+ * its power-weighted share of the park's net load. Plans and details are written in one transaction.
+ */
+@Service
+public class DispatchOptimizer {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchOptimizer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MasterDataStore masterData;
+    private final DispatchInputs inputs;
+    private final double exportPriceRatio;
+    private final ExecutorService pool;
+    private final ThreadLocal<StorageDispatchSolver> solvers;
+
+    public DispatchOptimizer(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             MasterDataStore masterData,
+                             DispatchInputs inputs,
+                             @Value("${app.dispatch.soc-steps:101}") int socLevels,
+                             @Value("${app.dispatch.export-price-ratio:0}") double exportPriceRatio,
+                             @Value("${app.dispatch.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.masterData = masterData;
+        this.inputs = inputs;
+        this.exportPriceRatio = exportPriceRatio;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "dispatch-optimizer-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.solvers = ThreadLocal.withInitial(() -> new StorageDispatchSolver(socLevels));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param parkId restricts the run to one park, or null for all parks with storage
+     */
+    public Result optimize(Long parkId, Instant horizonStart, int intervals, int intervalMin) {
+        long started = System.nanoTime();
+        long startMs = horizonStart.toEpochMilli();
+        long stepMs = intervalMin * 60_000L;
+        long endMs = startMs + intervals * stepMs;
+        Grid grid = new Grid(startMs, stepMs, intervals);
+
+        Map<Long, List<StorageUnit>> unitsByPark = inputs.storageUnits(parkId, startMs);
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        Map<Long, double[]> prices = inputs.prices(snapshot, unitsByPark.keySet(), grid);
+        Map<Long, DispatchInputs.Forecasts> forecasts = inputs.forecasts(snapshot, unitsByPark.keySet(), grid);
+
+        List<Callable<StorageDispatchSolver.Schedule>> tasks = new ArrayList<>();
+        List<StorageUnit> scheduled = new ArrayList<>();
+        double hours = grid.hours();
+        for (Map.Entry<Long, List<StorageUnit>> park : unitsByPark.entrySet()) {
+            double[] price = prices.get(park.getKey());
+            if (price == null) {
+                log.warn("Park {} has no tariff slots covering the horizon, skipping storage dispatch", park.getKey());
+                continue;
+            }
+            double[] exportPrice = new double[intervals];
+            for (int t = 0; t < intervals; t++) {
+                exportPrice[t] = price[t] * exportPriceRatio;
+            }
+            double[] site = forecasts.get(park.getKey()).netLoad();
+            double totalPower = 0;
+            for (StorageUnit unit : park.getValue()) {
+                totalPower += unit.powerKw();
+            }
+            for (StorageUnit unit : park.getValue()) {
+                double share = totalPower > 0 ? unit.powerKw() / totalPower : 0;
+                double[] siteShare = new double[intervals];
+                for (int t = 0; t < intervals; t++) {
+                    siteShare[t] = site[t] * share;
+                }
+                scheduled.add(unit);
+                tasks.add(() -> solvers.get().solve(unit, price, exportPrice, siteShare, hours));
+            }
+        }
+
+        List<StorageDispatchSolver.Schedule> schedules = new ArrayList<>(tasks.size());
+        try {
+            for (Future<StorageDispatchSolver.Schedule> f : pool.invokeAll(tasks)) {
+                schedules.add(f.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Dispatch optimization interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Dispatch optimization failed", ex.getCause());
+        }
+        long solveMs = (System.nanoTime() - started) / 1_000_000;
+
+        Map<Long, List<Integer>> byPark = new TreeMap<>();
+        for (int i = 0; i < scheduled.size(); i++) {
+            byPark.computeIfAbsent(scheduled.get(i).parkId(), k -> new ArrayList<>()).add(i);
+        }
+        List<ParkPlan> plans = transactionTemplate.execute(status -> {
+            List<ParkPlan> written = new ArrayList<>();
+            for (Map.Entry<Long, List<Integer>> park : byPark.entrySet()) {
+                List<StorageDispatchSolver.Schedule> parkSchedules = new ArrayList<>();
+                park.getValue().forEach(i -> parkSchedules.add(schedules.get(i)));
+                long planId = writePlan(park.getKey(), grid, endMs, intervalMin, parkSchedules);
+                double cost = 0;
+                double baseline = 0;
+                for (StorageDispatchSolver.Schedule s : parkSchedules) {
+                    cost += s.cost();
+                    baseline += s.baselineCost();
+                }
+                written.add(new ParkPlan(park.getKey(), planId, parkSchedules.size(), cost, baseline - cost));
+            }
+            return written;
+        });
+        log.info("Dispatch optimizer planned {} storage assets in {} parks ({} ms solve)",
+                schedules.size(), plans.size(), solveMs);
+        return new Result(horizonStart, Instant.ofEpochMilli(endMs), intervals, intervalMin, plans, solveMs);
+    }
+
+    private long writePlan(long parkId, Grid grid, long endMs, int intervalMin,
+                           List<StorageDispatchSolver.Schedule> schedules) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO DISPATCH_PLAN
+                    (PARK_ID, HORIZON_START, HORIZON_END, INTERVAL_MIN, STATUS, CREATED_TS)
+                    VALUES (?,?,?,?, 'DRAFT', CURRENT_TIMESTAMP)
+                    """, new String[]{"PLAN_ID"});
+            ps.setLong(1, parkId);
+            ps.setTimestamp(2, new Timestamp(grid.startMs()));
+            ps.setTimestamp(3, new Timestamp(endMs));
+            ps.setInt(4, intervalMin);
+            return ps;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        long planId = key != null ? key.longValue() : jdbcTemplate.queryForObject(
+                "SELECT MAX(PLAN_ID) FROM DISPATCH_PLAN WHERE PARK_ID = ?", Long.class, parkId);
+
+        int rows = schedules.size() * grid.intervals();
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO DISPATCH_PLAN_DETAIL (PLAN_ID, TS, ASSET_ID, P_SET_KW, SOC_TARGET)
+                VALUES (?,?,?,?,?)
+                """, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                StorageDispatchSolver.Schedule s = schedules.get(i / grid.intervals());
+                int t = i % grid.intervals();
+                ps.setLong(1, planId);
+                ps.setTimestamp(2, new Timestamp(grid.startMs() + t * grid.stepMs()));
+                ps.setLong(3, s.assetId());
+                ps.setDouble(4, round(s.pKw()[t], 10_000));
+                ps.setDouble(5, round(s.soc()[t] * 100, 10_000));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows;
+            }
+        });
+        return planId;
+    }
+
+    private static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+
+    public record ParkPlan(long parkId, long planId, int assets, double cost, double savings) {}
+
+    public record Result(Instant horizonStart, Instant horizonEnd, int intervals, int intervalMin,
+                         List<ParkPlan> plans, long solveMs) {}
+}
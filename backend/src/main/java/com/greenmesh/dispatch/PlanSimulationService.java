@@ -0,0 +1,230 @@
+package com.greenmesh.dispatch;
+
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.greenmesh.dispatch.DispatchInputs.Grid;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.masterdata.TimeSlotSnapshot;
+import com.greenmesh.masterdata.TimeSlotStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Scores a stored dispatch plan with {@link PlanSimulator} and records the result in KPI_SIMULATION_RESULT: mean
+ * cost and carbon over the scenarios, the share of scenarios (in %) in which the storage setpoints could not be
+ * followed as the risk score, and PASS_FLAG when that share is within the configured limit.
+ */
+@Service
+public class PlanSimulationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanSimulationService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MasterDataStore masterData;
+    private final DispatchInputs inputs;
+    private final TimeSlotStore timeSlots;
+    private final double exportPriceRatio;
+    private final double autocorrelation;
+    private final double maxRiskPercent;
+    private final double deviationTolerance;
+    private final long maxCells;
+    private final ExecutorService pool;
+    private final PlanSimulator simulator;
+
+    public PlanSimulationService(JdbcTemplate jdbcTemplate,
+                                 MasterDataStore masterData,
+                                 DispatchInputs inputs,
+                                 TimeSlotStore timeSlots,
+                                 @Value("${app.dispatch.export-price-ratio:0}") double exportPriceRatio,
+                                 @Value("${app.dispatch.simulation.autocorrelation:0.8}") double autocorrelation,
+                                 @Value("${app.dispatch.simulation.max-risk-percent:5}") double maxRiskPercent,
+                                 @Value("${app.dispatch.simulation.deviation-tolerance:0.01}") double deviationTolerance,
+                                 @Value("${app.dispatch.simulation.max-cells:20000000}") long maxCells,
+                                 @Value("${app.dispatch.simulation.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.masterData = masterData;
+        this.inputs = inputs;
+        this.timeSlots = timeSlots;
+        this.exportPriceRatio = exportPriceRatio;
+        this.autocorrelation = autocorrelation;
+        this.maxRiskPercent = maxRiskPercent;
+        this.deviationTolerance = deviationTolerance;
+        this.maxCells = maxCells;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "plan-simulation-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.simulator = new PlanSimulator(pool);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the plan does not exist, cannot be priced, or its intervals times
+     *                                  {@code scenarios} exceed {@code app.dispatch.simulation.max-cells}
+     */
+    public Report simulate(long planId, int scenarios, long seed) {
+        long started = System.nanoTime();
+        Plan plan;
+        try {
+            plan = jdbcTemplate.queryForObject("""
+                    SELECT PARK_ID, HORIZON_START, HORIZON_END, INTERVAL_MIN, STRATEGY_PROFILE_ID
+                    FROM DISPATCH_PLAN WHERE PLAN_ID = ?
+                    """, (rs, rowNum) -> new Plan(
+                    rs.getLong(1),
+                    rs.getTimestamp(2).getTime(),
+                    rs.getTimestamp(3).getTime(),
+                    rs.getObject(4) != null ? rs.getInt(4) : 15,
+                    rs.getObject(5) != null ? rs.getLong(5) : null), planId);
+        } catch (EmptyResultDataAccessException ex) {
+            throw new IllegalArgumentException("Unknown plan " + planId);
+        }
+        if (plan.intervalMin() <= 0) {
+            throw new IllegalArgumentException("Plan " + planId + " has interval " + plan.intervalMin() + " min");
+        }
+        long stepMs = plan.intervalMin() * 60_000L;
+        long intervals = Math.max(1, (plan.endMs() - plan.startMs() + stepMs - 1) / stepMs);
+        if (intervals > maxCells / scenarios) {
+            throw new IllegalArgumentException("Plan " + planId + " has " + intervals + " intervals; " + scenarios
+                    + " scenarios allow at most " + maxCells / scenarios);
+        }
+        int steps = (int) intervals;
+        Grid grid = new Grid(plan.startMs(), stepMs, steps);
+
+        Map<Long, double[]> setpoints = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT ASSET_ID, TS, P_SET_KW FROM DISPATCH_PLAN_DETAIL
+                WHERE PLAN_ID = ? AND P_SET_KW IS NOT NULL
+                """, rs -> {
+            int t = grid.floorIndex(rs.getTimestamp(2).getTime());
+            if (t >= 0 && t < steps) {
+                setpoints.computeIfAbsent(rs.getLong(1), k -> new double[steps])[t] = rs.getDouble(3);
+            }
+        }, planId);
+
+        // only storage is replayed; other setpoints in the plan do not move SOC and are left out
+        List<StorageUnit> units = new ArrayList<>();
+        List<double[]> unitSetpoints = new ArrayList<>();
+        for (StorageUnit unit : inputs.storageUnits(plan.parkId(), plan.startMs())
+                .getOrDefault(plan.parkId(), List.of())) {
+            double[] p = setpoints.get(unit.assetId());
+            if (p != null) {
+                units.add(unit);
+                unitSetpoints.add(p);
+            }
+        }
+
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        List<Long> park = List.of(plan.parkId());
+        double[] price = inputs.prices(snapshot, park, grid).get(plan.parkId());
+        if (price == null) {
+            throw new IllegalArgumentException("Park " + plan.parkId() + " has no tariff slots covering plan " + planId);
+        }
+        double[] exportPrice = new double[steps];
+        for (int t = 0; t < steps; t++) {
+            exportPrice[t] = price[t] * exportPriceRatio;
+        }
+        double[] carbon = gridCarbon(snapshot, timeSlots.snapshot(), plan.parkId(), grid);
+        DispatchInputs.Forecasts forecasts = inputs.forecasts(snapshot, park, grid).get(plan.parkId());
+
+        PlanSimulator.Inputs in = PlanSimulator.Inputs.of(grid.hours(), price, exportPrice, carbon, forecasts,
+                units, unitSetpoints.toArray(new double[0][]), exportPriceRatio > 0);
+        PlanSimulator.Outcome outcome = simulator.run(in, scenarios, seed, autocorrelation);
+
+        double planned = 0;
+        for (double[] p : unitSetpoints) {
+            for (double kw : p) {
+                planned += Math.abs(kw) * grid.hours();
+            }
+        }
+        double risk = outcome.deviationShare(Math.max(1e-6, planned * deviationTolerance)) * 100;
+        boolean pass = risk <= maxRiskPercent;
+        PlanSimulator.Distribution cost = outcome.costDistribution();
+        PlanSimulator.Distribution carbonKg = outcome.carbonDistribution();
+        long kpiId = writeKpi(planId, plan.profileId(), cost.mean(), carbonKg.mean(), risk, pass);
+        double[][] band = outcome.socBand();
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Simulated plan {} over {} scenarios x {} intervals in {} ms (risk {}%)",
+                planId, scenarios, steps, elapsedMs, Math.round(risk * 10) / 10.0);
+        return new Report(planId, kpiId, scenarios, seed, units.size(), cost, carbonKg, outcome.peakDistribution(),
+                risk, pass, new SocBand(band[0], band[1], band[2]), elapsedMs);
+    }
+
+    /**
+     * Grid electricity carbon (kg/kWh) per interval: the region's CARBON_INTENSITY_TIMESLOT reading where there is
+     * one, otherwise the region's ELEC factor on the plan date, falling back to the default factor.
+     */
+    private static double[] gridCarbon(MasterDataSnapshot snapshot, TimeSlotSnapshot slots, long parkId, Grid grid) {
+        MasterDataSnapshot.Park park = snapshot.park(parkId);
+        String region = park != null ? park.region() : null;
+        String zone = park != null && park.timezone() != null ? park.timezone() : "Asia/Shanghai";
+        LocalDate day = Instant.ofEpochMilli(grid.startMs()).atZone(ZoneId.of(zone)).toLocalDate();
+        TimeSlotSnapshot.FactorHit factor = slots.factor(region, "ELEC", day);
+        double fallback = factor != null ? factor.value() : 0;
+        double[] carbon = new double[grid.intervals()];
+        if (region == null) {
+            Arrays.fill(carbon, fallback);
+            return carbon;
+        }
+        slots.intensity().series(region).valuesOn(grid.startMs(), grid.stepMs(), carbon, Double.NaN);
+        for (int t = 0; t < carbon.length; t++) {
+            carbon[t] = Double.isNaN(carbon[t]) ? fallback : carbon[t] / 1000.0;
+        }
+        return carbon;
+    }
+
+    private long writeKpi(long planId, Long profileId, double cost, double carbonKg, double risk, boolean pass) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO KPI_SIMULATION_RESULT
+                    (PLAN_ID, PROFILE_ID, SIMULATED_COST, SIMULATED_CARBON, SIMULATED_RISK_SCORE, PASS_FLAG)
+                    VALUES (?,?,?,?,?,?)
+                    """, new String[]{"ID"});
+            ps.setLong(1, planId);
+            ps.setObject(2, profileId);
+            ps.setDouble(3, Math.round(cost * 10_000) / 10_000.0);
+            ps.setDouble(4, Math.round(carbonKg * 10_000) / 10_000.0);
+            ps.setDouble(5, Math.round(risk * 10_000) / 10_000.0);
+            ps.setString(6, pass ? "Y" : "N");
+            return ps;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        return key != null ? key.longValue() : jdbcTemplate.queryForObject(
+                "SELECT MAX(ID) FROM KPI_SIMULATION_RESULT WHERE PLAN_ID = ?", Long.class, planId);
+    }
+
+    private record Plan(long parkId, long startMs, long endMs, int intervalMin, Long profileId) {}
+
+    public record SocBand(double[] p5, double[] p50, double[] p95) {}
+
+    public record Report(long planId, long kpiId, int scenarios, long seed, int storageAssets,
+                         PlanSimulator.Distribution cost, PlanSimulator.Distribution carbonKg,
+                         PlanSimulator.Distribution peakImportKw, double riskScore, boolean pass,
+                         SocBand fleetSocPercent, long elapsedMs) {}
+}
@@ -0,0 +1,280 @@
+package com.greenmesh.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Monte-Carlo replay of a storage dispatch plan. Each scenario draws park load and generation paths from the
+ * forecast P10/P50/P90 bands (a split normal per interval, AR(1)-correlated in time so errors persist as they do in
+ * practice), runs every storage setpoint through its SOC and power limits and settles the grid exchange at the
+ * tariff. Without an export price, discharge is curtailed so the batteries never push the site into export.
+ * <p>
+ * Inputs and per-scenario outputs are flat primitive arrays; scenarios are cut into fixed chunks with their own
+ * seeded generator, so a run is reproducible for a given seed regardless of how many workers execute it.
+ */
+public final class PlanSimulator {
+
+    private static final int CHUNK = 256;
+    // standard normal quantile of 0.9
+    private static final double Z90 = 1.2815515655446004;
+
+    private final ExecutorService pool;
+
+    public PlanSimulator(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    public Outcome run(Inputs in, int scenarios, long seed, double autocorrelation) {
+        int steps = in.price.length;
+        float[] fleetSoc = new float[steps * scenarios];
+        double[] cost = new double[scenarios];
+        double[] carbon = new double[scenarios];
+        double[] peak = new double[scenarios];
+        double[] deviation = new double[scenarios];
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < scenarios; from += CHUNK) {
+            int lo = from;
+            int hi = Math.min(scenarios, from + CHUNK);
+            long chunkSeed = seed + lo;
+            tasks.add(() -> {
+                replay(in, lo, hi, scenarios, new SplittableRandom(chunkSeed), autocorrelation,
+                        cost, carbon, peak, deviation, fleetSoc);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Plan simulation interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Plan simulation failed", ex.getCause());
+        }
+        return new Outcome(scenarios, cost, carbon, peak, deviation, fleetSoc);
+    }
+
+    private static void replay(Inputs in, int lo, int hi, int scenarios, SplittableRandom random, double rho,
+                               double[] cost, double[] carbon, double[] peak, double[] deviation, float[] fleetSoc) {
+        int steps = in.price.length;
+        int units = in.energyKwh.length;
+        double dt = in.hours;
+        double innovation = Math.sqrt(1 - rho * rho);
+        double capacity = 0;
+        for (int u = 0; u < units; u++) {
+            capacity += in.energyKwh[u];
+        }
+        double[] stored = new double[units];
+        double[] cellKwh = new double[units];
+
+        for (int s = lo; s < hi; s++) {
+            for (int u = 0; u < units; u++) {
+                stored[u] = in.initialSoc[u] * in.energyKwh[u];
+            }
+            double zLoad = random.nextGaussian();
+            double zGen = random.nextGaussian();
+            double scenarioCost = 0;
+            double scenarioCarbon = 0;
+            double scenarioPeak = 0;
+            double scenarioDeviation = 0;
+            for (int t = 0; t < steps; t++) {
+                if (t > 0) {
+                    zLoad = rho * zLoad + innovation * random.nextGaussian();
+                    zGen = rho * zGen + innovation * random.nextGaussian();
+                }
+                double load = Math.max(0, draw(zLoad, in.loadP10[t], in.loadP50[t], in.loadP90[t]));
+                double gen = Math.max(0, draw(zGen, in.genP10[t], in.genP50[t], in.genP90[t]));
+
+                // first pass: what each unit can deliver within its SOC band
+                double charging = 0;
+                double discharging = 0;
+                int row = t;
+                for (int u = 0; u < units; u++, row += steps) {
+                    double p = in.setpointKw[row];
+                    double cell;
+                    if (p < 0) {
+                        cell = Math.min(-p * dt * in.chargeEff[u], in.socMax[u] * in.energyKwh[u] - stored[u]);
+                        cell = Math.max(0, cell);
+                        charging += cell / in.chargeEff[u] / dt;
+                    } else {
+                        cell = -Math.min(p * dt / in.dischargeEff[u], stored[u] - in.socMin[u] * in.energyKwh[u]);
+                        cell = Math.min(0, cell);
+                        discharging -= cell * in.dischargeEff[u] / dt;
+                    }
+                    cellKwh[u] = cell;
+                }
+                // second pass: scale discharge back so storage alone never exports
+                double scale = 1;
+                double site = load - gen + charging;
+                if (!in.allowExport && discharging > 0 && discharging > site) {
+                    scale = Math.max(0, site) / discharging;
+                }
+                double fleet = 0;
+                row = t;
+                for (int u = 0; u < units; u++, row += steps) {
+                    double cell = cellKwh[u];
+                    double deliveredKw;
+                    if (cell < 0) {
+                        cell *= scale;
+                        deliveredKw = -cell * in.dischargeEff[u] / dt;
+                    } else {
+                        deliveredKw = -cell / in.chargeEff[u] / dt;
+                    }
+                    stored[u] += cell;
+                    fleet += stored[u];
+                    scenarioCost += Math.abs(cell) * in.degradeCostPerKwh[u];
+                    scenarioDeviation += Math.abs(in.setpointKw[row] - deliveredKw) * dt;
+                }
+                double grid = site - discharging * scale;
+                if (grid > 0) {
+                    scenarioCost += grid * dt * in.price[t];
+                    scenarioCarbon += grid * dt * in.carbonKgPerKwh[t];
+                    scenarioPeak = Math.max(scenarioPeak, grid);
+                } else {
+                    scenarioCost += grid * dt * in.exportPrice[t];
+                }
+                fleetSoc[t * scenarios + s] = capacity > 0 ? (float) (fleet / capacity * 100) : 0f;
+            }
+            cost[s] = scenarioCost;
+            carbon[s] = scenarioCarbon;
+            peak[s] = scenarioPeak;
+            deviation[s] = scenarioDeviation;
+        }
+    }
+
+    /**
+     * Split normal through the three quantiles: P50 at z = 0, P10/P90 at z = -/+1.2816.
+     */
+    static double draw(double z, double p10, double p50, double p90) {
+        return z >= 0 ? p50 + z * (p90 - p50) / Z90 : p50 + z * (p50 - p10) / Z90;
+    }
+
+    /**
+     * Flat per-interval inputs. {@code setpointKw} holds the plan's grid-side setpoints unit-major
+     * ({@code [unit * steps + t]}, positive = discharge); unit parameters are indexed alike.
+     */
+    public record Inputs(double hours, double[] price, double[] exportPrice, double[] carbonKgPerKwh,
+                         double[] loadP10, double[] loadP50, double[] loadP90,
+                         double[] genP10, double[] genP50, double[] genP90,
+                         double[] energyKwh, double[] socMin, double[] socMax, double[] chargeEff,
+                         double[] dischargeEff, double[] degradeCostPerKwh, double[] initialSoc,
+                         double[] setpointKw, boolean allowExport) {
+
+        static Inputs of(double hours, double[] price, double[] exportPrice, double[] carbonKgPerKwh,
+                         DispatchInputs.Forecasts forecasts, List<StorageUnit> units, double[][] setpoints,
+                         boolean allowExport) {
+            int steps = price.length;
+            int n = units.size();
+            double[] energy = new double[n];
+            double[] socMin = new double[n];
+            double[] socMax = new double[n];
+            double[] chargeEff = new double[n];
+            double[] dischargeEff = new double[n];
+            double[] wear = new double[n];
+            double[] soc = new double[n];
+            double[] setpointKw = new double[n * steps];
+            for (int u = 0; u < n; u++) {
+                StorageUnit unit = units.get(u);
+                energy[u] = unit.energyKwh();
+                socMin[u] = unit.socMin();
+                socMax[u] = unit.socMax();
+                chargeEff[u] = unit.chargeEff();
+                dischargeEff[u] = unit.dischargeEff();
+                wear[u] = unit.degradeCostPerKwh();
+                soc[u] = unit.initialSoc();
+                System.arraycopy(setpoints[u], 0, setpointKw, u * steps, steps);
+            }
+            return new Inputs(hours, price, exportPrice, carbonKgPerKwh,
+                    forecasts.loadP10, forecasts.loadP50, forecasts.loadP90,
+                    forecasts.genP10, forecasts.genP50, forecasts.genP90,
+                    energy, socMin, socMax, chargeEff, dischargeEff, wear, soc, setpointKw, allowExport);
+        }
+    }
+
+    /**
+     * Per-scenario totals, plus the fleet SOC (% of total capacity) at the end of every interval, interval-major
+     * ({@code [t * scenarios + s]}).
+     */
+    public record Outcome(int scenarios, double[] cost, double[] carbon, double[] peakImportKw,
+                          double[] deviationKwh, float[] fleetSocPercent) {
+
+        public Distribution costDistribution() {
+            return Distribution.of(cost);
+        }
+
+        public Distribution carbonDistribution() {
+            return Distribution.of(carbon);
+        }
+
+        public Distribution peakDistribution() {
+            return Distribution.of(peakImportKw);
+        }
+
+        /**
+         * Share of scenarios (0..1) in which the plan could not be followed by more than {@code toleranceKwh}.
+         */
+        public double deviationShare(double toleranceKwh) {
+            int count = 0;
+            for (double d : deviationKwh) {
+                if (d > toleranceKwh) {
+                    count++;
+                }
+            }
+            return scenarios > 0 ? (double) count / scenarios : 0;
+        }
+
+        /**
+         * P5/P50/P95 of the fleet SOC per interval.
+         */
+        public double[][] socBand() {
+            int steps = scenarios > 0 ? fleetSocPercent.length / scenarios : 0;
+            double[][] band = new double[3][steps];
+            float[] column = new float[scenarios];
+            for (int t = 0; t < steps; t++) {
+                System.arraycopy(fleetSocPercent, t * scenarios, column, 0, scenarios);
+                Arrays.sort(column);
+                band[0][t] = column[quantileIndex(scenarios, 0.05)];
+                band[1][t] = column[quantileIndex(scenarios, 0.5)];
+                band[2][t] = column[quantileIndex(scenarios, 0.95)];
+            }
+            return band;
+        }
+    }
+
+    public record Distribution(double mean, double p5, double p50, double p95, double cvar95) {
+
+        static Distribution of(double[] values) {
+            if (values.length == 0) {
+                return new Distribution(0, 0, 0, 0, 0);
+            }
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double v : sorted) {
+                sum += v;
+            }
+            int tailFrom = quantileIndex(sorted.length, 0.95);
+            double tail = 0;
+            for (int i = tailFrom; i < sorted.length; i++) {
+                tail += sorted[i];
+            }
+            return new Distribution(sum / sorted.length,
+                    sorted[quantileIndex(sorted.length, 0.05)],
+                    sorted[quantileIndex(sorted.length, 0.5)],
+                    sorted[quantileIndex(sorted.length, 0.95)],
+                    tail / (sorted.length - tailFrom));
+        }
+    }
+
+    private static int quantileIndex(int n, double q) {
+        return Math.min(n - 1, (int) Math.floor(q * (n - 1) + 0.5));
+    }
+}
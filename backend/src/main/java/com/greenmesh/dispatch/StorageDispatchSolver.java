@@ -0,0 +1,148 @@
+package com.greenmesh.dispatch;
+
+import java.util.Arrays;
+
+/**
+ * Cost-minimizing charge/discharge schedule for one storage unit by backward dynamic programming over a discretized
+ * SOC grid. Stage cost is the unit's share of the site's grid exchange at the interval price (exports earn the
+ * export price) plus cycle degradation on the energy moved through the cells; the horizon must end at or above the
+ * starting SOC so a plan never wins by draining the battery.
+ * <p>
+ * All work happens on primitive arrays sized (intervals x levels); an instance is not thread-safe, use one per
+ * worker.
+ */
+public final class StorageDispatchSolver {
+
+    private final int levels;
+    private double[] value = new double[0];
+    private double[] next = new double[0];
+    private short[] policy = new short[0];
+
+    public StorageDispatchSolver(int levels) {
+        if (levels < 2 || levels > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("SOC levels must be between 2 and " + Short.MAX_VALUE);
+        }
+        this.levels = levels;
+    }
+
+    /**
+     * @param price       import price per kWh for each interval
+     * @param exportPrice price earned per exported kWh for each interval
+     * @param siteKw      the unit's share of site load minus generation (positive = import) for each interval
+     * @param hours       interval length in hours
+     */
+    public Schedule solve(StorageUnit unit, double[] price, double[] exportPrice, double[] siteKw, double hours) {
+        int steps = price.length;
+        int n = levels;
+        double stepKwh = (unit.socMax() - unit.socMin()) * unit.energyKwh() / (n - 1);
+        if (!(stepKwh > 0) || !(unit.powerKw() > 0)) {
+            return idle(unit, steps, price, exportPrice, siteKw, hours);
+        }
+        // reachable level moves per interval, limited by inverter power on the grid side
+        int maxUp = (int) Math.floor(unit.powerKw() * hours * unit.chargeEff() / stepKwh + 1e-9);
+        int maxDown = (int) Math.floor(unit.powerKw() * hours / unit.dischargeEff() / stepKwh + 1e-9);
+        int start = level(unit, unit.initialSoc());
+
+        // grid-side power and degradation cost only depend on the level move, so tabulate them once
+        int moves = maxDown + maxUp + 1;
+        double[] moveKw = new double[moves];
+        double[] moveWear = new double[moves];
+        for (int k = 0; k < moves; k++) {
+            double cellKwh = (k - maxDown) * stepKwh;
+            moveKw[k] = gridKw(unit, cellKwh, hours);
+            moveWear[k] = Math.abs(cellKwh) * unit.degradeCostPerKwh();
+        }
+
+        ensureCapacity(steps);
+        double[] v = value;
+        double[] nv = next;
+        for (int i = 0; i < n; i++) {
+            v[i] = i >= start ? 0 : Double.POSITIVE_INFINITY;
+        }
+        for (int t = steps - 1; t >= 0; t--) {
+            double buy = price[t] * hours;
+            double sell = exportPrice[t] * hours;
+            double site = siteKw[t];
+            int row = t * n;
+            for (int i = 0; i < n; i++) {
+                int lo = Math.max(0, i - maxDown);
+                int hi = Math.min(n - 1, i + maxUp);
+                double best = Double.POSITIVE_INFINITY;
+                int bestJ = i;
+                for (int j = lo, k = lo - i + maxDown; j <= hi; j++, k++) {
+                    double grid = site - moveKw[k];
+                    double cost = (grid > 0 ? grid * buy : grid * sell) + moveWear[k] + v[j];
+                    if (cost < best) {
+                        best = cost;
+                        bestJ = j;
+                    }
+                }
+                nv[i] = best;
+                policy[row + i] = (short) bestJ;
+            }
+            double[] swap = v;
+            v = nv;
+            nv = swap;
+        }
+
+        double[] pKw = new double[steps];
+        double[] soc = new double[steps];
+        int i = start;
+        for (int t = 0; t < steps; t++) {
+            int j = policy[t * n + i];
+            pKw[t] = gridKw(unit, (j - i) * stepKwh, hours);
+            soc[t] = socOf(unit, j);
+            i = j;
+        }
+        return new Schedule(unit.assetId(), pKw, soc, v[start], baseline(price, exportPrice, siteKw, hours));
+    }
+
+    private Schedule idle(StorageUnit unit, int steps, double[] price, double[] exportPrice, double[] siteKw,
+                          double hours) {
+        double[] soc = new double[steps];
+        Arrays.fill(soc, unit.initialSoc());
+        double base = baseline(price, exportPrice, siteKw, hours);
+        return new Schedule(unit.assetId(), new double[steps], soc, base, base);
+    }
+
+    /**
+     * Grid-side power for moving {@code cellKwh} into (positive) or out of the cells within one interval.
+     */
+    private static double gridKw(StorageUnit unit, double cellKwh, double hours) {
+        return cellKwh > 0 ? -cellKwh / unit.chargeEff() / hours : -cellKwh * unit.dischargeEff() / hours;
+    }
+
+    private static double baseline(double[] price, double[] exportPrice, double[] siteKw, double hours) {
+        double cost = 0;
+        for (int t = 0; t < price.length; t++) {
+            double grid = siteKw[t];
+            cost += grid > 0 ? grid * price[t] * hours : grid * exportPrice[t] * hours;
+        }
+        return cost;
+    }
+
+    private int level(StorageUnit unit, double soc) {
+        double clamped = Math.min(unit.socMax(), Math.max(unit.socMin(), soc));
+        return (int) Math.round((clamped - unit.socMin()) / (unit.socMax() - unit.socMin()) * (levels - 1));
+    }
+
+    private double socOf(StorageUnit unit, int level) {
+        return unit.socMin() + (unit.socMax() - unit.socMin()) * level / (levels - 1);
+    }
+
+    private void ensureCapacity(int steps) {
+        if (value.length < levels) {
+            value = new double[levels];
+            next = new double[levels];
+        }
+        if (policy.length < steps * levels) {
+            policy = new short[steps * levels];
+        }
+    }
+
+    /**
+     * {@code pKw} is grid-side power per interval (positive = discharge), {@code soc} the fraction at the end of
+     * each interval; costs are over the whole horizon, with and without the unit.
+     */
+    public record Schedule(long assetId, double[] pKw, double[] soc, double cost, double baselineCost) {}
+}
@@ -0,0 +1,8 @@
+package com.greenmesh.dispatch;
+
+/**
+ * One BESS asset as seen by the optimizer. SOC values are fractions of {@code energyKwh}; efficiencies are
+ * one-way (grid to cell, cell to grid).
+ */
+public record StorageUnit(long assetId, long parkId, double energyKwh, double powerKw, double socMin, double socMax,
+                          double chargeEff, double dischargeEff, double degradeCostPerKwh, double initialSoc) {}
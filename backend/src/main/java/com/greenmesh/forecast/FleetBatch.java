@@ -0,0 +1,54 @@
+package com.greenmesh.forecast;
+
+import java.util.Arrays;
+
+/**
+ * Weather and power of all assets of one type in one park for one weather issue, structure-of-arrays. Per-point
+ * arrays are {@code assets x steps}, row-major by asset ({@code a * steps + t}); NaN marks missing weather and
+ * points without a forecast. Temperature is in °C, wind speed in m/s at the station, irradiance in W/m², cloud
+ * cover in %, power in kW.
+ */
+public final class FleetBatch {
+
+    public final int assets;
+    public final int steps;
+    public final long issue;
+    public final long[] assetIds;
+    public final double[] capacityKw;
+    public final long[] timestamps;
+    // lead time of each step in days, for widening bands
+    public final double[] horizonDays;
+
+    public final double[] temperature;
+    public final double[] windSpeed;
+    public final double[] ghi;
+    public final double[] cloudCover;
+
+    public final double[] p50;
+    public final double[] p10;
+    public final double[] p90;
+
+    FleetBatch(long issue, long[] assetIds, double[] capacityKw, long[] timestamps) {
+        this.assets = assetIds.length;
+        this.steps = timestamps.length;
+        this.issue = issue;
+        this.assetIds = assetIds;
+        this.capacityKw = capacityKw;
+        this.timestamps = timestamps;
+        this.horizonDays = new double[steps];
+        for (int t = 0; t < steps; t++) {
+            horizonDays[t] = Math.max(0, timestamps[t] - issue) / 86_400_000.0;
+        }
+        int points = assets * steps;
+        this.temperature = new double[points];
+        this.windSpeed = new double[points];
+        this.ghi = new double[points];
+        this.cloudCover = new double[points];
+        this.p50 = new double[points];
+        this.p10 = new double[points];
+        this.p90 = new double[points];
+        Arrays.fill(p50, Double.NaN);
+        Arrays.fill(p10, Double.NaN);
+        Arrays.fill(p90, Double.NaN);
+    }
+}
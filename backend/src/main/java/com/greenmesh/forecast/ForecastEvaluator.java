@@ -0,0 +1,463 @@
+package com.greenmesh.forecast;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.jdbc.WatermarkStore;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataSnapshot.MeterPoint;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.TieredMeasurementReader;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Scores GEN_FORECAST against the measured active power of each asset and accumulates the errors in
+ * LOG_FORECAST_EVAL, one row per (asset, issue, horizon bucket, scenario, model version). Rows keep running sums
+ * next to MAE/MAPE/BIAS, so new actuals are added to the existing rows instead of re-reading history.
+ * <p>
+ * Per asset and time window the actuals are read once in (ts) order across the hot and cold tiers into primitive
+ * arrays, and the forecasts are streamed in the same order and matched as-of against them (latest actual at or
+ * before the forecast timestamp, within a tolerance), so there are no per-row lookups. Assets run in parallel; each
+ * asset's window is written in its own transaction.
+ * <p>
+ * The scheduled run covers forecast timestamps between the {@code forecast-eval} watermark and now minus a settle
+ * delay. Each asset also keeps its own {@code forecast-eval:<assetId>} watermark, saved in the transaction that adds
+ * a window's sums, so a run that fails part-way resumes every asset where its last commit stopped instead of adding
+ * the same window again. {@link #reevaluate} rebuilds the rows of an issue range up to the later of the two
+ * watermarks, so the two never count a forecast twice.
+ */
+@Service
+public class ForecastEvaluator {
+
+    static final String WATERMARK = "forecast-eval";
+    // stored instead of NULL so the model version can be part of the row key
+    static final String UNVERSIONED = "-";
+
+    private static final Logger log = LoggerFactory.getLogger(ForecastEvaluator.class);
+
+    private static final String UPDATE_SQL = """
+            UPDATE LOG_FORECAST_EVAL
+            SET SAMPLE_COUNT = SAMPLE_COUNT + ?, SUM_ABS_ERR = SUM_ABS_ERR + ?, SUM_ERR = SUM_ERR + ?,
+                SUM_APE = SUM_APE + ?, APE_COUNT = APE_COUNT + ?,
+                MAE = (SUM_ABS_ERR + ?) / (SAMPLE_COUNT + ?),
+                BIAS = (SUM_ERR + ?) / (SAMPLE_COUNT + ?),
+                MAPE = CASE WHEN APE_COUNT + ? > 0 THEN (SUM_APE + ?) / (APE_COUNT + ?) END,
+                UPDATED_AT = CURRENT_TIMESTAMP
+            WHERE ASSET_ID = ? AND FORECAST_ISSUE_TS = ? AND HORIZON_MIN = ? AND SCENARIO = ? AND MODEL_VERSION = ?
+            """;
+    private static final String INSERT_SQL = """
+            INSERT INTO LOG_FORECAST_EVAL
+            (ASSET_ID, FORECAST_ISSUE_TS, HORIZON_MIN, SCENARIO, MODEL_VERSION, MAE, MAPE, BIAS,
+             SAMPLE_COUNT, SUM_ABS_ERR, SUM_ERR, SUM_APE, APE_COUNT, UPDATED_AT)
+            VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?, CURRENT_TIMESTAMP)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MasterDataStore masterData;
+    private final TieredMeasurementReader measurementReader;
+    private final WatermarkStore watermarks;
+    private final boolean enabled;
+    private final long settleMs;
+    private final long toleranceMs;
+    private final long windowMs;
+    private final long initialLookbackMs;
+    private final int[] horizonEdges;
+    private final double mapeMinKw;
+    private final String measType;
+    private final ExecutorService pool;
+
+    public ForecastEvaluator(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             MasterDataStore masterData,
+                             TieredMeasurementReader measurementReader,
+                             WatermarkStore watermarks,
+                             @Value("${app.forecast.eval.enabled:true}") boolean enabled,
+                             @Value("${app.forecast.eval.settle-minutes:60}") long settleMinutes,
+                             @Value("${app.forecast.eval.match-tolerance-s:900}") long toleranceSeconds,
+                             @Value("${app.forecast.eval.window-days:7}") int windowDays,
+                             @Value("${app.forecast.eval.initial-lookback-days:2}") int initialLookbackDays,
+                             @Value("${app.forecast.eval.horizon-buckets-min:0,15,60,180,360,720,1440,2880}")
+                             int[] horizonEdges,
+                             @Value("${app.forecast.eval.mape-min-kw:1}") double mapeMinKw,
+                             @Value("${app.forecast.eval.meas-type:ACTIVE_POWER}") String measType,
+                             @Value("${app.forecast.eval.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.masterData = masterData;
+        this.measurementReader = measurementReader;
+        this.watermarks = watermarks;
+        this.enabled = enabled;
+        this.settleMs = settleMinutes * 60_000L;
+        this.toleranceMs = toleranceSeconds * 1000L;
+        this.windowMs = Math.max(1, windowDays) * 86_400_000L;
+        this.initialLookbackMs = initialLookbackDays * 86_400_000L;
+        this.horizonEdges = horizonEdges.clone();
+        Arrays.sort(this.horizonEdges);
+        this.mapeMinKw = mapeMinKw;
+        this.measType = measType;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "forecast-eval-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${app.forecast.eval.interval-ms:900000}",
+            initialDelayString = "${app.forecast.eval.interval-ms:900000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            evaluateNew();
+        } catch (RuntimeException ex) {
+            log.warn("Forecast evaluation failed", ex);
+        }
+    }
+
+    /**
+     * Scores forecast timestamps past the watermark whose actuals have had time to arrive, then moves the watermark.
+     */
+    public synchronized Result evaluateNew() {
+        long upTo = upTo();
+        long from = watermark(upTo - initialLookbackMs);
+        if (from >= upTo) {
+            return new Result(Instant.ofEpochMilli(from), Instant.ofEpochMilli(upTo), 0, 0, 0, 0, 0);
+        }
+        Result result = evaluate(null, from, upTo, null, null);
+        watermarks.save(WATERMARK, null, Instant.ofEpochMilli(upTo));
+        return result;
+    }
+
+    /**
+     * Drops and rebuilds the rows of forecasts issued in [issueFrom, issueTo), for one asset or all, scoring
+     * timestamps up to the watermark (or the asset's own one where a failed run got further).
+     */
+    public synchronized Result reevaluate(Instant issueFrom, Instant issueTo, Long assetId) {
+        long upTo = watermark(-1);
+        if (upTo < 0) {
+            // nothing scored yet: start the incremental run where this one stops
+            upTo = upTo();
+            watermarks.save(WATERMARK, null, Instant.ofEpochMilli(upTo));
+        }
+        StringBuilder sql = new StringBuilder(
+                "DELETE FROM LOG_FORECAST_EVAL WHERE FORECAST_ISSUE_TS >= ? AND FORECAST_ISSUE_TS < ?");
+        List<Object> args = new ArrayList<>(List.of(Timestamp.from(issueFrom), Timestamp.from(issueTo)));
+        if (assetId != null) {
+            sql.append(" AND ASSET_ID = ?");
+            args.add(assetId);
+        }
+        int removed = jdbcTemplate.update(sql.toString(), args.toArray());
+        log.info("Re-evaluating forecasts issued {} .. {}: {} rows dropped", issueFrom, issueTo, removed);
+        // forecasts never point before their issue time, so the issue range also bounds the timestamps
+        return evaluate(assetId, issueFrom.toEpochMilli() - 1, upTo, issueFrom.toEpochMilli(), issueTo.toEpochMilli());
+    }
+
+    private long upTo() {
+        return Instant.now().minusMillis(settleMs).truncatedTo(ChronoUnit.MINUTES).toEpochMilli();
+    }
+
+    private long watermark(long fallback) {
+        return watermark(WATERMARK, fallback);
+    }
+
+    private long watermark(String name, long fallback) {
+        return watermarks.get(name)
+                .map(w -> w.lastTs() != null ? w.lastTs().toEpochMilli() : fallback)
+                .orElse(fallback);
+    }
+
+    static String assetWatermark(long assetId) {
+        return WATERMARK + ":" + assetId;
+    }
+
+    /**
+     * Forecast timestamps in (fromMs, toMs], optionally restricted to an issue range. Without one this is the
+     * incremental run: each asset starts at its own watermark when that is further and advances it per window.
+     */
+    private Result evaluate(Long onlyAsset, long fromMs, long toMs, Long issueFrom, Long issueTo) {
+        long started = System.nanoTime();
+        List<Long> assets = new ArrayList<>();
+        if (onlyAsset != null) {
+            assets.add(onlyAsset);
+        } else {
+            jdbcTemplate.query("""
+                    SELECT DISTINCT ASSET_ID FROM GEN_FORECAST WHERE TS > ? AND TS <= ? ORDER BY ASSET_ID
+                    """, rs -> {
+                assets.add(rs.getLong(1));
+            }, new Timestamp(fromMs), new Timestamp(toMs));
+        }
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        int skipped = 0;
+        for (long assetId : assets) {
+            PowerPoint source = PowerPoint.of(snapshot, assetId, measType);
+            if (source == null) {
+                skipped++;
+                continue;
+            }
+            boolean incremental = issueFrom == null;
+            long assetMark = watermark(assetWatermark(assetId), Long.MIN_VALUE);
+            long assetFrom = incremental ? Math.max(fromMs, assetMark) : fromMs;
+            long assetTo = incremental ? toMs : Math.max(toMs, assetMark);
+            tasks.add(() -> evaluateAsset(assetId, source, assetFrom, assetTo, issueFrom, issueTo, incremental));
+        }
+        long matched = 0;
+        long unmatched = 0;
+        long rows = 0;
+        try {
+            for (Future<long[]> f : pool.invokeAll(tasks)) {
+                long[] counts = f.get();
+                matched += counts[0];
+                unmatched += counts[1];
+                rows += counts[2];
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Forecast evaluation interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Forecast evaluation failed", ex.getCause());
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        if (!tasks.isEmpty()) {
+            log.info("Forecast evaluation {} .. {}: {} assets, {} forecasts scored, {} without actuals, {} rows in {} ms",
+                    Instant.ofEpochMilli(fromMs), Instant.ofEpochMilli(toMs), tasks.size(), matched, unmatched, rows,
+                    elapsedMs);
+        }
+        return new Result(Instant.ofEpochMilli(fromMs), Instant.ofEpochMilli(toMs), tasks.size(), skipped,
+                matched, unmatched, elapsedMs);
+    }
+
+    private long[] evaluateAsset(long assetId, PowerPoint source, long fromMs, long toMs,
+                                 Long issueFrom, Long issueTo, boolean advanceWatermark) {
+        long[] counts = new long[3];
+        Actuals actuals = new Actuals();
+        for (long lo = fromMs; lo < toMs; lo += windowMs) {
+            long hi = Math.min(toMs, lo + windowMs);
+            actuals.load(measurementReader, source, lo + 1 - toleranceMs, hi);
+            Map<Key, Stats> stats = new HashMap<>();
+            long[] cursor = {0};
+            StringBuilder sql = new StringBuilder("""
+                    SELECT FORECAST_ISSUE_TS, TS, P_KW_PRED, SCENARIO, MODEL_VERSION
+                    FROM GEN_FORECAST
+                    WHERE ASSET_ID = ? AND TS > ? AND TS <= ? AND P_KW_PRED IS NOT NULL
+                    """);
+            List<Object> args = new ArrayList<>(List.of(assetId, new Timestamp(lo), new Timestamp(hi)));
+            if (issueFrom != null) {
+                sql.append(" AND FORECAST_ISSUE_TS >= ? AND FORECAST_ISSUE_TS < ?");
+                args.add(new Timestamp(issueFrom));
+                args.add(new Timestamp(issueTo));
+            }
+            sql.append(" ORDER BY TS");
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                for (int i = 0; i < args.size(); i++) {
+                    ps.setObject(i + 1, args.get(i));
+                }
+                ps.setFetchSize(5000);
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                long issue = rs.getTimestamp(1).getTime();
+                long ts = rs.getTimestamp(2).getTime();
+                int horizon = horizonBucket(ts - issue);
+                if (horizon < 0) {
+                    return;
+                }
+                // both sides ascend in ts, so the cursor only moves forward
+                int j = (int) cursor[0];
+                while (j + 1 < actuals.size && actuals.ts[j + 1] <= ts) {
+                    j++;
+                }
+                cursor[0] = j;
+                if (actuals.size == 0 || actuals.ts[j] > ts || ts - actuals.ts[j] > toleranceMs) {
+                    counts[1]++;
+                    return;
+                }
+                String model = rs.getString(5);
+                stats.computeIfAbsent(new Key(issue, horizon, rs.getString(4), model != null ? model : UNVERSIONED),
+                        k -> new Stats()).add(rs.getDouble(3), actuals.kw[j], mapeMinKw);
+                counts[0]++;
+            });
+            if (!stats.isEmpty() || advanceWatermark) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!stats.isEmpty()) {
+                        write(assetId, stats);
+                    }
+                    if (advanceWatermark) {
+                        watermarks.save(assetWatermark(assetId), null, Instant.ofEpochMilli(hi));
+                    }
+                });
+                counts[2] += stats.size();
+            }
+        }
+        return counts;
+    }
+
+    private int horizonBucket(long leadMs) {
+        if (leadMs < 0) {
+            return -1;
+        }
+        long minutes = leadMs / 60_000L;
+        int bucket = -1;
+        for (int edge : horizonEdges) {
+            if (edge <= minutes) {
+                bucket = edge;
+            } else {
+                break;
+            }
+        }
+        return bucket;
+    }
+
+    private void write(long assetId, Map<Key, Stats> stats) {
+        List<Map.Entry<Key, Stats>> rows = new ArrayList<>(stats.entrySet());
+        BatchUpserts.upsert(jdbcTemplate, rows.size(), UPDATE_SQL, (ps, i) -> {
+            Key key = rows.get(i).getKey();
+            Stats s = rows.get(i).getValue();
+            ps.setLong(1, s.count);
+            ps.setDouble(2, s.sumAbs);
+            ps.setDouble(3, s.sum);
+            ps.setDouble(4, s.sumApe);
+            ps.setLong(5, s.apeCount);
+            ps.setDouble(6, s.sumAbs);
+            ps.setLong(7, s.count);
+            ps.setDouble(8, s.sum);
+            ps.setLong(9, s.count);
+            ps.setLong(10, s.apeCount);
+            ps.setDouble(11, s.sumApe);
+            ps.setLong(12, s.apeCount);
+            ps.setLong(13, assetId);
+            ps.setTimestamp(14, new Timestamp(key.issueMs()));
+            ps.setInt(15, key.horizonMin());
+            ps.setString(16, key.scenario());
+            ps.setString(17, key.modelVersion());
+        }, INSERT_SQL, (ps, i) -> {
+            Key key = rows.get(i).getKey();
+            Stats s = rows.get(i).getValue();
+            ps.setLong(1, assetId);
+            ps.setTimestamp(2, new Timestamp(key.issueMs()));
+            ps.setInt(3, key.horizonMin());
+            ps.setString(4, key.scenario());
+            ps.setString(5, key.modelVersion());
+            ps.setDouble(6, s.sumAbs / s.count);
+            ps.setObject(7, s.apeCount > 0 ? s.sumApe / s.apeCount : null);
+            ps.setDouble(8, s.sum / s.count);
+            ps.setLong(9, s.count);
+            ps.setDouble(10, s.sumAbs);
+            ps.setDouble(11, s.sum);
+            ps.setDouble(12, s.sumApe);
+            ps.setLong(13, s.apeCount);
+        });
+    }
+
+    private record Key(long issueMs, int horizonMin, String scenario, String modelVersion) {}
+
+    /**
+     * Running error sums; error = forecast - actual, APE in percent over actuals of at least {@code mapeMinKw}.
+     */
+    static final class Stats {
+        long count;
+        double sumAbs;
+        double sum;
+        double sumApe;
+        long apeCount;
+
+        void add(double forecastKw, double actualKw, double mapeMinKw) {
+            double error = forecastKw - actualKw;
+            count++;
+            sum += error;
+            sumAbs += Math.abs(error);
+            if (Math.abs(actualKw) >= mapeMinKw) {
+                sumApe += Math.abs(error) / Math.abs(actualKw) * 100;
+                apeCount++;
+            }
+        }
+    }
+
+    /**
+     * Measured power of one asset over a window, ascending in ts, in kW. Reused across windows.
+     */
+    static final class Actuals {
+        long[] ts = new long[1024];
+        double[] kw = new double[1024];
+        int size;
+
+        void load(TieredMeasurementReader reader, PowerPoint source, long fromMs, long toMs) {
+            size = 0;
+            reader.scan(new TieredMeasurementReader.Scan(List.of(source.pointId()), Instant.ofEpochMilli(fromMs),
+                    Instant.ofEpochMilli(toMs), true, null, 0), 5000, (pointId, at, value, quality) -> {
+                if (!Double.isNaN(value) && quality != QualityFlags.BAD) {
+                    if (size == ts.length) {
+                        ts = Arrays.copyOf(ts, size * 2);
+                        kw = Arrays.copyOf(kw, size * 2);
+                    }
+                    ts[size] = at.toEpochMilli();
+                    kw[size] = value * source.scale();
+                    size++;
+                }
+                return true;
+            });
+        }
+    }
+
+    /**
+     * The asset's power point (lowest id with the configured measurement type) and its unit scale to kW.
+     */
+    record PowerPoint(long pointId, double scale) {
+
+        static PowerPoint of(MasterDataSnapshot snapshot, long assetId, String measType) {
+            for (MeterPoint p : snapshot.meterPoints(null, assetId, null, null)) {
+                if (!measType.equalsIgnoreCase(p.measType()) || p.unit() == null) {
+                    continue;
+                }
+                double scale = switch (p.unit().trim().toLowerCase(Locale.ROOT)) {
+                    case "w" -> 0.001;
+                    case "kw" -> 1;
+                    case "mw" -> 1000;
+                    default -> 0;
+                };
+                if (scale > 0) {
+                    return new PowerPoint(p.id(), scale);
+                }
+            }
+            return null;
+        }
+    }
+
+    public record Result(Instant from, Instant to, int assets, int assetsWithoutPowerPoint, long forecastsScored,
+                         long forecastsWithoutActual, long elapsedMs) {}
+}
@@ -0,0 +1,403 @@
+package com.greenmesh.forecast;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves overlapping GEN_FORECAST issues into one curve per asset. {@link Mode#BLEND} takes, for every target
+ * timestamp, the freshest issue that predicts it; {@link Mode#LATEST} keeps only the newest issue overlapping the
+ * range. Both come from the same ordered scan (TS, then FORECAST_ISSUE_TS descending): the newest issue overlapping a
+ * range is the largest issue in its blend, and all of that issue's rows in the range survive the blend.
+ * <p>
+ * Curves never mix scenarios; requests without one resolve the {@value #DEFAULT_SCENARIO} scenario.
+ * <p>
+ * The current curve (all issues, TS from {@code lookback-hours} ago onwards) is cached per asset and scenario. Writes
+ * through {@code /gen/batch} drop the asset's curves; {@code ttl-ms} bounds staleness from other writers. Requests
+ * with {@code asOf} or reaching back before the cached window go to the database.
+ */
+@Component
+public class GenForecastCurves {
+
+    public static final String DEFAULT_SCENARIO = "base";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long lookbackMs;
+    private final long ttlMs;
+    private final int maxCurves;
+    private final Map<CurveKey, Cached> cache;
+    // bumped by every invalidation so a load that raced with a write is not cached
+    private final AtomicLong writes = new AtomicLong();
+
+    public GenForecastCurves(JdbcTemplate jdbcTemplate,
+                             @Value("${app.forecast.cache.lookback-hours:48}") int lookbackHours,
+                             @Value("${app.forecast.cache.ttl-ms:300000}") long ttlMs,
+                             @Value("${app.forecast.cache.max-curves:4096}") int maxCurves) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.lookbackMs = lookbackHours * 3_600_000L;
+        this.ttlMs = ttlMs;
+        this.maxCurves = maxCurves;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CurveKey, Cached> eldest) {
+                return size() > GenForecastCurves.this.maxCurves;
+            }
+        };
+    }
+
+    public Curve curve(long assetId, String scenario, Instant start, Instant end, Mode mode, Instant asOf) {
+        return curves(List.of(assetId), scenario, start, end, mode, asOf).get(assetId);
+    }
+
+    /**
+     * One curve per requested asset (empty when nothing is forecast), in request order.
+     *
+     * @param scenario null for {@value #DEFAULT_SCENARIO}
+     * @param asOf     null for all issues, otherwise only issues with FORECAST_ISSUE_TS at or before it
+     */
+    public Map<Long, Curve> curves(List<Long> assetIds, String scenario, Instant start, Instant end, Mode mode,
+                                   Instant asOf) {
+        String scenarioKey = scenario != null ? scenario : DEFAULT_SCENARIO;
+        long startMs = start.toEpochMilli();
+        long endMs = end.toEpochMilli();
+        long now = System.currentTimeMillis();
+        boolean cacheable = asOf == null && maxCurves > 0 && startMs >= now - lookbackMs;
+        Map<Long, Curve> blended = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        if (cacheable) {
+            synchronized (cache) {
+                for (Long assetId : assetIds) {
+                    Cached c = cache.get(new CurveKey(assetId, scenarioKey));
+                    if (c != null && now - c.loadedAtMs() < ttlMs && startMs >= c.windowStartMs()) {
+                        blended.put(assetId, c.curve().slice(startMs, endMs));
+                    } else {
+                        blended.put(assetId, null);
+                        missing.add(assetId);
+                    }
+                }
+            }
+        } else {
+            assetIds.forEach(id -> blended.put(id, null));
+            missing.addAll(assetIds);
+        }
+
+        if (!missing.isEmpty()) {
+            if (cacheable) {
+                long generation = writes.get();
+                long windowStart = Math.floorDiv(now - lookbackMs, 3_600_000L) * 3_600_000L;
+                Map<Long, Curve> loaded = load(missing, scenarioKey, windowStart, Long.MAX_VALUE, null);
+                synchronized (cache) {
+                    if (writes.get() == generation) {
+                        loaded.forEach((id, c) -> cache.put(new CurveKey(id, scenarioKey),
+                                new Cached(windowStart, now, c)));
+                    }
+                }
+                loaded.forEach((id, c) -> blended.put(id, c.slice(startMs, endMs)));
+            } else {
+                blended.putAll(load(missing, scenarioKey, startMs, endMs, asOf));
+            }
+        }
+        if (mode == Mode.LATEST) {
+            blended.replaceAll((id, c) -> c.newestIssueOnly());
+        }
+        return blended;
+    }
+
+    /**
+     * Drops the cached curves of these assets; called after their forecasts were written.
+     */
+    public void invalidate(Collection<Long> assetIds) {
+        Set<Long> ids = new HashSet<>(assetIds);
+        synchronized (cache) {
+            writes.incrementAndGet();
+            cache.keySet().removeIf(k -> ids.contains(k.assetId()));
+        }
+    }
+
+    private Map<Long, Curve> load(List<Long> assetIds, String scenario, long fromMs, long toMs, Instant asOf) {
+        Map<Long, Curve.Builder> builders = new HashMap<>();
+        for (Long id : assetIds) {
+            builders.put(id, new Curve.Builder());
+        }
+        for (int from = 0; from < assetIds.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> chunk = assetIds.subList(from, Math.min(assetIds.size(), from + BatchUpserts.IN_CHUNK));
+            scan(chunk, scenario, fromMs, toMs, asOf, builders);
+        }
+        Map<Long, Curve> result = new LinkedHashMap<>();
+        for (Long id : assetIds) {
+            result.put(id, builders.get(id).build());
+        }
+        return result;
+    }
+
+    private void scan(List<Long> assetIds, String scenario, long fromMs, long toMs, Instant asOf,
+                      Map<Long, Curve.Builder> builders) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT ASSET_ID, TS, FORECAST_ISSUE_TS, P_KW_PRED, P10, P90, MODEL_VERSION, SCENARIO
+                FROM GEN_FORECAST
+                WHERE ASSET_ID IN (%s) AND SCENARIO = ? AND TS >= ? AND P_KW_PRED IS NOT NULL
+                """.formatted(assetIds.stream().map(id -> "?").collect(Collectors.joining(","))));
+        if (toMs != Long.MAX_VALUE) {
+            sql.append(" AND TS <= ?");
+        }
+        if (asOf != null) {
+            sql.append(" AND FORECAST_ISSUE_TS <= ?");
+        }
+        sql.append(" ORDER BY ASSET_ID, TS, FORECAST_ISSUE_TS DESC");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            int idx = 1;
+            for (Long id : assetIds) {
+                ps.setLong(idx++, id);
+            }
+            ps.setString(idx++, scenario);
+            ps.setTimestamp(idx++, new Timestamp(fromMs));
+            if (toMs != Long.MAX_VALUE) {
+                ps.setTimestamp(idx++, new Timestamp(toMs));
+            }
+            if (asOf != null) {
+                ps.setTimestamp(idx, Timestamp.from(asOf));
+            }
+            ps.setFetchSize(5000);
+            return ps;
+        }, new RowCallbackHandler() {
+            private long currentAsset = Long.MIN_VALUE;
+            private long lastTs;
+            private Curve.Builder target;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                long assetId = rs.getLong(1);
+                long ts = rs.getTimestamp(2).getTime();
+                if (assetId != currentAsset) {
+                    currentAsset = assetId;
+                    target = builders.get(assetId);
+                } else if (ts == lastTs) {
+                    // an older issue of a timestamp already taken from a fresher one
+                    return;
+                }
+                lastTs = ts;
+                double p10 = rs.getDouble(5);
+                if (rs.wasNull()) {
+                    p10 = Double.NaN;
+                }
+                double p90 = rs.getDouble(6);
+                if (rs.wasNull()) {
+                    p90 = Double.NaN;
+                }
+                target.add(ts, rs.getTimestamp(3).getTime(), rs.getDouble(4), p10, p90,
+                        rs.getString(7), rs.getString(8));
+            }
+        });
+    }
+
+    public enum Mode {
+        LATEST, BLEND
+    }
+
+    private record CurveKey(long assetId, String scenario) {}
+
+    private record Cached(long windowStartMs, long loadedAtMs, Curve curve) {}
+
+    /**
+     * Resolved forecast points in TS order; p10/p90 are NaN where the issue did not provide them.
+     */
+    public static final class Curve {
+
+        private static final Curve EMPTY = new Curve(new long[0], new long[0], new double[0], new double[0],
+                new double[0], new String[0], new String[0]);
+
+        private final long[] ts;
+        private final long[] issues;
+        private final double[] p50;
+        private final double[] p10;
+        private final double[] p90;
+        private final String[] modelVersions;
+        private final String[] scenarios;
+
+        private Curve(long[] ts, long[] issues, double[] p50, double[] p10, double[] p90, String[] modelVersions,
+                      String[] scenarios) {
+            this.ts = ts;
+            this.issues = issues;
+            this.p50 = p50;
+            this.p10 = p10;
+            this.p90 = p90;
+            this.modelVersions = modelVersions;
+            this.scenarios = scenarios;
+        }
+
+        public int size() {
+            return ts.length;
+        }
+
+        public long ts(int i) {
+            return ts[i];
+        }
+
+        public long issue(int i) {
+            return issues[i];
+        }
+
+        public double p50(int i) {
+            return p50[i];
+        }
+
+        public double p10(int i) {
+            return p10[i];
+        }
+
+        public double p90(int i) {
+            return p90[i];
+        }
+
+        public String modelVersion(int i) {
+            return modelVersions[i];
+        }
+
+        public String scenario(int i) {
+            return scenarios[i];
+        }
+
+        public long[] timestamps() {
+            return ts.clone();
+        }
+
+        public long[] issues() {
+            return issues.clone();
+        }
+
+        public double[] p50() {
+            return p50.clone();
+        }
+
+        /**
+         * Points with {@code fromMs <= ts <= toMs}.
+         */
+        Curve slice(long fromMs, long toMs) {
+            int from = lowerBound(fromMs);
+            int to = toMs == Long.MAX_VALUE ? ts.length : lowerBound(toMs + 1);
+            if (from == 0 && to == ts.length) {
+                return this;
+            }
+            if (from >= to) {
+                return EMPTY;
+            }
+            return new Curve(Arrays.copyOfRange(ts, from, to), Arrays.copyOfRange(issues, from, to),
+                    Arrays.copyOfRange(p50, from, to), Arrays.copyOfRange(p10, from, to),
+                    Arrays.copyOfRange(p90, from, to), Arrays.copyOfRange(modelVersions, from, to),
+                    Arrays.copyOfRange(scenarios, from, to));
+        }
+
+        Curve newestIssueOnly() {
+            long newest = Long.MIN_VALUE;
+            int count = 0;
+            for (long issue : issues) {
+                if (issue > newest) {
+                    newest = issue;
+                    count = 1;
+                } else if (issue == newest) {
+                    count++;
+                }
+            }
+            if (count == ts.length) {
+                return this;
+            }
+            Builder b = new Builder(count);
+            for (int i = 0; i < ts.length; i++) {
+                if (issues[i] == newest) {
+                    b.add(ts[i], newest, p50[i], p10[i], p90[i], modelVersions[i], scenarios[i]);
+                }
+            }
+            return b.build();
+        }
+
+        private int lowerBound(long at) {
+            int idx = Arrays.binarySearch(ts, at);
+            return idx >= 0 ? idx : -idx - 1;
+        }
+
+        static final class Builder {
+            private long[] ts;
+            private long[] issues;
+            private double[] p50;
+            private double[] p10;
+            private double[] p90;
+            private String[] modelVersions;
+            private String[] scenarios;
+            private int size;
+
+            Builder() {
+                this(64);
+            }
+
+            Builder(int capacity) {
+                ts = new long[capacity];
+                issues = new long[capacity];
+                p50 = new double[capacity];
+                p10 = new double[capacity];
+                p90 = new double[capacity];
+                modelVersions = new String[capacity];
+                scenarios = new String[capacity];
+            }
+
+            void add(long at, long issue, double v50, double v10, double v90, String modelVersion, String scenario) {
+                if (size == ts.length) {
+                    int capacity = Math.max(16, size * 2);
+                    ts = Arrays.copyOf(ts, capacity);
+                    issues = Arrays.copyOf(issues, capacity);
+                    p50 = Arrays.copyOf(p50, capacity);
+                    p10 = Arrays.copyOf(p10, capacity);
+                    p90 = Arrays.copyOf(p90, capacity);
+                    modelVersions = Arrays.copyOf(modelVersions, capacity);
+                    scenarios = Arrays.copyOf(scenarios, capacity);
+                }
+                // the same few labels repeat on every row; share one instance so cached curves stay small
+                if (size > 0) {
+                    if (Objects.equals(modelVersion, modelVersions[size - 1])) {
+                        modelVersion = modelVersions[size - 1];
+                    }
+                    if (Objects.equals(scenario, scenarios[size - 1])) {
+                        scenario = scenarios[size - 1];
+                    }
+                }
+                ts[size] = at;
+                issues[size] = issue;
+                p50[size] = v50;
+                p10[size] = v10;
+                p90[size] = v90;
+                modelVersions[size] = modelVersion;
+                scenarios[size] = scenario;
+                size++;
+            }
+
+            Curve build() {
+                if (size == 0) {
+                    return EMPTY;
+                }
+                return new Curve(Arrays.copyOf(ts, size), Arrays.copyOf(issues, size), Arrays.copyOf(p50, size),
+                        Arrays.copyOf(p10, size), Arrays.copyOf(p90, size), Arrays.copyOf(modelVersions, size),
+                        Arrays.copyOf(scenarios, size));
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.greenmesh.forecast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.greenmesh.jdbc.KeyedUpserts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Idempotent GEN_FORECAST ingest keyed on (ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO). Records are parsed straight
+ * off the request stream (a JSON array or NDJSON) into fixed-size chunks. Each chunk reads the stored rows of its key
+ * range once, then only inserts new keys and updates rows whose values changed, so a re-sent upload costs one read
+ * per chunk and no writes (see {@link KeyedUpserts}). Each chunk commits on its own.
+ * <p>
+ * With {@code supersede}, rows of older issues of the same asset and scenario at or after the first timestamp of the
+ * newest issue written are deleted afterwards; they then no longer take part in forecast evaluation.
+ */
+@Service
+public class GenForecastIngest {
+
+    public static final String DEFAULT_SCENARIO = "base";
+
+    // P_KW_PRED/P10/P90 are DECIMAL(18,4)
+    private static final double SCALE = 1e4;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO, P_KW_PRED, P10, P90, MODEL_VERSION)
+            VALUES (?,?,?,?,?,?,?,?)
+            """;
+
+    private static final String SELECT_SQL = """
+            SELECT ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO, P_KW_PRED, P10, P90, MODEL_VERSION
+            FROM GEN_FORECAST
+            WHERE ASSET_ID IN (%s) AND FORECAST_ISSUE_TS BETWEEN ? AND ? AND TS BETWEEN ? AND ?
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE GEN_FORECAST SET P_KW_PRED = ?, P10 = ?, P90 = ?, MODEL_VERSION = ?
+            WHERE ASSET_ID = ? AND FORECAST_ISSUE_TS = ? AND TS = ? AND SCENARIO = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final GenForecastCurves curves;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int chunkSize;
+
+    public GenForecastIngest(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             GenForecastCurves curves,
+                             @Value("${app.forecast.ingest.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.curves = curves;
+        this.chunkSize = chunkSize;
+    }
+
+    public IngestReport ingest(InputStream body, boolean supersede) throws IOException {
+        ChunkWriter chunks = new ChunkWriter();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            // NDJSON is read as a sequence of root-level objects
+            while (token != null && token != JsonToken.END_ARRAY) {
+                long recordNo = chunks.records + 1;
+                if (token != JsonToken.START_OBJECT) {
+                    chunks.reject("record " + recordNo + ": expected a JSON object");
+                    parser.skipChildren();
+                } else {
+                    parseRecord(parser, recordNo, chunks);
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException ex) {
+            // the stream cannot be resynchronised; chunks already flushed stay committed
+            chunks.reject("record " + (chunks.records + 1) + ": malformed JSON: " + ex.getOriginalMessage());
+        }
+        return complete(chunks, supersede);
+    }
+
+    /**
+     * Writes forecasts produced in process through the same chunked path as uploads; NaN values are stored as NULL.
+     */
+    public IngestReport write(Consumer<Sink> producer, boolean supersede) {
+        ChunkWriter chunks = new ChunkWriter();
+        producer.accept(chunks);
+        return complete(chunks, supersede);
+    }
+
+    private IngestReport complete(ChunkWriter chunks, boolean supersede) {
+        chunks.finish();
+        long superseded = supersede ? supersede(chunks.newestIssues) : 0;
+        if (superseded > 0) {
+            chunks.newestIssues.keySet().forEach(g -> chunks.touchedAssets.add(g.assetId()));
+        }
+        if (!chunks.touchedAssets.isEmpty()) {
+            curves.invalidate(chunks.touchedAssets);
+        }
+        return new IngestReport(chunks.records, chunks.inserted, chunks.updated, chunks.unchanged, chunks.rejected,
+                superseded, chunks.results);
+    }
+
+    private void parseRecord(JsonParser parser, long recordNo, ChunkWriter chunks) throws IOException {
+        long assetId = -1;
+        long issue = Long.MIN_VALUE;
+        long ts = Long.MIN_VALUE;
+        double p50 = Double.NaN;
+        double p10 = Double.NaN;
+        double p90 = Double.NaN;
+        String modelVersion = null;
+        String scenario = null;
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "assetId" -> assetId = parser.getValueAsLong(-1);
+                    case "forecastIssueTs" -> issue = epochMillis(parser, token);
+                    case "ts" -> ts = epochMillis(parser, token);
+                    case "pKwPred" -> p50 = number(parser, token);
+                    case "p10" -> p10 = number(parser, token);
+                    case "p90" -> p90 = number(parser, token);
+                    case "modelVersion" -> modelVersion = parser.getValueAsString();
+                    case "scenario" -> scenario = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (RuntimeException ex) {
+            // the object is abandoned half-read; skip to its end so the next record starts cleanly
+            skipToObjectEnd(parser);
+            chunks.reject("record " + recordNo + ": " + ex.getMessage());
+            return;
+        }
+        if (assetId < 0 || issue == Long.MIN_VALUE || ts == Long.MIN_VALUE) {
+            chunks.reject("record " + recordNo + ": assetId, forecastIssueTs and ts are required");
+            return;
+        }
+        chunks.add(assetId, issue, ts, p50, p10, p90, modelVersion,
+                scenario == null || scenario.isBlank() ? DEFAULT_SCENARIO : scenario);
+    }
+
+    private static long epochMillis(JsonParser parser, JsonToken token) throws IOException {
+        return token == JsonToken.VALUE_STRING ? Instant.parse(parser.getText()).toEpochMilli() : parser.getLongValue();
+    }
+
+    private static double number(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return Double.NaN;
+        }
+        return Math.round(parser.getValueAsDouble() * SCALE) / SCALE;
+    }
+
+    private static void skipToObjectEnd(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        while (token != null && token != JsonToken.END_OBJECT) {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    private long supersede(Map<Group, long[]> newestIssues) {
+        if (newestIssues.isEmpty()) {
+            return 0;
+        }
+        List<Map.Entry<Group, long[]>> groups = new ArrayList<>(newestIssues.entrySet());
+        int[][] counts = jdbcTemplate.batchUpdate("""
+                DELETE FROM GEN_FORECAST
+                WHERE ASSET_ID = ? AND SCENARIO = ? AND FORECAST_ISSUE_TS < ? AND TS >= ?
+                """, groups, 500, (ps, e) -> {
+            ps.setLong(1, e.getKey().assetId());
+            ps.setString(2, e.getKey().scenario());
+            ps.setTimestamp(3, new Timestamp(e.getValue()[0]));
+            ps.setTimestamp(4, new Timestamp(e.getValue()[1]));
+        });
+        long deleted = 0;
+        for (int[] batch : counts) {
+            for (int c : batch) {
+                deleted += Math.max(c, 0);
+            }
+        }
+        return deleted;
+    }
+
+    public record ChunkResult(int chunk, long firstRecord, int records, int inserted, int updated, int unchanged,
+                              int rejected, String error) {}
+
+    public record IngestReport(long records, long inserted, long updated, long unchanged, long rejected,
+                               long superseded, List<ChunkResult> chunks) {}
+
+    public interface Sink {
+        void add(long assetId, long issue, long ts, double p50, double p10, double p90, String modelVersion,
+                 String scenario);
+    }
+
+    private record Key(long assetId, long issue, long ts, String scenario) {}
+
+    private record Group(long assetId, String scenario) {}
+
+    private final class ChunkWriter implements Sink {
+        private final long[] assetIds = new long[chunkSize];
+        private final long[] issues = new long[chunkSize];
+        private final long[] timestamps = new long[chunkSize];
+        private final double[] p50 = new double[chunkSize];
+        private final double[] p10 = new double[chunkSize];
+        private final double[] p90 = new double[chunkSize];
+        private final String[] modelVersions = new String[chunkSize];
+        private final String[] scenarios = new String[chunkSize];
+        private final List<ChunkResult> results = new ArrayList<>();
+        // (asset, scenario) -> {newest issue, its first ts}
+        private final Map<Group, long[]> newestIssues = new HashMap<>();
+        private final Set<Long> touchedAssets = new LinkedHashSet<>();
+        private int size;
+        private long records;
+        private long inserted;
+        private long updated;
+        private long unchanged;
+        private long rejected;
+        private long chunkFirstRecord;
+        private int chunkRejected;
+        private String chunkError;
+
+        @Override
+        public void add(long assetId, long issue, long ts, double v50, double v10, double v90, String modelVersion,
+                        String scenario) {
+            assetIds[size] = assetId;
+            issues[size] = issue;
+            timestamps[size] = ts;
+            p50[size] = v50;
+            p10[size] = v10;
+            p90[size] = v90;
+            modelVersions[size] = modelVersion;
+            scenarios[size] = scenario;
+            size++;
+            records++;
+            if (size >= chunkSize) {
+                flush();
+            }
+        }
+
+        void reject(String reason) {
+            records++;
+            chunkRejected++;
+            if (chunkError == null) {
+                chunkError = reason;
+            }
+        }
+
+        void finish() {
+            if (size > 0 || chunkRejected > 0) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            int chunkRecords = size + chunkRejected;
+            int failed = chunkRejected;
+            String error = chunkError;
+            int[] outcome = {0, 0, 0};
+            try {
+                outcome = write();
+            } catch (DataAccessException ex) {
+                failed += size;
+                error = ex.getMostSpecificCause().getMessage();
+            }
+            if (outcome[0] + outcome[1] > 0) {
+                for (int i = 0; i < size; i++) {
+                    touchedAssets.add(assetIds[i]);
+                }
+            }
+            if (failed < chunkRecords) {
+                for (int i = 0; i < size; i++) {
+                    long[] newest = newestIssues.computeIfAbsent(new Group(assetIds[i], scenarios[i]),
+                            g -> new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+                    if (issues[i] > newest[0]) {
+                        newest[0] = issues[i];
+                        newest[1] = timestamps[i];
+                    } else if (issues[i] == newest[0]) {
+                        newest[1] = Math.min(newest[1], timestamps[i]);
+                    }
+                }
+            }
+            results.add(new ChunkResult(results.size(), chunkFirstRecord, chunkRecords, outcome[0], outcome[1],
+                    outcome[2], failed, error));
+            inserted += outcome[0];
+            updated += outcome[1];
+            unchanged += outcome[2];
+            rejected += failed;
+            chunkFirstRecord = records;
+            chunkRejected = 0;
+            chunkError = null;
+            size = 0;
+        }
+
+        /**
+         * Returns {inserted, updated, unchanged}. A later record with the same key in the chunk wins.
+         */
+        private int[] write() {
+            Map<Key, Integer> latest = new HashMap<>(size * 2);
+            long minIssue = Long.MAX_VALUE;
+            long maxIssue = Long.MIN_VALUE;
+            long minTs = Long.MAX_VALUE;
+            long maxTs = Long.MIN_VALUE;
+            Set<Long> assets = new LinkedHashSet<>();
+            for (int i = 0; i < size; i++) {
+                latest.put(new Key(assetIds[i], issues[i], timestamps[i], scenarios[i]), i);
+                minIssue = Math.min(minIssue, issues[i]);
+                maxIssue = Math.max(maxIssue, issues[i]);
+                minTs = Math.min(minTs, timestamps[i]);
+                maxTs = Math.max(maxTs, timestamps[i]);
+                assets.add(assetIds[i]);
+            }
+            KeyedUpserts.Result r = KeyedUpserts.upsert(jdbcTemplate, transactionTemplate, latest,
+                    new KeyedUpserts.Lookup(SELECT_SQL, new ArrayList<>(assets), minIssue, maxIssue, minTs, maxTs),
+                    new KeyedUpserts.StoredRows<>() {
+                        @Override
+                        public Key key(ResultSet rs) throws SQLException {
+                            return new Key(rs.getLong(1), rs.getTimestamp(2).getTime(),
+                                    rs.getTimestamp(3).getTime(), rs.getString(4));
+                        }
+
+                        @Override
+                        public boolean changed(ResultSet rs, int row) throws SQLException {
+                            return !same(rs, 5, p50[row]) || !same(rs, 6, p10[row]) || !same(rs, 7, p90[row])
+                                    || !Objects.equals(rs.getString(8), modelVersions[row]);
+                        }
+                    },
+                    UPDATE_SQL, this::setUpdate, INSERT_SQL, this::setInsert, size);
+            return new int[]{r.inserted(), r.updated(), r.unchanged()};
+        }
+
+        private void setInsert(PreparedStatement ps, int i) throws SQLException {
+            ps.setLong(1, assetIds[i]);
+            ps.setTimestamp(2, new Timestamp(issues[i]));
+            ps.setTimestamp(3, new Timestamp(timestamps[i]));
+            ps.setString(4, scenarios[i]);
+            setDecimal(ps, 5, p50[i]);
+            setDecimal(ps, 6, p10[i]);
+            setDecimal(ps, 7, p90[i]);
+            ps.setString(8, modelVersions[i]);
+        }
+
+        private void setUpdate(PreparedStatement ps, int i) throws SQLException {
+            setDecimal(ps, 1, p50[i]);
+            setDecimal(ps, 2, p10[i]);
+            setDecimal(ps, 3, p90[i]);
+            ps.setString(4, modelVersions[i]);
+            ps.setLong(5, assetIds[i]);
+            ps.setTimestamp(6, new Timestamp(issues[i]));
+            ps.setTimestamp(7, new Timestamp(timestamps[i]));
+            ps.setString(8, scenarios[i]);
+        }
+    }
+
+    private static boolean same(ResultSet rs, int column, double incoming) throws SQLException {
+        double stored = rs.getDouble(column);
+        if (rs.wasNull()) {
+            return Double.isNaN(incoming);
+        }
+        return !Double.isNaN(incoming) && Math.abs(stored - incoming) < 0.5 / SCALE;
+    }
+
+    private static void setDecimal(PreparedStatement ps, int idx, double value) throws SQLException {
+        if (Double.isNaN(value)) {
+            ps.setNull(idx, Types.DECIMAL);
+        } else {
+            ps.setDouble(idx, value);
+        }
+    }
+}
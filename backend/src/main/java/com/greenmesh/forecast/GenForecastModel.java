@@ -0,0 +1,23 @@
+package com.greenmesh.forecast;
+
+/**
+ * A power model turning blended station weather into GEN_FORECAST for one asset type. Beans of this type are picked
+ * up by {@link PhysicalForecastEngine}, one per asset type.
+ */
+public interface GenForecastModel {
+
+    /**
+     * DIM_ASSET.ASSET_TYPE handled by this model.
+     */
+    String assetType();
+
+    /**
+     * Written to GEN_FORECAST.MODEL_VERSION.
+     */
+    String version();
+
+    /**
+     * Fills {@code p50}, {@code p10} and {@code p90} of every point whose inputs allow a forecast.
+     */
+    void predict(FleetBatch batch);
+}
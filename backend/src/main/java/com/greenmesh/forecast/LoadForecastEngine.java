@@ -0,0 +1,464 @@
+package com.greenmesh.forecast;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.masterdata.MasterDataSnapshot.Enterprise;
+import com.greenmesh.masterdata.MasterDataSnapshot.MeterPoint;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.RollupLevel;
+import com.greenmesh.telemetry.RollupService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Hourly LOAD_FORECAST per enterprise. The load history is the sum of the enterprise's electricity points from the
+ * 1h rollups, held per enterprise in a {@link LoadHistory} that only re-reads new or rewritten buckets on each run.
+ * Features per hour are the DIM_CALENDAR workday flag (Monday to Friday where the calendar has no row), the share of
+ * the hour covered by a shift in the enterprise's PRODUCTION_PLAN (days without a plan count as fully staffed on
+ * workdays and idle otherwise) and the park's temperature from the latest WEATHER_FORECAST issue covering the hour
+ * averaged over its stations. {@link LoadModels} picks between the similar-day and regression models per
+ * enterprise on each run.
+ * <p>
+ * Enterprises are trained, predicted and written in parallel, each in its own transaction, keyed on
+ * (ENT_ID, FORECAST_ISSUE_TS, TS) so a repeated run of the same hour overwrites its rows.
+ */
+@Service
+public class LoadForecastEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadForecastEngine.class);
+
+    private static final long HOUR_MS = RollupLevel.HOUR.lengthMs();
+
+    private static final String UPDATE_SQL = """
+            UPDATE LOAD_FORECAST SET P_KW_PRED = ?, P10 = ?, P90 = ?, MODEL_VERSION = ?
+            WHERE ENT_ID = ? AND FORECAST_ISSUE_TS = ? AND TS = ?
+            """;
+    private static final String INSERT_SQL = """
+            INSERT INTO LOAD_FORECAST (P_KW_PRED, P10, P90, MODEL_VERSION, ENT_ID, FORECAST_ISSUE_TS, TS)
+            VALUES (?,?,?,?,?,?,?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MasterDataStore masterData;
+    private final ObjectMapper objectMapper;
+    private final ZoneId zone;
+    private final boolean enabled;
+    private final int historyHours;
+    private final int horizonHours;
+    private final int similarDays;
+    private final double fallbackSpread;
+    private final String energyType;
+    private final ExecutorService pool;
+    private final Map<Long, LoadHistory> histories = new ConcurrentHashMap<>();
+
+    public LoadForecastEngine(JdbcTemplate jdbcTemplate,
+                              TransactionTemplate transactionTemplate,
+                              MasterDataStore masterData,
+                              ObjectMapper objectMapper,
+                              RollupService rollups,
+                              @Value("${app.forecast.load.enabled:true}") boolean enabled,
+                              @Value("${app.forecast.load.history-days:56}") int historyDays,
+                              @Value("${app.forecast.load.horizon-hours:48}") int horizonHours,
+                              @Value("${app.forecast.load.similar-days:3}") int similarDays,
+                              @Value("${app.forecast.load.fallback-spread:0.1}") double fallbackSpread,
+                              @Value("${app.forecast.load.energy-type:ELEC}") String energyType,
+                              @Value("${app.forecast.load.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.masterData = masterData;
+        this.objectMapper = objectMapper;
+        // days and hours of day follow the rollup buckets
+        this.zone = rollups.zone();
+        this.enabled = enabled;
+        this.historyHours = Math.max(7, historyDays) * 24;
+        this.horizonHours = Math.max(1, horizonHours);
+        this.similarDays = Math.max(1, similarDays);
+        this.fallbackSpread = fallbackSpread;
+        this.energyType = energyType;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "load-forecast-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${app.forecast.load.interval-ms:900000}",
+            initialDelayString = "${app.forecast.load.interval-ms:900000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            run(Instant.now(), null, null);
+        } catch (RuntimeException ex) {
+            log.warn("Load forecast failed", ex);
+        }
+    }
+
+    /**
+     * Forecasts the hours from the one containing {@code asOf}, trained on the complete hours before it, for every
+     * enterprise, those of one park or one enterprise.
+     */
+    public Result run(Instant asOf, Long parkId, Long entId) {
+        long started = System.nanoTime();
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        long issue = RollupLevel.HOUR.floor(asOf.toEpochMilli(), zone);
+        long historyStart = issue - historyHours * HOUR_MS;
+        int steps = historyHours + horizonHours;
+        List<Enterprise> enterprises = new ArrayList<>();
+        for (Enterprise e : snapshot.enterprises(parkId)) {
+            if (entId == null || entId.equals(e.id())) {
+                enterprises.add(e);
+            }
+        }
+        Calendar calendar = calendar(historyStart, issue + horizonHours * HOUR_MS, steps);
+        Map<Long, double[]> temperatures = new ConcurrentHashMap<>();
+        List<Future<EntResult>> futures = new ArrayList<>();
+        for (Enterprise e : enterprises) {
+            Callable<EntResult> task = () -> forecast(snapshot, e, issue, historyStart, steps, calendar,
+                    temperatures);
+            futures.add(pool.submit(task));
+        }
+        List<EntResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            long id = enterprises.get(i).id();
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while forecasting load", ex);
+            } catch (ExecutionException ex) {
+                // one enterprise's bad data must not cost the others their forecast
+                log.warn("Load forecast failed for enterprise {}", id, ex.getCause());
+                histories.remove(id);
+                results.add(new EntResult(id, null, 0, 0, Double.NaN, 0, "failed: " + ex.getCause()));
+            }
+        }
+        histories.keySet().retainAll(snapshot.enterprises(null).stream().map(Enterprise::id).toList());
+        long forecast = results.stream().filter(r -> r.model() != null).count();
+        long points = results.stream().mapToLong(EntResult::points).sum();
+        long bucketsRead = results.stream().mapToLong(EntResult::bucketsRead).sum();
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        if (forecast > 0) {
+            log.info("Load forecast issued {}: {} of {} enterprises, {} points, {} rollup buckets read in {} ms",
+                    Instant.ofEpochMilli(issue), forecast, results.size(), points, bucketsRead, elapsedMs);
+        }
+        return new Result(Instant.ofEpochMilli(issue), results.size(), (int) forecast, points, bucketsRead, elapsedMs,
+                results);
+    }
+
+    private EntResult forecast(MasterDataSnapshot snapshot, Enterprise e, long issue, long historyStart, int steps,
+                               Calendar calendar, Map<Long, double[]> temperatures) {
+        Sources sources = sources(snapshot, e.id());
+        if (sources.pointIds.length == 0) {
+            histories.remove(e.id());
+            return new EntResult(e.id(), null, 0, 0, Double.NaN, 0, "no electricity meter points");
+        }
+        LoadHistory history = histories.compute(e.id(), (id, cached) ->
+                cached != null && cached.samePoints(sources.pointIds, sources.scales, sources.rates) ? cached
+                        : new LoadHistory(sources.pointIds, sources.scales, sources.rates));
+        int read;
+        double[] load;
+        // one enterprise is never refreshed by two runs at once
+        synchronized (history) {
+            read = history.refresh(jdbcTemplate, historyStart, historyHours);
+            load = Arrays.copyOf(history.load(), steps);
+        }
+        Arrays.fill(load, historyHours, steps, Double.NaN);
+        int measured = 0;
+        for (int h = 0; h < historyHours; h++) {
+            if (load[h] == load[h]) {
+                measured++;
+            }
+        }
+        if (measured < 24) {
+            return new EntResult(e.id(), null, measured, 0, Double.NaN, read, "less than a day of load history");
+        }
+        double[] temperature = e.parkId() == null ? nanArray(steps)
+                : temperatures.computeIfAbsent(e.parkId(), park -> temperature(park, historyStart, steps, issue));
+        double[] shift = shifts(e.id(), historyStart, steps, calendar);
+        LoadModels.Forecast f = LoadModels.fit(new LoadModels.Features(historyHours, load, calendar.workday,
+                shift, temperature, calendar.hourOfDay), similarDays, fallbackSpread);
+        int written = write(e.id(), issue, f);
+        return new EntResult(e.id(), f.model(), measured, written, f.holdoutMae(), read, null);
+    }
+
+    private int write(long entId, long issue, LoadModels.Forecast f) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < f.p50().length; i++) {
+            if (f.p50()[i] == f.p50()[i]) {
+                rows.add(i);
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        BatchUpserts.Result r = transactionTemplate.execute(status -> BatchUpserts.upsert(jdbcTemplate, rows.size(),
+                UPDATE_SQL, (ps, n) -> bind(ps, entId, issue, f, rows.get(n)),
+                INSERT_SQL, (ps, n) -> bind(ps, entId, issue, f, rows.get(n))));
+        return r.updated() + r.inserted();
+    }
+
+    private static void bind(PreparedStatement ps, long entId, long issue, LoadModels.Forecast f, int i)
+            throws SQLException {
+        ps.setDouble(1, round(f.p50()[i]));
+        ps.setDouble(2, round(f.p10()[i]));
+        ps.setDouble(3, round(f.p90()[i]));
+        ps.setString(4, f.model());
+        ps.setLong(5, entId);
+        ps.setTimestamp(6, new Timestamp(issue));
+        ps.setTimestamp(7, new Timestamp(issue + i * HOUR_MS));
+    }
+
+    /**
+     * Electricity points of the enterprise: power points when it has any (their hourly average), energy points
+     * otherwise (their hourly sum), in kW.
+     */
+    private Sources sources(MasterDataSnapshot snapshot, long entId) {
+        List<MeterPoint> power = new ArrayList<>();
+        List<MeterPoint> energy = new ArrayList<>();
+        for (MeterPoint p : snapshot.meterPoints(null, null, entId, energyType)) {
+            if (p.unit() == null) {
+                continue;
+            }
+            String unit = p.unit().trim().toLowerCase(Locale.ROOT);
+            if (unit.equals("w") || unit.equals("kw") || unit.equals("mw")) {
+                power.add(p);
+            } else if (unit.equals("wh") || unit.equals("kwh") || unit.equals("mwh")) {
+                energy.add(p);
+            }
+        }
+        List<MeterPoint> chosen = power.isEmpty() ? energy : power;
+        List<MeterPoint> sorted = chosen.stream().sorted((a, b) -> Long.compare(a.id(), b.id())).toList();
+        long[] ids = new long[sorted.size()];
+        double[] scales = new double[sorted.size()];
+        boolean[] rates = new boolean[sorted.size()];
+        for (int i = 0; i < ids.length; i++) {
+            MeterPoint p = sorted.get(i);
+            String unit = p.unit().trim().toLowerCase(Locale.ROOT);
+            ids[i] = p.id();
+            rates[i] = !power.isEmpty();
+            scales[i] = unit.startsWith("mw") ? 1000 : unit.startsWith("kw") ? 1 : 0.001;
+        }
+        return new Sources(ids, scales, rates);
+    }
+
+    private Calendar calendar(long fromMs, long toMs, int steps) {
+        LocalDate first = Instant.ofEpochMilli(fromMs).atZone(zone).toLocalDate();
+        LocalDate last = Instant.ofEpochMilli(toMs).atZone(zone).toLocalDate();
+        Map<LocalDate, Boolean> workdays = new HashMap<>();
+        jdbcTemplate.query("SELECT CAL_DATE, IS_WORKDAY, IS_HOLIDAY FROM DIM_CALENDAR WHERE CAL_DATE BETWEEN ? AND ?",
+                rs -> {
+                    String workday = rs.getString(2);
+                    String holiday = rs.getString(3);
+                    boolean isWorkday = workday != null ? "Y".equalsIgnoreCase(workday.trim())
+                            : !"Y".equalsIgnoreCase(holiday != null ? holiday.trim() : "")
+                            && weekday(rs.getDate(1).toLocalDate());
+                    workdays.put(rs.getDate(1).toLocalDate(), isWorkday);
+                }, Date.valueOf(first), Date.valueOf(last));
+        double[] workday = new double[steps];
+        int[] hourOfDay = new int[steps];
+        for (int i = 0; i < steps; i++) {
+            ZonedDateTime t = Instant.ofEpochMilli(fromMs + i * HOUR_MS).atZone(zone);
+            LocalDate day = t.toLocalDate();
+            workday[i] = workdays.getOrDefault(day, weekday(day)) ? 1 : 0;
+            hourOfDay[i] = t.getHour();
+        }
+        return new Calendar(workday, hourOfDay);
+    }
+
+    private static boolean weekday(LocalDate day) {
+        return day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY;
+    }
+
+    /**
+     * Hourly park temperature: per station the latest issue (up to the forecast issue) covering each hour, then
+     * the mean over stations. NaN where no station has a value.
+     */
+    private double[] temperature(long parkId, long fromMs, int steps, long issue) {
+        double[] sum = new double[steps];
+        int[] count = new int[steps];
+        List<Long> stations = jdbcTemplate.queryForList(
+                "SELECT STATION_ID FROM WEATHER_STATION WHERE PARK_ID = ?", Long.class, parkId);
+        long toMs = fromMs + steps * HOUR_MS;
+        for (int from = 0; from < stations.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> part = stations.subList(from, Math.min(stations.size(), from + BatchUpserts.IN_CHUNK));
+            String sql = """
+                    SELECT STATION_ID, TS, TEMPERATURE_PRED FROM WEATHER_FORECAST
+                    WHERE STATION_ID IN (%s) AND TS >= ? AND TS < ? AND FORECAST_ISSUE_TS <= ?
+                      AND TEMPERATURE_PRED IS NOT NULL
+                    ORDER BY STATION_ID, TS, FORECAST_ISSUE_TS DESC
+                    """.formatted(String.join(",", Collections.nCopies(part.size(), "?")));
+            long[] last = {Long.MIN_VALUE, Long.MIN_VALUE};
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                int idx = 1;
+                for (Long id : part) {
+                    ps.setLong(idx++, id);
+                }
+                ps.setTimestamp(idx++, new Timestamp(fromMs));
+                ps.setTimestamp(idx++, new Timestamp(toMs));
+                ps.setTimestamp(idx, new Timestamp(issue));
+                ps.setFetchSize(5000);
+                return ps;
+            }, rs -> {
+                long station = rs.getLong(1);
+                int h = (int) ((rs.getTimestamp(2).getTime() - fromMs) / HOUR_MS);
+                // first row per station and hour is the latest issue
+                if (station == last[0] && h == last[1]) {
+                    return;
+                }
+                last[0] = station;
+                last[1] = h;
+                sum[h] += rs.getDouble(3);
+                count[h]++;
+            });
+        }
+        double[] out = new double[steps];
+        for (int h = 0; h < steps; h++) {
+            out[h] = count[h] > 0 ? sum[h] / count[h] : Double.NaN;
+        }
+        return out;
+    }
+
+    /**
+     * Share of each hour covered by a shift. SHIFT_INFO_JSON is a list of {@code {"start": "HH:mm", "end": "HH:mm"}}
+     * (or an object with such a {@code shifts} list); an end at or before the start runs past midnight. The latest
+     * submitted plan per day wins; cancelled plans are ignored.
+     */
+    private double[] shifts(long entId, long fromMs, int steps, Calendar calendar) {
+        LocalDate first = Instant.ofEpochMilli(fromMs).atZone(zone).toLocalDate();
+        LocalDate last = Instant.ofEpochMilli(fromMs + steps * HOUR_MS).atZone(zone).toLocalDate();
+        Map<LocalDate, String> plans = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT PLAN_DATE, SHIFT_INFO_JSON FROM PRODUCTION_PLAN
+                WHERE ENT_ID = ? AND PLAN_DATE BETWEEN ? AND ? AND (STATUS IS NULL OR STATUS <> 'CANCELLED')
+                ORDER BY PLAN_DATE, SUBMITTED_TS
+                """, rs -> {
+            String json = rs.getString(2);
+            if (json != null && !json.isBlank()) {
+                plans.put(rs.getDate(1).toLocalDate(), json);
+            }
+        }, entId, Date.valueOf(first), Date.valueOf(last));
+        double[] shift = new double[steps];
+        Arrays.fill(shift, Double.NaN);
+        List<long[]> spans = new ArrayList<>();
+        for (Map.Entry<LocalDate, String> plan : plans.entrySet()) {
+            List<long[]> daySpans = parseShifts(plan.getKey(), plan.getValue());
+            if (daySpans == null) {
+                continue;
+            }
+            long dayStart = plan.getKey().atStartOfDay(zone).toInstant().toEpochMilli();
+            long dayEnd = plan.getKey().plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            for (long t = dayStart; t < dayEnd; t += HOUR_MS) {
+                int h = (int) Math.floorDiv(t - fromMs, HOUR_MS);
+                if (h >= 0 && h < steps && shift[h] != shift[h]) {
+                    shift[h] = 0;
+                }
+            }
+            spans.addAll(daySpans);
+        }
+        for (long[] span : spans) {
+            for (long t = Math.floorDiv(span[0] - fromMs, HOUR_MS) * HOUR_MS + fromMs; t < span[1]; t += HOUR_MS) {
+                int h = (int) ((t - fromMs) / HOUR_MS);
+                if (h < 0 || h >= steps) {
+                    continue;
+                }
+                double covered = (Math.min(span[1], t + HOUR_MS) - Math.max(span[0], t)) / (double) HOUR_MS;
+                shift[h] = Math.min(1, (shift[h] == shift[h] ? shift[h] : 0) + covered);
+            }
+        }
+        for (int h = 0; h < steps; h++) {
+            if (shift[h] != shift[h]) {
+                shift[h] = calendar.workday[h];
+            }
+        }
+        return shift;
+    }
+
+    private List<long[]> parseShifts(LocalDate day, String json) {
+        try {
+            JsonNode root = objectMapper.readTree(json);
+            JsonNode list = root.isArray() ? root : root.path("shifts");
+            if (!list.isArray()) {
+                return null;
+            }
+            List<long[]> spans = new ArrayList<>();
+            for (JsonNode s : list) {
+                LocalTime start = LocalTime.parse(s.path("start").asText());
+                LocalTime end = LocalTime.parse(s.path("end").asText());
+                ZonedDateTime from = day.atTime(start).atZone(zone);
+                ZonedDateTime to = (end.isAfter(start) ? day : day.plusDays(1)).atTime(end).atZone(zone);
+                spans.add(new long[]{from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()});
+            }
+            return spans;
+        } catch (Exception ex) {
+            log.debug("Ignoring unreadable SHIFT_INFO_JSON of {}: {}", day, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static double[] nanArray(int steps) {
+        double[] out = new double[steps];
+        Arrays.fill(out, Double.NaN);
+        return out;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10_000) / 10_000.0;
+    }
+
+    private record Sources(long[] pointIds, double[] scales, boolean[] rates) {}
+
+    private record Calendar(double[] workday, int[] hourOfDay) {}
+
+    /**
+     * {@code model} is null when the enterprise was skipped, with the reason in {@code skipped}.
+     */
+    public record EntResult(long entId, String model, int historyHours, int points, double holdoutMae,
+                            int bucketsRead, String skipped) {}
+
+    public record Result(Instant issue, int enterprises, int forecast, long points, long bucketsRead, long elapsedMs,
+                         List<EntResult> details) {}
+}
@@ -0,0 +1,157 @@
+package com.greenmesh.forecast;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.telemetry.RollupLevel;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Hourly load of one enterprise over a sliding window of complete hours, built from the 1h TS_ROLLUP buckets of its
+ * electricity points. Each point's contribution is kept separately, so a re-flushed bucket replaces just that
+ * point's value. {@link #refresh} slides the window forward and re-reads only the buckets that entered it or were
+ * rewritten (UPDATED_AT) since the previous refresh; a changed point set or a window moving backwards reloads it.
+ */
+final class LoadHistory {
+
+    private static final long HOUR_MS = RollupLevel.HOUR.lengthMs();
+    // rollup flushes commit after stamping UPDATED_AT; re-reading a little earlier catches late commits
+    private static final long UPDATED_SLACK_MS = 120_000;
+
+    private final long[] pointIds;
+    private final double[] scales;
+    private final boolean[] rates;
+    private final Map<Long, Integer> pointIndex = new HashMap<>();
+    private long startMs = Long.MIN_VALUE;
+    private int hours;
+    private double[][] perPoint;
+    private double[] load;
+    private long seenUpdatedMs = Long.MIN_VALUE;
+
+    LoadHistory(long[] pointIds, double[] scales, boolean[] rates) {
+        this.pointIds = pointIds;
+        this.scales = scales;
+        this.rates = rates;
+        for (int p = 0; p < pointIds.length; p++) {
+            pointIndex.put(pointIds[p], p);
+        }
+    }
+
+    boolean samePoints(long[] ids, double[] otherScales, boolean[] otherRates) {
+        return Arrays.equals(pointIds, ids) && Arrays.equals(scales, otherScales) && Arrays.equals(rates, otherRates);
+    }
+
+    long startMs() {
+        return startMs;
+    }
+
+    /**
+     * kW per hour from {@link #startMs()}; NaN where no point reported.
+     */
+    double[] load() {
+        return load;
+    }
+
+    /**
+     * Moves the window to {@code [fromMs, fromMs + hours h)} and returns the number of buckets read.
+     */
+    int refresh(JdbcTemplate jdbcTemplate, long fromMs, int windowHours) {
+        long endMs = fromMs + windowHours * HOUR_MS;
+        long shift = (fromMs - startMs) / HOUR_MS;
+        boolean full = perPoint == null || windowHours != hours || fromMs < startMs
+                || (fromMs - startMs) % HOUR_MS != 0 || shift >= hours;
+        long appendedFrom;
+        if (full) {
+            hours = windowHours;
+            perPoint = new double[pointIds.length][hours];
+            for (double[] series : perPoint) {
+                Arrays.fill(series, Double.NaN);
+            }
+            load = new double[hours];
+            appendedFrom = fromMs;
+            seenUpdatedMs = Long.MIN_VALUE;
+        } else {
+            int k = (int) shift;
+            if (k > 0) {
+                for (double[] series : perPoint) {
+                    System.arraycopy(series, k, series, 0, hours - k);
+                    Arrays.fill(series, hours - k, hours, Double.NaN);
+                }
+            }
+            appendedFrom = startMs + hours * HOUR_MS;
+        }
+        startMs = fromMs;
+        int read = read(jdbcTemplate, fromMs, endMs, Math.max(fromMs, appendedFrom));
+        for (int h = 0; h < hours; h++) {
+            double sum = 0;
+            boolean any = false;
+            for (double[] series : perPoint) {
+                double v = series[h];
+                if (v == v) {
+                    sum += v;
+                    any = true;
+                }
+            }
+            load[h] = any ? sum : Double.NaN;
+        }
+        return read;
+    }
+
+    /**
+     * Buckets in [fromMs, endMs) that are at or after {@code appendedFrom} or were rewritten since the last read.
+     */
+    private int read(JdbcTemplate jdbcTemplate, long fromMs, long endMs, long appendedFrom) {
+        if (pointIds.length == 0) {
+            return 0;
+        }
+        boolean incremental = seenUpdatedMs != Long.MIN_VALUE;
+        int[] read = {0};
+        long[] newestUpdate = {seenUpdatedMs};
+        for (int from = 0; from < pointIds.length; from += BatchUpserts.IN_CHUNK) {
+            long[] part = Arrays.copyOfRange(pointIds, from, Math.min(pointIds.length, from + BatchUpserts.IN_CHUNK));
+            String sql = """
+                    SELECT POINT_ID, BUCKET_TS, AVG_V, SUM_V, UPDATED_AT FROM TS_ROLLUP
+                    WHERE POINT_ID IN (%s) AND AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS < ?%s
+                    """.formatted(Arrays.stream(part).mapToObj(id -> "?").collect(Collectors.joining(",")),
+                    incremental ? " AND (BUCKET_TS >= ? OR UPDATED_AT >= ?)" : "");
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                int idx = 1;
+                for (long id : part) {
+                    ps.setLong(idx++, id);
+                }
+                ps.setString(idx++, RollupLevel.HOUR.code());
+                ps.setTimestamp(idx++, new Timestamp(fromMs));
+                ps.setTimestamp(idx++, new Timestamp(endMs));
+                if (incremental) {
+                    ps.setTimestamp(idx++, new Timestamp(appendedFrom));
+                    ps.setTimestamp(idx, new Timestamp(seenUpdatedMs - UPDATED_SLACK_MS));
+                }
+                ps.setFetchSize(5000);
+                return ps;
+            }, rs -> {
+                Integer p = pointIndex.get(rs.getLong(1));
+                long bucket = rs.getTimestamp(2).getTime();
+                int h = (int) Math.floorDiv(bucket - fromMs, HOUR_MS);
+                if (p == null || h < 0 || h >= hours) {
+                    return;
+                }
+                double v = rates[p] ? rs.getDouble(3) : rs.getDouble(4);
+                perPoint[p][h] = rs.wasNull() ? Double.NaN : v * scales[p];
+                Timestamp updated = rs.getTimestamp(5);
+                if (updated != null) {
+                    newestUpdate[0] = Math.max(newestUpdate[0], updated.getTime());
+                }
+                read[0]++;
+            });
+        }
+        // an empty first read still counts as read, so the next refresh is incremental
+        seenUpdatedMs = newestUpdate[0] != Long.MIN_VALUE ? newestUpdate[0] : endMs;
+        return read[0];
+    }
+}
@@ -0,0 +1,248 @@
+package com.greenmesh.forecast;
+
+import java.util.Arrays;
+
+/**
+ * Hourly load models over one feature timeline: steps {@code [0, history)} carry measured load, all steps carry the
+ * calendar, shift and temperature features. Nothing here touches the database, so an enterprise is trained and
+ * predicted on plain arrays.
+ * <ul>
+ *   <li>similar day: mean of the same hour on the last {@code days} days of the same day type (workday or not);</li>
+ *   <li>regression: one ridge regression per hour of day on workday, shift share and temperature, with hinges for
+ *       cooling and heating load.</li>
+ * </ul>
+ * {@link #fit} scores both on the last days of history, trained on what precedes them, keeps the better one and
+ * takes the P10/P90 band from its holdout residuals.
+ */
+final class LoadModels {
+
+    static final String SIMILAR_DAY = "load-similar-day-1";
+    static final String REGRESSION = "load-regression-1";
+
+    private static final int FEATURES = 6;
+    private static final int MIN_ROWS = 8;
+    private static final double RIDGE = 0.1;
+    private static final double COOLING_C = 24;
+    private static final double HEATING_C = 12;
+
+    private LoadModels() {
+    }
+
+    record Features(int history, double[] load, double[] workday, double[] shift, double[] temperature,
+                    int[] hourOfDay) {
+
+        int steps() {
+            return workday.length;
+        }
+    }
+
+    /**
+     * P50/P10/P90 for steps {@code [history, steps)}; {@code holdoutMae} is NaN when history was too short to score.
+     */
+    record Forecast(String model, double holdoutMae, double[] p50, double[] p10, double[] p90) {}
+
+    static Forecast fit(Features f, int similarDays, double fallbackSpread) {
+        int history = f.history();
+        int holdout = Math.min(7 * 24, history / 4) / 24 * 24;
+        String model = SIMILAR_DAY;
+        double mae = Double.NaN;
+        double q10 = Double.NaN;
+        double q90 = Double.NaN;
+        if (holdout >= 24) {
+            int trainEnd = history - holdout;
+            double[] sd = similarDay(f, trainEnd, trainEnd, history, similarDays);
+            double[] rg = regression(f, trainEnd, trainEnd, history);
+            double[] sdErr = residuals(f.load(), trainEnd, sd);
+            double[] rgErr = residuals(f.load(), trainEnd, rg);
+            double sdMae = meanAbs(sdErr);
+            double rgMae = meanAbs(rgErr);
+            // a regression that cannot cover most of the holdout (no temperature) is not a candidate
+            boolean useRegression = rgErr.length * 2 >= sdErr.length && rgErr.length > 0
+                    && (sdErr.length == 0 || rgMae < sdMae);
+            double[] errors = useRegression ? rgErr : sdErr;
+            if (useRegression) {
+                model = REGRESSION;
+            }
+            mae = useRegression ? rgMae : sdMae;
+            if (errors.length >= 24) {
+                Arrays.sort(errors);
+                q10 = Math.min(quantile(errors, 0.1), 0);
+                q90 = Math.max(quantile(errors, 0.9), 0);
+            }
+        }
+        int steps = f.steps();
+        double[] p50 = similarDay(f, history, history, steps, similarDays);
+        if (REGRESSION.equals(model)) {
+            double[] rg = regression(f, history, history, steps);
+            for (int i = 0; i < rg.length; i++) {
+                // hours without a temperature keep the similar-day value
+                p50[i] = rg[i] == rg[i] ? Math.max(rg[i], 0) : p50[i];
+            }
+        }
+        double[] p10 = new double[p50.length];
+        double[] p90 = new double[p50.length];
+        for (int i = 0; i < p50.length; i++) {
+            double p = p50[i];
+            p10[i] = q10 == q10 ? Math.max(p + q10, 0) : p * (1 - fallbackSpread);
+            p90[i] = q90 == q90 ? p + q90 : p * (1 + fallbackSpread);
+        }
+        return new Forecast(model, mae, p50, p10, p90);
+    }
+
+    /**
+     * Mean load of the same hour on the last {@code days} days of the same type before {@code trainEnd}; the most
+     * recent same hour of any day when there is none. Returns steps {@code [from, to)}.
+     */
+    static double[] similarDay(Features f, int trainEnd, int from, int to, int days) {
+        double[] load = f.load();
+        double[] workday = f.workday();
+        double[] out = new double[to - from];
+        for (int i = from; i < to; i++) {
+            double sum = 0;
+            int found = 0;
+            double anyDay = Double.NaN;
+            for (int j = i - 24; j >= 0 && found < days; j -= 24) {
+                if (j >= trainEnd || load[j] != load[j]) {
+                    continue;
+                }
+                if (anyDay != anyDay) {
+                    anyDay = load[j];
+                }
+                if (workday[j] == workday[i]) {
+                    sum += load[j];
+                    found++;
+                }
+            }
+            out[i - from] = found > 0 ? sum / found : anyDay;
+        }
+        return out;
+    }
+
+    /**
+     * Ridge regression per hour of day trained on steps {@code [0, trainEnd)}; NaN where the hour has no model or
+     * the step no temperature. Returns steps {@code [from, to)}.
+     */
+    static double[] regression(Features f, int trainEnd, int from, int to) {
+        double[][] coefficients = new double[24][];
+        double[] x = new double[FEATURES];
+        for (int hour = 0; hour < 24; hour++) {
+            double[][] a = new double[FEATURES][FEATURES];
+            double[] b = new double[FEATURES];
+            int rows = 0;
+            for (int j = 0; j < trainEnd; j++) {
+                if (f.hourOfDay()[j] != hour || f.load()[j] != f.load()[j] || !features(f, j, x)) {
+                    continue;
+                }
+                for (int r = 0; r < FEATURES; r++) {
+                    b[r] += x[r] * f.load()[j];
+                    for (int c = 0; c < FEATURES; c++) {
+                        a[r][c] += x[r] * x[c];
+                    }
+                }
+                rows++;
+            }
+            if (rows < MIN_ROWS) {
+                continue;
+            }
+            // the intercept is not shrunk
+            for (int r = 1; r < FEATURES; r++) {
+                a[r][r] += RIDGE * rows;
+            }
+            coefficients[hour] = solve(a, b);
+        }
+        double[] out = new double[to - from];
+        for (int i = from; i < to; i++) {
+            double[] c = coefficients[f.hourOfDay()[i]];
+            if (c == null || !features(f, i, x)) {
+                out[i - from] = Double.NaN;
+                continue;
+            }
+            double y = 0;
+            for (int r = 0; r < FEATURES; r++) {
+                y += c[r] * x[r];
+            }
+            out[i - from] = y;
+        }
+        return out;
+    }
+
+    private static boolean features(Features f, int i, double[] x) {
+        double t = f.temperature()[i];
+        if (t != t) {
+            return false;
+        }
+        x[0] = 1;
+        x[1] = f.workday()[i];
+        x[2] = f.shift()[i];
+        x[3] = t;
+        x[4] = Math.max(t - COOLING_C, 0);
+        x[5] = Math.max(HEATING_C - t, 0);
+        return true;
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting; a singular system yields NaN coefficients.
+     */
+    static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][];
+        for (int r = 0; r < n; r++) {
+            m[r] = Arrays.copyOf(a[r], n + 1);
+            m[r][n] = b[r];
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < n; r++) {
+                if (Math.abs(m[r][col]) > Math.abs(m[pivot][col])) {
+                    pivot = r;
+                }
+            }
+            double[] tmp = m[col];
+            m[col] = m[pivot];
+            m[pivot] = tmp;
+            double p = m[col][col];
+            for (int r = col + 1; r < n; r++) {
+                double factor = m[r][col] / p;
+                for (int c = col; c <= n; c++) {
+                    m[r][c] -= factor * m[col][c];
+                }
+            }
+        }
+        double[] out = new double[n];
+        for (int r = n - 1; r >= 0; r--) {
+            double s = m[r][n];
+            for (int c = r + 1; c < n; c++) {
+                s -= m[r][c] * out[c];
+            }
+            out[r] = s / m[r][r];
+        }
+        return out;
+    }
+
+    private static double[] residuals(double[] load, int offset, double[] predicted) {
+        double[] out = new double[predicted.length];
+        int n = 0;
+        for (int i = 0; i < predicted.length; i++) {
+            double actual = load[offset + i];
+            if (actual == actual && predicted[i] == predicted[i]) {
+                out[n++] = actual - predicted[i];
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static double meanAbs(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += Math.abs(v);
+        }
+        return values.length > 0 ? sum / values.length : Double.NaN;
+    }
+
+    private static double quantile(double[] sorted, double q) {
+        double pos = q * (sorted.length - 1);
+        int lo = (int) pos;
+        int hi = Math.min(lo + 1, sorted.length - 1);
+        return sorted[lo] + (sorted[hi] - sorted[lo]) * (pos - lo);
+    }
+}
@@ -0,0 +1,361 @@
+package com.greenmesh.forecast;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.masterdata.MasterDataSnapshot.Asset;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.weather.WeatherForecastImported;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Built-in physical GEN_FORECAST from WEATHER_FORECAST. For one weather issue the station forecasts are read once
+ * into per-station arrays on a common time grid (several NWP models of the same issue are averaged unless
+ * {@code nwp-model} picks one), blended per asset with the MAP_ASSET_WEATHER weights in effect on the issue date
+ * (assets without a mapping use the stations of their park, equally weighted) and handed to the
+ * {@link GenForecastModel} of the asset type, one {@link FleetBatch} per park and type. The result goes through
+ * {@link GenForecastIngest#write}, keyed on the weather issue time, so recomputing an issue only rewrites what
+ * changed. The rows carry their own {@code scenario} so they never overwrite vendor forecasts of the same issue.
+ * <p>
+ * Runs when a weather forecast import finishes (on a single background thread, so imports do not wait) or on demand.
+ */
+@Service
+public class PhysicalForecastEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PhysicalForecastEngine.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MasterDataStore masterData;
+    private final GenForecastIngest ingest;
+    private final Map<String, GenForecastModel> models = new LinkedHashMap<>();
+    private final boolean onImport;
+    private final String nwpModel;
+    private final String scenario;
+    private final ExecutorService worker;
+
+    public PhysicalForecastEngine(JdbcTemplate jdbcTemplate,
+                                  MasterDataStore masterData,
+                                  GenForecastIngest ingest,
+                                  List<GenForecastModel> models,
+                                  @Value("${app.forecast.physical.on-import:true}") boolean onImport,
+                                  @Value("${app.forecast.physical.nwp-model:}") String nwpModel,
+                                  @Value("${app.forecast.physical.scenario:physical}") String scenario) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.masterData = masterData;
+        this.ingest = ingest;
+        for (GenForecastModel model : models) {
+            GenForecastModel previous = this.models.putIfAbsent(model.assetType(), model);
+            if (previous != null) {
+                throw new IllegalStateException("Two forecast models for asset type " + model.assetType() + ": "
+                        + previous.getClass().getSimpleName() + ", " + model.getClass().getSimpleName());
+            }
+        }
+        this.onImport = onImport;
+        this.nwpModel = nwpModel == null || nwpModel.isBlank() ? null : nwpModel.trim();
+        this.scenario = scenario;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "physical-forecast-1");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    @EventListener
+    public void weatherForecastImported(WeatherForecastImported event) {
+        if (!onImport) {
+            return;
+        }
+        for (Instant issue : event.issues()) {
+            worker.submit(() -> {
+                try {
+                    run(issue, null);
+                } catch (RuntimeException ex) {
+                    log.warn("Physical forecast for weather issue {} failed", issue, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forecasts every PV/wind asset (or those of one park) from the weather issued at {@code issue}.
+     */
+    public Result run(Instant issue, Long parkId) {
+        long started = System.nanoTime();
+        long issueMs = issue.toEpochMilli();
+        List<Asset> assets = masterData.snapshot().assets(parkId, null, null).stream()
+                .filter(a -> models.containsKey(a.assetType()))
+                .toList();
+        int withoutCapacity = (int) assets.stream()
+                .filter(a -> a.ratedCapacity() == null || a.ratedCapacity() <= 0).count();
+        assets = assets.stream().filter(a -> a.ratedCapacity() != null && a.ratedCapacity() > 0).toList();
+
+        Map<Long, Map<Long, Double>> weights = weights(assets, issue);
+        Set<Long> stations = new LinkedHashSet<>();
+        weights.values().forEach(w -> stations.addAll(w.keySet()));
+        StationSeries weather = weather(issueMs, stations);
+
+        long computeNanos = 0;
+        List<Computed> batches = new ArrayList<>();
+        int withoutWeather = 0;
+        if (weather.steps() > 0) {
+            Map<List<Object>, List<Asset>> groups = assets.stream().collect(Collectors.groupingBy(
+                    a -> List.of(a.parkId(), a.assetType()), LinkedHashMap::new, Collectors.toList()));
+            long t0 = System.nanoTime();
+            for (List<Asset> group : groups.values()) {
+                List<Asset> covered = group.stream().filter(a -> weather.covers(weights.get(a.id()))).toList();
+                withoutWeather += group.size() - covered.size();
+                if (covered.isEmpty()) {
+                    continue;
+                }
+                GenForecastModel model = models.get(covered.get(0).assetType());
+                FleetBatch batch = batch(issueMs, covered, weights, weather);
+                model.predict(batch);
+                batches.add(new Computed(model.version(), batch));
+            }
+            computeNanos = System.nanoTime() - t0;
+        } else {
+            withoutWeather = assets.size();
+        }
+
+        long[] points = {0};
+        GenForecastIngest.IngestReport report = ingest.write(sink -> {
+            for (Computed c : batches) {
+                FleetBatch b = c.batch();
+                for (int a = 0; a < b.assets; a++) {
+                    int off = a * b.steps;
+                    for (int t = 0; t < b.steps; t++) {
+                        double p = b.p50[off + t];
+                        if (p == p) {
+                            sink.add(b.assetIds[a], b.issue, b.timestamps[t], p, b.p10[off + t], b.p90[off + t],
+                                    c.version(), scenario);
+                            points[0]++;
+                        }
+                    }
+                }
+            }
+        }, false);
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        Result result = new Result(issue, assets.size() - withoutWeather, withoutWeather, withoutCapacity,
+                weather.steps(), points[0], report.inserted(), report.updated(), report.unchanged(),
+                report.rejected(), computeNanos / 1_000_000, elapsedMs);
+        log.info("Physical forecast for weather issue {}: {} assets, {} points ({} inserted, {} updated) in {} ms",
+                issue, result.assets(), result.points(), result.inserted(), result.updated(), elapsedMs);
+        return result;
+    }
+
+    /**
+     * Station weights per asset; assets without a mapping in effect fall back to their park's stations.
+     */
+    private Map<Long, Map<Long, Double>> weights(List<Asset> assets, Instant issue) {
+        Map<Long, Map<Long, Double>> out = new HashMap<>();
+        if (assets.isEmpty()) {
+            return out;
+        }
+        Date day = Date.valueOf(LocalDate.ofInstant(issue, ZoneOffset.UTC));
+        List<Long> ids = assets.stream().map(Asset::id).toList();
+        for (int from = 0; from < ids.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> part = ids.subList(from, Math.min(ids.size(), from + BatchUpserts.IN_CHUNK));
+            String sql = """
+                    SELECT ASSET_ID, STATION_ID, WEIGHT FROM MAP_ASSET_WEATHER
+                    WHERE ASSET_ID IN (%s)
+                      AND (EFFECTIVE_FROM IS NULL OR EFFECTIVE_FROM <= ?) AND (EFFECTIVE_TO IS NULL OR EFFECTIVE_TO >= ?)
+                    """.formatted(placeholders(part.size()));
+            List<Object> args = new ArrayList<>(part);
+            args.add(day);
+            args.add(day);
+            jdbcTemplate.query(sql, (ResultSet rs) -> {
+                double w = rs.getObject(3) != null ? rs.getDouble(3) : 1.0;
+                if (w > 0) {
+                    out.computeIfAbsent(rs.getLong(1), k -> new LinkedHashMap<>()).put(rs.getLong(2), w);
+                }
+            }, args.toArray());
+        }
+        Set<Long> unmappedParks = assets.stream().filter(a -> !out.containsKey(a.id())).map(Asset::parkId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (!unmappedParks.isEmpty()) {
+            Map<Long, Map<Long, Double>> byPark = new HashMap<>();
+            List<Long> parks = new ArrayList<>(unmappedParks);
+            for (int from = 0; from < parks.size(); from += BatchUpserts.IN_CHUNK) {
+                List<Long> part = parks.subList(from, Math.min(parks.size(), from + BatchUpserts.IN_CHUNK));
+                jdbcTemplate.query("SELECT PARK_ID, STATION_ID FROM WEATHER_STATION WHERE PARK_ID IN ("
+                                + placeholders(part.size()) + ")",
+                        (ResultSet rs) -> {
+                            byPark.computeIfAbsent(rs.getLong(1), k -> new LinkedHashMap<>()).put(rs.getLong(2), 1.0);
+                        }, part.toArray());
+            }
+            for (Asset a : assets) {
+                if (!out.containsKey(a.id()) && byPark.containsKey(a.parkId())) {
+                    out.put(a.id(), byPark.get(a.parkId()));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The issue's station forecasts on the union of their valid times, one array per variable and station.
+     */
+    private StationSeries weather(long issueMs, Set<Long> stationIds) {
+        record Row(long station, long ts, double temperature, double wind, double ghi, double cloud) {}
+        List<Row> rows = new ArrayList<>();
+        List<Long> ids = new ArrayList<>(stationIds);
+        for (int from = 0; from < ids.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> part = ids.subList(from, Math.min(ids.size(), from + BatchUpserts.IN_CHUNK));
+            String sql = """
+                    SELECT STATION_ID, TS, AVG(TEMPERATURE_PRED), AVG(WIND_SPEED_PRED), AVG(GHI_PRED),
+                           AVG(CLOUD_COVER_PRED)
+                    FROM WEATHER_FORECAST
+                    WHERE FORECAST_ISSUE_TS = ? AND STATION_ID IN (%s)%s
+                    GROUP BY STATION_ID, TS
+                    """.formatted(placeholders(part.size()), nwpModel != null ? " AND MODEL_NAME = ?" : "");
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                int idx = 1;
+                ps.setTimestamp(idx++, new Timestamp(issueMs));
+                for (Long id : part) {
+                    ps.setLong(idx++, id);
+                }
+                if (nwpModel != null) {
+                    ps.setString(idx, nwpModel);
+                }
+                ps.setFetchSize(5000);
+                return ps;
+            }, (ResultSet rs) -> {
+                rows.add(new Row(rs.getLong(1), rs.getTimestamp(2).getTime(), number(rs, 3), number(rs, 4),
+                        number(rs, 5), number(rs, 6)));
+            });
+        }
+        TreeSet<Long> grid = new TreeSet<>();
+        Map<Long, Integer> stationIndex = new LinkedHashMap<>();
+        for (Row r : rows) {
+            grid.add(r.ts());
+            stationIndex.putIfAbsent(r.station(), stationIndex.size());
+        }
+        long[] timestamps = grid.stream().mapToLong(Long::longValue).toArray();
+        int steps = timestamps.length;
+        int size = stationIndex.size() * steps;
+        StationSeries series = new StationSeries(timestamps, stationIndex, nanArray(size), nanArray(size),
+                nanArray(size), nanArray(size));
+        for (Row r : rows) {
+            int i = stationIndex.get(r.station()) * steps + Arrays.binarySearch(timestamps, r.ts());
+            series.temperature()[i] = r.temperature();
+            series.wind()[i] = r.wind();
+            series.ghi()[i] = r.ghi();
+            series.cloud()[i] = r.cloud();
+        }
+        return series;
+    }
+
+    private static FleetBatch batch(long issueMs, List<Asset> assets, Map<Long, Map<Long, Double>> weights,
+                                    StationSeries weather) {
+        long[] ids = assets.stream().mapToLong(Asset::id).toArray();
+        double[] capacity = assets.stream().mapToDouble(Asset::ratedCapacity).toArray();
+        FleetBatch b = new FleetBatch(issueMs, ids, capacity, weather.timestamps());
+        int steps = b.steps;
+        double[] acc = new double[steps];
+        double[] wsum = new double[steps];
+        for (int a = 0; a < b.assets; a++) {
+            Map<Long, Double> w = weights.get(ids[a]);
+            int off = a * steps;
+            blend(w, weather, weather.temperature(), b.temperature, off, acc, wsum);
+            blend(w, weather, weather.wind(), b.windSpeed, off, acc, wsum);
+            blend(w, weather, weather.ghi(), b.ghi, off, acc, wsum);
+            blend(w, weather, weather.cloud(), b.cloudCover, off, acc, wsum);
+        }
+        return b;
+    }
+
+    /**
+     * Weighted mean over the asset's stations per step, re-normalised over the stations that have a value.
+     */
+    private static void blend(Map<Long, Double> weights, StationSeries weather, double[] source, double[] target,
+                              int off, double[] acc, double[] wsum) {
+        int steps = acc.length;
+        Arrays.fill(acc, 0.0);
+        Arrays.fill(wsum, 0.0);
+        for (Map.Entry<Long, Double> e : weights.entrySet()) {
+            Integer s = weather.stationIndex().get(e.getKey());
+            if (s == null) {
+                continue;
+            }
+            double w = e.getValue();
+            int base = s * steps;
+            for (int t = 0; t < steps; t++) {
+                double x = source[base + t];
+                boolean present = x == x;
+                acc[t] += present ? w * x : 0.0;
+                wsum[t] += present ? w : 0.0;
+            }
+        }
+        for (int t = 0; t < steps; t++) {
+            target[off + t] = wsum[t] > 0 ? acc[t] / wsum[t] : Double.NaN;
+        }
+    }
+
+    private static double number(ResultSet rs, int column) throws SQLException {
+        double v = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : v;
+    }
+
+    private static double[] nanArray(int size) {
+        double[] a = new double[size];
+        Arrays.fill(a, Double.NaN);
+        return a;
+    }
+
+    private static String placeholders(int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    private record Computed(String version, FleetBatch batch) {}
+
+    private record StationSeries(long[] timestamps, Map<Long, Integer> stationIndex, double[] temperature,
+                                 double[] wind, double[] ghi, double[] cloud) {
+
+        int steps() {
+            return timestamps.length;
+        }
+
+        boolean covers(Map<Long, Double> weights) {
+            return weights != null && weights.keySet().stream().anyMatch(stationIndex::containsKey);
+        }
+    }
+
+    /**
+     * {@code assets} were forecast; the others had no weather for the issue or no rated capacity.
+     */
+    public record Result(Instant issue, int assets, int assetsWithoutWeather, int assetsWithoutCapacity, int steps,
+                         long points, long inserted, long updated, long unchanged, long rejected, long computeMs,
+                         long elapsedMs) {}
+}
@@ -0,0 +1,83 @@
+package com.greenmesh.forecast;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generic wind turbine power curve: station wind speed is lifted to hub height with a power-law shear, output rises
+ * with the cube of the speed between cut-in and rated and drops to zero at cut-out. The P10/P90 band comes from
+ * pushing a relative speed error, widening with lead time, through the same curve, so it is widest on the steep
+ * part of the curve and collapses above rated.
+ */
+@Component
+public class WindPowerModel implements GenForecastModel {
+
+    private final double shear;
+    private final double cutIn;
+    private final double rated;
+    private final double cutOut;
+    private final double availability;
+    private final double spread;
+    private final double spreadPerDay;
+
+    public WindPowerModel(@Value("${app.forecast.physical.wind.hub-height-m:90}") double hubHeight,
+                          @Value("${app.forecast.physical.wind.station-height-m:10}") double stationHeight,
+                          @Value("${app.forecast.physical.wind.shear-exponent:0.14}") double shearExponent,
+                          @Value("${app.forecast.physical.wind.cut-in:3}") double cutIn,
+                          @Value("${app.forecast.physical.wind.rated:12}") double rated,
+                          @Value("${app.forecast.physical.wind.cut-out:25}") double cutOut,
+                          @Value("${app.forecast.physical.wind.availability:0.97}") double availability,
+                          @Value("${app.forecast.physical.wind.spread:0.10}") double spread,
+                          @Value("${app.forecast.physical.wind.spread-per-day:0.06}") double spreadPerDay) {
+        if (!(cutIn < rated && rated < cutOut)) {
+            throw new IllegalArgumentException("Wind power curve needs cut-in < rated < cut-out");
+        }
+        this.shear = Math.pow(hubHeight / stationHeight, shearExponent);
+        this.cutIn = cutIn;
+        this.rated = rated;
+        this.cutOut = cutOut;
+        this.availability = availability;
+        this.spread = spread;
+        this.spreadPerDay = spreadPerDay;
+    }
+
+    @Override
+    public String assetType() {
+        return "WIND";
+    }
+
+    @Override
+    public String version() {
+        return "physical-wind-1";
+    }
+
+    @Override
+    public void predict(FleetBatch b) {
+        double ci3 = cutIn * cutIn * cutIn;
+        double span = rated * rated * rated - ci3;
+        for (int a = 0; a < b.assets; a++) {
+            double cap = b.capacityKw[a] * availability;
+            int off = a * b.steps;
+            for (int t = 0; t < b.steps; t++) {
+                int i = off + t;
+                double v = Math.max(b.windSpeed[i], 0.0) * shear;
+                double err = v * PvPowerModel.Z90 * (spread + spreadPerDay * b.horizonDays[t]);
+                double mid = cap * curve(v, ci3, span);
+                double lo = cap * curve(v - err, ci3, span);
+                double hi = cap * curve(v + err, ci3, span);
+                b.p50[i] = mid;
+                // past cut-out a faster wind yields less, so order the two ends
+                b.p10[i] = Math.min(mid, Math.min(lo, hi));
+                b.p90[i] = Math.max(mid, Math.max(lo, hi));
+            }
+        }
+    }
+
+    /**
+     * Share of rated output at hub-height speed {@code v}; NaN stays NaN.
+     */
+    private double curve(double v, double ci3, double span) {
+        double share = Math.min(Math.max((v * v * v - ci3) / span, 0.0), 1.0);
+        return v >= cutOut ? 0.0 : share;
+    }
+}
@@ -0,0 +1,67 @@
+package com.greenmesh.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Batched update-then-insert. DM8 lacks the H2 MERGE ... KEY form (see DatabaseInitializer), so rows are first
+ * updated by their natural key in one batch and only rows that matched nothing are inserted in a second batch.
+ * Callers must not upsert the same key concurrently from two threads.
+ */
+public final class BatchUpserts {
+
+    /**
+     * Ids per {@code IN (...)} list; keeps IN lists well below DM8/Oracle-style expression limits.
+     */
+    public static final int IN_CHUNK = 500;
+
+    private BatchUpserts() {
+    }
+
+    @FunctionalInterface
+    public interface RowSetter {
+        void setValues(PreparedStatement ps, int row) throws SQLException;
+    }
+
+    public record Result(int updated, int inserted) {}
+
+    public static Result upsert(JdbcTemplate jdbcTemplate, int size,
+                                String updateSql, RowSetter updateSetter,
+                                String insertSql, RowSetter insertSetter) {
+        if (size == 0) {
+            return new Result(0, 0);
+        }
+        int[] updateCounts = jdbcTemplate.batchUpdate(updateSql, setter(updateSetter, null, size));
+        int[] missing = new int[size];
+        int missingCount = 0;
+        for (int i = 0; i < size; i++) {
+            // SUCCESS_NO_INFO cannot tell a miss from a hit; treat it as a hit rather than risk a duplicate insert
+            if (updateCounts[i] == 0) {
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount > 0) {
+            int[] rows = Arrays.copyOf(missing, missingCount);
+            jdbcTemplate.batchUpdate(insertSql, setter(insertSetter, rows, missingCount));
+        }
+        return new Result(size - missingCount, missingCount);
+    }
+
+    private static BatchPreparedStatementSetter setter(RowSetter delegate, int[] rows, int size) {
+        return new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                delegate.setValues(ps, rows == null ? i : rows[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.greenmesh.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Queue of rows written in one transaction per flush by the owning component's scheduled task. The queue holds at
+ * most {@code maxPending} rows; rows submitted beyond that are dropped and counted, so a long database outage costs
+ * data rather than heap.
+ * <p>
+ * A flush that fails on a constraint violation (a stale foreign key, an over-long value) is retried one row per
+ * transaction in submission order, and the rows that still violate a constraint are logged and dropped, so one
+ * poison row cannot block the queue. Any other failure puts the whole batch back in front of the queue and is
+ * rethrown for the next tick to retry.
+ */
+public final class BufferedBatchWriter<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(BufferedBatchWriter.class);
+
+    private final String name;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPending;
+    private final Consumer<List<T>> write;
+    // flushes run one at a time so rows are written in submission order
+    private final Object flushLock = new Object();
+    private List<T> pending = new ArrayList<>();
+    private long dropped;
+
+    /**
+     * {@code write} runs inside the flush transaction and gets the rows in submission order.
+     */
+    public BufferedBatchWriter(String name, TransactionTemplate transactionTemplate, int maxPending,
+                               Consumer<List<T>> write) {
+        this.name = name;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPending = maxPending;
+        this.write = write;
+    }
+
+    /**
+     * Returns false when the queue is full and the row was dropped.
+     */
+    public synchronized boolean submit(T row) {
+        if (pending.size() >= maxPending) {
+            if (dropped++ % 10_000 == 0) {
+                log.warn("{}: {} rows queued, dropping new rows ({} so far)", name, pending.size(), dropped);
+            }
+            return false;
+        }
+        pending.add(row);
+        return true;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Rows dropped because the queue was full or because they violated a constraint.
+     */
+    public synchronized long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Writes everything queued so far; returns the number of rows written.
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            List<T> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> write.accept(batch));
+                return batch.size();
+            } catch (DataIntegrityViolationException ex) {
+                return writeOneByOne(batch);
+            } catch (DataAccessException ex) {
+                requeue(batch, 0);
+                throw ex;
+            }
+        }
+    }
+
+    private int writeOneByOne(List<T> batch) {
+        int written = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            T row = batch.get(i);
+            try {
+                transactionTemplate.executeWithoutResult(status -> write.accept(List.of(row)));
+                written++;
+            } catch (DataIntegrityViolationException ex) {
+                synchronized (this) {
+                    dropped++;
+                }
+                log.warn("{}: dropping row that violates a constraint: {} ({})", name, row,
+                        ex.getMostSpecificCause().getMessage());
+            } catch (DataAccessException ex) {
+                requeue(batch, i);
+                throw ex;
+            }
+        }
+        return written;
+    }
+
+    private synchronized void requeue(List<T> batch, int from) {
+        List<T> rest = new ArrayList<>(batch.subList(from, batch.size()));
+        rest.addAll(pending);
+        pending = rest;
+    }
+}
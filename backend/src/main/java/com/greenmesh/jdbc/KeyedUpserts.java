@@ -0,0 +1,121 @@
+package com.greenmesh.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keyed-diff upsert of one chunk of rows held in caller-owned columns. The stored rows covering the chunk are read
+ * once (by id, in {@link BatchUpserts#IN_CHUNK} slices, plus timestamp bounds), then missing keys are inserted and
+ * stored rows are updated only when their values changed, all in one transaction. If another writer inserts some of
+ * the keys between the read and the insert, the chunk is redone in a fresh transaction with
+ * {@link BatchUpserts#upsert}.
+ */
+public final class KeyedUpserts {
+
+    private KeyedUpserts() {
+    }
+
+    /**
+     * Reads back the stored rows. {@code sql} has one {@code %s} for the id placeholders, followed by one timestamp
+     * parameter per entry of {@code bounds} (epoch millis).
+     */
+    public record Lookup(String sql, List<Long> ids, long... bounds) {}
+
+    public interface StoredRows<K> {
+
+        K key(ResultSet rs) throws SQLException;
+
+        /**
+         * Whether chunk row {@code row} differs from the stored row under the cursor; unchanged rows are not written.
+         */
+        default boolean changed(ResultSet rs, int row) throws SQLException {
+            return true;
+        }
+    }
+
+    public record Result(int inserted, int updated, int unchanged) {}
+
+    /**
+     * {@code rows} maps each key to the chunk row that carries it; when a key repeats, the caller keeps the row that
+     * should win.
+     */
+    public static <K> Result upsert(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                    Map<K, Integer> rows, Lookup lookup, StoredRows<K> stored,
+                                    String updateSql, BatchUpserts.RowSetter updateSetter,
+                                    String insertSql, BatchUpserts.RowSetter insertSetter, int batchSize) {
+        if (rows.isEmpty()) {
+            return new Result(0, 0, 0);
+        }
+        try {
+            return transactionTemplate.execute(status -> {
+                Set<K> found = new HashSet<>();
+                List<Integer> updates = new ArrayList<>();
+                read(jdbcTemplate, lookup, rs -> {
+                    K key = stored.key(rs);
+                    Integer row = rows.get(key);
+                    if (row != null && found.add(key) && stored.changed(rs, row)) {
+                        updates.add(row);
+                    }
+                });
+                List<Integer> inserts = new ArrayList<>(rows.size() - found.size());
+                rows.forEach((key, row) -> {
+                    if (!found.contains(key)) {
+                        inserts.add(row);
+                    }
+                });
+                inserts.sort(null);
+                updates.sort(null);
+                write(jdbcTemplate, insertSql, inserts, insertSetter, batchSize);
+                write(jdbcTemplate, updateSql, updates, updateSetter, batchSize);
+                return new Result(inserts.size(), updates.size(), rows.size() - inserts.size() - updates.size());
+            });
+        } catch (DuplicateKeyException ex) {
+            int[] ordered = rows.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+            BatchUpserts.Result r = transactionTemplate.execute(status -> BatchUpserts.upsert(jdbcTemplate,
+                    ordered.length,
+                    updateSql, (ps, i) -> updateSetter.setValues(ps, ordered[i]),
+                    insertSql, (ps, i) -> insertSetter.setValues(ps, ordered[i])));
+            return new Result(r.inserted(), r.updated(), 0);
+        }
+    }
+
+    private static void read(JdbcTemplate jdbcTemplate, Lookup lookup, RowCallbackHandler handler) {
+        List<Long> ids = lookup.ids();
+        for (int from = 0; from < ids.size(); from += BatchUpserts.IN_CHUNK) {
+            List<Long> part = ids.subList(from, Math.min(ids.size(), from + BatchUpserts.IN_CHUNK));
+            String sql = lookup.sql().formatted(part.stream().map(id -> "?").collect(Collectors.joining(",")));
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                int idx = 1;
+                for (Long id : part) {
+                    ps.setLong(idx++, id);
+                }
+                for (long bound : lookup.bounds()) {
+                    ps.setTimestamp(idx++, new Timestamp(bound));
+                }
+                ps.setFetchSize(5000);
+                return ps;
+            }, handler);
+        }
+    }
+
+    private static void write(JdbcTemplate jdbcTemplate, String sql, List<Integer> rows,
+                              BatchUpserts.RowSetter setter, int batchSize) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows, batchSize, setter::setValues);
+        }
+    }
+}
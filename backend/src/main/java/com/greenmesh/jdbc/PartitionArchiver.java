@@ -0,0 +1,14 @@
+package com.greenmesh.jdbc;
+
+import java.time.LocalDateTime;
+
+/**
+ * Moves a table's rows in {@code [from, to)} somewhere durable before {@link PartitionManager} drops or deletes
+ * them. Bounds are database wall-clock times, the same values the time column holds.
+ */
+public interface PartitionArchiver {
+
+    boolean supports(String table);
+
+    void archive(String table, LocalDateTime from, LocalDateTime to);
+}
@@ -0,0 +1,230 @@
+package com.greenmesh.jdbc;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the time-partitioned fact tables rolling: pre-creates upcoming range partitions and drops (optionally
+ * archiving first) the ones past retention. Partitions are named {@code P<yyyyMMdd>} / {@code P<yyyyMM>} after
+ * their lower bound; partitions with other names are never touched.
+ * <p>
+ * Tables that are not range-partitioned (H2, or DM8 before {@code db/dm8-partitioning.sql} was applied) fall back
+ * to deleting expired rows in short time slices, each its own statement, so no single delete holds locks or undo
+ * for the whole backlog.
+ */
+@Component
+public class PartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionManager.class);
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<PartitionArchiver> archivers;
+    private final boolean enabled;
+    private final int precreate;
+    private final int sliceMinutes;
+    private final List<Policy> policies;
+
+    public PartitionManager(JdbcTemplate jdbcTemplate,
+                            ObjectProvider<PartitionArchiver> archivers,
+                            @Value("${app.partition.enabled:true}") boolean enabled,
+                            @Value("${app.partition.precreate:7}") int precreate,
+                            @Value("${app.partition.fallback-slice-minutes:60}") int sliceMinutes,
+                            @Value("${app.partition.raw.retention-days:180}") int rawRetentionDays,
+                            @Value("${app.partition.raw.archive:false}") boolean rawArchive,
+                            @Value("${app.partition.measurement.retention-days:0}") int measurementRetentionDays,
+                            @Value("${app.partition.measurement.archive:true}") boolean measurementArchive,
+                            @Value("${app.partition.rollup.retention-days:0}") int rollupRetentionDays,
+                            @Value("${app.partition.gen-forecast.retention-days:0}") int genForecastRetentionDays,
+                            @Value("${app.partition.load-forecast.retention-days:30}") int loadForecastRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archivers = archivers;
+        this.enabled = enabled;
+        this.precreate = precreate;
+        this.sliceMinutes = Math.max(1, sliceMinutes);
+        this.policies = List.of(
+                new Policy("RAW_TIMESERIES", "TS", Granularity.DAY, rawRetentionDays, rawArchive),
+                new Policy("TS_MEASUREMENT", "TS", Granularity.DAY, measurementRetentionDays, measurementArchive),
+                new Policy("TS_ROLLUP", "BUCKET_TS", Granularity.MONTH, rollupRetentionDays, false),
+                new Policy("GEN_FORECAST", "FORECAST_ISSUE_TS", Granularity.DAY, genForecastRetentionDays, false),
+                new Policy("LOAD_FORECAST", "FORECAST_ISSUE_TS", Granularity.DAY, loadForecastRetentionDays, false));
+    }
+
+    public enum Granularity {
+        DAY("yyyyMMdd"),
+        MONTH("yyyyMM");
+
+        private final DateTimeFormatter nameFormat;
+
+        Granularity(String pattern) {
+            this.nameFormat = DateTimeFormatter.ofPattern(pattern);
+        }
+
+        public LocalDate floor(LocalDate date) {
+            return this == DAY ? date : date.withDayOfMonth(1);
+        }
+
+        public LocalDate next(LocalDate start) {
+            return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+        }
+
+        public String partitionName(LocalDate start) {
+            return "P" + nameFormat.format(start);
+        }
+    }
+
+    /**
+     * {@code retentionDays <= 0} keeps everything. With {@code archive}, expired rows are only removed once an
+     * archiver has taken them.
+     */
+    public record Policy(String table, String tsColumn, Granularity granularity, int retentionDays, boolean archive) {}
+
+    public record TableReport(String table, boolean partitioned, List<String> created, List<String> dropped,
+                              long deletedRows) {}
+
+    @Scheduled(fixedDelayString = "${app.partition.interval-ms:3600000}",
+            initialDelayString = "${app.partition.initial-delay-ms:300000}")
+    public void scheduledMaintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            maintain(LocalDate.now());
+        } catch (RuntimeException ex) {
+            log.warn("Partition maintenance failed", ex);
+        }
+    }
+
+    public synchronized List<TableReport> maintain(LocalDate today) {
+        List<TableReport> reports = new ArrayList<>(policies.size());
+        for (Policy policy : policies) {
+            reports.add(maintain(policy, today));
+        }
+        return reports;
+    }
+
+    public synchronized TableReport maintain(Policy policy, LocalDate today) {
+        Set<String> existing = partitions(policy.table());
+        if (existing.isEmpty()) {
+            return new TableReport(policy.table(), false, List.of(), List.of(), deleteExpired(policy, today));
+        }
+        Granularity g = policy.granularity();
+        List<String> created = new ArrayList<>();
+        LocalDate start = g.floor(today);
+        for (int i = 0; i <= precreate; i++, start = g.next(start)) {
+            String name = g.partitionName(start);
+            if (!existing.contains(name)) {
+                jdbcTemplate.execute("ALTER TABLE " + policy.table() + " ADD PARTITION " + name
+                        + " VALUES LESS THAN (TIMESTAMP '" + BOUND.format(g.next(start).atStartOfDay()) + "')");
+                created.add(name);
+            }
+        }
+        List<String> dropped = new ArrayList<>();
+        if (policy.retentionDays() > 0) {
+            LocalDate cutoff = today.minusDays(policy.retentionDays());
+            for (String name : existing.stream().sorted().toList()) {
+                LocalDate partStart = parseStart(g, name);
+                if (partStart == null || g.next(partStart).isAfter(cutoff)) {
+                    continue;
+                }
+                if (!archive(policy, partStart.atStartOfDay(), g.next(partStart).atStartOfDay())) {
+                    break;
+                }
+                jdbcTemplate.execute("ALTER TABLE " + policy.table() + " DROP PARTITION " + name);
+                dropped.add(name);
+            }
+        }
+        if (!created.isEmpty() || !dropped.isEmpty()) {
+            log.info("{}: created partitions {}, dropped {}", policy.table(), created, dropped);
+        }
+        return new TableReport(policy.table(), true, created, dropped, 0);
+    }
+
+    private long deleteExpired(Policy policy, LocalDate today) {
+        if (policy.retentionDays() <= 0) {
+            return 0;
+        }
+        LocalDateTime cutoff = today.minusDays(policy.retentionDays()).atStartOfDay();
+        String oldestSql = "SELECT MIN(" + policy.tsColumn() + ") FROM " + policy.table()
+                + " WHERE " + policy.tsColumn() + " < ?";
+        String deleteSql = "DELETE FROM " + policy.table() + " WHERE " + policy.tsColumn() + " >= ? AND "
+                + policy.tsColumn() + " < ?";
+        Timestamp oldest = jdbcTemplate.queryForObject(oldestSql, Timestamp.class, Timestamp.valueOf(cutoff));
+        if (oldest == null || !archive(policy, oldest.toLocalDateTime(), cutoff)) {
+            return 0;
+        }
+        long deleted = 0;
+        while (oldest != null) {
+            // restart from the oldest remaining row so sparse history does not cost one statement per empty slice
+            LocalDateTime from = oldest.toLocalDateTime();
+            LocalDateTime to = from.plusMinutes(sliceMinutes);
+            if (to.isAfter(cutoff)) {
+                to = cutoff;
+            }
+            deleted += jdbcTemplate.update(deleteSql, Timestamp.valueOf(from), Timestamp.valueOf(to));
+            oldest = jdbcTemplate.queryForObject(oldestSql, Timestamp.class, Timestamp.valueOf(cutoff));
+        }
+        if (deleted > 0) {
+            log.info("{}: deleted {} rows older than {}", policy.table(), deleted, cutoff);
+        }
+        return deleted;
+    }
+
+    private boolean archive(Policy policy, LocalDateTime from, LocalDateTime to) {
+        if (!policy.archive()) {
+            return true;
+        }
+        PartitionArchiver archiver = archivers.orderedStream()
+                .filter(a -> a.supports(policy.table()))
+                .findFirst()
+                .orElse(null);
+        if (archiver == null) {
+            log.warn("{}: archive requested but no archiver is available; keeping expired rows", policy.table());
+            return false;
+        }
+        archiver.archive(policy.table(), from, to);
+        return true;
+    }
+
+    /**
+     * Range partition names of {@code table}, empty when the table is not partitioned or the catalog view does not
+     * exist (H2).
+     */
+    private Set<String> partitions(String table) {
+        try {
+            return new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT PARTITION_NAME FROM USER_TAB_PARTITIONS WHERE TABLE_NAME = ?", String.class, table));
+        } catch (DataAccessException ex) {
+            return Set.of();
+        }
+    }
+
+    private static LocalDate parseStart(Granularity g, String name) {
+        if (!name.startsWith("P")) {
+            return null;
+        }
+        try {
+            String digits = name.substring(1);
+            return g == Granularity.DAY
+                    ? LocalDate.parse(digits, DateTimeFormatter.BASIC_ISO_DATE)
+                    : LocalDate.parse(digits + "01", DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+}
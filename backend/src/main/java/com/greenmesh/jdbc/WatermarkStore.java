@@ -0,0 +1,44 @@
+package com.greenmesh.jdbc;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WatermarkStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public WatermarkStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<Watermark> get(String name) {
+        List<Watermark> rows = jdbcTemplate.query(
+                "SELECT NAME, LAST_ID, LAST_TS FROM PIPELINE_WATERMARK WHERE NAME = ?",
+                (rs, rowNum) -> new Watermark(
+                        rs.getString("NAME"),
+                        rs.getObject("LAST_ID") != null ? rs.getLong("LAST_ID") : null,
+                        rs.getTimestamp("LAST_TS") != null ? rs.getTimestamp("LAST_TS").toInstant() : null),
+                name);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    public void save(String name, Long lastId, Instant lastTs) {
+        Timestamp ts = lastTs != null ? Timestamp.from(lastTs) : null;
+        int updated = jdbcTemplate.update(
+                "UPDATE PIPELINE_WATERMARK SET LAST_ID = ?, LAST_TS = ?, UPDATED_AT = CURRENT_TIMESTAMP WHERE NAME = ?",
+                lastId, ts, name);
+        if (updated == 0) {
+            jdbcTemplate.update(
+                    "INSERT INTO PIPELINE_WATERMARK (NAME, LAST_ID, LAST_TS, UPDATED_AT) VALUES (?,?,?, CURRENT_TIMESTAMP)",
+                    name, lastId, ts);
+        }
+    }
+
+    public record Watermark(String name, Long lastId, Instant lastTs) {}
+}
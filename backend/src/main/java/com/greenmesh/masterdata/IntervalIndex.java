@@ -0,0 +1,265 @@
+package com.greenmesh.masterdata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable "which value applies at t" lookup over half-open intervals [from, to), one series per key. A series is
+ * a set of parallel primitive arrays sorted by start and searched by bisection. Where input intervals overlap, the
+ * later start wins and the earlier interval is cut short, so a series never overlaps itself and its ends are
+ * sorted as well. Coordinates are opaque longs: epoch millis for tariff and intensity slots, epoch days for factor
+ * validity.
+ */
+public final class IntervalIndex<K> {
+
+    private final Map<K, Series> series;
+
+    private IntervalIndex(Map<K, Series> series) {
+        this.series = Collections.unmodifiableMap(series);
+    }
+
+    public static <K> Builder<K> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * The series of {@code key}; empty (never null) when the key has no intervals.
+     */
+    public Series series(K key) {
+        return series.getOrDefault(key, Series.EMPTY);
+    }
+
+    public Set<K> keys() {
+        return series.keySet();
+    }
+
+    public int size() {
+        int n = 0;
+        for (Series s : series.values()) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntervalIndex<?> other && series.equals(other.series);
+    }
+
+    @Override
+    public int hashCode() {
+        return series.hashCode();
+    }
+
+    public static final class Series {
+
+        static final Series EMPTY = new Series(new long[0], new long[0], new double[0], new long[0], new String[0]);
+
+        private final long[] from;
+        private final long[] to;
+        private final double[] value;
+        private final long[] id;
+        private final String[] label;
+
+        private Series(long[] from, long[] to, double[] value, long[] id, String[] label) {
+            this.from = from;
+            this.to = to;
+            this.value = value;
+            this.id = id;
+            this.label = label;
+        }
+
+        public int size() {
+            return from.length;
+        }
+
+        public long from(int i) {
+            return from[i];
+        }
+
+        public long to(int i) {
+            return to[i];
+        }
+
+        public double value(int i) {
+            return value[i];
+        }
+
+        public long id(int i) {
+            return id[i];
+        }
+
+        public String label(int i) {
+            return label[i];
+        }
+
+        /**
+         * Position of the interval containing {@code at}, or -1.
+         */
+        public int indexAt(long at) {
+            int i = floor(at);
+            return i >= 0 && at < to[i] ? i : -1;
+        }
+
+        public double valueAt(long at, double missing) {
+            int i = indexAt(at);
+            return i >= 0 ? value[i] : missing;
+        }
+
+        /**
+         * Values at {@code start + k * step} for every k of {@code out}, {@code missing} where no interval applies.
+         * One bisection for the first point, then a forward merge over both sorted sequences.
+         */
+        public double[] valuesOn(long start, long step, double[] out, double missing) {
+            int n = from.length;
+            int i = Math.max(0, floor(start));
+            long at = start;
+            for (int k = 0; k < out.length; k++, at += step) {
+                while (i < n && to[i] <= at) {
+                    i++;
+                }
+                out[k] = i < n && from[i] <= at ? value[i] : missing;
+            }
+            return out;
+        }
+
+        /**
+         * Position of the first interval ending after {@code at}: with {@link #floor}, the range of intervals
+         * overlapping a window.
+         */
+        public int firstEndingAfter(long at) {
+            int lo = 0;
+            int hi = to.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (to[mid] <= at) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Position of the last interval starting at or before {@code at}, or -1.
+         */
+        public int floor(long at) {
+            int lo = 0;
+            int hi = from.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (from[mid] <= at) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Series other && Arrays.equals(from, other.from) && Arrays.equals(to, other.to)
+                    && Arrays.equals(value, other.value) && Arrays.equals(id, other.id)
+                    && Arrays.equals(label, other.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(from) + Arrays.hashCode(value);
+        }
+    }
+
+    public static final class Builder<K> {
+
+        private final Map<K, Rows> rows = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds [from, to); empty or inverted intervals are ignored.
+         */
+        public Builder<K> add(K key, long from, long to, double value, long id, String label) {
+            if (to > from) {
+                rows.computeIfAbsent(key, k -> new Rows()).add(from, to, value, id, label);
+            }
+            return this;
+        }
+
+        public IntervalIndex<K> build() {
+            Map<K, Series> built = new LinkedHashMap<>();
+            rows.forEach((key, r) -> built.put(key, r.toSeries()));
+            return new IntervalIndex<>(built);
+        }
+    }
+
+    private static final class Rows {
+        long[] from = new long[16];
+        long[] to = new long[16];
+        double[] value = new double[16];
+        long[] id = new long[16];
+        String[] label = new String[16];
+        int size;
+        boolean sorted = true;
+
+        void add(long f, long t, double v, long i, String l) {
+            if (size == from.length) {
+                int capacity = size * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                value = Arrays.copyOf(value, capacity);
+                id = Arrays.copyOf(id, capacity);
+                label = Arrays.copyOf(label, capacity);
+            }
+            if (size > 0 && (f < from[size - 1] || f == from[size - 1] && i < id[size - 1])) {
+                sorted = false;
+            }
+            from[size] = f;
+            to[size] = t;
+            value[size] = v;
+            id[size] = i;
+            label[size] = l;
+            size++;
+        }
+
+        Series toSeries() {
+            Integer[] order = new Integer[size];
+            for (int k = 0; k < size; k++) {
+                order[k] = k;
+            }
+            if (!sorted) {
+                // rows loaded with ORDER BY skip this; ties go to the higher id, which then wins below
+                Arrays.sort(order, Comparator.<Integer>comparingLong(k -> from[k]).thenComparingLong(k -> id[k]));
+            }
+            long[] f = new long[size];
+            long[] t = new long[size];
+            double[] v = new double[size];
+            long[] i = new long[size];
+            String[] l = new String[size];
+            int n = 0;
+            for (int k = 0; k < size; k++) {
+                int row = order[k];
+                if (n > 0 && t[n - 1] > from[row]) {
+                    t[n - 1] = from[row];
+                    if (t[n - 1] <= f[n - 1]) {
+                        n--;
+                    }
+                }
+                f[n] = from[row];
+                t[n] = to[row];
+                v[n] = value[row];
+                i[n] = id[row];
+                l[n] = label[row];
+                n++;
+            }
+            return new Series(Arrays.copyOf(f, n), Arrays.copyOf(t, n), Arrays.copyOf(v, n), Arrays.copyOf(i, n),
+                    Arrays.copyOf(l, n));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.greenmesh.masterdata;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable copy of the DIM_* tables with the lookups the API needs. A new instance is built on every refresh and
+ * swapped in whole, so readers never see a half-updated view. {@code etag} is a hash of the content: reloading
+ * unchanged data yields the same value.
+ */
+public final class MasterDataSnapshot {
+
+    private final long version;
+    private final String etag;
+    private final List<Park> parks;
+    private final List<Enterprise> enterprises;
+    private final List<Asset> assets;
+    private final List<MeterPoint> meterPoints;
+    private final List<PriceZone> priceZones;
+    private final List<CarbonFactor> carbonFactors;
+
+    private final Map<Long, Park> parkById;
+    private final Map<Long, Asset> assetById;
+    private final Map<Long, MeterPoint> pointById;
+    private final Map<Long, List<Enterprise>> enterprisesByPark;
+    private final Map<Long, List<Asset>> assetsByPark;
+    private final Map<Long, List<Asset>> assetsByEnt;
+    private final Map<Long, List<MeterPoint>> pointsByPark;
+    private final Map<Long, List<MeterPoint>> pointsByAsset;
+    private final Map<Long, List<MeterPoint>> pointsByEnt;
+    private final Map<String, List<MeterPoint>> pointsByEnergyType;
+    private final Map<Long, List<PriceZone>> priceZonesByPark;
+    private final Map<String, List<CarbonFactor>> carbonFactorsByEnergyType;
+
+    MasterDataSnapshot(long version, String etag, List<Park> parks, List<Enterprise> enterprises, List<Asset> assets,
+                       List<MeterPoint> meterPoints, List<PriceZone> priceZones, List<CarbonFactor> carbonFactors) {
+        this.version = version;
+        this.etag = etag;
+        this.parks = List.copyOf(parks);
+        this.enterprises = List.copyOf(enterprises);
+        this.assets = List.copyOf(assets);
+        this.meterPoints = List.copyOf(meterPoints);
+        this.priceZones = List.copyOf(priceZones);
+        this.carbonFactors = List.copyOf(carbonFactors);
+
+        this.parkById = byId(this.parks, Park::id);
+        this.assetById = byId(this.assets, Asset::id);
+        this.pointById = byId(this.meterPoints, MeterPoint::id);
+        this.enterprisesByPark = group(this.enterprises, Enterprise::parkId);
+        this.assetsByPark = group(this.assets, Asset::parkId);
+        this.assetsByEnt = group(this.assets, Asset::entId);
+        this.pointsByPark = group(this.meterPoints, MeterPoint::parkId);
+        this.pointsByAsset = group(this.meterPoints, MeterPoint::assetId);
+        this.pointsByEnt = group(this.meterPoints, MeterPoint::entId);
+        this.pointsByEnergyType = group(this.meterPoints, MeterPoint::energyType);
+        this.priceZonesByPark = group(this.priceZones, PriceZone::parkId);
+        this.carbonFactorsByEnergyType = group(this.carbonFactors, CarbonFactor::energyType);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public List<Park> parks() {
+        return parks;
+    }
+
+    public Park park(long parkId) {
+        return parkById.get(parkId);
+    }
+
+    public Asset asset(long assetId) {
+        return assetById.get(assetId);
+    }
+
+    public MeterPoint meterPoint(long pointId) {
+        return pointById.get(pointId);
+    }
+
+    public List<Enterprise> enterprises(Long parkId) {
+        return parkId == null ? enterprises : enterprisesByPark.getOrDefault(parkId, List.of());
+    }
+
+    public List<Asset> assets(Long parkId, Long entId, String assetType) {
+        List<Asset> base = entId != null ? assetsByEnt.getOrDefault(entId, List.of())
+                : parkId != null ? assetsByPark.getOrDefault(parkId, List.of())
+                : assets;
+        return filter(base.stream()
+                .filter(a -> parkId == null || parkId.equals(a.parkId()))
+                .filter(a -> assetType == null || assetType.equals(a.assetType())), base);
+    }
+
+    public List<MeterPoint> meterPoints(Long parkId, Long assetId, Long entId, String energyType) {
+        List<MeterPoint> base = assetId != null ? pointsByAsset.getOrDefault(assetId, List.of())
+                : entId != null ? pointsByEnt.getOrDefault(entId, List.of())
+                : parkId != null ? pointsByPark.getOrDefault(parkId, List.of())
+                : energyType != null ? pointsByEnergyType.getOrDefault(energyType, List.of())
+                : meterPoints;
+        return filter(base.stream()
+                .filter(p -> parkId == null || parkId.equals(p.parkId()))
+                .filter(p -> entId == null || entId.equals(p.entId()))
+                .filter(p -> energyType == null || energyType.equals(p.energyType())), base);
+    }
+
+    public List<PriceZone> priceZones(Long parkId) {
+        return parkId == null ? priceZones : priceZonesByPark.getOrDefault(parkId, List.of());
+    }
+
+    public List<CarbonFactor> carbonFactors(String region, String energyType, LocalDate activeOn) {
+        List<CarbonFactor> base = energyType != null
+                ? carbonFactorsByEnergyType.getOrDefault(energyType, List.of())
+                : carbonFactors;
+        Date day = activeOn != null ? Date.valueOf(activeOn) : null;
+        return filter(base.stream()
+                .filter(f -> region == null || region.equals(f.region()))
+                .filter(f -> day == null || f.activeOn(day)), base);
+    }
+
+    // returns the indexed list itself when no residual filter removed anything
+    private static <T> List<T> filter(Stream<T> filtered, List<T> base) {
+        List<T> result = filtered.toList();
+        return result.size() == base.size() ? base : result;
+    }
+
+    private static <T> Map<Long, T> byId(List<T> rows, Function<T, Long> id) {
+        Map<Long, T> map = new LinkedHashMap<>();
+        for (T row : rows) {
+            map.put(id.apply(row), row);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static <K, T> Map<K, List<T>> group(List<T> rows, Function<T, K> key) {
+        return rows.stream()
+                .filter(r -> key.apply(r) != null)
+                .collect(Collectors.collectingAndThen(
+                        Collectors.groupingBy(key, LinkedHashMap::new, Collectors.toUnmodifiableList()),
+                        Collections::unmodifiableMap));
+    }
+
+    public record Park(Long id, String name, String region, String timezone, String boundaryGeojson) {}
+
+    public record Enterprise(Long id, Long parkId, String name, String industry, boolean isKeyUser, String contact) {}
+
+    public record Asset(Long id, Long parkId, Long entId, String assetType, String name, String vendor, String modelNo,
+                        Double ratedCapacity, String status) {}
+
+    public record MeterPoint(Long id, Long parkId, Long entId, Long assetId, String energyType, String measType,
+                             String unit, Integer samplingIntervalSec, String protocol, String tagAddress,
+                             boolean isCritical) {}
+
+    public record PriceZone(Long id, Long parkId, String gridCompany, String tariffRuleVersion) {}
+
+    public record CarbonFactor(Long id, String region, String energyType, Double factorValue, String unit,
+                               Date effectiveFrom, Date effectiveTo, String source, boolean isDefault) {
+
+        boolean activeOn(Date day) {
+            return !effectiveFrom.after(day) && (effectiveTo == null || !effectiveTo.before(day));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.greenmesh.masterdata;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.List;
+
+import com.greenmesh.masterdata.MasterDataSnapshot.Asset;
+import com.greenmesh.masterdata.MasterDataSnapshot.CarbonFactor;
+import com.greenmesh.masterdata.MasterDataSnapshot.Enterprise;
+import com.greenmesh.masterdata.MasterDataSnapshot.MeterPoint;
+import com.greenmesh.masterdata.MasterDataSnapshot.Park;
+import com.greenmesh.masterdata.MasterDataSnapshot.PriceZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds the current {@link MasterDataSnapshot}; writers in this process call {@link #refresh()} after changing a
+ * DIM_* table, everything else is picked up by the {@link SnapshotStore} schedule.
+ */
+@Component
+public class MasterDataStore extends SnapshotStore<MasterDataSnapshot> {
+
+    private static final Logger log = LoggerFactory.getLogger(MasterDataStore.class);
+
+    private static final String SIGNATURE_SQL = """
+            SELECT (SELECT COUNT(*) FROM DIM_PARK), (SELECT MAX(PARK_ID) FROM DIM_PARK),
+                   (SELECT COUNT(*) FROM DIM_ENTERPRISE), (SELECT MAX(ENT_ID) FROM DIM_ENTERPRISE),
+                   (SELECT COUNT(*) FROM DIM_ASSET), (SELECT MAX(ASSET_ID) FROM DIM_ASSET),
+                   (SELECT COUNT(*) FROM DIM_METER_POINT), (SELECT MAX(POINT_ID) FROM DIM_METER_POINT),
+                   (SELECT COUNT(*) FROM DIM_PRICE_ZONE), (SELECT MAX(ZONE_ID) FROM DIM_PRICE_ZONE),
+                   (SELECT COUNT(*) FROM DIM_CARBON_FACTOR), (SELECT MAX(FACTOR_ID) FROM DIM_CARBON_FACTOR)
+            FROM DUAL
+            """;
+
+    public MasterDataStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        super("Master data", SIGNATURE_SQL, jdbcTemplate, transactionTemplate);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        MasterDataSnapshot loaded = refresh();
+        log.info("Master data loaded: {} parks, {} assets, {} meter points (etag {})",
+                loaded.parks().size(), loaded.assets(null, null, null).size(),
+                loaded.meterPoints(null, null, null, null).size(), loaded.etag());
+    }
+
+    @Override
+    protected MasterDataSnapshot reload(MasterDataSnapshot current) {
+        MasterDataSnapshot loaded = load(current != null ? current.version() + 1 : 1);
+        return current != null && current.etag().equals(loaded.etag()) ? current : loaded;
+    }
+
+    private MasterDataSnapshot load(long version) {
+        List<Park> parks = jdbcTemplate.query("""
+                SELECT PARK_ID, NAME, REGION, TIMEZONE, BOUNDARY_GEOJSON
+                FROM DIM_PARK
+                ORDER BY PARK_ID
+                """, new ParkMapper());
+        List<Enterprise> enterprises = jdbcTemplate.query("""
+                SELECT ENT_ID, PARK_ID, NAME, INDUSTRY, IS_KEY_USER, CONTACT
+                FROM DIM_ENTERPRISE
+                ORDER BY ENT_ID
+                """, new EnterpriseMapper());
+        List<Asset> assets = jdbcTemplate.query("""
+                SELECT ASSET_ID, PARK_ID, ENT_ID, ASSET_TYPE, NAME, VENDOR, MODEL_NO, RATED_CAPACITY, STATUS
+                FROM DIM_ASSET
+                ORDER BY ASSET_ID
+                """, new AssetMapper());
+        List<MeterPoint> points = jdbcTemplate.query("""
+                SELECT POINT_ID, PARK_ID, ENT_ID, ASSET_ID, ENERGY_TYPE, MEAS_TYPE, UNIT,
+                       SAMPLING_INTERVAL_S, PROTOCOL, TAG_ADDRESS, IS_CRITICAL
+                FROM DIM_METER_POINT
+                ORDER BY POINT_ID
+                """, new MeterPointMapper());
+        List<PriceZone> zones = jdbcTemplate.query("""
+                SELECT ZONE_ID, PARK_ID, GRID_COMPANY, TARIFF_RULE_VERSION
+                FROM DIM_PRICE_ZONE
+                ORDER BY ZONE_ID
+                """, new PriceZoneMapper());
+        List<CarbonFactor> factors = jdbcTemplate.query("""
+                SELECT FACTOR_ID, REGION, ENERGY_TYPE, FACTOR_VALUE, UNIT, EFFECTIVE_FROM, EFFECTIVE_TO, SOURCE, IS_DEFAULT
+                FROM DIM_CARBON_FACTOR
+                ORDER BY FACTOR_ID
+                """, new CarbonFactorMapper());
+        String etag = contentHash(parks, enterprises, assets, points, zones, factors);
+        return new MasterDataSnapshot(version, etag, parks, enterprises, assets, points, zones, factors);
+    }
+
+    private static String contentHash(List<?>... tables) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (List<?> rows : tables) {
+                for (Object row : rows) {
+                    // records render every component, so toString() covers the full row content
+                    digest.update(row.toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '\n');
+                }
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 12);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static class ParkMapper implements RowMapper<Park> {
+        @Override
+        public Park mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new Park(
+                    rs.getLong("PARK_ID"),
+                    rs.getString("NAME"),
+                    rs.getString("REGION"),
+                    rs.getString("TIMEZONE"),
+                    rs.getString("BOUNDARY_GEOJSON"));
+        }
+    }
+
+    static class EnterpriseMapper implements RowMapper<Enterprise> {
+        @Override
+        public Enterprise mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new Enterprise(
+                    rs.getLong("ENT_ID"),
+                    rs.getLong("PARK_ID"),
+                    rs.getString("NAME"),
+                    rs.getString("INDUSTRY"),
+                    "Y".equalsIgnoreCase(rs.getString("IS_KEY_USER")),
+                    rs.getString("CONTACT"));
+        }
+    }
+
+    static class AssetMapper implements RowMapper<Asset> {
+        @Override
+        public Asset mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Double rated = rs.getObject("RATED_CAPACITY") != null ? rs.getDouble("RATED_CAPACITY") : null;
+            return new Asset(
+                    rs.getLong("ASSET_ID"),
+                    rs.getLong("PARK_ID"),
+                    rs.getObject("ENT_ID") != null ? rs.getLong("ENT_ID") : null,
+                    rs.getString("ASSET_TYPE"),
+                    rs.getString("NAME"),
+                    rs.getString("VENDOR"),
+                    rs.getString("MODEL_NO"),
+                    rated,
+                    rs.getString("STATUS"));
+        }
+    }
+
+    static class MeterPointMapper implements RowMapper<MeterPoint> {
+        @Override
+        public MeterPoint mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new MeterPoint(
+                    rs.getLong("POINT_ID"),
+                    rs.getLong("PARK_ID"),
+                    rs.getObject("ENT_ID") != null ? rs.getLong("ENT_ID") : null,
+                    rs.getObject("ASSET_ID") != null ? rs.getLong("ASSET_ID") : null,
+                    rs.getString("ENERGY_TYPE"),
+                    rs.getString("MEAS_TYPE"),
+                    rs.getString("UNIT"),
+                    rs.getObject("SAMPLING_INTERVAL_S") != null ? rs.getInt("SAMPLING_INTERVAL_S") : null,
+                    rs.getString("PROTOCOL"),
+                    rs.getString("TAG_ADDRESS"),
+                    "Y".equalsIgnoreCase(rs.getString("IS_CRITICAL")));
+        }
+    }
+
+    static class PriceZoneMapper implements RowMapper<PriceZone> {
+        @Override
+        public PriceZone mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new PriceZone(
+                    rs.getLong("ZONE_ID"),
+                    rs.getLong("PARK_ID"),
+                    rs.getString("GRID_COMPANY"),
+                    rs.getString("TARIFF_RULE_VERSION"));
+        }
+    }
+
+    static class CarbonFactorMapper implements RowMapper<CarbonFactor> {
+        @Override
+        public CarbonFactor mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Double factorValue = rs.getObject("FACTOR_VALUE") != null ? rs.getDouble("FACTOR_VALUE") : null;
+            return new CarbonFactor(
+                    rs.getLong("FACTOR_ID"),
+                    rs.getString("REGION"),
+                    rs.getString("ENERGY_TYPE"),
+                    factorValue,
+                    rs.getString("UNIT"),
+                    rs.getDate("EFFECTIVE_FROM"),
+                    rs.getDate("EFFECTIVE_TO"),
+                    rs.getString("SOURCE"),
+                    "Y".equalsIgnoreCase(rs.getString("IS_DEFAULT")));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.greenmesh.masterdata;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.greenmesh.masterdata.MasterDataSnapshot.Asset;
+import com.greenmesh.masterdata.MasterDataSnapshot.MeterPoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Valid meter point ids, derived from the current {@link MasterDataSnapshot} and rebuilt whenever its version moves.
+ * Ingest checks samples here instead of letting FK_RAW_POINT fail a whole JDBC batch. An id that is not found
+ * triggers a (throttled) version check first, so points created moments ago by another process are still accepted.
+ */
+@Component
+public class MeterPointRegistry {
+
+    private static final byte ABSENT = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte DECOMMISSIONED = 2;
+
+    private final MasterDataStore store;
+    private final long recheckMillis;
+    private volatile Points points;
+    private volatile long lastRecheck;
+
+    public MeterPointRegistry(MasterDataStore store,
+                              @Value("${app.ingest.registry.recheck-ms:1000}") long recheckMillis) {
+        this.store = store;
+        this.recheckMillis = recheckMillis;
+    }
+
+    /**
+     * Returns why samples for {@code pointId} cannot be stored, or {@code null} if they can.
+     */
+    public String rejectReason(long pointId) {
+        byte state = current().state(pointId);
+        if (state == ABSENT && recheckDue()) {
+            store.refreshIfChanged();
+            state = current().state(pointId);
+        }
+        return switch (state) {
+            case ACTIVE -> null;
+            case DECOMMISSIONED -> "decommissioned pointId " + pointId;
+            default -> "unknown pointId " + pointId;
+        };
+    }
+
+    public int size() {
+        return current().size;
+    }
+
+    private Points current() {
+        MasterDataSnapshot snapshot = store.snapshot();
+        Points p = points;
+        if (p == null || p.version != snapshot.version()) {
+            // concurrent rebuilds of the same version are harmless; the last one wins
+            p = Points.of(snapshot);
+            points = p;
+        }
+        return p;
+    }
+
+    private boolean recheckDue() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastRecheck < recheckMillis) {
+                return false;
+            }
+            lastRecheck = now;
+            return true;
+        }
+    }
+
+    /**
+     * Bitmaps over the id range when ids are dense (the usual IDENTITY case), otherwise a sorted id array searched
+     * by bisection.
+     */
+    private static final class Points {
+        private final long version;
+        private final int size;
+        private final BitSet active;
+        private final BitSet retired;
+        private final long[] sortedIds;
+        private final byte[] states;
+
+        private Points(long version, int size, BitSet active, BitSet retired, long[] sortedIds, byte[] states) {
+            this.version = version;
+            this.size = size;
+            this.active = active;
+            this.retired = retired;
+            this.sortedIds = sortedIds;
+            this.states = states;
+        }
+
+        static Points of(MasterDataSnapshot snapshot) {
+            List<MeterPoint> all = snapshot.meterPoints(null, null, null, null);
+            long maxId = 0;
+            boolean negative = false;
+            for (MeterPoint p : all) {
+                maxId = Math.max(maxId, p.id());
+                negative |= p.id() < 0;
+            }
+            if (!negative && maxId < Integer.MAX_VALUE && maxId <= 64L * all.size() + 4096) {
+                BitSet active = new BitSet((int) maxId + 1);
+                BitSet retired = new BitSet();
+                for (MeterPoint p : all) {
+                    (decommissioned(snapshot, p) ? retired : active).set((int) (long) p.id());
+                }
+                return new Points(snapshot.version(), all.size(), active, retired, null, null);
+            }
+            long[] ids = new long[all.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = all.get(i).id();
+            }
+            Arrays.sort(ids);
+            byte[] states = new byte[ids.length];
+            for (MeterPoint p : all) {
+                states[Arrays.binarySearch(ids, p.id())] = decommissioned(snapshot, p) ? DECOMMISSIONED : ACTIVE;
+            }
+            return new Points(snapshot.version(), all.size(), null, null, ids, states);
+        }
+
+        byte state(long pointId) {
+            if (active != null) {
+                if (pointId < 0 || pointId > Integer.MAX_VALUE) {
+                    return ABSENT;
+                }
+                int id = (int) pointId;
+                return active.get(id) ? ACTIVE : retired.get(id) ? DECOMMISSIONED : ABSENT;
+            }
+            int i = Arrays.binarySearch(sortedIds, pointId);
+            return i < 0 ? ABSENT : states[i];
+        }
+
+        private static boolean decommissioned(MasterDataSnapshot snapshot, MeterPoint p) {
+            Asset asset = p.assetId() != null ? snapshot.asset(p.assetId()) : null;
+            return asset != null && "DECOMMISSIONED".equalsIgnoreCase(asset.status());
+        }
+    }
+}
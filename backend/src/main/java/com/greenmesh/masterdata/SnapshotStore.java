@@ -0,0 +1,103 @@
+package com.greenmesh.masterdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds one in-memory snapshot of a set of tables. Writers in this process call {@link #refresh()} after changing
+ * them; changes made elsewhere (other instances, SQL consoles) are picked up by a periodic signature check (row count
+ * and max id per table) and, for in-place updates, by a slower full reload. Readers only ever touch the snapshot.
+ */
+abstract class SnapshotStore<S> {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+    protected final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+    private final String name;
+    private final String signatureSql;
+    private volatile S snapshot;
+    private volatile String signature;
+
+    /**
+     * {@code signatureSql} returns one row of numeric columns that changes whenever a row is added or removed.
+     */
+    SnapshotStore(String name, String signatureSql, JdbcTemplate jdbcTemplate,
+                  TransactionTemplate transactionTemplate) {
+        this.name = name;
+        this.signatureSql = signatureSql;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTx = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    public S snapshot() {
+        S current = snapshot;
+        return current != null ? current : refresh();
+    }
+
+    /**
+     * Reloads the tables and swaps the snapshot in; the version only moves when the content changed.
+     */
+    public synchronized S refresh() {
+        String sig = currentSignature();
+        S current = snapshot;
+        S loaded = readOnlyTx.execute(status -> reload(current));
+        snapshot = loaded;
+        signature = sig;
+        return loaded;
+    }
+
+    /**
+     * Reads the tables inside a read-only transaction; returns {@code current} (null on the first load) when the
+     * content is unchanged.
+     */
+    protected abstract S reload(S current);
+
+    protected final S current() {
+        return snapshot;
+    }
+
+    /**
+     * Swaps in a snapshot derived without reading the tables; callers hold the store's lock.
+     */
+    protected final void publish(S next) {
+        snapshot = next;
+    }
+
+    @Scheduled(fixedDelayString = "${app.masterdata.check-interval-ms:30000}",
+            initialDelayString = "${app.masterdata.check-interval-ms:30000}")
+    public void refreshIfChanged() {
+        try {
+            if (snapshot == null || !currentSignature().equals(signature)) {
+                refresh();
+            }
+        } catch (RuntimeException ex) {
+            log.warn("{} version check failed", name, ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.masterdata.full-reload-ms:600000}",
+            initialDelayString = "${app.masterdata.full-reload-ms:600000}")
+    public void scheduledReload() {
+        try {
+            refresh();
+        } catch (RuntimeException ex) {
+            log.warn("{} reload failed", name, ex);
+        }
+    }
+
+    private String currentSignature() {
+        return jdbcTemplate.queryForObject(signatureSql, (rs, rowNum) -> {
+            StringBuilder sig = new StringBuilder();
+            int columns = rs.getMetaData().getColumnCount();
+            for (int i = 1; i <= columns; i++) {
+                sig.append(rs.getLong(i)).append(',');
+            }
+            return sig.toString();
+        });
+    }
+}
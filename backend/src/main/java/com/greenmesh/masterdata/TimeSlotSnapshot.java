@@ -0,0 +1,39 @@
+package com.greenmesh.masterdata;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable interval indexes over the time-slotted reference data, swapped in whole by {@link TimeSlotStore}:
+ * <ul>
+ *     <li>{@code prices}: PRICE_TIMESLOT by zone id, epoch millis, value = PRICE_PER_KWH, label = PRICE_TYPE</li>
+ *     <li>{@code intensity}: CARBON_INTENSITY_TIMESLOT by region, epoch millis, value in g/kWh, label = SOURCE.
+ *     A reading applies from its TS until the next reading, at most one hour.</li>
+ *     <li>{@code factors}: DIM_CARBON_FACTOR validity by {@link FactorKey}, epoch days (EFFECTIVE_TO inclusive),
+ *     value = FACTOR_VALUE, id = FACTOR_ID. Default factors are indexed a second time under a null region.</li>
+ * </ul>
+ * {@code etag} follows the content of all three plus the master data version the factors were taken from.
+ */
+public record TimeSlotSnapshot(long version, String etag, long masterDataVersion, IntervalIndex<Long> prices,
+                               IntervalIndex<String> intensity, IntervalIndex<FactorKey> factors) {
+
+    /**
+     * Factor in force on {@code day}: the region's own first, then the default one; null when neither applies.
+     */
+    public FactorHit factor(String region, String energyType, LocalDate day) {
+        long epochDay = day.toEpochDay();
+        if (region != null) {
+            IntervalIndex.Series own = factors.series(new FactorKey(region, energyType));
+            int i = own.indexAt(epochDay);
+            if (i >= 0) {
+                return new FactorHit(own.id(i), own.value(i));
+            }
+        }
+        IntervalIndex.Series defaults = factors.series(new FactorKey(null, energyType));
+        int i = defaults.indexAt(epochDay);
+        return i >= 0 ? new FactorHit(defaults.id(i), defaults.value(i)) : null;
+    }
+
+    public record FactorKey(String region, String energyType) {}
+
+    public record FactorHit(long factorId, double value) {}
+}
@@ -0,0 +1,163 @@
+package com.greenmesh.masterdata;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import com.greenmesh.masterdata.MasterDataSnapshot.CarbonFactor;
+import com.greenmesh.masterdata.TimeSlotSnapshot.FactorKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds the current {@link TimeSlotSnapshot}. Tariff and intensity slots are reloaded on the {@link SnapshotStore}
+ * schedule; writers in this process call {@link #refresh()}. Factor validity comes from the master data snapshot and
+ * is re-indexed whenever its version moves.
+ */
+@Component
+public class TimeSlotStore extends SnapshotStore<TimeSlotSnapshot> {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSlotStore.class);
+
+    private static final String SIGNATURE_SQL = """
+            SELECT (SELECT COUNT(*) FROM PRICE_TIMESLOT), (SELECT MAX(ID) FROM PRICE_TIMESLOT),
+                   (SELECT COUNT(*) FROM CARBON_INTENSITY_TIMESLOT), (SELECT MAX(ID) FROM CARBON_INTENSITY_TIMESLOT)
+            FROM DUAL
+            """;
+    private static final long HOUR_MS = 3_600_000L;
+
+    private final MasterDataStore masterData;
+
+    public TimeSlotStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         MasterDataStore masterData) {
+        super("Time slot", SIGNATURE_SQL, jdbcTemplate, transactionTemplate);
+        this.masterData = masterData;
+    }
+
+    @Override
+    public TimeSlotSnapshot snapshot() {
+        TimeSlotSnapshot current = current();
+        if (current == null) {
+            return refresh();
+        }
+        MasterDataSnapshot dims = masterData.snapshot();
+        return current.masterDataVersion() == dims.version() ? current : reindexFactors(dims);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        TimeSlotSnapshot loaded = refresh();
+        log.info("Time slots loaded: {} tariff, {} intensity, {} factor intervals (etag {})",
+                loaded.prices().size(), loaded.intensity().size(), loaded.factors().size(), loaded.etag());
+    }
+
+    @Override
+    protected TimeSlotSnapshot reload(TimeSlotSnapshot current) {
+        MasterDataSnapshot dims = masterData.snapshot();
+        IntervalIndex.Builder<Long> prices = IntervalIndex.builder();
+        jdbcTemplate.query("""
+                SELECT ID, ZONE_ID, START_TS, END_TS, PRICE_PER_KWH, PRICE_TYPE
+                FROM PRICE_TIMESLOT
+                WHERE PRICE_PER_KWH IS NOT NULL
+                ORDER BY ZONE_ID, START_TS, ID
+                """, rs -> {
+            prices.add(rs.getLong(2), rs.getTimestamp(3).getTime(), rs.getTimestamp(4).getTime(),
+                    rs.getDouble(5), rs.getLong(1), rs.getString(6));
+        });
+        IntervalIndex.Builder<String> intensity = IntervalIndex.builder();
+        jdbcTemplate.query("""
+                SELECT ID, REGION, TS, GRID_CARBON_FACTOR_G_PER_KWH, SOURCE
+                FROM CARBON_INTENSITY_TIMESLOT
+                WHERE REGION IS NOT NULL AND GRID_CARBON_FACTOR_G_PER_KWH IS NOT NULL
+                ORDER BY REGION, TS, ID
+                """, rs -> {
+            long ts = rs.getTimestamp(3).getTime();
+            // the next reading cuts this one short
+            intensity.add(rs.getString(2), ts, ts + HOUR_MS, rs.getDouble(4), rs.getLong(1), rs.getString(5));
+        });
+        return swap(prices.build(), intensity.build(), dims);
+    }
+
+    private synchronized TimeSlotSnapshot reindexFactors(MasterDataSnapshot dims) {
+        TimeSlotSnapshot current = current();
+        if (current.masterDataVersion() == dims.version()) {
+            return current;
+        }
+        return swap(current.prices(), current.intensity(), dims);
+    }
+
+    private TimeSlotSnapshot swap(IntervalIndex<Long> prices, IntervalIndex<String> intensity,
+                                  MasterDataSnapshot dims) {
+        IntervalIndex<FactorKey> factors = factorIndex(dims);
+        TimeSlotSnapshot current = current();
+        if (current != null && current.prices().equals(prices) && current.intensity().equals(intensity)
+                && current.factors().equals(factors)) {
+            if (current.masterDataVersion() != dims.version()) {
+                current = new TimeSlotSnapshot(current.version(), current.etag(), dims.version(),
+                        current.prices(), current.intensity(), current.factors());
+                publish(current);
+            }
+            return current;
+        }
+        long version = current != null ? current.version() + 1 : 1;
+        TimeSlotSnapshot next = new TimeSlotSnapshot(version, contentHash(prices, intensity, factors),
+                dims.version(), prices, intensity, factors);
+        publish(next);
+        return next;
+    }
+
+    private static IntervalIndex<FactorKey> factorIndex(MasterDataSnapshot dims) {
+        IntervalIndex.Builder<FactorKey> factors = IntervalIndex.builder();
+        for (CarbonFactor f : dims.carbonFactors(null, null, null)) {
+            if (f.factorValue() == null || f.energyType() == null) {
+                continue;
+            }
+            long from = f.effectiveFrom().toLocalDate().toEpochDay();
+            long to = f.effectiveTo() != null ? f.effectiveTo().toLocalDate().toEpochDay() + 1 : Long.MAX_VALUE;
+            if (f.region() != null) {
+                factors.add(new FactorKey(f.region(), f.energyType()), from, to, f.factorValue(), f.id(), f.source());
+            }
+            if (f.isDefault()) {
+                factors.add(new FactorKey(null, f.energyType()), from, to, f.factorValue(), f.id(), f.source());
+            }
+        }
+        return factors.build();
+    }
+
+    private static String contentHash(IntervalIndex<Long> prices, IntervalIndex<String> intensity,
+                                      IntervalIndex<FactorKey> factors) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, prices);
+            update(digest, intensity);
+            update(digest, factors);
+            return HexFormat.of().formatHex(digest.digest(), 0, 12);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static <K> void update(MessageDigest digest, IntervalIndex<K> index) {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        for (K key : index.keys()) {
+            digest.update(String.valueOf(key).getBytes(StandardCharsets.UTF_8));
+            IntervalIndex.Series s = index.series(key);
+            for (int i = 0; i < s.size(); i++) {
+                buf.clear();
+                buf.putLong(s.from(i)).putLong(s.to(i)).putDouble(s.value(i)).putLong(s.id(i));
+                digest.update(buf.array());
+                if (s.label(i) != null) {
+                    digest.update(s.label(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        digest.update((byte) 0);
+    }
+}
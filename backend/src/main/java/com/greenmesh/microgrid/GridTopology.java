@@ -0,0 +1,714 @@
+package com.greenmesh.microgrid;
+
+import java.util.Arrays;
+
+import com.greenmesh.telemetry.LongIndexMap;
+
+/**
+ * Electrical graph of one park: buses in dense indices, lines/transformers/switches as branches in a CSR adjacency.
+ * Islands (buses joined by in-service branches) are kept up to date per switch operation: closing relabels the
+ * smaller of the two islands, opening runs two interleaved searches from the switch ends and relabels whichever side
+ * is exhausted first, so the cost follows the smaller side rather than the park. A bus is energized when its island
+ * holds a PCC bus (grid) or a local source bus.
+ *
+ * <p>{@link #solve()} runs a backward/forward sweep over a BFS tree rooted at one source per energized island, in
+ * per unit on a 1 MVA base with each bus's voltage level as the voltage base; PCC and local-source roots are held at
+ * 1.0 pu. Branches that close a loop are left out of the tree, so meshed operation is solved as radial. Not
+ * thread-safe.
+ */
+public final class GridTopology {
+
+    public static final String GRID_CONNECTED = "GRID_CONNECTED";
+    public static final String ISLANDED = "ISLANDED";
+    public static final String OUTAGE = "OUTAGE";
+
+    private static final double BASE_KVA = 1000;
+    private static final int MAX_ITERATIONS = 30;
+    private static final double TOLERANCE = 1e-7;
+
+    private final long[] busIds;
+    private final double[] baseKv;
+    private final boolean[] pcc;
+    private final boolean[] localSource;
+    private final int[] pccBuses;
+    private final int[] localSourceBuses;
+    private final long[] branchIds;
+    private final boolean[] switches;
+    private final int[] branchFrom;
+    private final int[] branchTo;
+    private final double[] branchR;
+    private final double[] branchX;
+    private final boolean[] closed;
+    private final int[] adjStart;
+    private final int[] adjBus;
+    private final int[] adjBranch;
+
+    // islands: label per bus, and per label the bus count and PCC / local source counts
+    private final int[] island;
+    private final int[] islandSize;
+    private final int[] islandPcc;
+    private final int[] islandSources;
+    private final int[] freeLabels;
+    private int freeCount;
+    private int islandCount;
+
+    // scratch for the interleaved searches; mark[i] == 2 * epoch (side A) or 2 * epoch + 1 (side B)
+    private final int[] mark;
+    private final int[] queueA;
+    private final int[] queueB;
+    private int epoch;
+
+    // sweep tree, rebuilt only after a switch operation
+    private final int[] order;
+    private final int[] parent;
+    private final int[] parentBranch;
+    private final int[] roots;
+    private int orderSize;
+    private int rootCount;
+    private int meshedBranches;
+    private boolean treeDirty = true;
+
+    private final double[] loadP;
+    private final double[] loadQ;
+    private final double[] vRe;
+    private final double[] vIm;
+    private final double[] iRe;
+    private final double[] iIm;
+    private double sourceKw;
+    private double sourceKvar;
+    private double gridKw;
+    private double gridKvar;
+    private double lossKw;
+    private double minVoltagePu;
+    private int iterations;
+    private boolean converged;
+
+    private GridTopology(Builder b) {
+        int n = b.busCount;
+        int m = b.branchCount;
+        busIds = Arrays.copyOf(b.busIds, n);
+        baseKv = Arrays.copyOf(b.baseKv, n);
+        pcc = Arrays.copyOf(b.pcc, n);
+        localSource = Arrays.copyOf(b.localSource, n);
+        branchIds = Arrays.copyOf(b.branchIds, m);
+        switches = Arrays.copyOf(b.switches, m);
+        branchFrom = Arrays.copyOf(b.branchFrom, m);
+        branchTo = Arrays.copyOf(b.branchTo, m);
+        branchR = Arrays.copyOf(b.branchR, m);
+        branchX = Arrays.copyOf(b.branchX, m);
+        closed = Arrays.copyOf(b.closed, m);
+
+        int pccCount = 0;
+        int sourceCount = 0;
+        for (int i = 0; i < n; i++) {
+            pccCount += pcc[i] ? 1 : 0;
+            sourceCount += localSource[i] && !pcc[i] ? 1 : 0;
+        }
+        pccBuses = new int[pccCount];
+        localSourceBuses = new int[sourceCount];
+        pccCount = 0;
+        sourceCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (pcc[i]) {
+                pccBuses[pccCount++] = i;
+            } else if (localSource[i]) {
+                localSourceBuses[sourceCount++] = i;
+            }
+        }
+
+        adjStart = new int[n + 1];
+        for (int k = 0; k < m; k++) {
+            adjStart[branchFrom[k] + 1]++;
+            adjStart[branchTo[k] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            adjStart[i + 1] += adjStart[i];
+        }
+        adjBus = new int[2 * m];
+        adjBranch = new int[2 * m];
+        int[] fill = Arrays.copyOf(adjStart, n);
+        for (int k = 0; k < m; k++) {
+            int a = fill[branchFrom[k]]++;
+            adjBus[a] = branchTo[k];
+            adjBranch[a] = k;
+            int c = fill[branchTo[k]]++;
+            adjBus[c] = branchFrom[k];
+            adjBranch[c] = k;
+        }
+
+        island = new int[n];
+        islandSize = new int[n];
+        islandPcc = new int[n];
+        islandSources = new int[n];
+        freeLabels = new int[n];
+        mark = new int[n];
+        queueA = new int[n];
+        queueB = new int[n];
+        order = new int[n];
+        parent = new int[n];
+        parentBranch = new int[n];
+        roots = new int[n];
+        loadP = new double[n];
+        loadQ = new double[n];
+        vRe = new double[n];
+        vIm = new double[n];
+        iRe = new double[n];
+        iIm = new double[n];
+
+        // the only whole-graph labelling; later switch operations patch the labels
+        Arrays.fill(island, -1);
+        for (int s = 0; s < n; s++) {
+            if (island[s] >= 0) {
+                continue;
+            }
+            int label = islandCount++;
+            island[s] = label;
+            queueA[0] = s;
+            int head = 0;
+            int tail = 1;
+            while (head < tail) {
+                int bus = queueA[head++];
+                count(label, bus, 1);
+                for (int e = adjStart[bus]; e < adjStart[bus + 1]; e++) {
+                    int next = adjBus[e];
+                    if (closed[adjBranch[e]] && island[next] < 0) {
+                        island[next] = label;
+                        queueA[tail++] = next;
+                    }
+                }
+            }
+        }
+        for (int label = n - 1; label >= islandCount; label--) {
+            freeLabels[freeCount++] = label;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int busCount() {
+        return busIds.length;
+    }
+
+    public int branchCount() {
+        return branchIds.length;
+    }
+
+    public long busId(int bus) {
+        return busIds[bus];
+    }
+
+    public long branchId(int branch) {
+        return branchIds[branch];
+    }
+
+    public boolean isSwitch(int branch) {
+        return switches[branch];
+    }
+
+    public boolean isClosed(int branch) {
+        return closed[branch];
+    }
+
+    public int islandCount() {
+        return islandCount;
+    }
+
+    public int island(int bus) {
+        return island[bus];
+    }
+
+    public boolean energized(int bus) {
+        int label = island[bus];
+        return islandPcc[label] > 0 || islandSources[label] > 0;
+    }
+
+    /**
+     * {@link #GRID_CONNECTED} when some PCC shares its island with a non-PCC bus, otherwise {@link #ISLANDED} when a
+     * local source supplies at least one other bus (or the park has no PCC), otherwise {@link #OUTAGE}.
+     */
+    public String mode() {
+        for (int bus : pccBuses) {
+            int label = island[bus];
+            if (islandSize[label] > islandPcc[label]) {
+                return GRID_CONNECTED;
+            }
+        }
+        for (int bus : localSourceBuses) {
+            int label = island[bus];
+            if (islandSize[label] > 1 || pccBuses.length == 0) {
+                return ISLANDED;
+            }
+        }
+        return OUTAGE;
+    }
+
+    /**
+     * Opens or closes a switch branch and patches the islands; returns false when the switch was already in that
+     * state.
+     */
+    public boolean setSwitch(int branch, boolean close) {
+        if (!switches[branch]) {
+            throw new IllegalArgumentException("branch " + branchIds[branch] + " is not a switch");
+        }
+        if (closed[branch] == close) {
+            return false;
+        }
+        closed[branch] = close;
+        treeDirty = true;
+        int a = branchFrom[branch];
+        int c = branchTo[branch];
+        if (a == c) {
+            return true;
+        }
+        if (close) {
+            merge(a, c);
+        } else {
+            split(a, c);
+        }
+        return true;
+    }
+
+    /**
+     * Net consumption at a bus (generation negative).
+     */
+    public void setLoad(int bus, double pKw, double qKvar) {
+        loadP[bus] = pKw;
+        loadQ[bus] = qKvar;
+    }
+
+    public double loadKw(int bus) {
+        return loadP[bus];
+    }
+
+    public double loadKvar(int bus) {
+        return loadQ[bus];
+    }
+
+    /**
+     * Runs the sweep over all energized islands; de-energized buses read 0 pu.
+     */
+    public void solve() {
+        if (treeDirty) {
+            buildTree();
+        }
+        // warm start from the last solution; newly energized buses (and everything after a failed solve) start flat
+        boolean flat = !converged;
+        for (int k = 0; k < orderSize; k++) {
+            int bus = order[k];
+            if (flat || parent[bus] < 0 || vRe[bus] == 0 && vIm[bus] == 0) {
+                vRe[bus] = 1;
+                vIm[bus] = 0;
+            }
+        }
+        converged = orderSize == 0;
+        iterations = 0;
+        while (!converged && iterations < MAX_ITERATIONS) {
+            iterations++;
+            // backward: load currents I = conj(S / V) summed towards the roots
+            for (int k = 0; k < orderSize; k++) {
+                int bus = order[k];
+                double p = loadP[bus] / BASE_KVA;
+                double q = loadQ[bus] / BASE_KVA;
+                double re = vRe[bus];
+                double im = vIm[bus];
+                double mag2 = re * re + im * im;
+                iRe[bus] = (p * re + q * im) / mag2;
+                iIm[bus] = (p * im - q * re) / mag2;
+            }
+            for (int k = orderSize - 1; k >= 0; k--) {
+                int bus = order[k];
+                int up = parent[bus];
+                if (up >= 0) {
+                    iRe[up] += iRe[bus];
+                    iIm[up] += iIm[bus];
+                }
+            }
+            // forward: V_child = V_parent - Z * I_branch
+            double delta = 0;
+            for (int k = 0; k < orderSize; k++) {
+                int bus = order[k];
+                int up = parent[bus];
+                if (up < 0) {
+                    continue;
+                }
+                int br = parentBranch[bus];
+                double r = branchR[br];
+                double x = branchX[br];
+                double re = vRe[up] - (r * iRe[bus] - x * iIm[bus]);
+                double im = vIm[up] - (r * iIm[bus] + x * iRe[bus]);
+                delta = Math.max(delta, Math.abs(re - vRe[bus]) + Math.abs(im - vIm[bus]));
+                vRe[bus] = re;
+                vIm[bus] = im;
+            }
+            converged = delta < TOLERANCE;
+        }
+
+        sourceKw = 0;
+        sourceKvar = 0;
+        gridKw = 0;
+        gridKvar = 0;
+        double served = 0;
+        for (int r = 0; r < rootCount; r++) {
+            int bus = roots[r];
+            // S = V * conj(I) at the root; the root's own load is already in its current
+            double p = (vRe[bus] * iRe[bus] + vIm[bus] * iIm[bus]) * BASE_KVA;
+            double q = (vIm[bus] * iRe[bus] - vRe[bus] * iIm[bus]) * BASE_KVA;
+            sourceKw += p;
+            sourceKvar += q;
+            if (pcc[bus]) {
+                gridKw += p;
+                gridKvar += q;
+            }
+        }
+        minVoltagePu = orderSize == 0 ? 0 : Double.MAX_VALUE;
+        for (int k = 0; k < orderSize; k++) {
+            int bus = order[k];
+            served += loadP[bus];
+            minVoltagePu = Math.min(minVoltagePu, voltagePu(bus));
+        }
+        lossKw = sourceKw - served;
+    }
+
+    public double voltagePu(int bus) {
+        return Math.hypot(vRe[bus], vIm[bus]);
+    }
+
+    public double voltageKv(int bus) {
+        return voltagePu(bus) * baseKv[bus];
+    }
+
+    public double angleDeg(int bus) {
+        return Math.toDegrees(Math.atan2(vIm[bus], vRe[bus]));
+    }
+
+    /**
+     * Power delivered by all sweep roots (PCCs and local sources) at the last solve.
+     */
+    public double sourceKw() {
+        return sourceKw;
+    }
+
+    public double sourceKvar() {
+        return sourceKvar;
+    }
+
+    /**
+     * Power imported through PCC roots at the last solve.
+     */
+    public double gridKw() {
+        return gridKw;
+    }
+
+    public double gridKvar() {
+        return gridKvar;
+    }
+
+    public double lossKw() {
+        return lossKw;
+    }
+
+    public double minVoltagePu() {
+        return minVoltagePu;
+    }
+
+    public int iterations() {
+        return iterations;
+    }
+
+    public boolean converged() {
+        return converged;
+    }
+
+    /**
+     * Closed branches left out of the sweep tree because they close a loop.
+     */
+    public int meshedBranches() {
+        if (treeDirty) {
+            buildTree();
+        }
+        return meshedBranches;
+    }
+
+    private void merge(int a, int c) {
+        int la = island[a];
+        int lc = island[c];
+        if (la == lc) {
+            return;
+        }
+        int keep = islandSize[la] >= islandSize[lc] ? la : lc;
+        int gone = keep == la ? lc : la;
+        int start = keep == la ? c : a;
+        queueA[0] = start;
+        island[start] = keep;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int bus = queueA[head++];
+            for (int e = adjStart[bus]; e < adjStart[bus + 1]; e++) {
+                int next = adjBus[e];
+                if (closed[adjBranch[e]] && island[next] == gone) {
+                    island[next] = keep;
+                    queueA[tail++] = next;
+                }
+            }
+        }
+        islandSize[keep] += islandSize[gone];
+        islandPcc[keep] += islandPcc[gone];
+        islandSources[keep] += islandSources[gone];
+        islandSize[gone] = 0;
+        islandPcc[gone] = 0;
+        islandSources[gone] = 0;
+        freeLabels[freeCount++] = gone;
+        islandCount--;
+    }
+
+    private void split(int a, int c) {
+        if (epoch >= Integer.MAX_VALUE / 2 - 1) {
+            Arrays.fill(mark, 0);
+            epoch = 0;
+        }
+        epoch++;
+        int markA = 2 * epoch;
+        int markB = markA + 1;
+        mark[a] = markA;
+        mark[c] = markB;
+        queueA[0] = a;
+        queueB[0] = c;
+        int headA = 0;
+        int tailA = 1;
+        int headB = 0;
+        int tailB = 1;
+        while (true) {
+            if (headA == tailA) {
+                relabel(queueA, tailA);
+                return;
+            }
+            int bus = queueA[headA++];
+            for (int e = adjStart[bus]; e < adjStart[bus + 1]; e++) {
+                if (!closed[adjBranch[e]]) {
+                    continue;
+                }
+                int next = adjBus[e];
+                if (mark[next] == markB) {
+                    return;
+                }
+                if (mark[next] != markA) {
+                    mark[next] = markA;
+                    queueA[tailA++] = next;
+                }
+            }
+            if (headB == tailB) {
+                relabel(queueB, tailB);
+                return;
+            }
+            bus = queueB[headB++];
+            for (int e = adjStart[bus]; e < adjStart[bus + 1]; e++) {
+                if (!closed[adjBranch[e]]) {
+                    continue;
+                }
+                int next = adjBus[e];
+                if (mark[next] == markA) {
+                    return;
+                }
+                if (mark[next] != markB) {
+                    mark[next] = markB;
+                    queueB[tailB++] = next;
+                }
+            }
+        }
+    }
+
+    private void relabel(int[] buses, int size) {
+        int label = freeLabels[--freeCount];
+        islandCount++;
+        for (int i = 0; i < size; i++) {
+            int bus = buses[i];
+            count(island[bus], bus, -1);
+            island[bus] = label;
+            count(label, bus, 1);
+        }
+    }
+
+    private void count(int label, int bus, int delta) {
+        islandSize[label] += delta;
+        islandPcc[label] += pcc[bus] ? delta : 0;
+        islandSources[label] += localSource[bus] && !pcc[bus] ? delta : 0;
+    }
+
+    private void buildTree() {
+        int n = busIds.length;
+        Arrays.fill(parent, -2);
+        orderSize = 0;
+        rootCount = 0;
+        int closedInTrees = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int[] candidates = pass == 0 ? pccBuses : localSourceBuses;
+            for (int root : candidates) {
+                if (parent[root] != -2) {
+                    continue;
+                }
+                roots[rootCount++] = root;
+                parent[root] = -1;
+                parentBranch[root] = -1;
+                int head = orderSize;
+                order[orderSize++] = root;
+                while (head < orderSize) {
+                    int bus = order[head++];
+                    for (int e = adjStart[bus]; e < adjStart[bus + 1]; e++) {
+                        int next = adjBus[e];
+                        if (closed[adjBranch[e]] && parent[next] == -2) {
+                            parent[next] = bus;
+                            parentBranch[next] = adjBranch[e];
+                            order[orderSize++] = next;
+                        }
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < branchIds.length; k++) {
+            if (closed[k] && parent[branchFrom[k]] != -2 && branchFrom[k] != branchTo[k]) {
+                closedInTrees++;
+            }
+        }
+        meshedBranches = closedInTrees - (orderSize - rootCount);
+        for (int bus = 0; bus < n; bus++) {
+            if (parent[bus] == -2) {
+                vRe[bus] = 0;
+                vIm[bus] = 0;
+                iRe[bus] = 0;
+                iIm[bus] = 0;
+            }
+        }
+        treeDirty = false;
+    }
+
+    /**
+     * Collects buses and branches in any order; branches naming an unknown bus are dropped by {@link #build()}.
+     */
+    public static final class Builder {
+
+        private final LongIndexMap buses = new LongIndexMap(64);
+        private int busCount;
+        private long[] busIds = new long[64];
+        private double[] baseKv = new double[64];
+        private boolean[] pcc = new boolean[64];
+        private boolean[] localSource = new boolean[64];
+        private int branchCount;
+        private long[] branchIds = new long[64];
+        private boolean[] switches = new boolean[64];
+        private long[] fromIds = new long[64];
+        private long[] toIds = new long[64];
+        private int[] branchFrom;
+        private int[] branchTo;
+        private double[] branchR = new double[64];
+        private double[] branchX = new double[64];
+        private double[] ratedKva = new double[64];
+        private boolean[] closed = new boolean[64];
+
+        private Builder() {}
+
+        public Builder bus(long busId, double voltageLevelKv, boolean localSource) {
+            int slot = buses.getOrAdd(busId);
+            if (slot == busIds.length) {
+                int capacity = slot * 2;
+                busIds = Arrays.copyOf(busIds, capacity);
+                baseKv = Arrays.copyOf(baseKv, capacity);
+                pcc = Arrays.copyOf(pcc, capacity);
+                this.localSource = Arrays.copyOf(this.localSource, capacity);
+            }
+            busCount = Math.max(busCount, slot + 1);
+            busIds[slot] = busId;
+            baseKv[slot] = voltageLevelKv;
+            this.localSource[slot] = localSource;
+            return this;
+        }
+
+        /**
+         * Marks a bus as a point of common coupling with the external grid.
+         */
+        public Builder pcc(long busId) {
+            int slot = buses.get(busId);
+            if (slot >= 0) {
+                pcc[slot] = true;
+            }
+            return this;
+        }
+
+        public Builder line(long lineId, long fromBusId, long toBusId, double rOhm, double xOhm) {
+            add(lineId, fromBusId, toBusId, rOhm, xOhm, Double.NaN, false, true);
+            return this;
+        }
+
+        /**
+         * Impedance is the nameplate short-circuit voltage; it is modelled as pure reactance.
+         */
+        public Builder transformer(long tfId, long hvBusId, long lvBusId, double ratedKva, double impedancePercent) {
+            add(tfId, hvBusId, lvBusId, 0, impedancePercent, ratedKva, false, true);
+            return this;
+        }
+
+        public Builder breaker(long swId, long fromBusId, long toBusId, boolean closed) {
+            add(swId, fromBusId, toBusId, 0, 0, Double.NaN, true, closed);
+            return this;
+        }
+
+        public GridTopology build() {
+            int kept = 0;
+            branchFrom = new int[branchCount];
+            branchTo = new int[branchCount];
+            for (int k = 0; k < branchCount; k++) {
+                int from = buses.get(fromIds[k]);
+                int to = buses.get(toIds[k]);
+                if (from < 0 || to < 0) {
+                    continue;
+                }
+                branchIds[kept] = branchIds[k];
+                switches[kept] = switches[k];
+                closed[kept] = closed[k];
+                branchFrom[kept] = from;
+                branchTo[kept] = to;
+                if (!Double.isNaN(ratedKva[k])) {
+                    // per unit on the system base: z = uk% / 100 * S_base / S_rated
+                    double rated = ratedKva[k];
+                    branchR[kept] = 0;
+                    branchX[kept] = rated > 0 ? branchX[k] / 100 * BASE_KVA / rated : 0;
+                } else {
+                    // ohms to per unit on the sending bus's voltage base (falling back to the receiving bus)
+                    double kv = baseKv[from] > 0 ? baseKv[from] : baseKv[to];
+                    double zBase = kv > 0 ? kv * kv * 1000 / BASE_KVA : 0;
+                    branchR[kept] = zBase > 0 ? branchR[k] / zBase : 0;
+                    branchX[kept] = zBase > 0 ? branchX[k] / zBase : 0;
+                }
+                kept++;
+            }
+            branchCount = kept;
+            return new GridTopology(this);
+        }
+
+        private void add(long id, long from, long to, double r, double x, double kva, boolean isSwitch,
+                         boolean isClosed) {
+            int k = branchCount++;
+            if (k == branchIds.length) {
+                int capacity = k * 2;
+                branchIds = Arrays.copyOf(branchIds, capacity);
+                switches = Arrays.copyOf(switches, capacity);
+                fromIds = Arrays.copyOf(fromIds, capacity);
+                toIds = Arrays.copyOf(toIds, capacity);
+                branchR = Arrays.copyOf(branchR, capacity);
+                branchX = Arrays.copyOf(branchX, capacity);
+                ratedKva = Arrays.copyOf(ratedKva, capacity);
+                closed = Arrays.copyOf(closed, capacity);
+            }
+            branchIds[k] = id;
+            switches[k] = isSwitch;
+            fromIds[k] = from;
+            toIds[k] = to;
+            branchR[k] = Double.isNaN(r) ? 0 : r;
+            branchX[k] = Double.isNaN(x) ? 0 : x;
+            ratedKva[k] = kva;
+            closed[k] = isClosed;
+        }
+    }
+}
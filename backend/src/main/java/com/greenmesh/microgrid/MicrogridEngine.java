@@ -0,0 +1,546 @@
+package com.greenmesh.microgrid;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.BufferedBatchWriter;
+import com.greenmesh.masterdata.MasterDataSnapshot;
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.LatestValueStore;
+import com.greenmesh.telemetry.LongIndexMap;
+import com.greenmesh.telemetry.MeasurementListener;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawSampleListener;
+import com.greenmesh.telemetry.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps one {@link GridTopology} per park loaded from the MG_* tables and drives it from committed samples: switch
+ * status points ({@code POINT_ID_STATUS}, closed when &ge; 0.5) patch the islands as soon as they reach
+ * RAW_TIMESERIES, while bus P/Q points set the sweep's bus loads and PCC points carry the measured exchange and
+ * frequency once cleaned. A batch that changes any switch is solved on the spot and its MG_RUNTIME_STATE row queued;
+ * queued rows are written on a short fixed delay so ingest never waits on the database, and every park is also
+ * snapshotted on a fixed delay. The MG_* tables are reloaded on a fixed delay, picking switch states and loads up
+ * from {@link LatestValueStore}.
+ */
+@Component
+public class MicrogridEngine implements MeasurementListener, RawSampleListener {
+
+    private static final Logger log = LoggerFactory.getLogger(MicrogridEngine.class);
+
+    private static final String INSERT_SQL = """
+            INSERT INTO MG_RUNTIME_STATE (PARK_ID, TS, MODE, ISLAND_FLAG, P_TOTAL_KW, Q_TOTAL_KVAR, FREQ_HZ)
+            VALUES (?,?,?,?,?,?,?)
+            """;
+
+    private static final byte SWITCH = 0;
+    private static final byte BUS_P = 1;
+    private static final byte BUS_Q = 2;
+    private static final byte PCC_P = 3;
+    private static final byte PCC_Q = 4;
+    private static final byte PCC_FREQ = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MasterDataStore masterData;
+    private final LatestValueStore latestValues;
+    private final boolean enabled;
+    private final Set<String> sourceBusTypes;
+    private final BufferedBatchWriter<MicrogridState> queue;
+
+    // guarded by this
+    private ParkGrid[] parks = new ParkGrid[0];
+    private Map<Long, ParkGrid> parksById = Map.of();
+    // point -> first binding; a point may feed several roles, chained through Bindings.next
+    private LongIndexMap points = new LongIndexMap(16);
+    private int[] bindingHead = new int[0];
+    private Bindings bindings = new Bindings();
+    private final List<ParkGrid> touched = new ArrayList<>();
+
+    public MicrogridEngine(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           MasterDataStore masterData,
+                           LatestValueStore latestValues,
+                           @Value("${app.microgrid.enabled:true}") boolean enabled,
+                           @Value("${app.microgrid.source-bus-types:GEN,STORAGE}") String sourceBusTypes,
+                           @Value("${app.microgrid.max-pending:10000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.masterData = masterData;
+        this.latestValues = latestValues;
+        this.enabled = enabled;
+        this.sourceBusTypes = Arrays.stream(sourceBusTypes.split(","))
+                .map(s -> s.trim().toUpperCase(Locale.ROOT))
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+        this.queue = new BufferedBatchWriter<>("MG_RUNTIME_STATE", transactionTemplate, maxPending, this::write);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.microgrid.reload-ms:300000}",
+            initialDelayString = "${app.microgrid.reload-ms:300000}")
+    public void scheduledReload() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reload();
+        } catch (RuntimeException ex) {
+            log.warn("Microgrid topology reload failed", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.microgrid.snapshot-ms:60000}",
+            initialDelayString = "${app.microgrid.snapshot-ms:60000}")
+    public void scheduledSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            snapshot(System.currentTimeMillis());
+        } catch (RuntimeException ex) {
+            log.warn("Microgrid state snapshot failed", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.microgrid.flush-ms:200}", initialDelayString = "${app.microgrid.flush-ms:200}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (DataAccessException ex) {
+            log.warn("Microgrid state flush failed; will retry", ex);
+        }
+    }
+
+    /**
+     * Writes every queued MG_RUNTIME_STATE row; returns the number written.
+     */
+    public int flush() {
+        return queue.flush();
+    }
+
+    /**
+     * Rebuilds every park's graph from the MG_* tables; returns the number of parks with at least one bus.
+     */
+    public int reload() {
+        Map<Long, ParkModel> models = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT BUS_ID, PARK_ID, VOLTAGE_LEVEL_KV, BUS_TYPE, POINT_ID_P, POINT_ID_Q FROM MG_BUS",
+                rs -> {
+                    ParkModel model = models.computeIfAbsent(rs.getLong("PARK_ID"), ParkModel::new);
+                    long busId = rs.getLong("BUS_ID");
+                    String type = rs.getString("BUS_TYPE");
+                    model.builder.bus(busId, rs.getDouble("VOLTAGE_LEVEL_KV"),
+                            type != null && sourceBusTypes.contains(type.trim().toUpperCase(Locale.ROOT)));
+                    model.busPoints.add(new long[] {busId, rs.getLong("POINT_ID_P"), rs.getLong("POINT_ID_Q")});
+                });
+        jdbcTemplate.query("SELECT LINE_ID, PARK_ID, FROM_BUS_ID, TO_BUS_ID, R_OHM, X_OHM FROM MG_LINE", rs -> {
+            ParkModel model = models.get(rs.getLong("PARK_ID"));
+            if (model != null) {
+                model.builder.line(rs.getLong("LINE_ID"), rs.getLong("FROM_BUS_ID"), rs.getLong("TO_BUS_ID"),
+                        rs.getDouble("R_OHM"), rs.getDouble("X_OHM"));
+            }
+        });
+        jdbcTemplate.query("""
+                SELECT TF_ID, PARK_ID, HV_BUS_ID, LV_BUS_ID, RATED_KVA, IMPEDANCE_PERCENT FROM MG_TRANSFORMER
+                """, rs -> {
+            ParkModel model = models.get(rs.getLong("PARK_ID"));
+            if (model != null) {
+                model.builder.transformer(rs.getLong("TF_ID"), rs.getLong("HV_BUS_ID"), rs.getLong("LV_BUS_ID"),
+                        rs.getDouble("RATED_KVA"), rs.getDouble("IMPEDANCE_PERCENT"));
+            }
+        });
+        jdbcTemplate.query("""
+                SELECT SW_ID, PARK_ID, FROM_BUS_ID, TO_BUS_ID, POINT_ID_STATUS, NORMAL_STATE FROM MG_SWITCH
+                """, rs -> {
+            ParkModel model = models.get(rs.getLong("PARK_ID"));
+            if (model != null) {
+                long swId = rs.getLong("SW_ID");
+                model.builder.breaker(swId, rs.getLong("FROM_BUS_ID"), rs.getLong("TO_BUS_ID"),
+                        normallyClosed(rs.getString("NORMAL_STATE")));
+                model.switchPoints.add(new long[] {swId, rs.getLong("POINT_ID_STATUS")});
+            }
+        });
+        jdbcTemplate.query("""
+                SELECT PCC_ID, PARK_ID, BUS_ID, POINT_ID_P, POINT_ID_Q, POINT_ID_FREQ
+                FROM MG_CONNECTION_POINT ORDER BY PCC_ID
+                """, rs -> {
+            ParkModel model = models.get(rs.getLong("PARK_ID"));
+            if (model != null) {
+                model.builder.pcc(rs.getLong("BUS_ID"));
+                model.pccPoints.add(new long[] {rs.getLong("POINT_ID_P"), rs.getLong("POINT_ID_Q"),
+                        rs.getLong("POINT_ID_FREQ")});
+            }
+        });
+
+        MasterDataSnapshot snapshot = masterData.snapshot();
+        List<ParkGrid> grids = new ArrayList<>(models.size());
+        Bindings next = new Bindings();
+        for (ParkModel model : models.values()) {
+            grids.add(model.bind(grids.size(), snapshot, next));
+        }
+        LongIndexMap nextPoints = new LongIndexMap(Math.max(16, next.size));
+        int[] nextHead = new int[Math.max(16, next.size)];
+        Arrays.fill(nextHead, -1);
+        for (int b = 0; b < next.size; b++) {
+            int slot = nextPoints.getOrAdd(next.pointIds[b]);
+            next.next[b] = nextHead[slot];
+            nextHead[slot] = b;
+        }
+
+        List<Long> pointIds = new ArrayList<>(nextPoints.size());
+        for (long pointId : nextPoints.keys()) {
+            pointIds.add(pointId);
+        }
+        synchronized (this) {
+            parks = grids.toArray(new ParkGrid[0]);
+            Map<Long, ParkGrid> byId = new HashMap<>();
+            for (ParkGrid grid : parks) {
+                byId.put(grid.parkId, grid);
+            }
+            parksById = byId;
+            points = nextPoints;
+            bindingHead = nextHead;
+            bindings = next;
+            // seeded under the lock: LatestValueStore is notified first, so no committed sample falls in between
+            List<LatestValueStore.Latest> found = new ArrayList<>();
+            latestValues.lookup(pointIds, found, new ArrayList<>());
+            for (LatestValueStore.Latest latest : found) {
+                apply(latest.pointId(), latest.ts(), latest.value(), latest.quality(), true, true);
+            }
+            touched.clear();
+            for (ParkGrid grid : parks) {
+                grid.topology.solve();
+                grid.touched = false;
+            }
+        }
+        log.info("Microgrid topology loaded for {} parks ({} bound points)", grids.size(), pointIds.size());
+        return grids.size();
+    }
+
+    /**
+     * Switch states are taken from the raw stream so a trip is not held back by the cleaning pipeline's settle
+     * delay; measured loads and PCC readings wait for cleaning, which flags their spikes.
+     */
+    @Override
+    public void onRawSamples(SampleBatch batch) {
+        accept(batch, true);
+    }
+
+    @Override
+    public void onMeasurements(SampleBatch batch) {
+        accept(batch, false);
+    }
+
+    private void accept(SampleBatch batch, boolean raw) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (points.size() == 0) {
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                apply(batch.pointId(i), batch.timestamp(i), batch.value(i), batch.quality(i), raw, !raw);
+            }
+            if (touched.isEmpty()) {
+                return;
+            }
+            for (ParkGrid grid : touched) {
+                grid.touched = false;
+                grid.topology.solve();
+                queue.submit(grid.state(grid.eventTs));
+            }
+            touched.clear();
+        }
+    }
+
+    /**
+     * Solves every park and writes one state row each, stamped {@code ts}, along with anything still queued;
+     * returns the snapshot rows.
+     */
+    public int snapshot(long ts) {
+        int rows = 0;
+        synchronized (this) {
+            for (ParkGrid grid : parks) {
+                grid.topology.solve();
+                queue.submit(grid.state(ts));
+                rows++;
+            }
+        }
+        flush();
+        return rows;
+    }
+
+    /**
+     * Live view of a park's graph at the last solve, or null when the park has no MG_BUS rows.
+     */
+    public synchronized GridView view(long parkId) {
+        ParkGrid grid = parksById.get(parkId);
+        if (grid == null) {
+            return null;
+        }
+        GridTopology t = grid.topology;
+        List<BusView> buses = new ArrayList<>(t.busCount());
+        for (int bus = 0; bus < t.busCount(); bus++) {
+            buses.add(new BusView(t.busId(bus), t.island(bus), t.energized(bus), t.voltagePu(bus), t.voltageKv(bus),
+                    t.angleDeg(bus), t.loadKw(bus), t.loadKvar(bus)));
+        }
+        Map<Long, Boolean> switches = new LinkedHashMap<>();
+        for (int br = 0; br < t.branchCount(); br++) {
+            if (t.isSwitch(br)) {
+                switches.put(t.branchId(br), t.isClosed(br));
+            }
+        }
+        return new GridView(parkId, t.mode(), t.islandCount(), t.meshedBranches(), t.converged(), t.iterations(),
+                t.sourceKw(), t.sourceKvar(), t.gridKw(), t.lossKw(), t.minVoltagePu(), buses, switches);
+    }
+
+    private void apply(long pointId, long ts, double value, byte quality, boolean switches, boolean others) {
+        int slot = points.get(pointId);
+        if (slot < 0 || Double.isNaN(value) || quality == QualityFlags.BAD || quality == QualityFlags.SPIKE) {
+            return;
+        }
+        Bindings b = bindings;
+        for (int k = bindingHead[slot]; k >= 0; k = b.next[k]) {
+            if (ts < b.ts[k] || !(b.role[k] == SWITCH ? switches : others)) {
+                continue;
+            }
+            b.ts[k] = ts;
+            ParkGrid grid = parks[b.park[k]];
+            int target = b.target[k];
+            double scaled = value * b.scale[k];
+            boolean changed = false;
+            switch (b.role[k]) {
+                case SWITCH -> changed = grid.topology.setSwitch(target, value >= 0.5);
+                case BUS_P -> grid.topology.setLoad(target, scaled, grid.topology.loadKvar(target));
+                case BUS_Q -> grid.topology.setLoad(target, grid.topology.loadKw(target), scaled);
+                case PCC_P -> grid.pccP[target] = scaled;
+                case PCC_Q -> grid.pccQ[target] = scaled;
+                case PCC_FREQ -> grid.pccFreq[target] = value;
+                default -> {
+                }
+            }
+            if (changed) {
+                if (!grid.touched) {
+                    grid.touched = true;
+                    grid.eventTs = ts;
+                    touched.add(grid);
+                } else {
+                    grid.eventTs = Math.max(grid.eventTs, ts);
+                }
+            }
+        }
+    }
+
+    private void write(List<MicrogridState> states) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, states, states.size(), (ps, s) -> {
+            ps.setLong(1, s.parkId());
+            ps.setTimestamp(2, new Timestamp(s.ts()));
+            ps.setString(3, s.mode());
+            ps.setString(4, s.islanded() ? "Y" : "N");
+            ps.setObject(5, round(s.pTotalKw()));
+            ps.setObject(6, round(s.qTotalKvar()));
+            ps.setObject(7, round(s.freqHz()));
+        });
+    }
+
+    private static Double round(Double value) {
+        return value == null ? null : Math.round(value * 1e4) / 1e4;
+    }
+
+    private static boolean normallyClosed(String normalState) {
+        if (normalState == null) {
+            return true;
+        }
+        return switch (normalState.trim().toUpperCase(Locale.ROOT)) {
+            case "OPEN", "OFF", "0", "NO" -> false;
+            default -> true;
+        };
+    }
+
+    private static double scale(MasterDataSnapshot snapshot, long pointId) {
+        MasterDataSnapshot.MeterPoint point = snapshot.meterPoint(pointId);
+        if (point == null || point.unit() == null) {
+            return 1;
+        }
+        return switch (point.unit().trim().toLowerCase(Locale.ROOT)) {
+            case "w", "var" -> 0.001;
+            case "mw", "mvar" -> 1000;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Point bindings in parallel arrays: owning park, role, bus/branch/PCC index, scale to kW/kvar and the timestamp
+     * of the last applied sample.
+     */
+    private static final class Bindings {
+        int size;
+        long[] pointIds = new long[16];
+        int[] park = new int[16];
+        byte[] role = new byte[16];
+        int[] target = new int[16];
+        double[] scale = new double[16];
+        long[] ts = new long[16];
+        int[] next = new int[16];
+
+        void add(long pointId, int parkIndex, byte bindingRole, int bindingTarget, double bindingScale) {
+            if (pointId <= 0) {
+                return;
+            }
+            if (size == pointIds.length) {
+                int capacity = size * 2;
+                pointIds = Arrays.copyOf(pointIds, capacity);
+                park = Arrays.copyOf(park, capacity);
+                role = Arrays.copyOf(role, capacity);
+                target = Arrays.copyOf(target, capacity);
+                scale = Arrays.copyOf(scale, capacity);
+                ts = Arrays.copyOf(ts, capacity);
+                next = Arrays.copyOf(next, capacity);
+            }
+            pointIds[size] = pointId;
+            park[size] = parkIndex;
+            role[size] = bindingRole;
+            target[size] = bindingTarget;
+            scale[size] = bindingScale;
+            ts[size] = Long.MIN_VALUE;
+            size++;
+        }
+    }
+
+    private static final class ParkModel {
+        final long parkId;
+        final GridTopology.Builder builder = GridTopology.builder();
+        final List<long[]> busPoints = new ArrayList<>();
+        final List<long[]> switchPoints = new ArrayList<>();
+        final List<long[]> pccPoints = new ArrayList<>();
+
+        ParkModel(long parkId) {
+            this.parkId = parkId;
+        }
+
+        ParkGrid bind(int parkIndex, MasterDataSnapshot snapshot, Bindings bindings) {
+            GridTopology topology = builder.build();
+            Map<Long, Integer> busIndex = new HashMap<>();
+            for (int bus = 0; bus < topology.busCount(); bus++) {
+                busIndex.put(topology.busId(bus), bus);
+            }
+            Map<Long, Integer> switchIndex = new HashMap<>();
+            for (int br = 0; br < topology.branchCount(); br++) {
+                if (topology.isSwitch(br)) {
+                    switchIndex.put(topology.branchId(br), br);
+                }
+            }
+            boolean loadPoints = false;
+            for (long[] row : busPoints) {
+                int bus = busIndex.get(row[0]);
+                bindings.add(row[1], parkIndex, BUS_P, bus, scale(snapshot, row[1]));
+                bindings.add(row[2], parkIndex, BUS_Q, bus, scale(snapshot, row[2]));
+                loadPoints |= row[1] > 0;
+            }
+            for (long[] row : switchPoints) {
+                Integer branch = switchIndex.get(row[0]);
+                if (branch != null) {
+                    bindings.add(row[1], parkIndex, SWITCH, branch, 1);
+                }
+            }
+            ParkGrid grid = new ParkGrid(parkId, topology, pccPoints.size(), loadPoints);
+            for (int p = 0; p < pccPoints.size(); p++) {
+                long[] row = pccPoints.get(p);
+                bindings.add(row[0], parkIndex, PCC_P, p, scale(snapshot, row[0]));
+                bindings.add(row[1], parkIndex, PCC_Q, p, scale(snapshot, row[1]));
+                bindings.add(row[2], parkIndex, PCC_FREQ, p, 1);
+            }
+            return grid;
+        }
+    }
+
+    private static final class ParkGrid {
+        final long parkId;
+        final GridTopology topology;
+        final double[] pccP;
+        final double[] pccQ;
+        final double[] pccFreq;
+        final boolean loadPoints;
+        boolean touched;
+        long eventTs;
+
+        ParkGrid(long parkId, GridTopology topology, int pccCount, boolean loadPoints) {
+            this.parkId = parkId;
+            this.topology = topology;
+            this.loadPoints = loadPoints;
+            pccP = new double[pccCount];
+            pccQ = new double[pccCount];
+            pccFreq = new double[pccCount];
+            Arrays.fill(pccP, Double.NaN);
+            Arrays.fill(pccQ, Double.NaN);
+            Arrays.fill(pccFreq, Double.NaN);
+        }
+
+        /**
+         * Grid-connected totals prefer the PCC meters; otherwise (or without PCC readings) the solved source
+         * injection stands in when the park has bus load points. Frequency is the PCC reading while connected.
+         */
+        MicrogridState state(long ts) {
+            String mode = topology.mode();
+            boolean connected = GridTopology.GRID_CONNECTED.equals(mode);
+            Double p = null;
+            Double q = null;
+            Double freq = null;
+            if (connected) {
+                double measuredP = 0;
+                double measuredQ = 0;
+                int readingsP = 0;
+                int readingsQ = 0;
+                for (int k = 0; k < pccP.length; k++) {
+                    if (!Double.isNaN(pccP[k])) {
+                        measuredP += pccP[k];
+                        readingsP++;
+                    }
+                    if (!Double.isNaN(pccQ[k])) {
+                        measuredQ += pccQ[k];
+                        readingsQ++;
+                    }
+                    if (freq == null && !Double.isNaN(pccFreq[k])) {
+                        freq = pccFreq[k];
+                    }
+                }
+                p = readingsP > 0 ? measuredP : null;
+                q = readingsQ > 0 ? measuredQ : null;
+            }
+            if (loadPoints) {
+                p = p != null ? p : topology.sourceKw();
+                q = q != null ? q : topology.sourceKvar();
+            }
+            return new MicrogridState(parkId, ts, mode, !connected, p, q, freq);
+        }
+    }
+
+    public record BusView(long busId, int island, boolean energized, double voltagePu, double voltageKv,
+                          double angleDeg, double loadKw, double loadKvar) {}
+
+    public record GridView(long parkId, String mode, int islands, int meshedBranches, boolean converged,
+                           int iterations, double sourceKw, double sourceKvar, double gridKw, double lossKw,
+                           double minVoltagePu, List<BusView> buses, Map<Long, Boolean> switches) {}
+}
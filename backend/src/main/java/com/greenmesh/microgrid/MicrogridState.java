@@ -0,0 +1,7 @@
+package com.greenmesh.microgrid;
+
+/**
+ * One MG_RUNTIME_STATE row; {@code mode} is one of the {@link GridTopology} modes and null totals stay NULL.
+ */
+public record MicrogridState(long parkId, long ts, String mode, boolean islanded, Double pTotalKw,
+                             Double qTotalKvar, Double freqHz) {}
@@ -0,0 +1,220 @@
+package com.greenmesh.telemetry;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.greenmesh.jdbc.BatchUpserts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads many points over one time range in a single ordered range scan per ID chunk and returns primitive columns.
+ * When every series has the same timestamps (the usual case after grid alignment or rollup) they are
+ * sent once at the top level instead of per series. Raw reads stop at {@code app.query.max-raw-rows} buffered rows;
+ * unless raw rows were asked for explicitly, the query is then answered from the finest rollup level that fits.
+ */
+@Component
+public class ColumnarSeriesQuery {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TieredMeasurementReader measurementReader;
+    private final long maxRawRows;
+
+    public ColumnarSeriesQuery(JdbcTemplate jdbcTemplate, TieredMeasurementReader measurementReader,
+                               @Value("${app.query.max-raw-rows:2000000}") long maxRawRows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.measurementReader = measurementReader;
+        this.maxRawRows = maxRawRows;
+    }
+
+    /**
+     * Resolves a selector to point ids. Explicit ids win; otherwise park/asset/measType/energyType filter
+     * DIM_METER_POINT, and {@code keyPoints} (implied by a category) restricts to DEF_KEY_MONITOR_POINT.
+     */
+    public List<Long> resolvePoints(Selector selector) {
+        if (selector.pointIds() != null && !selector.pointIds().isEmpty()) {
+            return selector.pointIds();
+        }
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT p.POINT_ID FROM DIM_METER_POINT p");
+        List<Object> args = new ArrayList<>();
+        boolean keyPoints = selector.keyPoints() || selector.category() != null;
+        if (keyPoints) {
+            sql.append(" JOIN DEF_KEY_MONITOR_POINT k ON k.POINT_ID = p.POINT_ID");
+        }
+        sql.append(" WHERE 1=1");
+        if (selector.parkId() != null) {
+            sql.append(" AND p.PARK_ID = ?");
+            args.add(selector.parkId());
+        }
+        if (selector.assetId() != null) {
+            sql.append(" AND p.ASSET_ID = ?");
+            args.add(selector.assetId());
+        }
+        if (selector.measType() != null) {
+            sql.append(" AND p.MEAS_TYPE = ?");
+            args.add(selector.measType());
+        }
+        if (selector.energyType() != null) {
+            sql.append(" AND p.ENERGY_TYPE = ?");
+            args.add(selector.energyType());
+        }
+        if (selector.category() != null) {
+            sql.append(" AND k.CATEGORY = ?");
+            args.add(selector.category());
+        }
+        sql.append(" ORDER BY p.POINT_ID");
+        return jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray());
+    }
+
+    /**
+     * {@code level} null reads cleaned rows from the hot and cold tiers, otherwise bucket averages from TS_ROLLUP.
+     * When raw rows exceed the budget, {@code rawOnly} fails the query with an IllegalArgumentException; otherwise
+     * the finest level averaging at most the budget's share of buckets per series is read instead.
+     */
+    public Result query(List<Long> pointIds, Instant start, Instant end, RollupLevel level, boolean rawOnly) {
+        Map<Long, Downsampler.Series> series = new LinkedHashMap<>();
+        for (Long id : pointIds) {
+            series.put(id, new Downsampler.Series(64));
+        }
+        if (level == null && !scanRaw(pointIds, start, end, series)) {
+            if (rawOnly) {
+                throw new IllegalArgumentException("More than " + maxRawRows
+                        + " raw rows in range; narrow it or ask for a rollup resolution");
+            }
+            long rangeMs = Math.max(1, end.toEpochMilli() - start.toEpochMilli());
+            level = RollupLevel.finestWithin(rangeMs, (int) Math.max(1, maxRawRows / pointIds.size()));
+            series.replaceAll((id, s) -> new Downsampler.Series(64));
+        }
+        if (level != null) {
+            for (int from = 0; from < pointIds.size(); from += BatchUpserts.IN_CHUNK) {
+                List<Long> chunk = pointIds.subList(from, Math.min(pointIds.size(), from + BatchUpserts.IN_CHUNK));
+                scanRollup(chunk, start, end, level, series);
+            }
+        }
+
+        long[] shared = null;
+        boolean aligned = true;
+        for (Downsampler.Series s : series.values()) {
+            long[] ts = timestamps(s);
+            if (shared == null) {
+                shared = ts;
+            } else if (!Arrays.equals(shared, ts)) {
+                aligned = false;
+                break;
+            }
+        }
+        List<Column> columns = new ArrayList<>(series.size());
+        for (Map.Entry<Long, Downsampler.Series> e : series.entrySet()) {
+            Downsampler.Series s = e.getValue();
+            double[] values = new double[s.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = s.value(i);
+            }
+            columns.add(new Column(e.getKey(), aligned ? null : timestamps(s), values));
+        }
+        String aggLevel = level != null ? level.code() : "raw";
+        return new Result(aggLevel, aligned ? shared : null, columns);
+    }
+
+    // returns false, with the series partly filled, once more than maxRawRows rows have been read
+    private boolean scanRaw(List<Long> pointIds, Instant start, Instant end, Map<Long, Downsampler.Series> series) {
+        long[] rows = new long[1];
+        measurementReader.scan(TieredMeasurementReader.Scan.range(pointIds, start, end), 5000,
+                new TieredMeasurementReader.RowSink() {
+                    // rows are grouped by point, so the map lookup happens once per series rather than per row
+                    private long currentPoint = Long.MIN_VALUE;
+                    private Downsampler.Series target;
+
+                    @Override
+                    public boolean accept(long pointId, Instant ts, double value, byte quality) {
+                        if (Double.isNaN(value)) {
+                            return true;
+                        }
+                        if (++rows[0] > maxRawRows) {
+                            return false;
+                        }
+                        if (pointId != currentPoint) {
+                            currentPoint = pointId;
+                            target = series.get(pointId);
+                        }
+                        target.add(ts.toEpochMilli(), value);
+                        return true;
+                    }
+                });
+        return rows[0] <= maxRawRows;
+    }
+
+    private void scanRollup(List<Long> pointIds, Instant start, Instant end, RollupLevel level,
+                            Map<Long, Downsampler.Series> series) {
+        String inClause = pointIds.stream().map(id -> "?").collect(Collectors.joining(","));
+        String sql = """
+                SELECT POINT_ID, BUCKET_TS, AVG_V FROM TS_ROLLUP
+                WHERE POINT_ID IN (%s) AND BUCKET_TS BETWEEN ? AND ? AND AGG_LEVEL = ? AND AVG_V IS NOT NULL
+                ORDER BY POINT_ID, BUCKET_TS
+                """.formatted(inClause);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            int idx = 1;
+            for (Long id : pointIds) {
+                ps.setLong(idx++, id);
+            }
+            ps.setTimestamp(idx++, Timestamp.from(start));
+            ps.setTimestamp(idx++, Timestamp.from(end));
+            ps.setString(idx, level.code());
+            ps.setFetchSize(5000);
+            return ps;
+        }, new RowCallbackHandler() {
+            // rows are grouped by point, so the map lookup happens once per series rather than per row
+            private long currentPoint = Long.MIN_VALUE;
+            private Downsampler.Series target;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                long pointId = rs.getLong(1);
+                if (pointId != currentPoint) {
+                    currentPoint = pointId;
+                    target = series.get(pointId);
+                }
+                target.add(rs.getTimestamp(2).getTime(), rs.getDouble(3));
+            }
+        });
+    }
+
+    private static long[] timestamps(Downsampler.Series s) {
+        long[] ts = new long[s.size()];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = s.timestamp(i);
+        }
+        return ts;
+    }
+
+    public record Selector(List<Long> pointIds, Long parkId, Long assetId, String measType, String energyType,
+                           boolean keyPoints, String category) {
+
+        public boolean isEmpty() {
+            return (pointIds == null || pointIds.isEmpty()) && parkId == null && assetId == null && measType == null
+                    && energyType == null && !keyPoints && category == null;
+        }
+    }
+
+    /**
+     * {@code timestamps} (epoch ms) is set when all series share it; otherwise each column carries its own.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Result(String aggLevel, long[] timestamps, List<Column> series) {}
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Column(long pointId, long[] timestamps, double[] values) {}
+}
@@ -0,0 +1,63 @@
+package com.greenmesh.telemetry;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Single-pass, shape-preserving reduction of a time-ordered series to roughly a target number of points.
+ * Samples must be offered in ascending time order; NaN values are ignored.
+ */
+public interface Downsampler {
+
+    void add(long ts, double value);
+
+    Series finish();
+
+    static Downsampler of(String mode, long start, long end, int points) {
+        return switch (mode.toLowerCase(Locale.ROOT)) {
+            case "lttb" -> new LttbDownsampler(start, end, points);
+            case "m4" -> new M4Downsampler(start, end, points);
+            default -> throw new IllegalArgumentException("Unknown downsampling mode: " + mode);
+        };
+    }
+
+    /**
+     * Growable pair of primitive columns.
+     */
+    final class Series {
+        private long[] timestamps;
+        private double[] values;
+        private int size;
+
+        public Series(int capacity) {
+            timestamps = new long[Math.max(capacity, 16)];
+            values = new double[timestamps.length];
+        }
+
+        public void add(long ts, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = ts;
+            values[size] = value;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long timestamp(int i) {
+            return timestamps[i];
+        }
+
+        public double value(int i) {
+            return values[i];
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.greenmesh.telemetry;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.greenmesh.masterdata.MeterPointRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Screens raw samples against the meter point registry before they reach JDBC or Kafka, so one bad point id no
+ * longer fails the whole batch at the FK check (and gets it retried by the gateway).
+ */
+@Component
+public class IngestValidator {
+
+    static final int MAX_REPORTED_REJECTS = 100;
+
+    private final MeterPointRegistry registry;
+
+    public IngestValidator(MeterPointRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Removes invalid rows from {@code batch} in place. {@code index} of a reject is the row's position before the
+     * call; only the first {@value #MAX_REPORTED_REJECTS} rejects are itemized.
+     */
+    public Rejects screen(SampleBatch batch) {
+        BitSet bad = null;
+        List<Reject> details = new ArrayList<>();
+        long lastPoint = 0;
+        String lastReason = null;
+        for (int i = 0; i < batch.size(); i++) {
+            long pointId = batch.pointId(i);
+            // batches are mostly runs of the same point; only look up when the id changes
+            if (i == 0 || pointId != lastPoint) {
+                lastPoint = pointId;
+                lastReason = registry.rejectReason(pointId);
+            }
+            if (lastReason != null) {
+                if (bad == null) {
+                    bad = new BitSet(batch.size());
+                }
+                bad.set(i);
+                if (details.size() < MAX_REPORTED_REJECTS) {
+                    details.add(new Reject(i, pointId, lastReason));
+                }
+            }
+        }
+        if (bad == null) {
+            return Rejects.NONE;
+        }
+        BitSet rejected = bad;
+        return new Rejects(batch.retain(i -> !rejected.get(i)), details);
+    }
+
+    public record Reject(int index, long pointId, String reason) {}
+
+    public record Rejects(int count, List<Reject> items) {
+        static final Rejects NONE = new Rejects(0, List.of());
+
+        public String firstReason() {
+            return items.isEmpty() ? null : items.get(0).reason();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.greenmesh.telemetry;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Last (ts, value, quality) per point, kept in primitive arrays behind a {@link LongIndexMap}.
+ * Warmed from the recent days of TS_MEASUREMENT once the application is ready (bounded so only the newest
+ * partitions are scanned) and then fed by {@link MeasurementWriter}; a sample only replaces the current one if it
+ * is not older. Points silent for longer are looked up on demand.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LatestValueStore implements MeasurementListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestValueStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int warmDays;
+    private final StampedLock lock = new StampedLock();
+    private final LongIndexMap index = new LongIndexMap(4096);
+    private long[] timestamps = new long[4096];
+    private double[] values = new double[4096];
+    private byte[] qualities = new byte[4096];
+
+    public LatestValueStore(JdbcTemplate jdbcTemplate, @Value("${app.latest.warm-days:30}") int warmDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.warmDays = warmDays;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        SampleBatch batch = new SampleBatch(4096);
+        Timestamp since = Timestamp.from(Instant.now().minus(Duration.ofDays(warmDays)));
+        jdbcTemplate.query("""
+                SELECT t.POINT_ID, t.TS, t.VALUE, t.QUALITY_FLAG
+                FROM TS_MEASUREMENT t
+                JOIN (
+                    SELECT POINT_ID, MAX(TS) AS MAX_TS
+                    FROM TS_MEASUREMENT
+                    WHERE TS >= ?
+                    GROUP BY POINT_ID
+                ) latest ON t.POINT_ID = latest.POINT_ID AND t.TS = latest.MAX_TS
+                WHERE t.TS >= ?
+                """, rs -> {
+            double value = rs.getDouble("VALUE");
+            batch.add(rs.getLong("POINT_ID"),
+                    rs.getTimestamp("TS").getTime(),
+                    rs.wasNull() ? Double.NaN : value,
+                    QualityFlags.code(rs.getString("QUALITY_FLAG")),
+                    null);
+        }, since, since);
+        onMeasurements(batch);
+        log.info("Latest-value store warmed with {} points", batch.size());
+    }
+
+    @Override
+    public void onMeasurements(SampleBatch batch) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                put(batch.pointId(i), batch.timestamp(i), batch.value(i), batch.quality(i));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Appends the known latest sample of each requested point to {@code found} and the unknown ids to {@code missing}.
+     */
+    public void lookup(Collection<Long> pointIds, List<Latest> found, List<Long> missing) {
+        long stamp = lock.readLock();
+        try {
+            for (Long pointId : pointIds) {
+                int slot = index.get(pointId);
+                if (slot < 0) {
+                    missing.add(pointId);
+                } else {
+                    found.add(new Latest(pointId, timestamps[slot], values[slot], qualities[slot]));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void put(long pointId, long ts, double value, byte quality) {
+        int slot = index.get(pointId);
+        if (slot < 0) {
+            slot = index.getOrAdd(pointId);
+            if (slot == timestamps.length) {
+                int capacity = timestamps.length * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                values = Arrays.copyOf(values, capacity);
+                qualities = Arrays.copyOf(qualities, capacity);
+            }
+        } else if (ts < timestamps[slot]) {
+            return;
+        }
+        timestamps[slot] = ts;
+        values[slot] = value;
+        qualities[slot] = quality;
+    }
+
+    /**
+     * {@code value} is NaN when the stored value is null.
+     */
+    public record Latest(long pointId, long ts, double value, byte quality) {}
+}
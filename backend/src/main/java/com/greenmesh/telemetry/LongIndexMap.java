@@ -0,0 +1,105 @@
+package com.greenmesh.telemetry;
+
+/**
+ * Open-addressing map from a long key to a dense, append-only slot number. Callers keep their per-key state in
+ * parallel primitive arrays indexed by slot, so lookups neither box keys nor allocate entries.
+ * Not thread-safe; callers guard it together with their arrays.
+ */
+public final class LongIndexMap {
+
+    private static final int EMPTY = 0;
+
+    private long[] keys;
+    // slot + 1, so the zero-filled array reads as empty
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    public LongIndexMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the slot for {@code key}, or -1 if absent.
+     */
+    public int get(long key) {
+        int i = hash(key) & mask;
+        while (true) {
+            int s = slots[i];
+            if (s == EMPTY) {
+                return -1;
+            }
+            if (keys[i] == key) {
+                return s - 1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the slot for {@code key}, assigning the next free slot ({@link #size()} before the call) if absent.
+     */
+    public int getOrAdd(long key) {
+        int i = hash(key) & mask;
+        while (true) {
+            int s = slots[i];
+            if (s == EMPTY) {
+                break;
+            }
+            if (keys[i] == key) {
+                return s - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        int slot = size++;
+        keys[i] = key;
+        slots[i] = slot + 1;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return slot;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Keys in slot order.
+     */
+    public long[] keys() {
+        long[] out = new long[size];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != EMPTY) {
+                out[slots[i] - 1] = keys[i];
+            }
+        }
+        return out;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != EMPTY) {
+                int i = hash(oldKeys[j]) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
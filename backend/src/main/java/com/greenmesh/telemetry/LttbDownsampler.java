@@ -0,0 +1,92 @@
+package com.greenmesh.telemetry;
+
+/**
+ * Largest-Triangle-Three-Buckets over fixed time buckets spanning [start, end]. Fixed time buckets (rather than
+ * equal-count buckets) let it run in one pass without knowing the row count: only the previous bucket is buffered,
+ * and its point is chosen once the following bucket's average is known. The first and last samples are always kept.
+ */
+public final class LttbDownsampler implements Downsampler {
+
+    private final long start;
+    private final double bucketWidth;
+    private final Series out;
+    private Series previous = new Series(64);
+    private Series current = new Series(64);
+    private long currentBucket = -1;
+    private double currentTsSum;
+    private double currentValueSum;
+    private long lastTs;
+    private double lastValue;
+
+    public LttbDownsampler(long start, long end, int points) {
+        this.start = start;
+        this.bucketWidth = Math.max(1.0, (double) (end - start) / Math.max(1, points - 2));
+        this.out = new Series(points);
+    }
+
+    @Override
+    public void add(long ts, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        lastTs = ts;
+        lastValue = value;
+        if (out.size() == 0) {
+            out.add(ts, value);
+            return;
+        }
+        long bucket = (long) ((ts - start) / bucketWidth);
+        if (bucket != currentBucket && current.size() > 0) {
+            if (previous.size() > 0) {
+                select(previous, currentTsSum / current.size(), currentValueSum / current.size());
+            }
+            Series swap = previous;
+            previous = current;
+            current = swap;
+            current.clear();
+            currentTsSum = 0;
+            currentValueSum = 0;
+        }
+        currentBucket = bucket;
+        current.add(ts, value);
+        currentTsSum += ts - start;
+        currentValueSum += value;
+    }
+
+    @Override
+    public Series finish() {
+        if (current.size() > 0) {
+            if (previous.size() > 0) {
+                select(previous, currentTsSum / current.size(), currentValueSum / current.size());
+            }
+            // the final bucket is judged against the last sample, which is kept regardless
+            select(current, lastTs - start, lastValue);
+            append(lastTs, lastValue);
+        }
+        return out;
+    }
+
+    private void select(Series bucket, double nextX, double nextY) {
+        int last = out.size() - 1;
+        double ax = out.timestamp(last) - start;
+        double ay = out.value(last);
+        double maxArea = -1;
+        int best = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            double bx = bucket.timestamp(i) - start;
+            double by = bucket.value(i);
+            double area = Math.abs((ax - nextX) * (by - ay) - (ax - bx) * (nextY - ay));
+            if (area > maxArea) {
+                maxArea = area;
+                best = i;
+            }
+        }
+        append(bucket.timestamp(best), bucket.value(best));
+    }
+
+    private void append(long ts, double value) {
+        if (out.timestamp(out.size() - 1) != ts) {
+            out.add(ts, value);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.greenmesh.telemetry;
+
+/**
+ * M4 aggregation: the range is split into {@code points / 4} time columns and each column keeps its first, last,
+ * minimum and maximum sample, which renders identically to the full series at that pixel width. Only the open
+ * column is held in memory.
+ */
+public final class M4Downsampler implements Downsampler {
+
+    private final long start;
+    private final double columnWidth;
+    private final Series out;
+    private long column = Long.MIN_VALUE;
+    private long firstTs;
+    private double firstValue;
+    private long lastTs;
+    private double lastValue;
+    private long minTs;
+    private double minValue;
+    private long maxTs;
+    private double maxValue;
+
+    public M4Downsampler(long start, long end, int points) {
+        this.start = start;
+        this.columnWidth = Math.max(1.0, (double) (end - start) / Math.max(1, points / 4));
+        this.out = new Series(points);
+    }
+
+    @Override
+    public void add(long ts, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        long c = (long) ((ts - start) / columnWidth);
+        if (c != column) {
+            flush();
+            column = c;
+            firstTs = lastTs = minTs = maxTs = ts;
+            firstValue = lastValue = minValue = maxValue = value;
+            return;
+        }
+        lastTs = ts;
+        lastValue = value;
+        if (value < minValue) {
+            minTs = ts;
+            minValue = value;
+        }
+        if (value > maxValue) {
+            maxTs = ts;
+            maxValue = value;
+        }
+    }
+
+    @Override
+    public Series finish() {
+        flush();
+        column = Long.MIN_VALUE;
+        return out;
+    }
+
+    private void flush() {
+        if (column == Long.MIN_VALUE) {
+            return;
+        }
+        // emit the column's extremes in time order, skipping samples already emitted
+        long lowTs = Math.min(minTs, maxTs);
+        long highTs = Math.max(minTs, maxTs);
+        append(firstTs, firstValue);
+        append(lowTs, lowTs == minTs ? minValue : maxValue);
+        append(highTs, highTs == maxTs ? maxValue : minValue);
+        append(lastTs, lastValue);
+    }
+
+    private void append(long ts, double value) {
+        if (out.size() == 0 || out.timestamp(out.size() - 1) != ts) {
+            out.add(ts, value);
+        }
+    }
+}
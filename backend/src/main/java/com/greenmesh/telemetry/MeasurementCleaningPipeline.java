@@ -0,0 +1,445 @@
+package com.greenmesh.telemetry;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.jdbc.WatermarkStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Data-quality and time-alignment stage between RAW_TIMESERIES and TS_MEASUREMENT.
+ * <p>
+ * Each cycle reads raw rows past the persisted ID watermark (only rows whose INGEST_TIME is older than the settle
+ * window, so in-flight inserts with lower IDs are not skipped), snaps them to the point's SAMPLING_INTERVAL_S grid,
+ * keeps the latest-ingested sample per grid slot, flags spikes and gaps, and upserts per point-id shard in parallel.
+ * IDs the watermark passes without having seen them are kept as open ranges and re-read every cycle for
+ * {@code hole-retention-ms}, so rows of transactions that stay open longer than the settle window still arrive.
+ * <p>
+ * The watermark only advances once every shard has committed; replays are harmless because writes are upserts.
+ * The per-point spike/gap baselines and the open ranges are only updated after that, so a failed cycle is replayed
+ * against the same state and classifies its rows the same way.
+ */
+@Component
+public class MeasurementCleaningPipeline {
+
+    static final String WATERMARK = "raw-to-measurement";
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementCleaningPipeline.class);
+    private static final int DEFAULT_INTERVAL_S = 60;
+    private static final long INTERVAL_REFRESH_MS = 60_000;
+    private static final int SPIKE_WARMUP_SAMPLES = 5;
+    private static final double DELTA_EWMA_ALPHA = 0.1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeasurementWriter writer;
+    private final WatermarkStore watermarks;
+    private final boolean enabled;
+    private final int batchRows;
+    private final long settleMs;
+    private final double spikeFactor;
+    private final double gapFactor;
+    private final int shards;
+    private final long holeRetentionMs;
+    private final int maxHoles;
+    private final ExecutorService pool;
+    private final Map<Long, PointState> states = new ConcurrentHashMap<>();
+    // ID ranges {from, to, openedAtMs} below the watermark that were not visible yet; only touched under runOnce
+    private List<long[]> holes = new ArrayList<>();
+    private volatile Map<Long, Integer> intervals = Map.of();
+    private volatile long intervalsLoadedAt;
+
+    public MeasurementCleaningPipeline(JdbcTemplate jdbcTemplate,
+                                       MeasurementWriter writer,
+                                       WatermarkStore watermarks,
+                                       @Value("${app.pipeline.cleaning.enabled:true}") boolean enabled,
+                                       @Value("${app.pipeline.cleaning.batch-rows:50000}") int batchRows,
+                                       @Value("${app.pipeline.cleaning.settle-ms:3000}") long settleMs,
+                                       @Value("${app.pipeline.cleaning.spike-factor:8}") double spikeFactor,
+                                       @Value("${app.pipeline.cleaning.gap-factor:3}") double gapFactor,
+                                       @Value("${app.pipeline.cleaning.shards:0}") int shards,
+                                       @Value("${app.pipeline.cleaning.hole-retention-ms:600000}")
+                                       long holeRetentionMs,
+                                       @Value("${app.pipeline.cleaning.max-holes:10000}") int maxHoles) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writer = writer;
+        this.watermarks = watermarks;
+        this.enabled = enabled;
+        this.batchRows = batchRows;
+        this.settleMs = settleMs;
+        this.spikeFactor = spikeFactor;
+        this.gapFactor = gapFactor;
+        this.shards = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        this.holeRetentionMs = holeRetentionMs;
+        this.maxHoles = maxHoles;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.shards, r -> {
+            Thread t = new Thread(r, "measurement-cleaning-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.pipeline.cleaning.interval-ms:2000}",
+            initialDelayString = "${app.pipeline.cleaning.initial-delay-ms:5000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int consumed;
+            do {
+                consumed = runOnce();
+            } while (consumed >= batchRows);
+        } catch (RuntimeException ex) {
+            log.warn("Measurement cleaning cycle failed; will retry from the last watermark", ex);
+        }
+    }
+
+    /**
+     * Processes one slice of raw rows; returns the number of raw rows consumed.
+     */
+    public synchronized int runOnce() {
+        long lastId = watermarks.get(WATERMARK)
+                .map(WatermarkStore.Watermark::lastId)
+                .orElse(0L);
+        Instant now = Instant.now();
+        RawRows rows = new RawRows(Math.min(batchRows, 8192));
+        List<long[]> nextHoles = readHoles(rows, now.toEpochMilli());
+        int late = rows.size();
+        readRaw(rows, lastId, now.minusMillis(settleMs), nextHoles, now.toEpochMilli());
+        if (rows.size() == 0) {
+            holes = nextHoles;
+            return 0;
+        }
+        Map<Long, Integer> intervalMap = intervals(rows);
+        long[] snapped = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            long intervalMs = intervalMap.getOrDefault(rows.samples.pointId(i), DEFAULT_INTERVAL_S) * 1000L;
+            snapped[i] = Math.floorDiv(rows.samples.timestamp(i) + intervalMs / 2, intervalMs) * intervalMs;
+        }
+
+        List<Callable<ShardResult>> tasks = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            int shard = s;
+            tasks.add(() -> processShard(shard, rows, snapped, intervalMap));
+        }
+        int written = 0;
+        List<Map<Long, PointState>> classified = new ArrayList<>(shards);
+        try {
+            for (Future<ShardResult> f : pool.invokeAll(tasks)) {
+                ShardResult result = f.get();
+                written += result.written();
+                classified.add(result.states());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Measurement cleaning interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Measurement cleaning shard failed", ex.getCause());
+        }
+        long maxId = Math.max(lastId, rows.maxId);
+        watermarks.save(WATERMARK, maxId, rows.maxIngestTime);
+        classified.forEach(states::putAll);
+        holes = nextHoles;
+        if (late > 0) {
+            log.info("Cleaned {} raw rows that committed after the watermark had passed them", late);
+        }
+        log.debug("Cleaned {} raw rows into {} measurements (watermark {})", rows.size(), written, maxId);
+        return rows.size() - late;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Classifies and upserts one shard; the baselines it moved are returned as copies and only replace the live ones
+     * once the whole cycle has committed.
+     */
+    private ShardResult processShard(int shard, RawRows rows, long[] snapped, Map<Long, Integer> intervalMap) {
+        SampleBatch raw = rows.samples;
+        int[] idx = new int[raw.size()];
+        int n = 0;
+        for (int i = 0; i < raw.size(); i++) {
+            if (Math.floorMod(raw.pointId(i), shards) == shard) {
+                idx[n++] = i;
+            }
+        }
+        if (n == 0) {
+            return new ShardResult(0, Map.of());
+        }
+        // rows arrive in ID order, so a stable sort keeps the latest-ingested sample last within a grid slot
+        sortBySlot(idx, n, raw, snapped);
+
+        Map<Long, PointState> touched = new HashMap<>();
+        SampleBatch out = new SampleBatch(n);
+        for (int k = 0; k < n; k++) {
+            int i = idx[k];
+            long pointId = raw.pointId(i);
+            if (k + 1 < n) {
+                int next = idx[k + 1];
+                if (raw.pointId(next) == pointId && snapped[next] == snapped[i]) {
+                    continue;
+                }
+            }
+            long intervalMs = intervalMap.getOrDefault(pointId, DEFAULT_INTERVAL_S) * 1000L;
+            PointState state = touched.computeIfAbsent(pointId, id -> PointState.copyOf(states.get(id)));
+            byte quality = classify(state, snapped[i], raw.value(i), raw.quality(i), intervalMs);
+            out.add(pointId, snapped[i], raw.value(i), quality, null);
+        }
+        writer.upsert(out);
+        return new ShardResult(out.size(), touched);
+    }
+
+    /**
+     * Stable merge sort of the first {@code n} row indexes by (point, grid slot), without boxing.
+     */
+    private static void sortBySlot(int[] idx, int n, SampleBatch raw, long[] snapped) {
+        int[] src = idx;
+        int[] dst = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int a = lo;
+                int b = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (b >= hi || a < mid && compareSlot(src[a], src[b], raw, snapped) <= 0) {
+                        dst[k] = src[a++];
+                    } else {
+                        dst[k] = src[b++];
+                    }
+                }
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != idx) {
+            System.arraycopy(src, 0, idx, 0, n);
+        }
+    }
+
+    private static int compareSlot(int a, int b, SampleBatch raw, long[] snapped) {
+        int byPoint = Long.compare(raw.pointId(a), raw.pointId(b));
+        return byPoint != 0 ? byPoint : Long.compare(snapped[a], snapped[b]);
+    }
+
+    private byte classify(PointState state, long ts, double value, byte rawQuality, long intervalMs) {
+        byte quality = rawQuality == QualityFlags.NONE ? QualityFlags.GOOD : rawQuality;
+        if (Double.isNaN(value) || ts <= state.lastTs) {
+            // late or empty samples are aligned and stored but do not move the per-point baseline
+            return quality;
+        }
+        boolean spike = false;
+        if (state.lastTs != Long.MIN_VALUE && ts - state.lastTs > gapFactor * intervalMs && quality == QualityFlags.GOOD) {
+            quality = QualityFlags.GAP;
+        }
+        if (state.samples >= SPIKE_WARMUP_SAMPLES) {
+            double delta = Math.abs(value - state.lastValue);
+            double tolerance = Math.max(state.meanAbsDelta, Math.max(Math.abs(state.lastValue) * 1e-3, 1e-6));
+            if (delta > spikeFactor * tolerance) {
+                spike = true;
+                quality = QualityFlags.SPIKE;
+            }
+        }
+        if (!spike) {
+            if (state.samples > 0) {
+                double delta = Math.abs(value - state.lastValue);
+                state.meanAbsDelta = state.samples == 1
+                        ? delta
+                        : state.meanAbsDelta + DELTA_EWMA_ALPHA * (delta - state.meanAbsDelta);
+            }
+            state.lastValue = value;
+            state.samples++;
+        }
+        state.lastTs = ts;
+        return quality;
+    }
+
+    /**
+     * Reads the rows that have appeared in the open ID ranges into {@code rows} and returns the ranges still open,
+     * minus the expired ones.
+     */
+    private List<long[]> readHoles(RawRows rows, long now) {
+        List<long[]> open = new ArrayList<>(holes.size());
+        for (long[] hole : holes) {
+            if (now - hole[2] <= holeRetentionMs) {
+                open.add(hole);
+            }
+        }
+        if (open.size() < holes.size()) {
+            // usually IDs of rolled-back inserts
+            log.debug("{} raw ID ranges stayed empty for {} ms and are no longer re-read",
+                    holes.size() - open.size(), holeRetentionMs);
+        }
+        List<long[]> remaining = new ArrayList<>(open.size());
+        int chunk = BatchUpserts.IN_CHUNK / 2;
+        for (int from = 0; from < open.size(); from += chunk) {
+            List<long[]> part = open.subList(from, Math.min(open.size(), from + chunk));
+            List<Object> args = new ArrayList<>(part.size() * 2);
+            StringBuilder where = new StringBuilder();
+            for (long[] hole : part) {
+                where.append(where.isEmpty() ? "" : " OR ").append("ID BETWEEN ? AND ?");
+                args.add(hole[0]);
+                args.add(hole[1]);
+            }
+            List<Long> found = new ArrayList<>();
+            jdbcTemplate.query("""
+                    SELECT ID, POINT_ID, TS, VALUE, QUALITY_FLAG, INGEST_TIME
+                    FROM RAW_TIMESERIES
+                    WHERE %s
+                    ORDER BY ID
+                    """.formatted(where), rs -> {
+                found.add(rs.getLong("ID"));
+                addRow(rows, rs);
+            }, args.toArray());
+            // split each range around the IDs that turned up
+            int f = 0;
+            for (long[] hole : part) {
+                long next = hole[0];
+                while (f < found.size() && found.get(f) <= hole[1]) {
+                    long id = found.get(f++);
+                    if (id > next) {
+                        remaining.add(new long[]{next, id - 1, hole[2]});
+                    }
+                    next = id + 1;
+                }
+                if (next <= hole[1]) {
+                    remaining.add(new long[]{next, hole[1], hole[2]});
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Appends the settled rows past {@code afterId} to {@code rows} and records the IDs skipped between them as
+     * open ranges.
+     */
+    private void readRaw(RawRows rows, long afterId, Instant settledBefore, List<long[]> openHoles, long now) {
+        long[] previous = {afterId};
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("""
+                    SELECT ID, POINT_ID, TS, VALUE, QUALITY_FLAG, INGEST_TIME
+                    FROM RAW_TIMESERIES
+                    WHERE ID > ? AND INGEST_TIME <= ?
+                    ORDER BY ID
+                    """);
+            ps.setLong(1, afterId);
+            ps.setTimestamp(2, Timestamp.from(settledBefore));
+            ps.setMaxRows(batchRows);
+            ps.setFetchSize(Math.min(batchRows, 5000));
+            return ps;
+        }, rs -> {
+            long id = rs.getLong("ID");
+            if (id > previous[0] + 1) {
+                openHoles.add(new long[]{previous[0] + 1, id - 1, now});
+            }
+            previous[0] = id;
+            addRow(rows, rs);
+        });
+        if (openHoles.size() > maxHoles) {
+            log.warn("{} raw ID ranges are open; the oldest {} are no longer re-read", openHoles.size(),
+                    openHoles.size() - maxHoles);
+            openHoles.subList(0, openHoles.size() - maxHoles).clear();
+        }
+    }
+
+    private static void addRow(RawRows rows, ResultSet rs) throws SQLException {
+        double value = rs.getDouble("VALUE");
+        rows.add(rs.getLong("ID"),
+                rs.getLong("POINT_ID"),
+                rs.getTimestamp("TS").getTime(),
+                rs.wasNull() ? Double.NaN : value,
+                QualityFlags.code(rs.getString("QUALITY_FLAG")),
+                rs.getTimestamp("INGEST_TIME"));
+    }
+
+    private Map<Long, Integer> intervals(RawRows rows) {
+        boolean stale = System.currentTimeMillis() - intervalsLoadedAt > INTERVAL_REFRESH_MS;
+        Map<Long, Integer> current = intervals;
+        if (!stale) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (!current.containsKey(rows.samples.pointId(i))) {
+                    stale = true;
+                    break;
+                }
+            }
+        }
+        if (stale) {
+            Map<Long, Integer> loaded = new HashMap<>();
+            jdbcTemplate.query("SELECT POINT_ID, SAMPLING_INTERVAL_S FROM DIM_METER_POINT", rs -> {
+                int interval = rs.getInt("SAMPLING_INTERVAL_S");
+                loaded.put(rs.getLong("POINT_ID"), interval > 0 ? interval : DEFAULT_INTERVAL_S);
+            });
+            intervals = loaded;
+            intervalsLoadedAt = System.currentTimeMillis();
+            current = loaded;
+        }
+        return current;
+    }
+
+    private static final class PointState {
+        long lastTs = Long.MIN_VALUE;
+        double lastValue = Double.NaN;
+        double meanAbsDelta;
+        long samples;
+
+        static PointState copyOf(PointState state) {
+            PointState copy = new PointState();
+            if (state != null) {
+                copy.lastTs = state.lastTs;
+                copy.lastValue = state.lastValue;
+                copy.meanAbsDelta = state.meanAbsDelta;
+                copy.samples = state.samples;
+            }
+            return copy;
+        }
+    }
+
+    private record ShardResult(int written, Map<Long, PointState> states) {}
+
+    private static final class RawRows {
+        final SampleBatch samples;
+        long maxId;
+        Instant maxIngestTime;
+
+        RawRows(int capacity) {
+            samples = new SampleBatch(capacity);
+        }
+
+        void add(long id, long pointId, long ts, double value, byte quality, Timestamp ingestTime) {
+            samples.add(pointId, ts, value, quality, null);
+            maxId = Math.max(maxId, id);
+            if (ingestTime != null && (maxIngestTime == null || ingestTime.toInstant().isAfter(maxIngestTime))) {
+                maxIngestTime = ingestTime.toInstant();
+            }
+        }
+
+        int size() {
+            return samples.size();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.greenmesh.telemetry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes cleaned measurements (hot and cold tiers) as NDJSON straight from a forward-only cursor, ordered by
+ * (POINT_ID, TS) so that a page can be resumed from an opaque keyset cursor. Every response ends with a control line
+ * {@code {"done":true}} or {@code {"done":false,"cursor":"..."}}; a missing control line means the stream broke.
+ */
+@Component
+public class MeasurementExporter {
+
+    private final TieredMeasurementReader measurementReader;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int fetchSize;
+
+    public MeasurementExporter(TieredMeasurementReader measurementReader,
+                               @Value("${app.export.fetch-size:5000}") int fetchSize) {
+        this.measurementReader = measurementReader;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * {@code after} may be null to start at the beginning of the range; {@code limit <= 0} exports the whole range.
+     */
+    public void export(List<Long> pointIds, Instant start, Instant end, Cursor after, long limit, OutputStream out)
+            throws IOException {
+        JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+        json.setRootValueSeparator(null);
+        long[] written = {0};
+        long[] lastPoint = {0};
+        Instant[] lastTs = {null};
+        TieredMeasurementReader.Key afterKey = after != null
+                ? new TieredMeasurementReader.Key(after.pointId(), after.ts())
+                : null;
+        TieredMeasurementReader.Scan scan = new TieredMeasurementReader.Scan(pointIds, start, end, true, afterKey,
+                limit);
+        measurementReader.scan(scan, fetchSize, (pointId, ts, value, quality) -> {
+            try {
+                json.writeStartObject();
+                json.writeNumberField("pointId", pointId);
+                json.writeStringField("ts", ts.toString());
+                json.writeFieldName("value");
+                if (Double.isNaN(value)) {
+                    json.writeNull();
+                } else {
+                    json.writeNumber(value);
+                }
+                json.writeStringField("qualityFlag", QualityFlags.name(quality));
+                json.writeEndObject();
+                json.writeRaw('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            written[0]++;
+            lastPoint[0] = pointId;
+            lastTs[0] = ts;
+            return true;
+        });
+
+        json.writeStartObject();
+        if (limit > 0 && written[0] == limit) {
+            json.writeBooleanField("done", false);
+            json.writeStringField("cursor", new Cursor(lastPoint[0], lastTs[0]).encode());
+        } else {
+            json.writeBooleanField("done", true);
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+    }
+
+    /**
+     * Keeps full timestamp precision; a millisecond cursor would repeat rows stored with micro/nanoseconds.
+     */
+    public record Cursor(long pointId, Instant ts) {
+
+        public String encode() {
+            String raw = pointId + ":" + ts.getEpochSecond() + ":" + ts.getNano();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        public static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+                String[] parts = raw.split(":");
+                return new Cursor(Long.parseLong(parts[0]),
+                        Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid export cursor", ex);
+            }
+        }
+    }
+}
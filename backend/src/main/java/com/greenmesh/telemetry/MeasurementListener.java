@@ -0,0 +1,10 @@
+package com.greenmesh.telemetry;
+
+/**
+ * Notified after a batch has been committed to TS_MEASUREMENT. Called from pipeline worker threads,
+ * possibly concurrently for different points, and must not retain or modify the batch.
+ */
+public interface MeasurementListener {
+
+    void onMeasurements(SampleBatch batch);
+}
@@ -0,0 +1,78 @@
+package com.greenmesh.telemetry;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single write path into TS_MEASUREMENT: upserts on UQ_TS_POINT_TS and fans the batch out to listeners.
+ */
+@Component
+public class MeasurementWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementWriter.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE TS_MEASUREMENT SET VALUE = ?, QUALITY_FLAG = ?, AGG_LEVEL = 'raw' WHERE POINT_ID = ? AND TS = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL) VALUES (?,?,?,?, 'raw')";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<MeasurementListener> listenerProvider;
+    private volatile List<MeasurementListener> listeners;
+
+    public MeasurementWriter(JdbcTemplate jdbcTemplate, ObjectProvider<MeasurementListener> listenerProvider) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listenerProvider = listenerProvider;
+    }
+
+    public BatchUpserts.Result upsert(SampleBatch batch) {
+        BatchUpserts.Result result = BatchUpserts.upsert(jdbcTemplate, batch.size(),
+                UPDATE_SQL, (ps, i) -> {
+                    setValue(ps, 1, batch.value(i));
+                    ps.setString(2, QualityFlags.name(batch.quality(i)));
+                    ps.setLong(3, batch.pointId(i));
+                    ps.setTimestamp(4, new Timestamp(batch.timestamp(i)));
+                },
+                INSERT_SQL, (ps, i) -> {
+                    ps.setLong(1, batch.pointId(i));
+                    ps.setTimestamp(2, new Timestamp(batch.timestamp(i)));
+                    setValue(ps, 3, batch.value(i));
+                    ps.setString(4, QualityFlags.name(batch.quality(i)));
+                });
+        for (MeasurementListener listener : listeners()) {
+            try {
+                listener.onMeasurements(batch);
+            } catch (RuntimeException ex) {
+                log.warn("Measurement listener {} failed", listener.getClass().getSimpleName(), ex);
+            }
+        }
+        return result;
+    }
+
+    private List<MeasurementListener> listeners() {
+        List<MeasurementListener> resolved = listeners;
+        if (resolved == null) {
+            resolved = listenerProvider.orderedStream().toList();
+            listeners = resolved;
+        }
+        return resolved;
+    }
+
+    private static void setValue(PreparedStatement ps, int idx, double value) throws SQLException {
+        if (Double.isNaN(value)) {
+            ps.setNull(idx, Types.DECIMAL);
+        } else {
+            ps.setDouble(idx, value);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.greenmesh.telemetry;
+
+/**
+ * Byte codes for QUALITY_FLAG so samples can travel in primitive arrays and binary frames.
+ * Unknown textual flags are folded into SUSPECT.
+ */
+public final class QualityFlags {
+
+    public static final byte NONE = 0;
+    public static final byte GOOD = 1;
+    public static final byte SUSPECT = 2;
+    public static final byte BAD = 3;
+    public static final byte SPIKE = 4;
+    public static final byte GAP = 5;
+    public static final byte ESTIMATED = 6;
+
+    private static final String[] NAMES = {null, "GOOD", "SUSPECT", "BAD", "SPIKE", "GAP", "ESTIMATED"};
+
+    private QualityFlags() {
+    }
+
+    public static byte code(String flag) {
+        if (flag == null || flag.isEmpty()) {
+            return NONE;
+        }
+        for (int i = 1; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(flag)) {
+                return (byte) i;
+            }
+        }
+        return SUSPECT;
+    }
+
+    public static String name(byte code) {
+        return code > 0 && code < NAMES.length ? NAMES[code] : null;
+    }
+}
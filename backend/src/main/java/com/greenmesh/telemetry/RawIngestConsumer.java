@@ -0,0 +1,106 @@
+package com.greenmesh.telemetry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(prefix = "app.ingest.kafka", name = "enabled", havingValue = "true")
+public class RawIngestConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(RawIngestConsumer.class);
+
+    private final RawTimeseriesWriter writer;
+    private final IngestValidator validator;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Long> partitionLag = new ConcurrentHashMap<>();
+
+    public RawIngestConsumer(RawTimeseriesWriter writer, IngestValidator validator, MeterRegistry meterRegistry) {
+        this.writer = writer;
+        this.validator = validator;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("greenmesh.ingest.kafka.consumer.lag", this, RawIngestConsumer::totalLag)
+                .description("Records published to the raw ingest topic but not yet written to RAW_TIMESERIES")
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(id = "raw-ingest-writer",
+            topics = "${app.ingest.kafka.topic}",
+            containerFactory = "rawIngestListenerFactory")
+    public void onBatch(List<ConsumerRecord<Long, byte[]>> records, Consumer<?, ?> consumer) {
+        SampleBatch batch = new SampleBatch(records.size());
+        for (ConsumerRecord<Long, byte[]> record : records) {
+            Header source = record.headers().lastHeader(RawIngestPublisher.SOURCE_HEADER);
+            RawSampleCodec.decodeInto(record.value(),
+                    source != null ? new String(source.value(), StandardCharsets.UTF_8) : null, batch);
+        }
+        IngestValidator.Rejects invalid = validator.screen(batch);
+        if (invalid.count() > 0) {
+            log.warn("Raw ingest batch of {} records contained {} invalid rows ({}); skipped them",
+                    records.size(), invalid.count(), invalid.firstReason());
+        }
+        try {
+            writer.insertIfAbsent(batch);
+        } catch (DataIntegrityViolationException ex) {
+            writeIsolatingRejects(batch);
+        }
+        recordLag(consumer);
+    }
+
+    public long totalLag() {
+        long total = 0;
+        for (long lag : partitionLag.values()) {
+            total += lag;
+        }
+        return total;
+    }
+
+    public Map<String, Long> partitionLag() {
+        return Map.copyOf(partitionLag);
+    }
+
+    // Point ids are screened above; this still keeps any other constraint violation from blocking the partition forever; transient failures still propagate.
+    private void writeIsolatingRejects(SampleBatch batch) {
+        SampleBatch single = new SampleBatch(1);
+        int rejected = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            single.clear();
+            single.add(batch.pointId(i), batch.timestamp(i), batch.value(i), batch.quality(i), batch.source(i));
+            try {
+                writer.insertIfAbsent(single);
+            } catch (DataIntegrityViolationException ex) {
+                rejected++;
+            }
+        }
+        log.warn("Raw ingest batch of {} records contained {} rejected rows; skipped them", batch.size(), rejected);
+    }
+
+    private void recordLag(Consumer<?, ?> consumer) {
+        for (TopicPartition partition : consumer.assignment()) {
+            OptionalLong lag = consumer.currentLag(partition);
+            if (lag.isPresent()) {
+                partitionLag.put(partition.toString(), lag.getAsLong());
+            }
+        }
+    }
+}
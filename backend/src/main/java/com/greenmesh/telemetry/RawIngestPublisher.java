@@ -0,0 +1,86 @@
+package com.greenmesh.telemetry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(prefix = "app.ingest.kafka", name = "enabled", havingValue = "true")
+public class RawIngestPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(RawIngestPublisher.class);
+
+    static final String SOURCE_HEADER = "gm-source";
+
+    private final KafkaTemplate<Long, byte[]> kafkaTemplate;
+    private final String topic;
+    private final long sendTimeoutMs;
+
+    public RawIngestPublisher(@Qualifier("rawIngestKafkaTemplate") KafkaTemplate<Long, byte[]> kafkaTemplate,
+                              @Value("${app.ingest.kafka.topic}") String topic,
+                              @Value("${app.ingest.kafka.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.topic = topic;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    /**
+     * Sends every sample and waits (up to the send timeout, shared by the whole batch) for the broker acks, so only
+     * acknowledged samples are reported as accepted; keying by pointId keeps each point's samples ordered within one
+     * partition.
+     */
+    public Published publish(SampleBatch batch) {
+        List<CompletableFuture<SendResult<Long, byte[]>>> sends = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            long pointId = batch.pointId(i);
+            ProducerRecord<Long, byte[]> record = new ProducerRecord<>(topic, pointId,
+                    RawSampleCodec.encode(pointId, batch.timestamp(i), batch.value(i), batch.quality(i)));
+            String source = batch.source(i);
+            if (source != null) {
+                record.headers().add(SOURCE_HEADER, source.getBytes(StandardCharsets.UTF_8));
+            }
+            sends.add(kafkaTemplate.send(record));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        int accepted = 0;
+        String firstError = null;
+        for (CompletableFuture<SendResult<Long, byte[]>> send : sends) {
+            try {
+                send.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                accepted++;
+            } catch (ExecutionException ex) {
+                firstError = firstError != null ? firstError : String.valueOf(ex.getCause());
+            } catch (TimeoutException ex) {
+                firstError = firstError != null ? firstError : "no broker ack within " + sendTimeoutMs + " ms";
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                firstError = firstError != null ? firstError : "interrupted while waiting for broker acks";
+                break;
+            }
+        }
+        int failed = sends.size() - accepted;
+        if (failed > 0) {
+            log.warn("Raw ingest publish: {} of {} samples not acknowledged ({})", failed, sends.size(), firstError);
+        }
+        return new Published(accepted, failed, firstError);
+    }
+
+    /**
+     * {@code failed} samples were not acknowledged by the broker (send error or timeout) and may need re-sending.
+     */
+    public record Published(int accepted, int failed, String firstError) {}
+}
@@ -0,0 +1,28 @@
+package com.greenmesh.telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed 25-byte big-endian sample frame: pointId (long), epoch-millis ts (long), value (double), quality (byte).
+ */
+public final class RawSampleCodec {
+
+    public static final int FRAME_BYTES = 25;
+
+    private RawSampleCodec() {
+    }
+
+    public static byte[] encode(long pointId, long tsMillis, double value, byte quality) {
+        ByteBuffer buf = ByteBuffer.allocate(FRAME_BYTES);
+        buf.putLong(pointId).putLong(tsMillis).putDouble(value).put(quality);
+        return buf.array();
+    }
+
+    public static void decodeInto(byte[] frame, String source, SampleBatch target) {
+        if (frame == null || frame.length != FRAME_BYTES) {
+            throw new IllegalArgumentException("Invalid raw sample frame length: " + (frame == null ? 0 : frame.length));
+        }
+        ByteBuffer buf = ByteBuffer.wrap(frame);
+        target.add(buf.getLong(), buf.getLong(), buf.getDouble(), buf.get(), source);
+    }
+}
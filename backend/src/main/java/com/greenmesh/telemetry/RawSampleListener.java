@@ -0,0 +1,11 @@
+package com.greenmesh.telemetry;
+
+/**
+ * Notified once a batch has been committed to RAW_TIMESERIES, before the cleaning pipeline has seen it: samples are
+ * neither aligned, deduplicated nor spike-flagged, and redelivered Kafka records may repeat. Called on the ingest
+ * thread, so implementations must be quick and must not retain or modify the batch.
+ */
+public interface RawSampleListener {
+
+    void onRawSamples(SampleBatch batch);
+}
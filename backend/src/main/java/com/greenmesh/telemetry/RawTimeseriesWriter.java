@@ -0,0 +1,129 @@
+package com.greenmesh.telemetry;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Single write path into RAW_TIMESERIES. Written batches are handed to {@link RawSampleListener}s once they are
+ * committed, which is right away unless the caller runs inside a transaction.
+ */
+@Component
+public class RawTimeseriesWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RawTimeseriesWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO RAW_TIMESERIES (POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM) VALUES (?,?,?,?,?)";
+
+    // Redelivered Kafka records must not duplicate rows; (POINT_ID, TS) is served by IDX_RAW_POINT_TS.
+    private static final String INSERT_IF_ABSENT_SQL = """
+            INSERT INTO RAW_TIMESERIES (POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM)
+            SELECT ?, ?, ?, ?, ? FROM DUAL
+            WHERE NOT EXISTS (SELECT 1 FROM RAW_TIMESERIES WHERE POINT_ID = ? AND TS = ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<RawSampleListener> listenerProvider;
+    private volatile List<RawSampleListener> listeners;
+
+    public RawTimeseriesWriter(JdbcTemplate jdbcTemplate, ObjectProvider<RawSampleListener> listenerProvider) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listenerProvider = listenerProvider;
+    }
+
+    public int insert(SampleBatch batch) {
+        return write(INSERT_SQL, batch, false);
+    }
+
+    public int insertIfAbsent(SampleBatch batch) {
+        return write(INSERT_IF_ABSENT_SQL, batch, true);
+    }
+
+    private int write(String sql, SampleBatch batch, boolean guardDuplicates) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int[] res = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Timestamp ts = new Timestamp(batch.timestamp(i));
+                ps.setLong(1, batch.pointId(i));
+                ps.setTimestamp(2, ts);
+                double value = batch.value(i);
+                if (Double.isNaN(value)) {
+                    ps.setNull(3, Types.DECIMAL);
+                } else {
+                    ps.setDouble(3, value);
+                }
+                ps.setString(4, QualityFlags.name(batch.quality(i)));
+                ps.setString(5, batch.source(i));
+                if (guardDuplicates) {
+                    ps.setLong(6, batch.pointId(i));
+                    ps.setTimestamp(7, ts);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+        int written = 0;
+        for (int r : res) {
+            // some drivers report SUCCESS_NO_INFO (-2) for batched statements
+            written += r == Statement.SUCCESS_NO_INFO ? 1 : Math.max(r, 0);
+        }
+        publish(batch);
+        return written;
+    }
+
+    private void publish(SampleBatch batch) {
+        List<RawSampleListener> targets = listeners();
+        if (targets.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deliver(targets, batch);
+            return;
+        }
+        // callers reuse the batch only after their transaction returns, so it is still intact in afterCommit
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deliver(targets, batch);
+            }
+        });
+    }
+
+    private static void deliver(List<RawSampleListener> targets, SampleBatch batch) {
+        for (RawSampleListener listener : targets) {
+            try {
+                listener.onRawSamples(batch);
+            } catch (RuntimeException ex) {
+                log.warn("Raw sample listener {} failed", listener.getClass().getSimpleName(), ex);
+            }
+        }
+    }
+
+    private List<RawSampleListener> listeners() {
+        List<RawSampleListener> resolved = listeners;
+        if (resolved == null) {
+            resolved = listenerProvider.orderedStream().toList();
+            listeners = resolved;
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,76 @@
+package com.greenmesh.telemetry;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Rollup resolutions, finest first. Each level is aggregated from the one before it; 1m is aggregated from
+ * TS_MEASUREMENT. Buckets are aligned to the configured zone so that 1d buckets are local calendar days.
+ */
+public enum RollupLevel {
+    MINUTE("1m", 60_000L),
+    QUARTER("15m", 900_000L),
+    HOUR("1h", 3_600_000L),
+    DAY("1d", 86_400_000L);
+
+    private final String code;
+    private final long lengthMs;
+
+    RollupLevel(String code, long lengthMs) {
+        this.code = code;
+        this.lengthMs = lengthMs;
+    }
+
+    public String code() {
+        return code;
+    }
+
+    /**
+     * Nominal bucket length; a 1d bucket may differ by an hour across a DST change.
+     */
+    public long lengthMs() {
+        return lengthMs;
+    }
+
+    public RollupLevel child() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+
+    public long floor(long ts, ZoneId zone) {
+        Instant instant = Instant.ofEpochMilli(ts);
+        if (this == DAY) {
+            return instant.atZone(zone).truncatedTo(ChronoUnit.DAYS).toInstant().toEpochMilli();
+        }
+        long offset = zone.getRules().getOffset(instant).getTotalSeconds() * 1000L;
+        return Math.floorDiv(ts + offset, lengthMs) * lengthMs - offset;
+    }
+
+    public long next(long bucketStart, ZoneId zone) {
+        if (this == DAY) {
+            return Instant.ofEpochMilli(bucketStart).atZone(zone).plusDays(1).toInstant().toEpochMilli();
+        }
+        return bucketStart + lengthMs;
+    }
+
+    public static RollupLevel fromCode(String code) {
+        for (RollupLevel level : values()) {
+            if (level.code.equalsIgnoreCase(code)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Unknown rollup level: " + code);
+    }
+
+    /**
+     * Finest level that returns at most {@code maxPoints} buckets over {@code rangeMs}; DAY if none does.
+     */
+    public static RollupLevel finestWithin(long rangeMs, int maxPoints) {
+        for (RollupLevel level : values()) {
+            if (Math.ceilDiv(rangeMs, level.lengthMs) <= maxPoints) {
+                return level;
+            }
+        }
+        return DAY;
+    }
+}
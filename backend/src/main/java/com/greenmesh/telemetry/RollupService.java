@@ -0,0 +1,392 @@
+package com.greenmesh.telemetry;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.greenmesh.coldstore.ColdSegment;
+import com.greenmesh.coldstore.ColdSegmentStore;
+import com.greenmesh.jdbc.BatchUpserts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains TS_ROLLUP. Committed measurement batches mark a per-point dirty time range; the scheduled flush
+ * re-aggregates only the buckets overlapping that range, level by level (raw -> 1m -> 15m -> 1h -> 1d), replacing
+ * each level's window in one transaction per point-day. Recomputing from the level below, rather than applying
+ * deltas, keeps late, corrected and replayed samples correct. BAD and SPIKE samples are excluded.
+ * <p>
+ * Dirty ranges are also journaled in TS_ROLLUP_DIRTY and dropped from it once refreshed, so ranges marked before a
+ * crash or restart are re-aggregated at startup instead of leaving stale buckets behind.
+ */
+@Component
+public class RollupService implements MeasurementListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+    private static final String CHILD_SQL = """
+            SELECT BUCKET_TS, MIN_V, MAX_V, SUM_V, CNT, FIRST_V, LAST_V FROM TS_ROLLUP
+            WHERE POINT_ID = ? AND AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS < ?
+            ORDER BY BUCKET_TS
+            """;
+    private static final String MARK_UPDATE_SQL = """
+            UPDATE TS_ROLLUP_DIRTY SET FROM_TS = LEAST(FROM_TS, ?), TO_TS = GREATEST(TO_TS, ?),
+                   UPDATED_AT = CURRENT_TIMESTAMP
+            WHERE POINT_ID = ?
+            """;
+    private static final String MARK_INSERT_SQL = "INSERT INTO TS_ROLLUP_DIRTY (POINT_ID, FROM_TS, TO_TS) VALUES (?,?,?)";
+    private static final String DELETE_SQL =
+            "DELETE FROM TS_ROLLUP WHERE POINT_ID = ? AND AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS < ?";
+    private static final String INSERT_SQL = """
+            INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V, UPDATED_AT)
+            VALUES (?,?,?,?,?,?,?,?,?,?, CURRENT_TIMESTAMP)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TieredMeasurementReader measurementReader;
+    private final ColdSegmentStore coldStore;
+    private final boolean enabled;
+    private final ZoneId zone;
+    private final Map<Long, long[]> dirty = new ConcurrentHashMap<>();
+
+    public RollupService(JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         TieredMeasurementReader measurementReader,
+                         ColdSegmentStore coldStore,
+                         @Value("${app.rollup.enabled:true}") boolean enabled,
+                         @Value("${app.rollup.zone:Asia/Shanghai}") String zone) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.measurementReader = measurementReader;
+        this.coldStore = coldStore;
+        this.enabled = enabled;
+        this.zone = ZoneId.of(zone);
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /**
+     * Picks up the ranges journaled before the last shutdown; they are refreshed by the next flush.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) {
+            return;
+        }
+        int[] count = new int[1];
+        jdbcTemplate.query("SELECT POINT_ID, FROM_TS, TO_TS FROM TS_ROLLUP_DIRTY", rs -> {
+            mark(rs.getLong(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime());
+            count[0]++;
+        });
+        if (count[0] > 0) {
+            log.info("Recovered {} dirty rollup ranges", count[0]);
+        }
+    }
+
+    @Override
+    public void onMeasurements(SampleBatch batch) {
+        if (!enabled || batch.isEmpty()) {
+            return;
+        }
+        // pipeline batches are grouped by point, so this usually marks each point once
+        List<long[]> ranges = new ArrayList<>();
+        long pointId = batch.pointId(0);
+        long lo = Long.MAX_VALUE;
+        long hi = Long.MIN_VALUE;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.pointId(i) != pointId) {
+                ranges.add(new long[]{pointId, lo, hi});
+                pointId = batch.pointId(i);
+                lo = Long.MAX_VALUE;
+                hi = Long.MIN_VALUE;
+            }
+            lo = Math.min(lo, batch.timestamp(i));
+            hi = Math.max(hi, batch.timestamp(i));
+        }
+        ranges.add(new long[]{pointId, lo, hi});
+        for (long[] range : ranges) {
+            mark(range[0], range[1], range[2]);
+        }
+        journal(ranges);
+    }
+
+    public void markDirty(long pointId, long fromTs, long toTs) {
+        mark(pointId, fromTs, toTs);
+        journal(List.of(new long[]{pointId, fromTs, toTs}));
+    }
+
+    private void mark(long pointId, long fromTs, long toTs) {
+        dirty.merge(pointId, new long[]{fromTs, toTs},
+                (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])});
+    }
+
+    // callers mark disjoint points at a time (the pipeline shards by point), as BatchUpserts requires
+    private void journal(List<long[]> ranges) {
+        try {
+            BatchUpserts.upsert(jdbcTemplate, ranges.size(),
+                    MARK_UPDATE_SQL, (ps, i) -> {
+                        long[] range = ranges.get(i);
+                        ps.setTimestamp(1, new Timestamp(range[1]));
+                        ps.setTimestamp(2, new Timestamp(range[2]));
+                        ps.setLong(3, range[0]);
+                    },
+                    MARK_INSERT_SQL, (ps, i) -> {
+                        long[] range = ranges.get(i);
+                        ps.setLong(1, range[0]);
+                        ps.setTimestamp(2, new Timestamp(range[1]));
+                        ps.setTimestamp(3, new Timestamp(range[2]));
+                    });
+        } catch (DataAccessException ex) {
+            // the in-memory range is still flushed; only a crash before then would lose it
+            log.warn("Journaling {} dirty rollup ranges failed", ranges.size(), ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.rollup.interval-ms:10000}",
+            initialDelayString = "${app.rollup.interval-ms:10000}")
+    public void scheduledFlush() {
+        if (enabled) {
+            flushDirty();
+        }
+    }
+
+    /**
+     * Re-aggregates every dirty range; a point whose refresh fails stays dirty for the next flush.
+     */
+    public synchronized Map<RollupLevel, Integer> flushDirty() {
+        Map<RollupLevel, Integer> counts = new EnumMap<>(RollupLevel.class);
+        for (Long pointId : List.copyOf(dirty.keySet())) {
+            long[] range = dirty.remove(pointId);
+            if (range == null) {
+                continue;
+            }
+            try {
+                refresh(pointId, range[0], range[1], counts);
+            } catch (RuntimeException ex) {
+                mark(pointId, range[0], range[1]);
+                log.warn("Rollup refresh failed for point {}", pointId, ex);
+                continue;
+            }
+            // a range marked again meanwhile keeps its journal row until that refresh
+            if (!dirty.containsKey(pointId)) {
+                try {
+                    jdbcTemplate.update("DELETE FROM TS_ROLLUP_DIRTY WHERE POINT_ID = ?", pointId);
+                } catch (DataAccessException ex) {
+                    log.warn("Clearing the dirty rollup range of point {} failed", pointId, ex);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Rebuilds all levels over [start, end) for one point, or for every point with measurements in the range in
+     * either tier.
+     */
+    public synchronized Map<RollupLevel, Integer> rebuild(Long pointId, Instant start, Instant end) {
+        TreeSet<Long> pointIds = new TreeSet<>();
+        if (pointId != null) {
+            pointIds.add(pointId);
+        } else {
+            pointIds.addAll(jdbcTemplate.queryForList(
+                    "SELECT DISTINCT POINT_ID FROM TS_MEASUREMENT WHERE TS >= ? AND TS < ?",
+                    Long.class, Timestamp.from(start), Timestamp.from(end)));
+            for (ColdSegment segment : coldStore.overlapping(start.toEpochMilli(), end.toEpochMilli())) {
+                for (int block = 0; block < segment.blockCount(); block++) {
+                    pointIds.add(segment.pointId(block));
+                }
+            }
+        }
+        Map<RollupLevel, Integer> counts = new EnumMap<>(RollupLevel.class);
+        for (Long id : pointIds) {
+            refresh(id, start.toEpochMilli(), end.toEpochMilli() - 1, counts);
+        }
+        return counts;
+    }
+
+    public List<RollupRow> read(long pointId, RollupLevel level, Instant start, Instant end, int limit) {
+        long from = level.floor(start.toEpochMilli(), zone);
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V
+                    FROM TS_ROLLUP
+                    WHERE POINT_ID = ? AND AGG_LEVEL = ? AND BUCKET_TS >= ? AND BUCKET_TS <= ?
+                    ORDER BY BUCKET_TS
+                    """);
+            ps.setLong(1, pointId);
+            ps.setString(2, level.code());
+            ps.setTimestamp(3, new Timestamp(from));
+            ps.setTimestamp(4, Timestamp.from(end));
+            ps.setMaxRows(limit);
+            return ps;
+        }, new RollupRowMapper());
+    }
+
+    private void refresh(long pointId, long fromTs, long toTs, Map<RollupLevel, Integer> counts) {
+        long day = RollupLevel.DAY.floor(fromTs, zone);
+        while (day <= toTs) {
+            long dayEnd = RollupLevel.DAY.next(day, zone);
+            long sliceFrom = Math.max(fromTs, day);
+            long sliceTo = Math.min(toTs, dayEnd - 1);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (RollupLevel level : RollupLevel.values()) {
+                    long windowFrom = level.floor(sliceFrom, zone);
+                    long windowTo = level.next(level.floor(sliceTo, zone), zone);
+                    List<Bucket> buckets = level.child() == null
+                            ? aggregateRaw(pointId, level, windowFrom, windowTo)
+                            : aggregateChildren(pointId, level, windowFrom, windowTo);
+                    replace(pointId, level, windowFrom, windowTo, buckets);
+                    counts.merge(level, buckets.size(), Integer::sum);
+                }
+            });
+            day = dayEnd;
+        }
+    }
+
+    private List<Bucket> aggregateRaw(long pointId, RollupLevel level, long from, long to) {
+        List<Bucket> buckets = new ArrayList<>();
+        TieredMeasurementReader.Scan scan = new TieredMeasurementReader.Scan(List.of(pointId),
+                Instant.ofEpochMilli(from), Instant.ofEpochMilli(to), false, null, 0);
+        measurementReader.scan(scan, 5000, (id, tsInstant, value, quality) -> {
+            if (Double.isNaN(value) || quality == QualityFlags.BAD || quality == QualityFlags.SPIKE) {
+                return true;
+            }
+            long ts = tsInstant.toEpochMilli();
+            long start = level.floor(ts, zone);
+            Bucket current = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+            if (current == null || current.start != start) {
+                current = new Bucket(start);
+                buckets.add(current);
+            }
+            current.add(value, value, value, 1, value, value);
+            return true;
+        });
+        return buckets;
+    }
+
+    private List<Bucket> aggregateChildren(long pointId, RollupLevel level, long from, long to) {
+        List<Bucket> buckets = new ArrayList<>();
+        jdbcTemplate.query(CHILD_SQL, rs -> {
+            long start = level.floor(rs.getTimestamp("BUCKET_TS").getTime(), zone);
+            Bucket current = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+            if (current == null || current.start != start) {
+                current = new Bucket(start);
+                buckets.add(current);
+            }
+            current.add(decimal(rs, "MIN_V"), decimal(rs, "MAX_V"), decimal(rs, "SUM_V"), rs.getLong("CNT"),
+                    decimal(rs, "FIRST_V"), decimal(rs, "LAST_V"));
+        }, pointId, level.child().code(), new Timestamp(from), new Timestamp(to));
+        return buckets;
+    }
+
+    private void replace(long pointId, RollupLevel level, long from, long to, List<Bucket> buckets) {
+        jdbcTemplate.update(DELETE_SQL, pointId, level.code(), new Timestamp(from), new Timestamp(to));
+        if (buckets.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, buckets, buckets.size(), (ps, b) -> {
+            ps.setLong(1, pointId);
+            ps.setString(2, level.code());
+            ps.setTimestamp(3, new Timestamp(b.start));
+            setDecimal(ps, 4, b.min);
+            setDecimal(ps, 5, b.max);
+            setDecimal(ps, 6, b.sum / b.count);
+            setDecimal(ps, 7, b.sum);
+            ps.setLong(8, b.count);
+            setDecimal(ps, 9, b.first);
+            setDecimal(ps, 10, b.last);
+        });
+    }
+
+    // getDouble reads NULL as 0, which would drag MIN_V/MAX_V and FIRST_V/LAST_V towards zero
+    private static double decimal(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    private static void setDecimal(PreparedStatement ps, int idx, double value) throws SQLException {
+        if (Double.isFinite(value)) {
+            ps.setDouble(idx, value);
+        } else {
+            ps.setNull(idx, Types.DECIMAL);
+        }
+    }
+
+    private static final class Bucket {
+        final long start;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum;
+        long count;
+        double first = Double.NaN;
+        double last = Double.NaN;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        // inputs arrive in time order, so the first contribution supplies FIRST_V and the latest LAST_V;
+        // NaN stands for a NULL child column and contributes nothing
+        void add(double min, double max, double sum, long count, double first, double last) {
+            if (!Double.isNaN(min)) {
+                this.min = Math.min(this.min, min);
+            }
+            if (!Double.isNaN(max)) {
+                this.max = Math.max(this.max, max);
+            }
+            if (!Double.isNaN(sum)) {
+                this.sum += sum;
+            }
+            this.count += count;
+            if (Double.isNaN(this.first)) {
+                this.first = first;
+            }
+            if (!Double.isNaN(last)) {
+                this.last = last;
+            }
+        }
+    }
+
+    public record RollupRow(long pointId, String aggLevel, Instant bucketTs, BigDecimal min, BigDecimal max,
+                            BigDecimal avg, BigDecimal sum, long count, BigDecimal first, BigDecimal last) {}
+
+    static class RollupRowMapper implements RowMapper<RollupRow> {
+        @Override
+        public RollupRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new RollupRow(
+                    rs.getLong("POINT_ID"),
+                    rs.getString("AGG_LEVEL"),
+                    rs.getTimestamp("BUCKET_TS").toInstant(),
+                    rs.getBigDecimal("MIN_V"),
+                    rs.getBigDecimal("MAX_V"),
+                    rs.getBigDecimal("AVG_V"),
+                    rs.getBigDecimal("SUM_V"),
+                    rs.getLong("CNT"),
+                    rs.getBigDecimal("FIRST_V"),
+                    rs.getBigDecimal("LAST_V"));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.greenmesh.telemetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Column-oriented buffer of raw samples (pointId, epoch-millis ts, value, quality, source).
+ * Values use NaN for SQL NULL; source systems are dictionary-encoded since a batch rarely carries more than a few.
+ */
+public final class SampleBatch {
+
+    private long[] pointIds;
+    private long[] timestamps;
+    private double[] values;
+    private byte[] qualities;
+    private short[] sourceRefs;
+    private final List<String> sources = new ArrayList<>();
+    private int size;
+
+    public SampleBatch(int capacity) {
+        int initial = Math.max(capacity, 16);
+        pointIds = new long[initial];
+        timestamps = new long[initial];
+        values = new double[initial];
+        qualities = new byte[initial];
+        sourceRefs = new short[initial];
+    }
+
+    public void add(long pointId, long tsMillis, double value, byte quality, String source) {
+        if (size == pointIds.length) {
+            grow();
+        }
+        pointIds[size] = pointId;
+        timestamps[size] = tsMillis;
+        values[size] = value;
+        qualities[size] = quality;
+        sourceRefs[size] = sourceRef(source);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        sources.clear();
+    }
+
+    /**
+     * Drops the rows {@code keep} rejects, compacting in place and preserving order. The predicate sees each row's
+     * index before the call; returns the number of rows removed.
+     */
+    public int retain(IntPredicate keep) {
+        int w = 0;
+        for (int i = 0; i < size; i++) {
+            if (!keep.test(i)) {
+                continue;
+            }
+            if (w != i) {
+                pointIds[w] = pointIds[i];
+                timestamps[w] = timestamps[i];
+                values[w] = values[i];
+                qualities[w] = qualities[i];
+                sourceRefs[w] = sourceRefs[i];
+            }
+            w++;
+        }
+        int removed = size - w;
+        size = w;
+        return removed;
+    }
+
+    public long pointId(int i) {
+        return pointIds[i];
+    }
+
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double value(int i) {
+        return values[i];
+    }
+
+    public byte quality(int i) {
+        return qualities[i];
+    }
+
+    public String source(int i) {
+        short ref = sourceRefs[i];
+        return ref < 0 ? null : sources.get(ref);
+    }
+
+    private short sourceRef(String source) {
+        if (source == null) {
+            return -1;
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            if (Objects.equals(sources.get(i), source)) {
+                return (short) i;
+            }
+        }
+        if (sources.size() == Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct source systems in one batch");
+        }
+        sources.add(source);
+        return (short) (sources.size() - 1);
+    }
+
+    private void grow() {
+        int capacity = pointIds.length * 2;
+        pointIds = Arrays.copyOf(pointIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        values = Arrays.copyOf(values, capacity);
+        qualities = Arrays.copyOf(qualities, capacity);
+        sourceRefs = Arrays.copyOf(sourceRefs, capacity);
+    }
+}
@@ -0,0 +1,209 @@
+package com.greenmesh.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Parses NDJSON or binary sample frames straight off the request stream and writes fixed-size JDBC batches,
+ * so heap use is bounded by the chunk size rather than the upload size. Each chunk commits in its own transaction,
+ * so a chunk reported as failed wrote nothing and can be re-sent as is.
+ */
+@Service
+public class StreamingRawIngest {
+
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final RawTimeseriesWriter writer;
+    private final IngestValidator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int chunkSize;
+
+    public StreamingRawIngest(RawTimeseriesWriter writer,
+                              IngestValidator validator,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${app.ingest.stream.chunk-size:5000}") int chunkSize) {
+        this.writer = writer;
+        this.validator = validator;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    public IngestReport ingestNdjson(InputStream body, String defaultSource) throws IOException {
+        ChunkWriter chunks = new ChunkWriter();
+        byte[] buf = new byte[64 * 1024];
+        byte[] line = new byte[4096];
+        int len = 0;
+        long lineNo = 0;
+        boolean overflow = false;
+        int n;
+        while ((n = body.read(buf)) != -1) {
+            for (int i = 0; i < n; i++) {
+                byte b = buf[i];
+                if (b == '\n') {
+                    if (len > 0 || overflow) {
+                        endLine(line, len, ++lineNo, overflow, defaultSource, chunks);
+                    }
+                    len = 0;
+                    overflow = false;
+                } else if (b != '\r' && !overflow) {
+                    if (len == line.length) {
+                        if (line.length >= MAX_LINE_BYTES) {
+                            overflow = true;
+                            continue;
+                        }
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[len++] = b;
+                }
+            }
+        }
+        if (len > 0 || overflow) {
+            endLine(line, len, ++lineNo, overflow, defaultSource, chunks);
+        }
+        return chunks.finish();
+    }
+
+    public IngestReport ingestBinary(InputStream body, String source) throws IOException {
+        ChunkWriter chunks = new ChunkWriter();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(body, 64 * 1024));
+        while (true) {
+            long pointId;
+            try {
+                pointId = in.readLong();
+            } catch (EOFException eof) {
+                break;
+            }
+            try {
+                long ts = in.readLong();
+                double value = in.readDouble();
+                byte quality = in.readByte();
+                chunks.add(pointId, ts, value, quality, source);
+            } catch (EOFException eof) {
+                chunks.reject("truncated trailing frame (expected " + RawSampleCodec.FRAME_BYTES + " bytes)");
+                break;
+            }
+        }
+        return chunks.finish();
+    }
+
+    private void endLine(byte[] line, int len, long lineNo, boolean overflow, String defaultSource, ChunkWriter chunks) {
+        if (overflow) {
+            chunks.reject("line " + lineNo + ": exceeds " + MAX_LINE_BYTES + " bytes");
+        } else {
+            parseLine(line, len, lineNo, defaultSource, chunks);
+        }
+    }
+
+    private void parseLine(byte[] line, int len, long lineNo, String defaultSource, ChunkWriter chunks) {
+        long pointId = -1;
+        long ts = Long.MIN_VALUE;
+        double value = Double.NaN;
+        byte quality = QualityFlags.NONE;
+        String source = defaultSource;
+        try (JsonParser parser = jsonFactory.createParser(line, 0, len)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                chunks.reject("line " + lineNo + ": expected a JSON object");
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "pointId" -> pointId = parser.getValueAsLong(-1);
+                    case "ts" -> ts = token == JsonToken.VALUE_STRING
+                            ? Instant.parse(parser.getText()).toEpochMilli()
+                            : parser.getLongValue();
+                    case "value" -> value = token == JsonToken.VALUE_NULL ? Double.NaN : parser.getValueAsDouble();
+                    case "qualityFlag", "quality" -> quality = token == JsonToken.VALUE_NUMBER_INT
+                            ? (byte) parser.getIntValue()
+                            : QualityFlags.code(parser.getValueAsString());
+                    case "sourceSystem" -> source = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            chunks.reject("line " + lineNo + ": " + ex.getMessage());
+            return;
+        }
+        if (pointId < 0 || ts == Long.MIN_VALUE) {
+            chunks.reject("line " + lineNo + ": pointId and ts are required");
+            return;
+        }
+        chunks.add(pointId, ts, value, quality, source);
+    }
+
+    public record ChunkResult(int chunk, long firstRecord, int records, int inserted, int rejected, String error) {}
+
+    public record IngestReport(long records, long inserted, long rejected, List<ChunkResult> chunks) {}
+
+    private final class ChunkWriter {
+        private final SampleBatch batch = new SampleBatch(chunkSize);
+        private final List<ChunkResult> results = new ArrayList<>();
+        private long records;
+        private long inserted;
+        private long rejected;
+        private long chunkFirstRecord;
+        private int chunkRejected;
+        private String chunkError;
+
+        void add(long pointId, long ts, double value, byte quality, String source) {
+            batch.add(pointId, ts, value, quality, source);
+            records++;
+            if (batch.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void reject(String reason) {
+            records++;
+            chunkRejected++;
+            if (chunkError == null) {
+                chunkError = reason;
+            }
+        }
+
+        IngestReport finish() {
+            if (!batch.isEmpty() || chunkRejected > 0) {
+                flush();
+            }
+            return new IngestReport(records, inserted, rejected, results);
+        }
+
+        private void flush() {
+            int size = batch.size();
+            IngestValidator.Rejects invalid = validator.screen(batch);
+            int written = 0;
+            int failed = chunkRejected + invalid.count();
+            String error = chunkError != null ? chunkError : invalid.firstReason();
+            try {
+                written = transactionTemplate.execute(status -> writer.insert(batch));
+            } catch (DataAccessException ex) {
+                failed += batch.size();
+                error = ex.getMostSpecificCause().getMessage();
+            }
+            results.add(new ChunkResult(results.size(), chunkFirstRecord, size + chunkRejected, written, failed, error));
+            inserted += written;
+            rejected += failed;
+            chunkFirstRecord = records;
+            chunkRejected = 0;
+            chunkError = null;
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.greenmesh.telemetry;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.greenmesh.coldstore.ColdSegment;
+import com.greenmesh.coldstore.ColdSegmentStore;
+import com.greenmesh.jdbc.BatchUpserts;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads cleaned measurements across the hot tier (TS_MEASUREMENT) and the cold segment files as one stream ordered
+ * by (pointId, ts). Hot rows win over cold samples with the same millisecond. A point's cold samples are only opened
+ * once the hot query covering that point has started, so a window being compacted concurrently (written cold first,
+ * then deleted hot) is never missed: rows the hot query no longer sees are already in the installed segment. Cold
+ * blocks are decoded through cursors as the merge advances, so a long range is never held in memory.
+ */
+@Component
+public class TieredMeasurementReader {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ColdSegmentStore coldStore;
+
+    public TieredMeasurementReader(JdbcTemplate jdbcTemplate, ColdSegmentStore coldStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coldStore = coldStore;
+    }
+
+    @FunctionalInterface
+    public interface RowSink {
+        /**
+         * {@code value} is NaN for SQL NULL. Returns false to stop the scan.
+         */
+        boolean accept(long pointId, Instant ts, double value, byte quality);
+    }
+
+    /**
+     * @param after resume strictly after this (pointId, ts); may be null
+     * @param limit maximum rows delivered, {@code <= 0} for no limit
+     */
+    public record Scan(List<Long> pointIds, Instant from, Instant to, boolean toInclusive, Key after, long limit) {
+
+        public static Scan range(List<Long> pointIds, Instant from, Instant to) {
+            return new Scan(pointIds, from, to, true, null, 0);
+        }
+    }
+
+    public record Key(long pointId, Instant ts) {}
+
+    public void scan(Scan scan, int fetchSize, RowSink sink) {
+        List<Long> ids = scan.pointIds().stream().distinct().sorted().toList();
+        if (ids.isEmpty()) {
+            return;
+        }
+        Merge merge = new Merge(scan, ids, sink);
+        try {
+            for (int from = 0; from < ids.size(); from += BatchUpserts.IN_CHUNK) {
+                int to = Math.min(ids.size(), from + BatchUpserts.IN_CHUNK);
+                scanHot(scan, ids.subList(from, to), fetchSize, merge, to);
+            }
+            merge.drainCold(Long.MAX_VALUE, Long.MAX_VALUE);
+        } catch (StopScan ignored) {
+            // sink asked to stop or the limit was reached
+        }
+    }
+
+    private void scanHot(Scan scan, List<Long> ids, int fetchSize, Merge merge, int hotTo) {
+        String inClause = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+        String sql = """
+                SELECT POINT_ID, TS, VALUE, QUALITY_FLAG
+                FROM TS_MEASUREMENT
+                WHERE POINT_ID IN (%s) AND TS >= ? AND TS %s ?
+                  %s
+                ORDER BY POINT_ID, TS
+                """.formatted(inClause, scan.toInclusive() ? "<=" : "<",
+                scan.after() != null ? "AND (POINT_ID > ? OR (POINT_ID = ? AND TS > ?))" : "");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int idx = 1;
+            for (Long id : ids) {
+                ps.setLong(idx++, id);
+            }
+            ps.setTimestamp(idx++, Timestamp.from(scan.from()));
+            ps.setTimestamp(idx++, Timestamp.from(scan.to()));
+            if (scan.after() != null) {
+                ps.setLong(idx++, scan.after().pointId());
+                ps.setLong(idx++, scan.after().pointId());
+                ps.setTimestamp(idx, Timestamp.from(scan.after().ts()));
+            }
+            ps.setFetchSize(fetchSize);
+            if (scan.limit() > 0) {
+                // merged output reaches the limit no later than the hot side does
+                ps.setLargeMaxRows(scan.limit());
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            merge.hotStarted(hotTo);
+            merge.hotRow(rs);
+        });
+        merge.hotStarted(hotTo);
+    }
+
+    private static final class StopScan extends RuntimeException {
+        StopScan() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Merge-joins hot rows with cold samples. Cold samples are streamed one point at a time, segment by segment.
+     */
+    private final class Merge {
+        private final Scan scan;
+        private final List<Long> ids;
+        private final RowSink sink;
+        private final long coldFrom;
+        private final long coldTo;
+        private long delivered;
+        // ids below this index have had their hot query started and may open cold samples
+        private int hotTo;
+        private int coldPointIdx = -1;
+        private long coldPoint;
+        private long coldPointFrom;
+        // the current point's segments in time order, and the cursor positioned on its current cold sample
+        private List<ColdSegment> coldSegments = List.of();
+        private int coldSegmentIdx;
+        private ColdSegment.Cursor cold;
+        private boolean coldHas;
+
+        Merge(Scan scan, List<Long> ids, RowSink sink) {
+            this.scan = scan;
+            this.ids = ids;
+            this.sink = sink;
+            this.coldFrom = scan.from().toEpochMilli();
+            this.coldTo = scan.toInclusive() ? scan.to().toEpochMilli() + 1 : scan.to().toEpochMilli();
+        }
+
+        void hotStarted(int to) {
+            hotTo = to;
+        }
+
+        void hotRow(ResultSet rs) throws SQLException {
+            long pointId = rs.getLong(1);
+            Instant ts = rs.getTimestamp(2).toInstant();
+            double value = rs.getDouble(3);
+            if (rs.wasNull()) {
+                value = Double.NaN;
+            }
+            byte quality = QualityFlags.code(rs.getString(4));
+            long tsMillis = ts.toEpochMilli();
+            drainCold(pointId, tsMillis);
+            if (coldHas && coldPoint == pointId && cold.ts() == tsMillis) {
+                coldHas = nextColdSample();
+            }
+            deliver(pointId, ts, value, quality);
+        }
+
+        /**
+         * Delivers cold samples ordered before (pointId, tsMillis).
+         */
+        void drainCold(long pointId, long tsMillis) {
+            while (true) {
+                if (!coldHas && !advanceColdPoint()) {
+                    return;
+                }
+                if (coldPoint > pointId) {
+                    return;
+                }
+                while (coldHas && (coldPoint < pointId || cold.ts() < tsMillis)) {
+                    deliver(coldPoint, Instant.ofEpochMilli(cold.ts()), cold.value(), cold.quality());
+                    coldHas = nextColdSample();
+                }
+                if (coldHas) {
+                    return;
+                }
+            }
+        }
+
+        private void deliver(long pointId, Instant ts, double value, byte quality) {
+            if (!sink.accept(pointId, ts, value, quality)) {
+                throw new StopScan();
+            }
+            delivered++;
+            if (scan.limit() > 0 && delivered >= scan.limit()) {
+                throw new StopScan();
+            }
+        }
+
+        /**
+         * Opens the next point with cold samples whose hot query has started; false if there is none yet.
+         */
+        private boolean advanceColdPoint() {
+            if (coldStore.isEmpty()) {
+                return false;
+            }
+            while (coldPointIdx + 1 < hotTo) {
+                coldPoint = ids.get(++coldPointIdx);
+                if (scan.after() != null && coldPoint < scan.after().pointId()) {
+                    continue;
+                }
+                coldPointFrom = coldFrom;
+                if (scan.after() != null && coldPoint == scan.after().pointId()) {
+                    coldPointFrom = Math.max(coldPointFrom, scan.after().ts().toEpochMilli() + 1);
+                }
+                // taken per point, after its hot query started, so segments installed since then are seen
+                coldSegments = new ArrayList<>(coldStore.overlapping(coldPointFrom, coldTo));
+                coldSegmentIdx = 0;
+                cold = null;
+                coldHas = nextColdSample();
+                if (coldHas) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the current point's next cold sample, continuing into later segments; false once there is none.
+         */
+        private boolean nextColdSample() {
+            while (true) {
+                if (cold != null && cold.next()) {
+                    return true;
+                }
+                cold = null;
+                while (cold == null && coldSegmentIdx < coldSegments.size()) {
+                    ColdSegment segment = coldSegments.get(coldSegmentIdx++);
+                    int block = segment.find(coldPoint);
+                    if (block >= 0) {
+                        cold = segment.cursor(block, coldPointFrom, coldTo);
+                    }
+                }
+                if (cold == null) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.greenmesh.weather;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * WEATHER_STATION ids and names, read once per import. Files may name a station by id or by NAME
+ * (case-insensitive); with a park the names are looked up among that park's stations only.
+ */
+final class StationDirectory {
+
+    static final long UNKNOWN = -1;
+
+    private final Set<Long> ids = new HashSet<>();
+    private final Map<String, Long> byName = new HashMap<>();
+
+    static StationDirectory load(JdbcTemplate jdbcTemplate, Long parkId) {
+        StationDirectory dir = new StationDirectory();
+        jdbcTemplate.query("SELECT STATION_ID, PARK_ID, NAME FROM WEATHER_STATION ORDER BY STATION_ID", rs -> {
+            long id = rs.getLong(1);
+            dir.ids.add(id);
+            if (parkId == null || parkId == rs.getLong(2)) {
+                // the lowest id wins where a name repeats
+                dir.byName.putIfAbsent(rs.getString(3).trim().toLowerCase(Locale.ROOT), id);
+            }
+        });
+        return dir;
+    }
+
+    long byId(long id) {
+        return ids.contains(id) ? id : UNKNOWN;
+    }
+
+    long resolve(String token) {
+        Long named = byName.get(token.trim().toLowerCase(Locale.ROOT));
+        if (named != null) {
+            return named;
+        }
+        try {
+            return byId(Long.parseLong(token.trim()));
+        } catch (NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+}
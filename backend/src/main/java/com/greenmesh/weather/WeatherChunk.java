@@ -0,0 +1,72 @@
+package com.greenmesh.weather;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Parsed rows of one file chunk in primitive columns; missing values are NaN. {@code issues} is only filled for
+ * forecasts.
+ */
+final class WeatherChunk {
+
+    static final int MAX_UNKNOWN_STATIONS = 20;
+
+    private final int valueCount;
+    long[] stations;
+    long[] issues;
+    long[] timestamps;
+    double[][] values;
+    String[] texts;
+    int size;
+    int rejected;
+    String firstError;
+    final Set<String> unknownStations = new LinkedHashSet<>();
+
+    WeatherChunk(WeatherKind kind, int capacity) {
+        this.valueCount = kind.valueColumns().size();
+        stations = new long[capacity];
+        issues = new long[capacity];
+        timestamps = new long[capacity];
+        values = new double[valueCount][capacity];
+        texts = new String[capacity];
+    }
+
+    /**
+     * Appends a row whose values start as NaN and returns its index.
+     */
+    int add(long station, long issue, long ts, String text) {
+        if (size == stations.length) {
+            int capacity = Math.max(64, size * 2);
+            stations = Arrays.copyOf(stations, capacity);
+            issues = Arrays.copyOf(issues, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            for (int v = 0; v < valueCount; v++) {
+                values[v] = Arrays.copyOf(values[v], capacity);
+            }
+        }
+        stations[size] = station;
+        issues[size] = issue;
+        timestamps[size] = ts;
+        texts[size] = text;
+        for (int v = 0; v < valueCount; v++) {
+            values[v][size] = Double.NaN;
+        }
+        return size++;
+    }
+
+    void unknownStation(String station) {
+        if (unknownStations.size() < MAX_UNKNOWN_STATIONS) {
+            unknownStations.add(station);
+        }
+        reject("unknown station " + station);
+    }
+
+    void reject(String reason) {
+        rejected++;
+        if (firstError == null) {
+            firstError = reason;
+        }
+    }
+}
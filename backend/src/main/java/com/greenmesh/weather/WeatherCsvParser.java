@@ -0,0 +1,185 @@
+package com.greenmesh.weather;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses CSV weather rows. The header is read once by the importing thread; blocks of whole lines are then parsed
+ * independently, so any number of blocks of the same file can be parsed at once. Times are ISO-8601 instants,
+ * {@code yyyy-MM-dd[T ]HH:mm[:ss]} in UTC or epoch milliseconds; empty cells are missing values. Fields may be
+ * double-quoted.
+ */
+final class WeatherCsvParser {
+
+    private final WeatherKind kind;
+    private final int[] roles;
+    private final int stationField;
+    private final int tsField;
+    private final int issueField;
+
+    private WeatherCsvParser(WeatherKind kind, int[] roles) {
+        this.kind = kind;
+        this.roles = roles;
+        this.stationField = indexOf(roles, WeatherKind.STATION);
+        this.tsField = indexOf(roles, WeatherKind.TS);
+        this.issueField = indexOf(roles, WeatherKind.ISSUE);
+    }
+
+    static WeatherCsvParser forHeader(WeatherKind kind, String headerLine) {
+        List<String> headers = split(headerLine.startsWith("\uFEFF") ? headerLine.substring(1) : headerLine);
+        int[] roles = new int[headers.size()];
+        for (int i = 0; i < roles.length; i++) {
+            roles[i] = kind.role(headers.get(i));
+        }
+        WeatherCsvParser parser = new WeatherCsvParser(kind, roles);
+        if (parser.stationField < 0 || parser.tsField < 0 || (kind.issued() && parser.issueField < 0)) {
+            throw new IllegalArgumentException("CSV header needs station and ts"
+                    + (kind.issued() ? " and issue" : "") + " columns: " + headerLine);
+        }
+        return parser;
+    }
+
+    /**
+     * Parses the lines in {@code block[0, len)}; {@code firstLine} is the file line number of the first one.
+     */
+    WeatherChunk parse(byte[] block, int len, long firstLine, StationDirectory stations) {
+        String text = new String(block, 0, len, StandardCharsets.UTF_8);
+        WeatherChunk chunk = new WeatherChunk(kind, Math.max(64, len / 48));
+        TimeCache tsCache = new TimeCache();
+        TimeCache issueCache = new TimeCache();
+        double[] rowValues = new double[kind.valueColumns().size()];
+        String lastStation = null;
+        long lastStationId = StationDirectory.UNKNOWN;
+        long lineNo = firstLine;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            int stop = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            if (stop > start) {
+                List<String> fields = split(text.substring(start, stop));
+                try {
+                    String station = field(fields, stationField);
+                    if (!station.equals(lastStation)) {
+                        lastStation = station;
+                        lastStationId = stations.resolve(station);
+                    }
+                    if (lastStationId == StationDirectory.UNKNOWN) {
+                        chunk.unknownStation(station);
+                    } else {
+                        long issue = kind.issued() ? issueCache.parse(field(fields, issueField)) : 0;
+                        long ts = tsCache.parse(field(fields, tsField));
+                        String textValue = null;
+                        Arrays.fill(rowValues, Double.NaN);
+                        for (int f = 0; f < roles.length && f < fields.size(); f++) {
+                            int role = roles[f];
+                            String cell = fields.get(f);
+                            if (role >= 0) {
+                                if (!cell.isEmpty()) {
+                                    rowValues[role] = Double.parseDouble(cell);
+                                }
+                            } else if (role == WeatherKind.TEXT && !cell.isEmpty()) {
+                                textValue = cell;
+                            }
+                        }
+                        int row = chunk.add(lastStationId, issue, ts, textValue);
+                        for (int v = 0; v < rowValues.length; v++) {
+                            chunk.values[v][row] = rowValues[v];
+                        }
+                    }
+                } catch (RuntimeException ex) {
+                    chunk.reject("line " + lineNo + ": " + ex.getMessage());
+                }
+            }
+            lineNo++;
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index >= fields.size() || fields.get(index).isEmpty()) {
+            throw new IllegalArgumentException("missing field " + (index + 1));
+        }
+        return fields.get(index);
+    }
+
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(16);
+        int i = 0;
+        int n = line.length();
+        while (i <= n) {
+            if (i < n && line.charAt(i) == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < n) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < n && line.charAt(i + 1) == '"') {
+                            sb.append('"');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    sb.append(c);
+                    i++;
+                }
+                fields.add(sb.toString());
+                int comma = line.indexOf(',', i);
+                i = comma < 0 ? n + 1 : comma + 1;
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma < 0 ? n : comma;
+                fields.add(line.substring(i, end).trim());
+                i = end + 1;
+            }
+        }
+        return fields;
+    }
+
+    private static int indexOf(int[] roles, int role) {
+        for (int i = 0; i < roles.length; i++) {
+            if (roles[i] == role) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * NWP files repeat the same issue and valid times across stations; the last text is remembered per column.
+     */
+    private static final class TimeCache {
+        private String last;
+        private long value;
+
+        long parse(String text) {
+            if (!text.equals(last)) {
+                value = parseTime(text);
+                last = text;
+            }
+            return value;
+        }
+    }
+
+    static long parseTime(String text) {
+        if (text.indexOf('-') < 0) {
+            return Long.parseLong(text);
+        }
+        String iso = text.length() > 10 && text.charAt(10) == ' ' ? text.substring(0, 10) + 'T' + text.substring(11)
+                : text;
+        if (iso.endsWith("Z") || iso.indexOf('+', 10) > 0 || iso.lastIndexOf('-') > 10) {
+            return Instant.parse(iso).toEpochMilli();
+        }
+        return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,9 @@
+package com.greenmesh.weather;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Published after a forecast import wrote rows, with the issue times it touched.
+ */
+public record WeatherForecastImported(long jobId, List<Instant> issues) {}
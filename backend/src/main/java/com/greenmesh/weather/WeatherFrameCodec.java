@@ -0,0 +1,266 @@
+package com.greenmesh.weather;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar weather frames, big-endian, modelled on Arrow IPC streams without the dependency: a schema, then record
+ * batches whose columns are contiguous vectors. Each batch is prefixed with its byte length so it can be handed to
+ * another thread without being decoded first.
+ * <pre>
+ * schema: int magic "GMWC", byte version (1), short columnCount, columnCount x (byte type, short nameLength, name)
+ * batch:  int rowCount (0 ends the stream), int bodyLength, body
+ * body:   per column in schema order: INT64 rowCount x long | FLOAT64 rowCount x double (NaN = missing)
+ *         | UTF8 rowCount x (short length, -1 = null; bytes)
+ * </pre>
+ * Column names follow the CSV headers; times are INT64 epoch milliseconds (or UTF8 as in CSV), the station is an
+ * INT64 id or a UTF8 name.
+ */
+public final class WeatherFrameCodec {
+
+    public static final int MAGIC = 0x474D5743;
+    public static final byte VERSION = 1;
+    public static final byte INT64 = 1;
+    public static final byte FLOAT64 = 2;
+    public static final byte UTF8 = 3;
+
+    private WeatherFrameCodec() {
+    }
+
+    public record Column(String name, byte type) {}
+
+    record Batch(int rows, byte[] body) {}
+
+    /**
+     * Writes a frame stream: the schema on construction, one batch per {@link #batch} call, the end marker on
+     * {@link #finish()}.
+     */
+    public static final class Writer {
+
+        private final DataOutputStream out;
+        private final List<Column> schema;
+
+        public Writer(OutputStream out, List<Column> schema) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.schema = List.copyOf(schema);
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeShort(schema.size());
+            for (Column column : schema) {
+                byte[] name = column.name().getBytes(StandardCharsets.UTF_8);
+                this.out.writeByte(column.type());
+                this.out.writeShort(name.length);
+                this.out.write(name);
+            }
+        }
+
+        /**
+         * One vector per schema column: {@code long[]}, {@code double[]} or {@code String[]} matching its type.
+         */
+        public void batch(int rows, Object... vectors) throws IOException {
+            if (vectors.length != schema.size()) {
+                throw new IllegalArgumentException("Expected " + schema.size() + " vectors, got " + vectors.length);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * schema.size() * 8);
+            DataOutputStream body = new DataOutputStream(bytes);
+            for (int c = 0; c < vectors.length; c++) {
+                switch (schema.get(c).type()) {
+                    case INT64 -> {
+                        long[] v = (long[]) vectors[c];
+                        for (int r = 0; r < rows; r++) {
+                            body.writeLong(v[r]);
+                        }
+                    }
+                    case FLOAT64 -> {
+                        double[] v = (double[]) vectors[c];
+                        for (int r = 0; r < rows; r++) {
+                            body.writeDouble(v[r]);
+                        }
+                    }
+                    case UTF8 -> {
+                        String[] v = (String[]) vectors[c];
+                        for (int r = 0; r < rows; r++) {
+                            if (v[r] == null) {
+                                body.writeShort(-1);
+                            } else {
+                                byte[] b = v[r].getBytes(StandardCharsets.UTF_8);
+                                body.writeShort(b.length);
+                                body.write(b);
+                            }
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown column type " + schema.get(c).type());
+                }
+            }
+            out.writeInt(rows);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        public void finish() throws IOException {
+            out.writeInt(0);
+            out.flush();
+        }
+    }
+
+    static List<Column> readSchema(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a weather frame stream (bad magic)");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported weather frame version " + version);
+        }
+        int count = in.readShort();
+        List<Column> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            byte[] name = new byte[in.readShort()];
+            in.readFully(name);
+            columns.add(new Column(new String(name, StandardCharsets.UTF_8), type));
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the next batch; null at the end marker or the end of the stream.
+     */
+    static Batch readBatch(DataInputStream in) throws IOException {
+        int rows;
+        try {
+            rows = in.readInt();
+        } catch (EOFException eof) {
+            return null;
+        }
+        if (rows == 0) {
+            return null;
+        }
+        int length = in.readInt();
+        if (rows < 0 || length < 0) {
+            throw new IllegalArgumentException("Corrupt weather frame batch header");
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new Batch(rows, body);
+    }
+
+    /**
+     * Decodes one batch; {@code firstRow} numbers rows in error messages.
+     */
+    static WeatherChunk decode(WeatherKind kind, List<Column> schema, Batch batch, long firstRow,
+                               StationDirectory stations) {
+        int rows = batch.rows();
+        ByteBuffer buf = ByteBuffer.wrap(batch.body());
+        WeatherChunk chunk = new WeatherChunk(kind, rows);
+        long[] stationIds = null;
+        long[] rawStationIds = null;
+        String[] stationNames = null;
+        long[] issues = null;
+        long[] timestamps = null;
+        String[] texts = null;
+        double[][] values = new double[kind.valueColumns().size()][];
+        for (Column column : schema) {
+            int role = kind.role(column.name());
+            switch (column.type()) {
+                case INT64 -> {
+                    long[] v = new long[rows];
+                    for (int r = 0; r < rows; r++) {
+                        v[r] = buf.getLong();
+                    }
+                    if (role == WeatherKind.STATION) {
+                        rawStationIds = v;
+                        stationIds = new long[rows];
+                        for (int r = 0; r < rows; r++) {
+                            stationIds[r] = stations.byId(v[r]);
+                        }
+                    } else if (role == WeatherKind.TS) {
+                        timestamps = v;
+                    } else if (role == WeatherKind.ISSUE) {
+                        issues = v;
+                    } else if (role >= 0) {
+                        double[] d = new double[rows];
+                        for (int r = 0; r < rows; r++) {
+                            d[r] = v[r];
+                        }
+                        values[role] = d;
+                    }
+                }
+                case FLOAT64 -> {
+                    double[] v = new double[rows];
+                    for (int r = 0; r < rows; r++) {
+                        v[r] = buf.getDouble();
+                    }
+                    if (role >= 0) {
+                        values[role] = v;
+                    }
+                }
+                case UTF8 -> {
+                    String[] v = new String[rows];
+                    for (int r = 0; r < rows; r++) {
+                        int len = buf.getShort();
+                        if (len >= 0) {
+                            v[r] = new String(batch.body(), buf.position(), len, StandardCharsets.UTF_8);
+                            buf.position(buf.position() + len);
+                        }
+                    }
+                    if (role == WeatherKind.STATION) {
+                        stationIds = new long[rows];
+                        for (int r = 0; r < rows; r++) {
+                            stationIds[r] = v[r] == null ? StationDirectory.UNKNOWN : stations.resolve(v[r]);
+                        }
+                        stationNames = v;
+                    } else if (role == WeatherKind.TS) {
+                        timestamps = times(v);
+                    } else if (role == WeatherKind.ISSUE) {
+                        issues = times(v);
+                    } else if (role == WeatherKind.TEXT) {
+                        texts = v;
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown column type " + column.type()
+                        + " for " + column.name());
+            }
+        }
+        if (stationIds == null || timestamps == null || (kind.issued() && issues == null)) {
+            throw new IllegalArgumentException("Weather frames need station and ts"
+                    + (kind.issued() ? " and issue" : "") + " columns");
+        }
+        for (int r = 0; r < rows; r++) {
+            if (stationIds[r] == StationDirectory.UNKNOWN) {
+                chunk.unknownStation(stationNames != null ? String.valueOf(stationNames[r])
+                        : Long.toString(rawStationIds[r]));
+            } else if (timestamps[r] == Long.MIN_VALUE || (issues != null && issues[r] == Long.MIN_VALUE)) {
+                chunk.reject("row " + (firstRow + r) + ": unreadable time");
+            } else {
+                int row = chunk.add(stationIds[r], issues != null ? issues[r] : 0, timestamps[r],
+                        texts != null ? texts[r] : null);
+                for (int v = 0; v < values.length; v++) {
+                    if (values[v] != null) {
+                        chunk.values[v][row] = values[v][r];
+                    }
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static long[] times(String[] text) {
+        long[] out = new long[text.length];
+        for (int r = 0; r < text.length; r++) {
+            try {
+                out[r] = WeatherCsvParser.parseTime(text[r]);
+            } catch (RuntimeException ex) {
+                out[r] = Long.MIN_VALUE;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,549 @@
+package com.greenmesh.weather;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.greenmesh.jdbc.KeyedUpserts;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk loads WEATHER_OBS / WEATHER_FORECAST from CSV or {@link WeatherFrameCodec columnar frames}. The request
+ * thread only cuts the upload into blocks (whole CSV lines, or whole frame batches) and hands them to a fixed pool,
+ * which parses each block into primitive columns and writes it in its own transaction; at most two blocks per
+ * worker are in flight, so memory stays bounded by the block size.
+ * <p>
+ * Rows are keyed on (station, ts) for observations and (station, issue, ts, model) for forecasts. Each block reads
+ * the keys it covers once, then inserts the new rows and overwrites the stored ones, so re-issued or re-sent files
+ * replace rather than duplicate. Progress and throughput of the last imports are kept in memory; a forecast import
+ * that wrote rows publishes {@link WeatherForecastImported}.
+ */
+@Service
+public class WeatherImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherImportService.class);
+
+    private static final int MAX_JOBS = 50;
+    private static final int MAX_ERRORS = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher events;
+    private final int blockBytes;
+    private final int batchSize;
+    private final int parallelism;
+    private final ExecutorService pool;
+    private final Map<WeatherKind, Sql> statements = new EnumMap<>(WeatherKind.class);
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, Job> jobs = new LinkedHashMap<>();
+
+    public WeatherImportService(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                ApplicationEventPublisher events,
+                                @Value("${app.weather.import.block-kb:1024}") int blockKb,
+                                @Value("${app.weather.import.batch-size:5000}") int batchSize,
+                                @Value("${app.weather.import.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.events = events;
+        this.blockBytes = Math.max(64, blockKb) * 1024;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNo = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "weather-import-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (WeatherKind kind : WeatherKind.values()) {
+            statements.put(kind, Sql.of(kind));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public JobStatus importCsv(WeatherKind kind, InputStream body, Long parkId) {
+        Job job = start(kind, "csv");
+        StationDirectory stations = StationDirectory.load(jdbcTemplate, parkId);
+        Pipeline pipeline = new Pipeline(job);
+        try {
+            WeatherCsvParser parser = null;
+            byte[] buf = new byte[blockBytes];
+            int filled = 0;
+            long lineNo = 1;
+            int n;
+            while ((n = body.read(buf, filled, buf.length - filled)) != -1) {
+                filled += n;
+                job.bytes.addAndGet(n);
+                if (parser == null) {
+                    int nl = indexOf(buf, filled, (byte) '\n');
+                    if (nl < 0) {
+                        if (filled == buf.length) {
+                            throw new IllegalArgumentException("CSV header exceeds " + blockBytes + " bytes");
+                        }
+                        continue;
+                    }
+                    parser = WeatherCsvParser.forHeader(kind, new String(buf, 0, nl, StandardCharsets.UTF_8).strip());
+                    filled = shift(buf, nl + 1, filled);
+                    lineNo = 2;
+                }
+                if (filled == buf.length) {
+                    int last = lastIndexOf(buf, filled, (byte) '\n');
+                    if (last < 0) {
+                        throw new IllegalArgumentException("line " + lineNo + " exceeds " + blockBytes + " bytes");
+                    }
+                    byte[] block = Arrays.copyOf(buf, last + 1);
+                    long firstLine = lineNo;
+                    WeatherCsvParser p = parser;
+                    pipeline.submit(() -> p.parse(block, block.length, firstLine, stations));
+                    lineNo += count(block, (byte) '\n');
+                    filled = shift(buf, last + 1, filled);
+                }
+            }
+            if (parser == null && filled > 0) {
+                parser = WeatherCsvParser.forHeader(kind, new String(buf, 0, filled, StandardCharsets.UTF_8).strip());
+                filled = 0;
+            }
+            if (filled > 0) {
+                byte[] block = Arrays.copyOf(buf, filled);
+                long firstLine = lineNo;
+                WeatherCsvParser p = parser;
+                pipeline.submit(() -> p.parse(block, block.length, firstLine, stations));
+            }
+        } catch (IOException | RuntimeException ex) {
+            job.fail(ex);
+        }
+        return pipeline.finish();
+    }
+
+    public JobStatus importFrames(WeatherKind kind, InputStream body, Long parkId) {
+        Job job = start(kind, "frames");
+        StationDirectory stations = StationDirectory.load(jdbcTemplate, parkId);
+        Pipeline pipeline = new Pipeline(job);
+        try {
+            CountingInputStream counted = new CountingInputStream(body, job.bytes);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(counted, 64 * 1024));
+            List<WeatherFrameCodec.Column> schema = WeatherFrameCodec.readSchema(in);
+            long row = 1;
+            WeatherFrameCodec.Batch batch;
+            while ((batch = WeatherFrameCodec.readBatch(in)) != null) {
+                WeatherFrameCodec.Batch b = batch;
+                long firstRow = row;
+                pipeline.submit(() -> WeatherFrameCodec.decode(kind, schema, b, firstRow, stations));
+                row += batch.rows();
+            }
+        } catch (IOException | RuntimeException ex) {
+            job.fail(ex);
+        }
+        return pipeline.finish();
+    }
+
+    public List<JobStatus> jobs() {
+        synchronized (jobs) {
+            List<JobStatus> out = new ArrayList<>(jobs.size());
+            jobs.values().forEach(j -> out.add(0, j.status()));
+            return out;
+        }
+    }
+
+    public JobStatus job(long id) {
+        synchronized (jobs) {
+            Job job = jobs.get(id);
+            return job != null ? job.status() : null;
+        }
+    }
+
+    private Job start(WeatherKind kind, String format) {
+        Job job = new Job(jobIds.incrementAndGet(), kind, format);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            if (jobs.size() > MAX_JOBS) {
+                jobs.remove(jobs.keySet().iterator().next());
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Writes one parsed block and returns {inserted, updated}. A later row with the same key in the block wins.
+     */
+    private int[] write(WeatherKind kind, WeatherChunk chunk) {
+        Map<Key, Integer> rows = new HashMap<>(chunk.size * 2);
+        String textDefault = kind.textDefault();
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+        long minIssue = Long.MAX_VALUE;
+        long maxIssue = Long.MIN_VALUE;
+        Set<Long> stationIds = new LinkedHashSet<>();
+        for (int i = 0; i < chunk.size; i++) {
+            if (chunk.texts[i] == null) {
+                chunk.texts[i] = textDefault;
+            }
+            rows.put(key(kind, chunk, i), i);
+            minTs = Math.min(minTs, chunk.timestamps[i]);
+            maxTs = Math.max(maxTs, chunk.timestamps[i]);
+            minIssue = Math.min(minIssue, chunk.issues[i]);
+            maxIssue = Math.max(maxIssue, chunk.issues[i]);
+            stationIds.add(chunk.stations[i]);
+        }
+        Sql sql = statements.get(kind);
+        KeyedUpserts.Lookup lookup = kind.issued()
+                ? new KeyedUpserts.Lookup("SELECT STATION_ID, FORECAST_ISSUE_TS, TS, MODEL_NAME FROM WEATHER_FORECAST"
+                + " WHERE STATION_ID IN (%s) AND FORECAST_ISSUE_TS BETWEEN ? AND ? AND TS BETWEEN ? AND ?",
+                new ArrayList<>(stationIds), minIssue, maxIssue, minTs, maxTs)
+                : new KeyedUpserts.Lookup("SELECT STATION_ID, TS FROM WEATHER_OBS"
+                + " WHERE STATION_ID IN (%s) AND TS BETWEEN ? AND ?", new ArrayList<>(stationIds), minTs, maxTs);
+        KeyedUpserts.Result r = KeyedUpserts.upsert(jdbcTemplate, transactionTemplate, rows, lookup,
+                rs -> kind.issued()
+                        ? new Key(rs.getLong(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime(),
+                        rs.getString(4))
+                        : new Key(rs.getLong(1), 0, rs.getTimestamp(2).getTime(), null),
+                sql.update(), (ps, row) -> sql.bindUpdate(ps, chunk, row),
+                sql.insert(), (ps, row) -> sql.bindInsert(ps, chunk, row), batchSize);
+        return new int[]{r.inserted(), r.updated()};
+    }
+
+    private static Key key(WeatherKind kind, WeatherChunk chunk, int i) {
+        return kind.issued()
+                ? new Key(chunk.stations[i], chunk.issues[i], chunk.timestamps[i], chunk.texts[i])
+                : new Key(chunk.stations[i], 0, chunk.timestamps[i], null);
+    }
+
+    private static int indexOf(byte[] buf, int len, byte b) {
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] buf, int len, byte b) {
+        for (int i = len - 1; i >= 0; i--) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int count(byte[] buf, byte b) {
+        int n = 0;
+        for (byte x : buf) {
+            if (x == b) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int shift(byte[] buf, int from, int filled) {
+        System.arraycopy(buf, from, buf, 0, filled - from);
+        return filled - from;
+    }
+
+    private record Key(long station, long issue, long ts, String text) {}
+
+    /**
+     * {@code elapsedMs} and the rates run until the job finishes.
+     */
+    public record JobStatus(long id, String kind, String format, String status, Instant startedAt,
+                            Instant finishedAt, long elapsedMs, long bytes, long rows, long inserted, long updated,
+                            long rejected, int blocks, int failedBlocks, double rowsPerSecond,
+                            double megabytesPerSecond, List<String> unknownStations, List<String> errors) {}
+
+    /**
+     * Feeds parse tasks to the pool with bounded look-ahead and collects their outcome into the job.
+     */
+    private final class Pipeline {
+        private final Job job;
+        private final Semaphore inFlight = new Semaphore(parallelism * 2);
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        Pipeline(Job job) {
+            this.job = job;
+        }
+
+        void submit(Supplier<WeatherChunk> parse) {
+            inFlight.acquireUninterruptibly();
+            try {
+                futures.add(pool.submit(() -> {
+                    try {
+                        WeatherChunk chunk = parse.get();
+                        int[] written = write(job.kind, chunk);
+                        job.blockDone(chunk, written[0], written[1]);
+                    } catch (DataAccessException ex) {
+                        job.blockFailed(ex.getMostSpecificCause().getMessage());
+                    } catch (RuntimeException ex) {
+                        job.blockFailed(ex.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            } catch (RuntimeException ex) {
+                inFlight.release();
+                throw ex;
+            }
+        }
+
+        JobStatus finish() {
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    job.fail(ex);
+                    break;
+                } catch (ExecutionException ex) {
+                    job.blockFailed(String.valueOf(ex.getCause()));
+                }
+            }
+            job.finish();
+            JobStatus status = job.status();
+            meterRegistry.counter("greenmesh.weather.import.rows", "kind", status.kind(), "outcome", "inserted")
+                    .increment(status.inserted());
+            meterRegistry.counter("greenmesh.weather.import.rows", "kind", status.kind(), "outcome", "updated")
+                    .increment(status.updated());
+            meterRegistry.counter("greenmesh.weather.import.rows", "kind", status.kind(), "outcome", "rejected")
+                    .increment(status.rejected());
+            meterRegistry.counter("greenmesh.weather.import.bytes", "kind", status.kind()).increment(status.bytes());
+            log.info("Weather import {} ({} {}): {} rows ({} inserted, {} updated, {} rejected) in {} ms, {} rows/s",
+                    status.id(), status.kind(), status.format(), status.rows(), status.inserted(), status.updated(),
+                    status.rejected(), status.elapsedMs(), Math.round(status.rowsPerSecond()));
+            if (job.kind.issued() && status.inserted() + status.updated() > 0) {
+                events.publishEvent(new WeatherForecastImported(job.id, job.issues()));
+            }
+            return status;
+        }
+    }
+
+    private static final class Job {
+        private final long id;
+        private final WeatherKind kind;
+        private final String format;
+        private final long startedNanos = System.nanoTime();
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong updated = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicInteger blocks = new AtomicInteger();
+        private final AtomicInteger failedBlocks = new AtomicInteger();
+        private final Set<String> unknownStations = new LinkedHashSet<>();
+        private final List<String> errors = new ArrayList<>();
+        private final Set<Long> issues = new TreeSet<>();
+        private volatile String state = "RUNNING";
+        private volatile Instant finishedAt;
+        private volatile long elapsedNanos = -1;
+
+        Job(long id, WeatherKind kind, String format) {
+            this.id = id;
+            this.kind = kind;
+            this.format = format;
+        }
+
+        void blockDone(WeatherChunk chunk, int insertedRows, int updatedRows) {
+            blocks.incrementAndGet();
+            rows.addAndGet(chunk.size + chunk.rejected);
+            inserted.addAndGet(insertedRows);
+            updated.addAndGet(updatedRows);
+            rejected.addAndGet(chunk.rejected);
+            synchronized (this) {
+                if (kind.issued() && insertedRows + updatedRows > 0) {
+                    long last = Long.MIN_VALUE;
+                    for (int i = 0; i < chunk.size; i++) {
+                        if (chunk.issues[i] != last) {
+                            last = chunk.issues[i];
+                            issues.add(last);
+                        }
+                    }
+                }
+                for (String s : chunk.unknownStations) {
+                    if (unknownStations.size() < WeatherChunk.MAX_UNKNOWN_STATIONS) {
+                        unknownStations.add(s);
+                    }
+                }
+                if (chunk.firstError != null) {
+                    error(chunk.firstError);
+                }
+            }
+        }
+
+        void blockFailed(String message) {
+            blocks.incrementAndGet();
+            failedBlocks.incrementAndGet();
+            synchronized (this) {
+                error(message);
+            }
+        }
+
+        void fail(Exception ex) {
+            state = "FAILED";
+            synchronized (this) {
+                error(ex.getMessage() != null ? ex.getMessage() : ex.toString());
+            }
+        }
+
+        void finish() {
+            elapsedNanos = System.nanoTime() - startedNanos;
+            finishedAt = Instant.now();
+            if (!"FAILED".equals(state)) {
+                state = failedBlocks.get() > 0 ? "PARTIAL" : "DONE";
+            }
+        }
+
+        synchronized List<Instant> issues() {
+            return issues.stream().map(Instant::ofEpochMilli).toList();
+        }
+
+        private void error(String message) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(String.valueOf(message));
+            }
+        }
+
+        synchronized JobStatus status() {
+            long nanos = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startedNanos;
+            double seconds = Math.max(nanos, 1) / 1e9;
+            long written = inserted.get() + updated.get();
+            return new JobStatus(id, kind.name().toLowerCase(Locale.ROOT), format, state, startedAt,
+                    finishedAt, nanos / 1_000_000, bytes.get(), rows.get(), inserted.get(), updated.get(),
+                    rejected.get(), blocks.get(), failedBlocks.get(), written / seconds,
+                    bytes.get() / 1_048_576.0 / seconds, List.copyOf(unknownStations), List.copyOf(errors));
+        }
+    }
+
+    /**
+     * INSERT and UPDATE of one table; value columns first, then the text column unless it is part of the key.
+     */
+    private record Sql(WeatherKind kind, String insert, String update) {
+
+        static Sql of(WeatherKind kind) {
+            List<String> values = kind.valueColumns();
+            String keyColumns = kind.issued() ? "STATION_ID, FORECAST_ISSUE_TS, TS" : "STATION_ID, TS";
+            String insert = "INSERT INTO " + kind.table() + " (" + keyColumns + ", " + String.join(", ", values)
+                    + ", " + kind.textColumn() + ") VALUES ("
+                    + "?,".repeat((kind.issued() ? 3 : 2) + values.size()) + "?)";
+            String set = values.stream().map(c -> c + " = ?").collect(Collectors.joining(", "));
+            String update = kind.issued()
+                    ? "UPDATE " + kind.table() + " SET " + set
+                    + " WHERE STATION_ID = ? AND FORECAST_ISSUE_TS = ? AND TS = ? AND " + kind.textColumn() + " = ?"
+                    : "UPDATE " + kind.table() + " SET " + set + ", " + kind.textColumn() + " = ?"
+                    + " WHERE STATION_ID = ? AND TS = ?";
+            return new Sql(kind, insert, update);
+        }
+
+        void bindInsert(PreparedStatement ps, WeatherChunk chunk, int row) throws SQLException {
+            int idx = 1;
+            ps.setLong(idx++, chunk.stations[row]);
+            if (kind.issued()) {
+                ps.setTimestamp(idx++, new Timestamp(chunk.issues[row]));
+            }
+            ps.setTimestamp(idx++, new Timestamp(chunk.timestamps[row]));
+            idx = bindValues(ps, idx, chunk, row);
+            ps.setString(idx, chunk.texts[row]);
+        }
+
+        void bindUpdate(PreparedStatement ps, WeatherChunk chunk, int row) throws SQLException {
+            int idx = bindValues(ps, 1, chunk, row);
+            if (!kind.issued()) {
+                ps.setString(idx++, chunk.texts[row]);
+            }
+            ps.setLong(idx++, chunk.stations[row]);
+            if (kind.issued()) {
+                ps.setTimestamp(idx++, new Timestamp(chunk.issues[row]));
+            }
+            ps.setTimestamp(idx++, new Timestamp(chunk.timestamps[row]));
+            if (kind.issued()) {
+                ps.setString(idx, chunk.texts[row]);
+            }
+        }
+
+        private static int bindValues(PreparedStatement ps, int idx, WeatherChunk chunk, int row)
+                throws SQLException {
+            for (double[] column : chunk.values) {
+                double v = column[row];
+                if (Double.isNaN(v)) {
+                    ps.setNull(idx++, Types.DECIMAL);
+                } else {
+                    ps.setDouble(idx++, v);
+                }
+            }
+            return idx;
+        }
+    }
+
+    /**
+     * Counts bytes as the frame reader consumes them, for progress.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
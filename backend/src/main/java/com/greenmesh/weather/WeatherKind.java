@@ -0,0 +1,102 @@
+package com.greenmesh.weather;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Target table of a weather import. Value columns are read from CSV headers / frame column names matched
+ * case-insensitively with underscores and a trailing {@code pred} ignored, so {@code ghi}, {@code GHI_PRED} and
+ * {@code ghiPred} all land in GHI_PRED of WEATHER_FORECAST.
+ */
+public enum WeatherKind {
+
+    OBS("WEATHER_OBS", false,
+            List.of("TEMPERATURE", "WIND_SPEED", "WIND_DIR", "GHI", "DNI", "DHI", "HUMIDITY", "PRESSURE"),
+            "QUALITY_FLAG", null),
+    FORECAST("WEATHER_FORECAST", true,
+            List.of("TEMPERATURE_PRED", "WIND_SPEED_PRED", "GHI_PRED", "DNI_PRED", "CLOUD_COVER_PRED"),
+            "MODEL_NAME", "-");
+
+    // roles of key fields; value columns use their index in valueColumns()
+    public static final int STATION = -1;
+    public static final int TS = -2;
+    public static final int ISSUE = -3;
+    public static final int TEXT = -4;
+    public static final int IGNORED = -5;
+
+    private final String table;
+    private final boolean issued;
+    private final List<String> valueColumns;
+    private final String textColumn;
+    // stored instead of NULL where the text column is part of the row key
+    private final String textDefault;
+
+    WeatherKind(String table, boolean issued, List<String> valueColumns, String textColumn, String textDefault) {
+        this.table = table;
+        this.issued = issued;
+        this.valueColumns = valueColumns;
+        this.textColumn = textColumn;
+        this.textDefault = textDefault;
+    }
+
+    public static WeatherKind parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String table() {
+        return table;
+    }
+
+    /**
+     * Forecasts are keyed by issue time and model as well.
+     */
+    public boolean issued() {
+        return issued;
+    }
+
+    public List<String> valueColumns() {
+        return valueColumns;
+    }
+
+    public String textColumn() {
+        return textColumn;
+    }
+
+    public String textDefault() {
+        return textDefault;
+    }
+
+    /**
+     * Role of a header: a value column index or one of the negative role constants.
+     */
+    public int role(String header) {
+        String name = normalize(header);
+        switch (name) {
+            case "station", "stationid", "stationname" -> {
+                return STATION;
+            }
+            case "ts", "time", "timestamp", "validtime", "validts" -> {
+                return TS;
+            }
+            case "issue", "issuets", "issuetime", "forecastissuets", "forecastissuetime" -> {
+                return issued ? ISSUE : IGNORED;
+            }
+            default -> {
+                if (name.equals(normalize(textColumn)) || (issued && name.equals("model"))) {
+                    return TEXT;
+                }
+                for (int i = 0; i < valueColumns.size(); i++) {
+                    if (name.equals(normalize(valueColumns.get(i)))) {
+                        return i;
+                    }
+                }
+                return IGNORED;
+            }
+        }
+    }
+
+    private static String normalize(String header) {
+        String name = header.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("\"", "");
+        return name.endsWith("pred") ? name.substring(0, name.length() - 4) : name;
+    }
+}
@@ -122,6 +122,39 @@ CREATE TABLE IF NOT EXISTS TS_MEASUREMENT (
 CREATE UNIQUE INDEX IF NOT EXISTS UQ_TS_POINT_TS ON TS_MEASUREMENT(POINT_ID, TS);
 CREATE INDEX IF NOT EXISTS IDX_TS_TS ON TS_MEASUREMENT(TS);
 
+-- Multi-resolution aggregates of TS_MEASUREMENT (1m/15m/1h/1d); kept apart because UQ_TS_POINT_TS allows one row per (point, ts)
+CREATE TABLE IF NOT EXISTS TS_ROLLUP (
+    POINT_ID BIGINT NOT NULL,
+    AGG_LEVEL VARCHAR(16) NOT NULL,
+    BUCKET_TS TIMESTAMP NOT NULL,
+    MIN_V DECIMAL(20,6),
+    MAX_V DECIMAL(20,6),
+    AVG_V DECIMAL(20,6),
+    SUM_V DECIMAL(28,6),
+    CNT BIGINT NOT NULL,
+    FIRST_V DECIMAL(20,6),
+    LAST_V DECIMAL(20,6),
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_TS_ROLLUP PRIMARY KEY (POINT_ID, AGG_LEVEL, BUCKET_TS),
+    CONSTRAINT FK_ROLLUP_POINT FOREIGN KEY (POINT_ID) REFERENCES DIM_METER_POINT(POINT_ID)
+);
+
+-- Per-point time ranges of TS_MEASUREMENT not yet re-aggregated into TS_ROLLUP; replayed after a restart
+CREATE TABLE IF NOT EXISTS TS_ROLLUP_DIRTY (
+    POINT_ID BIGINT PRIMARY KEY,
+    FROM_TS TIMESTAMP NOT NULL,
+    TO_TS TIMESTAMP NOT NULL,
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Progress markers for incremental jobs (e.g. RAW_TIMESERIES -> TS_MEASUREMENT cleaning)
+CREATE TABLE IF NOT EXISTS PIPELINE_WATERMARK (
+    NAME VARCHAR(128) PRIMARY KEY,
+    LAST_ID BIGINT,
+    LAST_TS TIMESTAMP,
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- =========================
 -- Alarm / monitoring
 -- =========================
@@ -218,6 +251,7 @@ CREATE TABLE IF NOT EXISTS WEATHER_OBS (
     CONSTRAINT FK_OBS_STATION FOREIGN KEY (STATION_ID) REFERENCES WEATHER_STATION(STATION_ID)
 );
 CREATE INDEX IF NOT EXISTS IDX_OBS_STATION_TS ON WEATHER_OBS(STATION_ID, TS);
+CREATE UNIQUE INDEX IF NOT EXISTS UQ_WEATHER_OBS_KEY ON WEATHER_OBS(STATION_ID, TS);
 
 CREATE TABLE IF NOT EXISTS WEATHER_FORECAST (
     ID BIGINT IDENTITY PRIMARY KEY,
@@ -229,11 +263,12 @@ CREATE TABLE IF NOT EXISTS WEATHER_FORECAST (
     GHI_PRED DECIMAL(10,4),
     DNI_PRED DECIMAL(10,4),
     CLOUD_COVER_PRED DECIMAL(10,4),
-    MODEL_NAME VARCHAR(64),
+    MODEL_NAME VARCHAR(64) DEFAULT '-' NOT NULL,
     CONSTRAINT FK_FORECAST_STATION FOREIGN KEY (STATION_ID) REFERENCES WEATHER_STATION(STATION_ID)
 );
 CREATE INDEX IF NOT EXISTS IDX_FORECAST_STATION_TS ON WEATHER_FORECAST(STATION_ID, TS);
 CREATE INDEX IF NOT EXISTS IDX_FORECAST_ISSUE ON WEATHER_FORECAST(FORECAST_ISSUE_TS);
+CREATE UNIQUE INDEX IF NOT EXISTS UQ_WEATHER_FORECAST_KEY ON WEATHER_FORECAST(STATION_ID, FORECAST_ISSUE_TS, TS, MODEL_NAME);
 
 CREATE TABLE IF NOT EXISTS MAP_ASSET_WEATHER (
     ASSET_ID BIGINT NOT NULL,
@@ -255,24 +290,38 @@ CREATE TABLE IF NOT EXISTS GEN_FORECAST (
     P10 DECIMAL(18,4),
     P90 DECIMAL(18,4),
     MODEL_VERSION VARCHAR(64),
-    SCENARIO VARCHAR(32),
+    SCENARIO VARCHAR(32) DEFAULT 'base' NOT NULL,
     CONSTRAINT FK_GEN_FORECAST_ASSET FOREIGN KEY (ASSET_ID) REFERENCES DIM_ASSET(ASSET_ID)
 );
 CREATE INDEX IF NOT EXISTS IDX_GEN_FORECAST_ASSET_TS ON GEN_FORECAST(ASSET_ID, TS);
 CREATE INDEX IF NOT EXISTS IDX_GEN_FORECAST_ISSUE ON GEN_FORECAST(FORECAST_ISSUE_TS);
+-- natural key of /api/forecast/gen/batch upserts; existing duplicates must be removed before it can be created
+CREATE UNIQUE INDEX IF NOT EXISTS UQ_GEN_FORECAST_KEY ON GEN_FORECAST(ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO);
 
+-- One row per (asset, issue, horizon bucket, scenario, model version; '-' when GEN_FORECAST has none); the running
+-- sums let new actuals be added without re-reading history. HORIZON_MIN is the lower edge of the bucket.
 CREATE TABLE IF NOT EXISTS LOG_FORECAST_EVAL (
     EVAL_ID BIGINT IDENTITY PRIMARY KEY,
     ASSET_ID BIGINT NOT NULL,
     FORECAST_ISSUE_TS TIMESTAMP NOT NULL,
     HORIZON_MIN INT,
+    SCENARIO VARCHAR(32) DEFAULT 'base' NOT NULL,
+    MODEL_VERSION VARCHAR(64) DEFAULT '-' NOT NULL,
     MAE DECIMAL(18,6),
     MAPE DECIMAL(18,6),
     BIAS DECIMAL(18,6),
+    SAMPLE_COUNT BIGINT DEFAULT 0 NOT NULL,
+    SUM_ABS_ERR DECIMAL(28,6) DEFAULT 0 NOT NULL,
+    SUM_ERR DECIMAL(28,6) DEFAULT 0 NOT NULL,
+    SUM_APE DECIMAL(28,6) DEFAULT 0 NOT NULL,
+    APE_COUNT BIGINT DEFAULT 0 NOT NULL,
     CREATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     CONSTRAINT FK_FORECAST_EVAL_ASSET FOREIGN KEY (ASSET_ID) REFERENCES DIM_ASSET(ASSET_ID)
 );
 CREATE INDEX IF NOT EXISTS IDX_FORECAST_EVAL_ASSET ON LOG_FORECAST_EVAL(ASSET_ID);
+CREATE UNIQUE INDEX IF NOT EXISTS UQ_FORECAST_EVAL_KEY ON LOG_FORECAST_EVAL(ASSET_ID, FORECAST_ISSUE_TS, HORIZON_MIN, SCENARIO, MODEL_VERSION);
+CREATE INDEX IF NOT EXISTS IDX_FORECAST_EVAL_ISSUE ON LOG_FORECAST_EVAL(FORECAST_ISSUE_TS);
 
 -- =========================
 -- Microgrid topology & control (net-side)
@@ -283,7 +332,11 @@ CREATE TABLE IF NOT EXISTS MG_BUS (
     NAME VARCHAR(128) NOT NULL,
     VOLTAGE_LEVEL_KV DECIMAL(10,3),
     BUS_TYPE VARCHAR(32),
-    CONSTRAINT FK_MG_BUS_PARK FOREIGN KEY (PARK_ID) REFERENCES DIM_PARK(PARK_ID)
+    POINT_ID_P BIGINT,
+    POINT_ID_Q BIGINT,
+    CONSTRAINT FK_MG_BUS_PARK FOREIGN KEY (PARK_ID) REFERENCES DIM_PARK(PARK_ID),
+    CONSTRAINT FK_MG_BUS_P FOREIGN KEY (POINT_ID_P) REFERENCES DIM_METER_POINT(POINT_ID),
+    CONSTRAINT FK_MG_BUS_Q FOREIGN KEY (POINT_ID_Q) REFERENCES DIM_METER_POINT(POINT_ID)
 );
 CREATE INDEX IF NOT EXISTS IDX_MG_BUS_PARK ON MG_BUS(PARK_ID);
 
@@ -500,10 +553,12 @@ CREATE TABLE IF NOT EXISTS LOAD_FORECAST (
 );
 CREATE INDEX IF NOT EXISTS IDX_LOAD_FORECAST_ENT_TS ON LOAD_FORECAST(ENT_ID, TS);
 CREATE INDEX IF NOT EXISTS IDX_LOAD_FORECAST_ISSUE ON LOAD_FORECAST(FORECAST_ISSUE_TS);
+CREATE UNIQUE INDEX IF NOT EXISTS UQ_LOAD_FORECAST_KEY ON LOAD_FORECAST(ENT_ID, FORECAST_ISSUE_TS, TS);
 
 CREATE TABLE IF NOT EXISTS LOG_LOAD_ANOMALY (
     ID BIGINT IDENTITY PRIMARY KEY,
     ENT_ID BIGINT NOT NULL,
+    POINT_ID BIGINT,
     TS TIMESTAMP NOT NULL,
     ANOMALY_TYPE VARCHAR(64),
     SCORE DECIMAL(18,6),
@@ -722,6 +777,8 @@ CREATE TABLE IF NOT EXISTS FACT_CARBON_ACCOUNTING (
     TOTAL_CARBON_KG DECIMAL(18,6),
     CARBON_ENERGY_RATIO DECIMAL(18,6),
     METHOD_VERSION VARCHAR(64),
+    -- hash of the day's inputs; a day is recomputed when it or METHOD_VERSION moves
+    INPUT_FINGERPRINT VARCHAR(64),
     STATUS VARCHAR(32),
     CONSTRAINT FK_CARBON_ACCOUNT_PARK FOREIGN KEY (PARK_ID) REFERENCES DIM_PARK(PARK_ID)
 );
@@ -0,0 +1,96 @@
+-- DM8 only: converts the time-series fact tables into range-partitioned tables.
+-- Run manually with disql after base-schema.sql, during a write pause (stop ingest/cleaning first).
+-- PartitionManager (app.partition.*) then pre-creates daily/monthly partitions ahead of time and drops expired ones.
+--
+-- Before running, replace 2026-11-01 with the first day (local time of the application servers) that the manager
+-- should manage; everything older lands in P_HIST, which the manager never touches; drop it by hand once it is
+-- past retention. Partition names follow P<yyyyMMdd> (daily) and P<yyyyMM> (monthly) = lower bound of the range.
+--
+-- Foreign keys to DIM_METER_POINT are left out so that ADD/DROP PARTITION stays a metadata-only operation;
+-- point ids are validated on ingest.
+
+-- =========================
+-- RAW_TIMESERIES: daily
+-- =========================
+ALTER TABLE RAW_TIMESERIES RENAME TO RAW_TIMESERIES_OLD;
+
+CREATE TABLE RAW_TIMESERIES (
+    ID BIGINT IDENTITY(1,1) NOT NULL,
+    POINT_ID BIGINT NOT NULL,
+    TS TIMESTAMP NOT NULL,
+    VALUE DECIMAL(20,6),
+    QUALITY_FLAG VARCHAR(32),
+    SOURCE_SYSTEM VARCHAR(64),
+    INGEST_TIME TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+)
+PARTITION BY RANGE (TS) (
+    PARTITION P_HIST VALUES LESS THAN (TIMESTAMP '2026-11-01 00:00:00'),
+    PARTITION P20261101 VALUES LESS THAN (TIMESTAMP '2026-11-02 00:00:00')
+);
+-- the cleaning pipeline reads by ID watermark; a global index keeps that a single range scan
+CREATE UNIQUE INDEX UQ_RAW_ID ON RAW_TIMESERIES(ID) GLOBAL;
+CREATE INDEX IDX_RAW_POINT_TS ON RAW_TIMESERIES(POINT_ID, TS);
+CREATE INDEX IDX_RAW_TS ON RAW_TIMESERIES(TS);
+
+SET IDENTITY_INSERT RAW_TIMESERIES ON;
+INSERT INTO RAW_TIMESERIES (ID, POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM, INGEST_TIME)
+SELECT ID, POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM, INGEST_TIME FROM RAW_TIMESERIES_OLD;
+SET IDENTITY_INSERT RAW_TIMESERIES OFF;
+COMMIT;
+DROP TABLE RAW_TIMESERIES_OLD;
+
+-- =========================
+-- TS_MEASUREMENT: daily
+-- =========================
+ALTER TABLE TS_MEASUREMENT RENAME TO TS_MEASUREMENT_OLD;
+
+CREATE TABLE TS_MEASUREMENT (
+    ID BIGINT IDENTITY(1,1) NOT NULL,
+    POINT_ID BIGINT NOT NULL,
+    TS TIMESTAMP NOT NULL,
+    VALUE DECIMAL(20,6),
+    QUALITY_FLAG VARCHAR(32),
+    AGG_LEVEL VARCHAR(16),
+    CREATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+)
+PARTITION BY RANGE (TS) (
+    PARTITION P_HIST VALUES LESS THAN (TIMESTAMP '2026-11-01 00:00:00'),
+    PARTITION P20261101 VALUES LESS THAN (TIMESTAMP '2026-11-02 00:00:00')
+);
+CREATE UNIQUE INDEX UQ_TS_POINT_TS ON TS_MEASUREMENT(POINT_ID, TS);
+CREATE INDEX IDX_TS_TS ON TS_MEASUREMENT(TS);
+
+SET IDENTITY_INSERT TS_MEASUREMENT ON;
+INSERT INTO TS_MEASUREMENT (ID, POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL, CREATED_AT)
+SELECT ID, POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL, CREATED_AT FROM TS_MEASUREMENT_OLD;
+SET IDENTITY_INSERT TS_MEASUREMENT OFF;
+COMMIT;
+DROP TABLE TS_MEASUREMENT_OLD;
+
+-- =========================
+-- TS_ROLLUP: monthly (by BUCKET_TS)
+-- =========================
+ALTER TABLE TS_ROLLUP RENAME TO TS_ROLLUP_OLD;
+
+CREATE TABLE TS_ROLLUP (
+    POINT_ID BIGINT NOT NULL,
+    AGG_LEVEL VARCHAR(16) NOT NULL,
+    BUCKET_TS TIMESTAMP NOT NULL,
+    MIN_V DECIMAL(20,6),
+    MAX_V DECIMAL(20,6),
+    AVG_V DECIMAL(20,6),
+    SUM_V DECIMAL(28,6),
+    CNT BIGINT NOT NULL,
+    FIRST_V DECIMAL(20,6),
+    LAST_V DECIMAL(20,6),
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_TS_ROLLUP PRIMARY KEY (POINT_ID, AGG_LEVEL, BUCKET_TS)
+)
+PARTITION BY RANGE (BUCKET_TS) (
+    PARTITION P_HIST VALUES LESS THAN (TIMESTAMP '2026-11-01 00:00:00'),
+    PARTITION P202611 VALUES LESS THAN (TIMESTAMP '2026-12-01 00:00:00')
+);
+
+INSERT INTO TS_ROLLUP SELECT * FROM TS_ROLLUP_OLD;
+COMMIT;
+DROP TABLE TS_ROLLUP_OLD;
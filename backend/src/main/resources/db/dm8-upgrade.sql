@@ -0,0 +1,111 @@
+-- DM8 only: brings a database created from an earlier base-schema.sql up to the current one (new tables, new
+-- columns, NOT NULL natural-key columns and the unique keys the batch upserts rely on).
+-- Run manually with disql once, before starting the new version and before dm8-partitioning.sql, during a write
+-- pause (stop ingest/cleaning and the forecast/load batch imports first). Fresh databases only need base-schema.sql.
+--
+-- Each unique key is preceded by a dedup that keeps the most recent row (highest ID) of every key; take a backup
+-- first if the older duplicates matter.
+
+-- =========================
+-- New tables
+-- =========================
+CREATE TABLE TS_ROLLUP (
+    POINT_ID BIGINT NOT NULL,
+    AGG_LEVEL VARCHAR(16) NOT NULL,
+    BUCKET_TS TIMESTAMP NOT NULL,
+    MIN_V DECIMAL(20,6),
+    MAX_V DECIMAL(20,6),
+    AVG_V DECIMAL(20,6),
+    SUM_V DECIMAL(28,6),
+    CNT BIGINT NOT NULL,
+    FIRST_V DECIMAL(20,6),
+    LAST_V DECIMAL(20,6),
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_TS_ROLLUP PRIMARY KEY (POINT_ID, AGG_LEVEL, BUCKET_TS),
+    CONSTRAINT FK_ROLLUP_POINT FOREIGN KEY (POINT_ID) REFERENCES DIM_METER_POINT(POINT_ID)
+);
+
+CREATE TABLE TS_ROLLUP_DIRTY (
+    POINT_ID BIGINT PRIMARY KEY,
+    FROM_TS TIMESTAMP NOT NULL,
+    TO_TS TIMESTAMP NOT NULL,
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE PIPELINE_WATERMARK (
+    NAME VARCHAR(128) PRIMARY KEY,
+    LAST_ID BIGINT,
+    LAST_TS TIMESTAMP,
+    UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+COMMIT;
+
+-- TS_ROLLUP starts empty: POST /api/timeseries/rollups/rebuild (or a restart once TS_ROLLUP_DIRTY is filled)
+-- aggregates the history that should be served from rollups.
+
+-- =========================
+-- Weather
+-- =========================
+DELETE FROM WEATHER_OBS WHERE ID NOT IN (SELECT MAX(ID) FROM WEATHER_OBS GROUP BY STATION_ID, TS);
+COMMIT;
+CREATE UNIQUE INDEX UQ_WEATHER_OBS_KEY ON WEATHER_OBS(STATION_ID, TS);
+
+UPDATE WEATHER_FORECAST SET MODEL_NAME = '-' WHERE MODEL_NAME IS NULL;
+COMMIT;
+ALTER TABLE WEATHER_FORECAST MODIFY MODEL_NAME VARCHAR(64) DEFAULT '-' NOT NULL;
+DELETE FROM WEATHER_FORECAST WHERE ID NOT IN (
+    SELECT MAX(ID) FROM WEATHER_FORECAST GROUP BY STATION_ID, FORECAST_ISSUE_TS, TS, MODEL_NAME);
+COMMIT;
+CREATE UNIQUE INDEX UQ_WEATHER_FORECAST_KEY ON WEATHER_FORECAST(STATION_ID, FORECAST_ISSUE_TS, TS, MODEL_NAME);
+
+-- =========================
+-- Generation forecast & evaluation
+-- =========================
+UPDATE GEN_FORECAST SET SCENARIO = 'base' WHERE SCENARIO IS NULL;
+COMMIT;
+ALTER TABLE GEN_FORECAST MODIFY SCENARIO VARCHAR(32) DEFAULT 'base' NOT NULL;
+DELETE FROM GEN_FORECAST WHERE ID NOT IN (
+    SELECT MAX(ID) FROM GEN_FORECAST GROUP BY ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO);
+COMMIT;
+CREATE UNIQUE INDEX UQ_GEN_FORECAST_KEY ON GEN_FORECAST(ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO);
+
+-- Rows written by the old evaluator carry no running sums and cannot be extended with new actuals; they are
+-- dropped here. Rebuild the history that is still needed with POST /api/forecast/eval/rebuild after the upgrade.
+DELETE FROM LOG_FORECAST_EVAL;
+COMMIT;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN SCENARIO VARCHAR(32) DEFAULT 'base' NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN MODEL_VERSION VARCHAR(64) DEFAULT '-' NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN SAMPLE_COUNT BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN SUM_ABS_ERR DECIMAL(28,6) DEFAULT 0 NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN SUM_ERR DECIMAL(28,6) DEFAULT 0 NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN SUM_APE DECIMAL(28,6) DEFAULT 0 NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN APE_COUNT BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE LOG_FORECAST_EVAL ADD COLUMN UPDATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP;
+CREATE UNIQUE INDEX UQ_FORECAST_EVAL_KEY
+    ON LOG_FORECAST_EVAL(ASSET_ID, FORECAST_ISSUE_TS, HORIZON_MIN, SCENARIO, MODEL_VERSION);
+CREATE INDEX IDX_FORECAST_EVAL_ISSUE ON LOG_FORECAST_EVAL(FORECAST_ISSUE_TS);
+
+-- =========================
+-- Microgrid
+-- =========================
+ALTER TABLE MG_BUS ADD COLUMN POINT_ID_P BIGINT;
+ALTER TABLE MG_BUS ADD COLUMN POINT_ID_Q BIGINT;
+ALTER TABLE MG_BUS ADD CONSTRAINT FK_MG_BUS_P FOREIGN KEY (POINT_ID_P) REFERENCES DIM_METER_POINT(POINT_ID);
+ALTER TABLE MG_BUS ADD CONSTRAINT FK_MG_BUS_Q FOREIGN KEY (POINT_ID_Q) REFERENCES DIM_METER_POINT(POINT_ID);
+
+-- =========================
+-- Load forecast & anomaly
+-- =========================
+DELETE FROM LOAD_FORECAST WHERE ID NOT IN (
+    SELECT MAX(ID) FROM LOAD_FORECAST GROUP BY ENT_ID, FORECAST_ISSUE_TS, TS);
+COMMIT;
+CREATE UNIQUE INDEX UQ_LOAD_FORECAST_KEY ON LOAD_FORECAST(ENT_ID, FORECAST_ISSUE_TS, TS);
+
+ALTER TABLE LOG_LOAD_ANOMALY ADD COLUMN POINT_ID BIGINT;
+
+-- =========================
+-- Carbon accounting
+-- =========================
+-- Existing days have no fingerprint and an older METHOD_VERSION, so the next run recomputes them.
+ALTER TABLE FACT_CARBON_ACCOUNTING ADD COLUMN INPUT_FINGERPRINT VARCHAR(64);
+COMMIT;
@@ -0,0 +1,79 @@
+package com.greenmesh.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of the rule evaluator alone (no JDBC): 20k points, two rules on each plus some cross-point rules,
+ * samples arriving in per-tick batches as the cleaning pipeline hands them over. Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class AlarmEngineBenchmark {
+
+    private static final int POINTS = 20_000;
+    private static final int TICKS = 200;
+
+    @Test
+    void evaluatesAtLeastOneHundredThousandSamplesPerSecond() {
+        List<AlarmRule> rules = new ArrayList<>();
+        long id = 1;
+        for (int p = 1; p <= POINTS; p++) {
+            rules.add(AlarmEvaluatorTest.rule(id++, "$" + p + " < threshold for 10s hysteresis 0.05", 49.8));
+            rules.add(AlarmEvaluatorTest.rule(id++, "abs($" + p + " - 50) > 0.5 for 2s", null));
+            if (p % 10 == 0) {
+                rules.add(AlarmEvaluatorTest.rule(id++, "$" + p + " - $" + (p - 1) + " > 0.3 hysteresis 0.1", null));
+            }
+        }
+        long[] transitions = new long[1];
+        AlarmEvaluator evaluator = new AlarmEvaluator(rules, new AlarmEvaluator.Sink() {
+            @Override
+            public void opened(AlarmRule rule, long pointId, long startTs, double lhs, double rhs) {
+                transitions[0]++;
+            }
+
+            @Override
+            public void cleared(AlarmRule rule, long pointId, long startTs, long endTs) {
+                transitions[0]++;
+            }
+        });
+
+        SplittableRandom random = new SplittableRandom(42);
+        double[] values = new double[POINTS * TICKS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 50 + random.nextGaussian() * 0.25;
+        }
+        // warm-up so the JIT has compiled the operand trees before timing
+        run(evaluator, values, 0);
+        long start = System.nanoTime();
+        long worstTickNanos = 0;
+        for (int tick = 0; tick < TICKS; tick++) {
+            long tickStart = System.nanoTime();
+            long ts = (TICKS + tick) * 1_000L;
+            for (int p = 0; p < POINTS; p++) {
+                evaluator.accept(p + 1, ts, values[tick * POINTS + p]);
+            }
+            worstTickNanos = Math.max(worstTickNanos, System.nanoTime() - tickStart);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = POINTS * (double) TICKS / seconds;
+        System.out.printf("alarm evaluator: %d rules, %.0f samples/s, worst batch of %d samples %.1f ms, %d transitions%n",
+                evaluator.ruleCount(), rate, POINTS, worstTickNanos / 1e6, transitions[0]);
+
+        assertThat(rate).isGreaterThan(100_000);
+        assertThat(worstTickNanos).isLessThan(1_000_000_000L);
+    }
+
+    private static void run(AlarmEvaluator evaluator, double[] values, long offset) {
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int p = 0; p < POINTS; p++) {
+                evaluator.accept(p + 1, offset + tick * 1_000L, values[tick * POINTS + p]);
+            }
+        }
+    }
+}
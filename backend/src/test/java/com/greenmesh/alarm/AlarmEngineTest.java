@@ -0,0 +1,119 @@
+package com.greenmesh.alarm;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawTimeseriesWriter;
+import com.greenmesh.telemetry.SampleBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class AlarmEngineTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private RawTimeseriesWriter rawWriter;
+
+    @Autowired
+    private AlarmEngine engine;
+
+    @Test
+    void rawSamplesOpenAlarmsWithoutTheCleaningPipeline() throws InterruptedException {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long pointId = point(parkId);
+        long ruleId = rule(parkId, "raw feed " + pointId, "$" + pointId + " > threshold", 100);
+        engine.reload();
+
+        long ts = Instant.now().toEpochMilli();
+        rawWriter.insert(sample(pointId, ts, 150));
+
+        assertThat(engine.isOpen(ruleId)).isTrue();
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(5));
+        while (openAlarms(ruleId) == 0 && Instant.now().isBefore(deadline)) {
+            Thread.sleep(20);
+        }
+        assertThat(openAlarms(ruleId)).isEqualTo(1);
+    }
+
+    @Test
+    void rawSamplesCountOnlyOnceTheirTransactionCommits() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long pointId = point(parkId);
+        long ruleId = rule(parkId, "raw commit " + pointId, "$" + pointId + " > threshold", 100);
+        engine.reload();
+        long ts = Instant.now().toEpochMilli();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rawWriter.insert(sample(pointId, ts, 150));
+            assertThat(engine.isOpen(ruleId)).isFalse();
+            status.setRollbackOnly();
+        });
+        assertThat(engine.isOpen(ruleId)).isFalse();
+
+        transactionTemplate.executeWithoutResult(status -> rawWriter.insert(sample(pointId, ts + 1, 150)));
+        assertThat(engine.isOpen(ruleId)).isTrue();
+    }
+
+    @Test
+    void measurementFeedIgnoresRawSamples() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long pointId = point(parkId);
+        long ruleId = rule(parkId, "cleaned feed " + pointId, "$" + pointId + " > threshold", 100);
+        AlarmEventWriter writer = new AlarmEventWriter(jdbcTemplate, transactionTemplate, 100);
+        AlarmEngine cleanedOnly = new AlarmEngine(jdbcTemplate, masterData, writer, true, "measurement");
+        cleanedOnly.reload();
+        long ts = Instant.now().toEpochMilli();
+
+        cleanedOnly.onRawSamples(sample(pointId, ts, 150));
+        assertThat(cleanedOnly.isOpen(ruleId)).isFalse();
+
+        cleanedOnly.onMeasurements(sample(pointId, ts, 150));
+        assertThat(cleanedOnly.isOpen(ruleId)).isTrue();
+        assertThat(writer.pendingCount()).isEqualTo(1);
+    }
+
+    static SampleBatch sample(long pointId, long ts, double value) {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(pointId, ts, value, QualityFlags.GOOD, "test");
+        return batch;
+    }
+
+    private long point(long parkId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId);
+    }
+
+    private long rule(long parkId, String name, String expression, double threshold) {
+        return jdbcTemplate.queryForObject("""
+                SELECT RULE_ID FROM FINAL TABLE (
+                INSERT INTO CFG_ALARM_RULE (PARK_ID, NAME, CATEGORY, EXPRESSION, THRESHOLD, SEVERITY)
+                VALUES (?, ?, 'TEST', ?, ?, 'MAJOR'))
+                """, Long.class, parkId, name, expression, threshold);
+    }
+
+    private int openAlarms(long ruleId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM EVT_ALARM WHERE RULE_ID = ? AND STATUS = 'ACTIVE'", Integer.class, ruleId);
+    }
+}
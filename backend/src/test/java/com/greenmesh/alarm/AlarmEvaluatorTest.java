@@ -0,0 +1,93 @@
+package com.greenmesh.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AlarmEvaluatorTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final AlarmEvaluator.Sink sink = new AlarmEvaluator.Sink() {
+        @Override
+        public void opened(AlarmRule rule, long pointId, long startTs, double lhs, double rhs) {
+            events.add("open " + rule.ruleId() + "@" + startTs + " on " + pointId);
+        }
+
+        @Override
+        public void cleared(AlarmRule rule, long pointId, long startTs, long endTs) {
+            events.add("clear " + rule.ruleId() + "@" + startTs + ".." + endTs);
+        }
+    };
+
+    @Test
+    void opensAfterDurationAndClearsBeyondHysteresis() {
+        AlarmEvaluator evaluator = new AlarmEvaluator(List.of(
+                rule(1, "$101 < threshold for 10s hysteresis 0.05", 49.8)), sink);
+
+        evaluator.accept(101, 0, 49.7);
+        evaluator.accept(101, 5_000, 49.75);
+        evaluator.accept(101, 6_000, 49.9);     // recovered before the duration: pending resets
+        evaluator.accept(101, 7_000, 49.7);
+        evaluator.accept(101, 16_000, 49.7);
+        assertThat(events).isEmpty();
+        evaluator.accept(101, 17_000, 49.6);
+        assertThat(events).containsExactly("open 1@7000 on 101");
+
+        evaluator.accept(101, 18_000, 49.82);   // above threshold but inside the hysteresis band
+        evaluator.accept(101, 12_000, 60);      // out of order, ignored
+        assertThat(evaluator.isOpen(1)).isTrue();
+        evaluator.accept(101, 19_000, 49.86);
+        assertThat(events).containsExactly("open 1@7000 on 101", "clear 1@7000..19000");
+    }
+
+    @Test
+    void multiPointRuleWaitsForAllInputs() {
+        AlarmEvaluator evaluator = new AlarmEvaluator(List.of(
+                rule(2, "abs($201 - $202) > max(5, threshold)", 8.0),
+                rule(3, "$999 >", null)), sink);
+
+        assertThat(evaluator.errors()).hasSize(1).first().asString().contains("rule 3");
+        evaluator.accept(201, 1_000, 100);
+        assertThat(events).isEmpty();
+        evaluator.accept(202, 2_000, 91);
+        assertThat(events).containsExactly("open 2@2000 on 201");
+        evaluator.accept(201, 3_000, 92);
+        assertThat(events).containsExactly("open 2@2000 on 201", "clear 2@2000..3000");
+    }
+
+    @Test
+    void carryOverKeepsOpenAlarmsAndClearsRemovedRules() {
+        AlarmEvaluator first = new AlarmEvaluator(List.of(rule(4, "$301 > 10", null), rule(5, "$302 > 10", null)), sink);
+        first.accept(301, 1_000, 11);
+        first.accept(302, 1_000, 11);
+
+        AlarmEvaluator second = new AlarmEvaluator(List.of(rule(4, "$301 > 10", null)), sink);
+        second.carryOver(first, 5_000);
+        assertThat(second.isOpen(4)).isTrue();
+        assertThat(events).containsExactly("open 4@1000 on 301", "open 5@1000 on 302", "clear 5@1000..5000");
+    }
+
+    @Test
+    void rejectsMalformedExpressions() {
+        assertThatThrownBy(() -> RuleExpression.compile("$1 > threshold", null, id -> 0))
+                .hasMessageContaining("THRESHOLD");
+        assertThatThrownBy(() -> RuleExpression.compile("$1 > 2 for 3 parsecs", null, id -> 0))
+                .hasMessageContaining("duration unit");
+        assertThatThrownBy(() -> RuleExpression.compile("4 > 2", null, id -> 0))
+                .hasMessageContaining("no point");
+        RuleExpression e = RuleExpression.compile("-$7 * 2 >= ($8 + 1) / 2 for 1.5m", null, id -> (int) id - 7);
+        assertThat(e.pointIds()).containsExactly(7, 8);
+        assertThat(e.forMillis()).isEqualTo(90_000);
+        assertThat(e.lhs().eval(new double[] {-3, 5})).isEqualTo(6);
+        assertThat(e.rhs().eval(new double[] {-3, 5})).isEqualTo(3);
+    }
+
+    static AlarmRule rule(long id, String expression, Double threshold) {
+        return new AlarmRule(id, 1, "rule-" + id, "FREQUENCY", expression, threshold, "MAJOR");
+    }
+}
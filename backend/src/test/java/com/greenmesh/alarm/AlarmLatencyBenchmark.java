@@ -0,0 +1,92 @@
+package com.greenmesh.alarm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawTimeseriesWriter;
+import com.greenmesh.telemetry.SampleBatch;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end alarm latency: from a raw batch being committed through {@link RawTimeseriesWriter} to the EVT_ALARM
+ * row being visible, with 1000 ruled points in every batch. The cleaning pipeline is off, so this is the raw feed
+ * alone; the cleaned feed adds at least the pipeline's settle delay on top. Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class AlarmLatencyBenchmark {
+
+    private static final int POINTS = 1000;
+    private static final int ROUNDS = 100;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RawTimeseriesWriter rawWriter;
+
+    @Autowired
+    private AlarmEngine engine;
+
+    @Test
+    void alarmsReachTheDatabaseWellWithinASecondOfIngest() throws InterruptedException {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long[] points = new long[POINTS];
+        long[] rules = new long[POINTS];
+        for (int p = 0; p < POINTS; p++) {
+            points[p] = jdbcTemplate.queryForObject("""
+                    SELECT POINT_ID FROM FINAL TABLE (
+                    INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                    VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                    """, Long.class, parkId);
+            rules[p] = jdbcTemplate.queryForObject("""
+                    SELECT RULE_ID FROM FINAL TABLE (
+                    INSERT INTO CFG_ALARM_RULE (PARK_ID, NAME, CATEGORY, EXPRESSION, THRESHOLD, SEVERITY)
+                    VALUES (?, ?, 'BENCH', ?, 100, 'MINOR'))
+                    """, Long.class, parkId, "latency " + points[p], "$" + points[p] + " > threshold");
+        }
+        engine.reload();
+
+        SampleBatch batch = new SampleBatch(POINTS);
+        long[] latencyNanos = new long[ROUNDS];
+        List<Long> opened = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            long ts = Instant.now().toEpochMilli();
+            int tripped = round % POINTS;
+            batch.clear();
+            for (int p = 0; p < POINTS; p++) {
+                batch.add(points[p], ts, p == tripped ? 150 : 50, QualityFlags.GOOD, "bench");
+            }
+            long start = System.nanoTime();
+            rawWriter.insert(batch);
+            while (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM EVT_ALARM WHERE RULE_ID = ?", Integer.class,
+                    rules[tripped]) == 0) {
+                assertThat(System.nanoTime() - start).as("alarm for rule %d", rules[tripped])
+                        .isLessThan(10_000_000_000L);
+                Thread.sleep(2);
+            }
+            latencyNanos[round] = System.nanoTime() - start;
+            opened.add(rules[tripped]);
+        }
+        Arrays.sort(latencyNanos);
+        long p50 = latencyNanos[ROUNDS / 2];
+        long p99 = latencyNanos[ROUNDS * 99 / 100];
+        System.out.printf("alarm latency raw insert -> EVT_ALARM: %d rounds of %d samples, p50 %.1f ms, "
+                        + "p99 %.1f ms, max %.1f ms%n",
+                ROUNDS, POINTS, p50 / 1e6, p99 / 1e6, latencyNanos[ROUNDS - 1] / 1e6);
+
+        assertThat(opened).hasSize(ROUNDS);
+        assertThat(p99).isLessThan(1_000_000_000L);
+    }
+}
@@ -0,0 +1,55 @@
+package com.greenmesh.anomaly;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput and footprint of the detector alone (no JDBC): 20k load series sampled every minute for two weeks,
+ * so every sample after the warm-up is scored. Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class LoadAnomalyDetectorBenchmark {
+
+    private static final int SERIES = 20_000;
+    private static final long STEP_MS = 60_000L;
+    private static final int STEPS = 14 * 24 * 60;
+
+    @Test
+    void scoresAtLeastOneMillionSamplesPerSecondInAFewMegabytes() {
+        long[] events = new long[1];
+        LoadAnomalyDetector detector = new LoadAnomalyDetector(LoadAnomalyDetectorTest.SETTINGS,
+                (seriesId, ts, type, score, value, expected) -> events[0]++);
+        SplittableRandom random = new SplittableRandom(42);
+        double[] noise = new double[4096];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = random.nextGaussian() * 2;
+        }
+
+        long start = System.nanoTime();
+        long scoredFrom = 0;
+        for (int step = 0; step < STEPS; step++) {
+            if (step == 7 * 24 * 60) {
+                scoredFrom = System.nanoTime();
+            }
+            long ts = step * STEP_MS;
+            int hour = (int) (ts / 3_600_000L % 24);
+            int day = (int) (ts / 86_400_000L % 7);
+            double base = day >= 5 ? 40 : hour >= 8 && hour < 18 ? 150 : 100;
+            for (int s = 0; s < SERIES; s++) {
+                detector.accept(s + 1, ts, base + noise[(step * 31 + s) & 4095], hour, day);
+            }
+        }
+        long end = System.nanoTime();
+        double rate = SERIES * (double) STEPS / ((end - start) / 1e9);
+        double scoredRate = SERIES * (STEPS / 2.0) / ((end - scoredFrom) / 1e9);
+        System.out.printf("load anomaly detector: %d series, %.0f samples/s (%.0f/s scored), %.1f MB state, %d events%n",
+                detector.size(), rate, scoredRate, detector.stateBytes() / 1e6, events[0]);
+
+        assertThat(scoredRate).isGreaterThan(1_000_000);
+        assertThat(detector.stateBytes()).isLessThan(16_000_000L);
+    }
+}
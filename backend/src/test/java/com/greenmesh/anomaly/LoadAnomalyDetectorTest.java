@@ -0,0 +1,92 @@
+package com.greenmesh.anomaly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadAnomalyDetectorTest {
+
+    static final LoadAnomalyDetector.Settings SETTINGS = new LoadAnomalyDetector.Settings(
+            14, 4, 3, 4.0, 1.0, 4.0, 12, 3_600_000L, 0.5, 0.02);
+
+    private static final long STEP_MS = 300_000L;
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private final List<String> events = new ArrayList<>();
+    private final SplittableRandom random = new SplittableRandom(7);
+    private final LoadAnomalyDetector detector = new LoadAnomalyDetector(SETTINGS,
+            (seriesId, ts, type, score, value, expected) -> events.add(
+                    type + " " + seriesId + " day " + ts / DAY_MS + " " + (ts % DAY_MS) / 60_000 + "min"));
+
+    @Test
+    void learnsTheWeeklyShapeAndFlagsSurgeDropAndStuckMeter() {
+        // day 0 is a Monday
+        long ts = feed(0, 21 * DAY_MS);
+        assertThat(events).isEmpty();
+
+        ts = feed(ts, 21 * DAY_MS + 10 * HOUR_MS);
+        detector.accept(1, ts, 400, 10, 0);
+        assertThat(events).containsExactly("SURGE 1 day 21 600min");
+        ts = feed(ts + STEP_MS, 21 * DAY_MS + 14 * HOUR_MS);
+        detector.accept(1, ts, 0, 14, 0);
+        assertThat(events).hasSize(2).last().isEqualTo("DROP 1 day 21 840min");
+
+        ts = feed(ts + STEP_MS, 21 * DAY_MS + 16 * HOUR_MS);
+        for (int i = 0; i < 12; i++, ts += STEP_MS) {
+            detector.accept(1, ts, 149.5, 16, 0);
+        }
+        assertThat(events).hasSize(3).last().isEqualTo("STUCK 1 day 21 1015min");
+        assertThat(detector.accept(1, ts - 2 * STEP_MS, 10, 16, 0)).isFalse();
+
+        feed(ts, 22 * DAY_MS);
+        assertThat(events).hasSize(3);
+    }
+
+    @Test
+    void sustainedShiftBelowTheSampleThresholdIsALevelShift() {
+        long ts = feed(0, 21 * DAY_MS + 9 * HOUR_MS);
+        assertThat(events).isEmpty();
+        for (; ts < 21 * DAY_MS + 15 * HOUR_MS; ts += STEP_MS) {
+            detector.accept(1, ts, load(ts) + 6 + random.nextGaussian() * 2, hour(ts), 0);
+        }
+        assertThat(events).hasSize(1).first().asString().startsWith("LEVEL_SHIFT 1 day 21");
+    }
+
+    @Test
+    void stateStaysFixedPerSeries() {
+        for (long series = 1; series <= 16_384; series++) {
+            detector.accept(series, 0, 100, 0, 0);
+            detector.accept(series, STEP_MS, 101, 0, 0);
+        }
+        assertThat(detector.size()).isEqualTo(16_384);
+        assertThat(detector.stateBytes()).isLessThan(16_384 * 400L);
+    }
+
+    /**
+     * Feeds the normal pattern with noise from {@code from} up to (excluding) {@code to}; returns {@code to}.
+     */
+    private long feed(long from, long to) {
+        for (long ts = from; ts < to; ts += STEP_MS) {
+            detector.accept(1, ts, load(ts) + random.nextGaussian() * 2, hour(ts), (int) (ts / DAY_MS % 7));
+        }
+        return to;
+    }
+
+    // weekdays 100 kW with 150 kW during 08-18, weekends 40 kW
+    private static double load(long ts) {
+        int hour = hour(ts);
+        if (ts / DAY_MS % 7 >= 5) {
+            return 40;
+        }
+        return hour >= 8 && hour < 18 ? 150 : 100;
+    }
+
+    private static int hour(long ts) {
+        return (int) (ts % DAY_MS / HOUR_MS);
+    }
+}
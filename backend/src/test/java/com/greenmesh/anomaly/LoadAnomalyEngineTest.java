@@ -0,0 +1,177 @@
+package com.greenmesh.anomaly;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.MeasurementWriter;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RollupService;
+import com.greenmesh.telemetry.SampleBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class LoadAnomalyEngineTest {
+
+    // a Monday
+    private static final LocalDate FIRST_DAY = LocalDate.of(2012, 9, 3);
+    private static final long HOUR_MS = 3_600_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private MeasurementWriter measurementWriter;
+
+    @Autowired
+    private LoadAnomalyWriter anomalyWriter;
+
+    @Autowired
+    private RollupService rollups;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void committedLoadSamplesAreScoredIntoTheAnomalyLog() {
+        ZoneId zone = rollups.zone();
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Load Anomaly Park', 'test'))
+                """, Long.class);
+        long entId = jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, 'load-anomaly-ent'))
+                """, Long.class, parkId);
+        long power = point(parkId, entId, "MW");
+        long energy = point(parkId, entId, "kWh");
+        masterData.refresh();
+
+        // three weeks of hourly samples: weekdays 0.1 MW with 0.15 MW during 08-18, weekends 0.04 MW
+        long start = FIRST_DAY.atStartOfDay(zone).toInstant().toEpochMilli();
+        for (int day = 0; day < 21; day++) {
+            SampleBatch batch = new SampleBatch(48);
+            for (int h = 0; h < 24; h++) {
+                long ts = start + (day * 24L + h) * HOUR_MS;
+                double kw = day % 7 >= 5 ? 40 : h >= 8 && h < 18 ? 150 : 100;
+                double jitter = ((day * 24 + h) * 7 % 5 - 2) * 0.2;
+                batch.add(power, ts, (kw + jitter) / 1000, QualityFlags.GOOD, "test");
+                batch.add(energy, ts, 1e6 * (h + 1), QualityFlags.GOOD, "test");
+            }
+            measurementWriter.upsert(batch);
+        }
+        anomalyWriter.flush();
+        assertThat(count(entId)).isZero();
+
+        SampleBatch surge = new SampleBatch(2);
+        surge.add(power, start + (21 * 24L + 10) * HOUR_MS, 0.3, QualityFlags.GOOD, "test");
+        surge.add(power, start + (21 * 24L + 11) * HOUR_MS, 0.9, QualityFlags.BAD, "test");
+        measurementWriter.upsert(surge);
+        anomalyWriter.flush();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT POINT_ID, ANOMALY_TYPE, SCORE, MESSAGE FROM LOG_LOAD_ANOMALY WHERE ENT_ID = ?", entId);
+        assertThat(rows).hasSize(1);
+        assertThat(((Number) rows.get(0).get("POINT_ID")).longValue()).isEqualTo(power);
+        assertThat(rows.get(0).get("ANOMALY_TYPE")).isEqualTo(LoadAnomalyDetector.SURGE);
+        assertThat(((Number) rows.get(0).get("SCORE")).doubleValue()).isGreaterThan(4);
+        assertThat((String) rows.get(0).get("MESSAGE")).contains("300.0 kW");
+    }
+
+    @Test
+    void baselinesAreWarmedFromHourlyRollupsAtStartup() {
+        ZoneId zone = rollups.zone();
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long entId = jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, 'warm-anomaly-ent'))
+                """, Long.class, parkId);
+        long power = point(parkId, entId, "kW");
+        masterData.refresh();
+
+        // three weeks of 1h rollups ending at the restart, including a spike that must not be reported
+        long start = FIRST_DAY.plusWeeks(8).atStartOfDay(zone).toInstant().toEpochMilli();
+        long restart = start + 21 * 24 * HOUR_MS;
+        List<Object[]> hours = new ArrayList<>();
+        for (int h = 0; h < 21 * 24; h++) {
+            double kw = h == 400 ? 900 : 100 + (h * 7 % 5 - 2) * 0.2;
+            hours.add(new Object[] {power, new Timestamp(start + h * HOUR_MS), kw});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V)
+                VALUES (?, '1h', ?, NULL, NULL, ?, NULL, 60, NULL, NULL)
+                """, hours);
+
+        LoadAnomalyWriter cold = new LoadAnomalyWriter(jdbcTemplate, transactionTemplate, 100);
+        engine(cold).onMeasurements(surge(power, restart));
+        assertThat(cold.pendingCount()).isZero();
+
+        LoadAnomalyWriter warmed = new LoadAnomalyWriter(jdbcTemplate, transactionTemplate, 100);
+        LoadAnomalyEngine engine = engine(warmed);
+        // history-days is 14
+        assertThat(engine.warm(restart + HOUR_MS / 2)).isEqualTo(14 * 24);
+        assertThat(warmed.pendingCount()).isZero();
+        engine.onMeasurements(surge(power, restart));
+        assertThat(warmed.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void anomaliesOfUnknownEnterprisesDoNotBlockTheLog() {
+        long entId = jdbcTemplate.queryForObject("SELECT MIN(ENT_ID) FROM DIM_ENTERPRISE", Long.class);
+        long pointId = jdbcTemplate.queryForObject("SELECT MIN(POINT_ID) FROM DIM_METER_POINT", Long.class);
+        long ts = Instant.parse("2014-04-01T00:00:00Z").toEpochMilli();
+        anomalyWriter.submit(new LoadAnomaly(entId, pointId, ts, LoadAnomalyDetector.SURGE, 5, "kept"));
+        // the enterprise was deleted after the detector learnt it
+        anomalyWriter.submit(new LoadAnomaly(-1, pointId, ts, LoadAnomalyDetector.SURGE, 5, "stale"));
+        anomalyWriter.submit(new LoadAnomaly(entId, pointId, ts + HOUR_MS, LoadAnomalyDetector.DROP, 5, "kept"));
+
+        assertThat(anomalyWriter.flush()).isEqualTo(2);
+        assertThat(anomalyWriter.pendingCount()).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM LOG_LOAD_ANOMALY WHERE ENT_ID = ? AND TS >= ? AND TS < ?", Integer.class,
+                entId, new Timestamp(ts), new Timestamp(ts + 2 * HOUR_MS))).isEqualTo(2);
+    }
+
+    private LoadAnomalyEngine engine(LoadAnomalyWriter writer) {
+        return new LoadAnomalyEngine(jdbcTemplate, masterData, writer, rollups, true, "ELEC", 14, 14, 4, 3, 4, 1, 4,
+                30, 3_600_000L, 0.5, 0.02);
+    }
+
+    private static SampleBatch surge(long pointId, long ts) {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(pointId, ts, 300, QualityFlags.GOOD, "test");
+        return batch;
+    }
+
+    private long point(long parkId, long entId, String unit) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', ?, 'N'))
+                """, Long.class, parkId, entId, unit);
+    }
+
+    private int count(long entId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LOG_LOAD_ANOMALY WHERE ENT_ID = ?", Integer.class,
+                entId);
+    }
+}
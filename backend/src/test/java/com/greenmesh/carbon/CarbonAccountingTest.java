@@ -0,0 +1,225 @@
+package com.greenmesh.carbon;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.masterdata.TimeSlotStore;
+import com.greenmesh.telemetry.RollupService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@SpringBootTest(properties = {"app.pipeline.cleaning.enabled=false", "app.carbon.accounting.enabled=false"})
+@ActiveProfiles("dev")
+class CarbonAccountingTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2007, 3, 1);
+    private static final LocalDate DAY2 = DAY1.plusDays(1);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private TimeSlotStore timeSlots;
+
+    @Autowired
+    private RollupService rollups;
+
+    @Autowired
+    private CarbonAccountingService accounting;
+
+    @Test
+    void recomputesOnlyTheDaysWhoseInputsChanged() {
+        ZoneId zone = rollups.zone();
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Carbon Test Park', 'carbon-test'))
+                """, Long.class);
+        long entId = jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, 'carbon-test-ent'))
+                """, Long.class, parkId);
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId, entId);
+        jdbcTemplate.update("""
+                INSERT INTO DIM_CARBON_FACTOR (REGION, ENERGY_TYPE, FACTOR_VALUE, EFFECTIVE_FROM, SOURCE)
+                VALUES ('carbon-test', 'ELEC', 0.5, DATE '2007-01-01', 'test')
+                """);
+        for (int h = 0; h < 2; h++) {
+            jdbcTemplate.update("""
+                    INSERT INTO CARBON_INTENSITY_TIMESLOT (REGION, TS, GRID_CARBON_FACTOR_G_PER_KWH, SOURCE)
+                    VALUES ('carbon-test', ?, 300, 'test')
+                    """, hour(DAY1, h, zone));
+        }
+        for (int h = 0; h < 24; h++) {
+            insertHour(pointId, hour(DAY1, h, zone), 100);
+            insertHour(pointId, hour(DAY2, h, zone), 10);
+        }
+        masterData.refresh();
+        timeSlots.refresh();
+
+        CarbonAccountingService.Result first = accounting.run(parkId, DAY1, DAY2.plusDays(1));
+        assertThat(first.recomputed()).isEqualTo(2);
+        Map<String, Object> day1 = account(parkId, DAY1, zone);
+        assertThat(((Number) day1.get("TOTAL_ENERGY_KWH")).doubleValue()).isCloseTo(2400, within(1e-6));
+        // two hours at the timeslot intensity, the rest at the regional factor
+        assertThat(((Number) day1.get("TOTAL_CARBON_KG")).doubleValue()).isCloseTo(2 * 100 * 0.3 + 22 * 100 * 0.5, within(1e-6));
+        assertThat(day1.get("STATUS")).isEqualTo("FINAL");
+        Map<String, Object> detail = jdbcTemplate.queryForMap(
+                "SELECT ENT_ID, ENERGY_TYPE, ENERGY_AMOUNT, SOURCE_DESCRIPTION FROM FACT_CARBON_ACCOUNTING_DETAIL WHERE ACCOUNTING_ID = ?",
+                day1.get("ID"));
+        assertThat(((Number) detail.get("ENT_ID")).longValue()).isEqualTo(entId);
+        assertThat(detail.get("ENERGY_TYPE")).isEqualTo("ELEC");
+        assertThat((String) detail.get("SOURCE_DESCRIPTION")).contains("CARBON_INTENSITY_TIMESLOT 2h");
+
+        assertThat(accounting.run(parkId, DAY1, DAY2.plusDays(1)).recomputed()).isZero();
+
+        // a late correction on day 2 only
+        jdbcTemplate.update("UPDATE TS_ROLLUP SET AVG_V = 34, SUM_V = 34 WHERE POINT_ID = ? AND AGG_LEVEL = '1h' AND BUCKET_TS = ?",
+                pointId, hour(DAY2, 5, zone));
+        assertThat(accounting.run(parkId, DAY1, DAY2.plusDays(1)).recomputed()).isEqualTo(1);
+        assertThat(((Number) account(parkId, DAY2, zone).get("TOTAL_ENERGY_KWH")).doubleValue()).isCloseTo(264, within(1e-6));
+        assertThat(account(parkId, DAY1, zone).get("ID")).isEqualTo(day1.get("ID"));
+
+        // a factor revision touches every day it is in force
+        jdbcTemplate.update("UPDATE DIM_CARBON_FACTOR SET FACTOR_VALUE = 0.6 WHERE REGION = 'carbon-test'");
+        masterData.refresh();
+        assertThat(accounting.run(parkId, DAY1, DAY2.plusDays(1)).recomputed()).isEqualTo(2);
+        assertThat(((Number) account(parkId, DAY2, zone).get("TOTAL_CARBON_KG")).doubleValue()).isCloseTo(264 * 0.6, within(1e-6));
+    }
+
+    @Test
+    void daysAreLocalToTheParkAndOnlyEnergyPointsMakeADay() {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        LocalDate day = LocalDate.of(2007, 4, 1);
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION, TIMEZONE)
+                VALUES ('Carbon Zone Park', 'carbon-zone-test', 'Europe/Berlin'))
+                """, Long.class);
+        long entId = jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, 'carbon-zone-ent'))
+                """, Long.class, parkId);
+        jdbcTemplate.update("""
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'), (?, ?, 'ELEC', 'POWER_FACTOR', '%', 'N')
+                """, parkId, entId, parkId, entId);
+        List<Long> points = jdbcTemplate.queryForList(
+                "SELECT POINT_ID FROM DIM_METER_POINT WHERE ENT_ID = ? ORDER BY POINT_ID", Long.class, entId);
+        for (int h = 0; h < 24; h++) {
+            insertHour(points.get(0), hour(day, h, berlin), 10);
+            // a power factor is not an energy measurement and must not open an account for the next day
+            insertHour(points.get(1), hour(day.plusDays(1), h, berlin), 95);
+        }
+        masterData.refresh();
+
+        assertThat(accounting.run(parkId, day, day.plusDays(2)).recomputed()).isEqualTo(1);
+        assertThat(((Number) account(parkId, day, berlin).get("TOTAL_ENERGY_KWH")).doubleValue())
+                .isCloseTo(240, within(1e-6));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FACT_CARBON_ACCOUNTING WHERE PARK_ID = ?",
+                Integer.class, parkId)).isEqualTo(1);
+        assertThat(accounting.run(parkId, day, day.plusDays(2)).recomputed()).isZero();
+    }
+
+    @Test
+    void energyPointsOnlyCountWithoutPowerPointsAndRegistersAreDifferenced() {
+        ZoneId zone = rollups.zone();
+        LocalDate day = LocalDate.of(2007, 5, 1);
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Carbon Source Park', 'carbon-source-test'))
+                """, Long.class);
+        long metered = enterprise(parkId, "carbon-source-both");
+        long registerOnly = enterprise(parkId, "carbon-source-register");
+        long intervalOnly = enterprise(parkId, "carbon-source-interval");
+        long power = point(parkId, metered, "ACTIVE_POWER", "kW");
+        long shadowed = point(parkId, metered, "ACTIVE_ENERGY", "kWh");
+        long register = point(parkId, registerOnly, "ACTIVE_ENERGY", "kWh");
+        long interval = point(parkId, intervalOnly, "INTERVAL_ENERGY", "kWh");
+        // the register reads 1000 kWh at the end of the hour before the day and advances 5 kWh an hour
+        insertReadings(register, hour(day, -1, zone), 995, 1000, 1000);
+        for (int h = 0; h < 24; h++) {
+            insertHour(power, hour(day, h, zone), 10);
+            insertReadings(shadowed, hour(day, h, zone), 50_000, 50_010, 600_000);
+            insertReadings(register, hour(day, h, zone), 1001 + h * 5, 1005 + h * 5, 12_000);
+            insertReadings(interval, hour(day, h, zone), 2, 2, 2);
+        }
+        masterData.refresh();
+
+        assertThat(accounting.run(parkId, day, day.plusDays(1)).recomputed()).isEqualTo(1);
+        Map<String, Object> account = account(parkId, day, zone);
+        assertThat(((Number) account.get("TOTAL_ENERGY_KWH")).doubleValue()).isCloseTo(240 + 120 + 48, within(1e-6));
+        assertThat(jdbcTemplate.queryForMap(
+                "SELECT METHOD_VERSION, INPUT_FINGERPRINT FROM FACT_CARBON_ACCOUNTING WHERE ID = ?", account.get("ID")))
+                .containsEntry("METHOD_VERSION", CarbonAccountingService.METHOD)
+                .hasEntrySatisfying("INPUT_FINGERPRINT", fingerprint -> assertThat(fingerprint).isNotNull());
+
+        // a corrected reading in the hour before the day changes the day's first difference
+        jdbcTemplate.update("UPDATE TS_ROLLUP SET LAST_V = 990 WHERE POINT_ID = ? AND AGG_LEVEL = '1h' AND BUCKET_TS = ?",
+                register, hour(day, -1, zone));
+        assertThat(accounting.run(parkId, day, day.plusDays(1)).recomputed()).isEqualTo(1);
+        assertThat(((Number) account(parkId, day, zone).get("TOTAL_ENERGY_KWH")).doubleValue())
+                .isCloseTo(240 + 130 + 48, within(1e-6));
+    }
+
+    private long enterprise(long parkId, String name) {
+        return jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, ?))
+                """, Long.class, parkId, name);
+    }
+
+    private long point(long parkId, long entId, String measType, String unit) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', ?, ?, 'N'))
+                """, Long.class, parkId, entId, measType, unit);
+    }
+
+    private void insertReadings(long pointId, Timestamp bucket, double first, double last, double sum) {
+        jdbcTemplate.update("""
+                INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V)
+                VALUES (?, '1h', ?, ?, ?, ?, ?, 12, ?, ?)
+                """, pointId, bucket, first, last, (first + last) / 2, sum, first, last);
+    }
+
+    private void insertHour(long pointId, Timestamp bucket, double avgKw) {
+        jdbcTemplate.update("""
+                INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V)
+                VALUES (?, '1h', ?, ?, ?, ?, ?, 1, ?, ?)
+                """, pointId, bucket, avgKw, avgKw, avgKw, avgKw, avgKw, avgKw);
+    }
+
+    private Map<String, Object> account(long parkId, LocalDate day, ZoneId zone) {
+        return jdbcTemplate.queryForMap("""
+                SELECT ID, TOTAL_ENERGY_KWH, TOTAL_CARBON_KG, STATUS FROM FACT_CARBON_ACCOUNTING
+                WHERE PARK_ID = ? AND PERIOD_START = ?
+                """, parkId, hour(day, 0, zone));
+    }
+
+    private static Timestamp hour(LocalDate day, int hour, ZoneId zone) {
+        return Timestamp.from(day.atStartOfDay(zone).plusHours(hour).toInstant());
+    }
+}
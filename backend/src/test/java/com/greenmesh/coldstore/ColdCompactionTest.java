@@ -0,0 +1,192 @@
+package com.greenmesh.coldstore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.greenmesh.telemetry.TieredMeasurementReader;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "app.pipeline.cleaning.enabled=false",
+        "app.coldstore.delete-chunk-rows=2"
+})
+@ActiveProfiles("dev")
+class ColdCompactionTest {
+
+    private static final long DAY_MS = 86_400_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ColdCompactor compactor;
+
+    @Autowired
+    private ColdSegmentStore store;
+
+    @Autowired
+    private TieredMeasurementReader reader;
+
+    @DynamicPropertySource
+    static void coldDir(DynamicPropertyRegistry registry) throws IOException {
+        String dir = Files.createTempDirectory("cold-test").toString();
+        registry.add("app.coldstore.dir", () -> dir);
+    }
+
+    @Test
+    void onlyTheWindowMovesAndBothTiersReadAsOne() {
+        long window = Instant.parse("2015-03-01T00:00:00Z").toEpochMilli();
+        long point = point();
+        measurement(point, window - 1, 1);
+        measurement(point, window, 2);
+        measurement(point, window + DAY_MS - 1, 3);
+        measurement(point, window + DAY_MS, 4);
+
+        ColdCompactor.WindowResult result = compactor.compactWindow(window);
+
+        assertThat(result.hotRows()).isEqualTo(2);
+        assertThat(store.get(window).totalSamples()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForList("SELECT TS FROM TS_MEASUREMENT WHERE POINT_ID = ? ORDER BY TS",
+                Timestamp.class, point)).extracting(Timestamp::getTime).containsExactly(window - 1, window + DAY_MS);
+        assertThat(scan(point, window, window + DAY_MS)).containsExactly(2.0, 3.0, 4.0);
+        assertThat(scan(point, window - 1, window + DAY_MS - 1)).containsExactly(1.0, 2.0, 3.0);
+        TieredMeasurementReader.Scan exclusive = new TieredMeasurementReader.Scan(List.of(point),
+                Instant.ofEpochMilli(window), Instant.ofEpochMilli(window + DAY_MS - 1), false, null, 0);
+        assertThat(scan(exclusive)).containsExactly(2.0);
+    }
+
+    @Test
+    void hotRowsWinOverColdSamplesAtTheSameTimestamp() {
+        long window = Instant.parse("2015-03-03T00:00:00Z").toEpochMilli();
+        long point = point();
+        measurement(point, window + 1000, 1);
+        measurement(point, window + 2000, 2);
+        compactor.compactWindow(window);
+
+        // a late correction lands in the hot tier for an already compacted timestamp
+        measurement(point, window + 1000, 10);
+        assertThat(scan(point, window, window + DAY_MS)).containsExactly(10.0, 2.0);
+
+        // the next run folds it into the segment with the same outcome
+        compactor.compactWindow(window);
+        assertThat(store.get(window).totalSamples()).isEqualTo(2);
+        assertThat(scan(point, window, window + DAY_MS)).containsExactly(10.0, 2.0);
+    }
+
+    @Test
+    void upsertsDuringCompactionAreNeitherLostNorDeleted() throws Exception {
+        long window = Instant.parse("2015-03-05T00:00:00Z").toEpochMilli();
+        long point = point();
+        measurement(point, window + 1000, 1);
+        measurement(point, window + 2000, 2);
+
+        try (Connection writer = dataSource.getConnection()) {
+            writer.setAutoCommit(false);
+            // an uncommitted correction of a row the compactor is about to read, and a new row in the window
+            try (PreparedStatement ps = writer.prepareStatement(
+                    "UPDATE TS_MEASUREMENT SET VALUE = 20 WHERE POINT_ID = ? AND TS = ?")) {
+                ps.setLong(1, point);
+                ps.setTimestamp(2, new Timestamp(window + 2000));
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = writer.prepareStatement("""
+                    INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL)
+                    VALUES (?, ?, 30, 'GOOD', 'raw')
+                    """)) {
+                ps.setLong(1, point);
+                ps.setTimestamp(2, new Timestamp(window + 3000));
+                ps.executeUpdate();
+            }
+            CompletableFuture<ColdCompactor.WindowResult> compaction =
+                    CompletableFuture.supplyAsync(() -> compactor.compactWindow(window));
+            Thread.sleep(300);
+            writer.commit();
+            ColdCompactor.WindowResult result = compaction.get(30, TimeUnit.SECONDS);
+            assertThat(result.hotRows()).isBetween(2L, 3L);
+        }
+
+        assertThat(scan(point, window, window + DAY_MS)).containsExactly(1.0, 20.0, 30.0);
+        compactor.compactWindow(window);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TS_MEASUREMENT WHERE POINT_ID = ?",
+                Integer.class, point)).isZero();
+        assertThat(scan(point, window, window + DAY_MS)).containsExactly(1.0, 20.0, 30.0);
+    }
+
+    @Test
+    void chunkedDeletesAndStreamedReadsSpanSeveralSegments() {
+        long window = Instant.parse("2015-03-07T00:00:00Z").toEpochMilli();
+        long point = point();
+        long other = point();
+        for (int i = 0; i < 5; i++) {
+            measurement(point, window + i * 1000L, i);
+            measurement(point, window + DAY_MS + i * 1000L, 10 + i);
+            measurement(other, window + i * 1000L, 100 + i);
+        }
+
+        ColdCompactor.WindowResult first = compactor.compactWindow(window);
+        compactor.compactWindow(window + DAY_MS);
+
+        assertThat(first.hotRows()).isEqualTo(10);
+        assertThat(first.keptRows()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TS_MEASUREMENT WHERE POINT_ID IN (?, ?)",
+                Integer.class, point, other)).isZero();
+        assertThat(scan(point, window + 3000, window + DAY_MS + 1000))
+                .containsExactly(3.0, 4.0, 10.0, 11.0);
+        TieredMeasurementReader.Scan both = new TieredMeasurementReader.Scan(List.of(other, point),
+                Instant.ofEpochMilli(window), Instant.ofEpochMilli(window + 2 * DAY_MS), false,
+                new TieredMeasurementReader.Key(point, Instant.ofEpochMilli(window + 3000)), 4);
+        assertThat(scan(both)).containsExactly(4.0, 10.0, 11.0, 12.0);
+    }
+
+    private List<Double> scan(long point, long from, long to) {
+        return scan(TieredMeasurementReader.Scan.range(List.of(point), Instant.ofEpochMilli(from),
+                Instant.ofEpochMilli(to)));
+    }
+
+    private List<Double> scan(TieredMeasurementReader.Scan scan) {
+        List<Double> values = new ArrayList<>();
+        reader.scan(scan, 100, (id, ts, value, quality) -> values.add(value));
+        return values;
+    }
+
+    private long point() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId);
+    }
+
+    private void measurement(long pointId, long ts, double value) {
+        int updated = jdbcTemplate.update("UPDATE TS_MEASUREMENT SET VALUE = ? WHERE POINT_ID = ? AND TS = ?",
+                value, pointId, new Timestamp(ts));
+        if (updated == 0) {
+            jdbcTemplate.update("""
+                    INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL)
+                    VALUES (?, ?, ?, 'GOOD', 'raw')
+                    """, pointId, new Timestamp(ts), value);
+        }
+    }
+}
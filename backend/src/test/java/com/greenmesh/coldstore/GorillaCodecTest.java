@@ -0,0 +1,117 @@
+package com.greenmesh.coldstore;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GorillaCodecTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void roundTripsIrregularTimestampsNaNAndQualityRuns() {
+        int n = 5_000;
+        long[] ts = new long[n];
+        double[] values = new double[n];
+        byte[] qualities = new byte[n];
+        long t = T0;
+        for (int i = 0; i < n; i++) {
+            // mostly 15 s, with jitter and hour-long gaps
+            t += i % 97 == 0 ? 3_600_000 : i % 13 == 0 ? 15_007 : 15_000;
+            ts[i] = t;
+            if (i % 500 == 0) {
+                values[i] = Double.NaN;
+            } else {
+                values[i] = i % 7 == 0 ? -Math.PI * i : Math.round(Math.sin(i / 50.0) * 100) / 10.0;
+            }
+            qualities[i] = (byte) (i / 1000 % 3);
+        }
+
+        byte[] block = GorillaCodec.encode(ts, values, qualities, n);
+        List<double[]> decoded = new ArrayList<>();
+        GorillaCodec.decode(ByteBuffer.wrap(block), 0, block.length, (dts, dv, dq) -> {
+            decoded.add(new double[] {dts, dv, dq});
+            return true;
+        });
+
+        assertThat(decoded).hasSize(n);
+        for (int i = 0; i < n; i++) {
+            assertThat((long) decoded.get(i)[0]).isEqualTo(ts[i]);
+            assertThat(Double.doubleToRawLongBits(decoded.get(i)[1])).isEqualTo(Double.doubleToRawLongBits(values[i]));
+            assertThat((byte) decoded.get(i)[2]).isEqualTo(qualities[i]);
+        }
+    }
+
+    @Test
+    void regularSeriesCompressesToAFewBytesPerSample() {
+        int n = 1440 * 7;
+        long[] ts = new long[n];
+        double[] values = new double[n];
+        byte[] qualities = new byte[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = T0 + i * 60_000L;
+            // a meter that changes every few minutes, as most plant points do
+            values[i] = 220.0 + (i / 5 % 20) * 0.5;
+            qualities[i] = 1;
+        }
+
+        byte[] block = GorillaCodec.encode(ts, values, qualities, n);
+
+        assertThat((double) block.length / n).isLessThan(2.0);
+    }
+
+    @Test
+    void segmentFilesAreSearchableByPointAndRange(@TempDir Path dir) throws Exception {
+        ColdSegmentStore store = new ColdSegmentStore(dir.toString(), 24);
+        long window = store.windowStart(T0);
+        ColdSegment segment;
+        try (ColdSegment.Writer writer = store.newWriter(window)) {
+            for (long pointId : new long[] {3, 10, 42}) {
+                long[] ts = new long[100];
+                double[] values = new double[100];
+                byte[] qualities = new byte[100];
+                for (int i = 0; i < 100; i++) {
+                    ts[i] = window + i * 60_000L;
+                    values[i] = pointId * 1000 + i;
+                    qualities[i] = 1;
+                }
+                writer.add(pointId, ts, values, qualities, 100);
+            }
+            segment = writer.finish();
+        }
+        store.install(segment);
+
+        assertThat(segment.blockCount()).isEqualTo(3);
+        assertThat(segment.totalSamples()).isEqualTo(300);
+        assertThat(segment.find(11)).isEqualTo(-1);
+        List<Double> read = new ArrayList<>();
+        segment.read(segment.find(10), window + 10 * 60_000L, window + 13 * 60_000L, (ts, v, q) -> read.add(v));
+        assertThat(read).containsExactly(10_010.0, 10_011.0, 10_012.0);
+
+        ColdSegmentStore reloaded = new ColdSegmentStore(dir.toString(), 24);
+        reloaded.load();
+        assertThat(reloaded.overlapping(window + 1, window + 2)).hasSize(1);
+        double[] latest = new double[1];
+        assertThat(reloaded.readLatest(42, (ts, v, q) -> {
+            latest[0] = v;
+            return true;
+        })).isTrue();
+        assertThat(latest[0]).isEqualTo(42_099.0);
+
+        // rewriting a window replaces the previous generation on disk
+        try (ColdSegment.Writer writer = store.newWriter(window)) {
+            writer.add(3, new long[] {window}, new double[] {1.0}, new byte[] {1}, 1);
+            store.install(writer.finish());
+        }
+        try (var files = Files.list(dir)) {
+            assertThat(files.filter(f -> f.toString().endsWith(".gms")).count()).isEqualTo(1);
+        }
+    }
+}
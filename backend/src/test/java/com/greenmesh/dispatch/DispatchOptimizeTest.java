@@ -0,0 +1,202 @@
+package com.greenmesh.dispatch;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.masterdata.TimeSlotStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class DispatchOptimizeTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private TimeSlotStore timeSlots;
+
+    @Autowired
+    private DispatchInputs inputs;
+
+    @Test
+    void optimize_writesDraftPlanThatShiftsStorageIntoThePeakWindow() throws Exception {
+        Park park = storagePark("Dispatch Test Park");
+        mockMvc.perform(post("/api/dispatch/optimize")
+                        .param("parkId", String.valueOf(park.parkId()))
+                        .param("horizonStart", "2006-02-03T00:00:00Z")
+                        .param("intervals", "8")
+                        .param("intervalMin", "60"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.plans.length()").value(1))
+                .andExpect(jsonPath("$.plans[0].parkId").value(park.parkId()))
+                .andExpect(jsonPath("$.plans[0].assets").value(1))
+                .andExpect(jsonPath("$.plans[0].savings").value(greaterThan(0.0)));
+
+        Map<String, Object> plan = jdbcTemplate.queryForMap(
+                "SELECT PLAN_ID, STATUS, INTERVAL_MIN FROM DISPATCH_PLAN WHERE PARK_ID = ?", park.parkId());
+        assertThat(plan.get("STATUS")).isEqualTo("DRAFT");
+        List<Double> setpoints = jdbcTemplate.queryForList(
+                "SELECT P_SET_KW FROM DISPATCH_PLAN_DETAIL WHERE PLAN_ID = ? AND ASSET_ID = ? ORDER BY TS",
+                Double.class, plan.get("PLAN_ID"), park.assetId());
+        assertThat(setpoints).hasSize(8);
+        assertThat(setpoints.subList(0, 4)).allSatisfy(p -> assertThat(p).isLessThanOrEqualTo(0));
+        assertThat(setpoints.subList(4, 8)).allSatisfy(p -> assertThat(p).isBetween(0.0, 100.0));
+        assertThat(setpoints.get(0)).isNegative();
+        assertThat(setpoints.get(7)).isPositive();
+        Double finalSoc = jdbcTemplate.queryForObject(
+                "SELECT SOC_TARGET FROM DISPATCH_PLAN_DETAIL WHERE PLAN_ID = ? ORDER BY TS DESC FETCH FIRST 1 ROWS ONLY",
+                Double.class, plan.get("PLAN_ID"));
+        assertThat(finalSoc).isGreaterThanOrEqualTo(50.0);
+    }
+
+    @Test
+    void simulate_replaysAPlanWithoutForecastBandsExactly() throws Exception {
+        Park park = storagePark("Dispatch Simulate Park");
+        mockMvc.perform(post("/api/dispatch/optimize")
+                        .param("parkId", String.valueOf(park.parkId()))
+                        .param("horizonStart", "2006-02-03T00:00:00Z")
+                        .param("intervals", "8")
+                        .param("intervalMin", "60"))
+                .andExpect(status().isOk());
+        Map<String, Object> plan = jdbcTemplate.queryForMap(
+                "SELECT PLAN_ID FROM DISPATCH_PLAN WHERE PARK_ID = ?", park.parkId());
+
+        // without forecast bands every scenario replays the plan exactly
+        mockMvc.perform(post("/api/dispatch/plans/{id}/simulate", plan.get("PLAN_ID"))
+                        .param("scenarios", "200"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.storageAssets").value(1))
+                .andExpect(jsonPath("$.riskScore").value(0.0))
+                .andExpect(jsonPath("$.pass").value(true))
+                .andExpect(jsonPath("$.fleetSocPercent.p50.length()").value(8));
+        Map<String, Object> kpi = jdbcTemplate.queryForMap(
+                "SELECT SIMULATED_COST, PASS_FLAG FROM KPI_SIMULATION_RESULT WHERE PLAN_ID = ?", plan.get("PLAN_ID"));
+        assertThat(kpi.get("PASS_FLAG")).isEqualTo("Y");
+        assertThat(((Number) kpi.get("SIMULATED_COST")).doubleValue()).isPositive();
+    }
+
+    @Test
+    void simulate_rejectsPlansWithoutAPositiveIntervalOrTooManyCells() throws Exception {
+        Park park = storagePark("Dispatch Bounds Park");
+        long zeroInterval = plan(park.parkId(), "2006-02-04T00:00:00Z", 0);
+        mockMvc.perform(post("/api/dispatch/plans/{id}/simulate", zeroInterval))
+                .andExpect(status().isBadRequest());
+        // 1-minute steps over ~20 years at the default 2000 scenarios is far beyond the cell limit
+        long huge = plan(park.parkId(), "2026-01-01T00:00:00Z", 1);
+        mockMvc.perform(post("/api/dispatch/plans/{id}/simulate", huge))
+                .andExpect(status().isBadRequest());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM KPI_SIMULATION_RESULT WHERE PLAN_ID IN (?, ?)",
+                Integer.class, zeroInterval, huge)).isZero();
+    }
+
+    @Test
+    void forecasts_planAgainstTheConfiguredGenerationScenarioOnly() {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Dispatch Scenario Park', 'test'))
+                """, Long.class);
+        long assetId = jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME, STATUS)
+                VALUES (?, 'PV', 'dispatch-scenario-pv', 'RUNNING'))
+                """, Long.class, parkId);
+        for (int h = 0; h < 2; h++) {
+            Timestamp hour = Timestamp.from(Instant.parse("2014-05-01T00:00:00Z").plusSeconds(h * 3600L));
+            // a newer issue of another scenario must not replace the base forecast
+            jdbcTemplate.update("""
+                    INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, SCENARIO, P_KW_PRED)
+                    VALUES (?, ?, ?, 'base', 40), (?, ?, ?, 'physical', 400)
+                    """, assetId, ts("2014-04-30T00:00:00Z"), hour, assetId, ts("2014-04-30T06:00:00Z"), hour);
+        }
+        masterData.refresh();
+
+        DispatchInputs.Forecasts forecasts = inputs.forecasts(masterData.snapshot(), List.of(parkId),
+                new DispatchInputs.Grid(Instant.parse("2014-05-01T00:00:00Z").toEpochMilli(), 3_600_000L, 2))
+                .get(parkId);
+        assertThat(forecasts.genP50).containsExactly(40.0, 40.0);
+    }
+
+    private record Park(long parkId, long assetId) {
+    }
+
+    private long plan(long parkId, String horizonEnd, int intervalMin) {
+        return jdbcTemplate.queryForObject("""
+                SELECT PLAN_ID FROM FINAL TABLE (
+                INSERT INTO DISPATCH_PLAN (PARK_ID, HORIZON_START, HORIZON_END, INTERVAL_MIN, STATUS)
+                VALUES (?, ?, ?, ?, 'DRAFT'))
+                """, Long.class, parkId, ts("2006-02-03T00:00:00Z"), ts(horizonEnd), intervalMin);
+    }
+
+    /**
+     * A park with one 400 kWh BESS at 50 % SOC, a valley/peak tariff and a flat 150 kW load on 2006-02-03 00:00-08:00.
+     */
+    private Park storagePark(String name) {
+        long parkId = jdbcTemplate.queryForObject(
+                "SELECT PARK_ID FROM FINAL TABLE (INSERT INTO DIM_PARK (NAME, REGION) VALUES (?, 'test'))",
+                Long.class, name);
+        long entId = jdbcTemplate.queryForObject(
+                "SELECT ENT_ID FROM FINAL TABLE (INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME) VALUES (?, ?))",
+                Long.class, parkId, name);
+        long assetId = jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME, STATUS)
+                VALUES (?, 'BESS', ?, 'RUNNING'))
+                """, Long.class, parkId, name);
+        jdbcTemplate.update("""
+                INSERT INTO STORAGE_ASSET_EXT (ASSET_ID, ENERGY_KWH, POWER_KW, SOC_MIN, SOC_MAX, CHARGE_EFF, DISCHARGE_EFF,
+                                               CYCLE_DEGRADE_COST_PER_KWH)
+                VALUES (?, 400, 100, 0.1, 0.9, 0.95, 0.95, 0.02)
+                """, assetId);
+        jdbcTemplate.update("INSERT INTO STORAGE_STATE (ASSET_ID, TS, SOC_PERCENT) VALUES (?, ?, 50)",
+                assetId, ts("2006-02-02T23:00:00Z"));
+        long zoneId = jdbcTemplate.queryForObject("""
+                SELECT ZONE_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PRICE_ZONE (PARK_ID, GRID_COMPANY)
+                VALUES (?, 'dispatch-test'))
+                """, Long.class, parkId);
+        jdbcTemplate.update("""
+                INSERT INTO PRICE_TIMESLOT (ZONE_ID, START_TS, END_TS, PRICE_PER_KWH, PRICE_TYPE)
+                VALUES (?, ?, ?, 0.30, 'VALLEY'), (?, ?, ?, 1.20, 'PEAK')
+                """, zoneId, ts("2006-02-03T00:00:00Z"), ts("2006-02-03T04:00:00Z"),
+                zoneId, ts("2006-02-03T04:00:00Z"), ts("2006-02-03T08:00:00Z"));
+        for (int h = 0; h < 8; h++) {
+            Timestamp hour = Timestamp.from(Instant.parse("2006-02-03T00:00:00Z").plusSeconds(h * 3600L));
+            // an older issue with a different value must lose to the latest one
+            jdbcTemplate.update("""
+                    INSERT INTO LOAD_FORECAST (ENT_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED)
+                    VALUES (?, ?, ?, 5), (?, ?, ?, 150)
+                    """, entId, ts("2006-02-01T00:00:00Z"), hour, entId, ts("2006-02-02T00:00:00Z"), hour);
+        }
+        masterData.refresh();
+        timeSlots.refresh();
+        return new Park(parkId, assetId);
+    }
+
+    private static Timestamp ts(String instant) {
+        return Timestamp.from(Instant.parse(instant));
+    }
+}
@@ -0,0 +1,67 @@
+package com.greenmesh.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Solver time alone (no JDBC) for a day-ahead run: 300 storage assets, 96 quarter-hour intervals, default SOC grid,
+ * spread over the available cores as {@link DispatchOptimizer} does. Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class DispatchSolverBenchmark {
+
+    private static final int ASSETS = 300;
+    private static final int INTERVALS = 96;
+
+    @Test
+    void solvesThreeHundredAssetsWithinOneSecond() throws Exception {
+        SplittableRandom random = new SplittableRandom(42);
+        double[] price = new double[INTERVALS];
+        for (int t = 0; t < INTERVALS; t++) {
+            int hour = t / 4;
+            price[t] = hour < 8 ? 0.32 : hour >= 18 && hour < 22 ? 1.25 : 0.75;
+        }
+        double[] exportPrice = new double[INTERVALS];
+        List<Callable<StorageDispatchSolver.Schedule>> tasks = new ArrayList<>();
+        for (int a = 0; a < ASSETS; a++) {
+            double energy = 200 + random.nextInt(4800);
+            StorageUnit unit = new StorageUnit(a, a % 10, energy, energy / (1 + random.nextInt(4)), 0.1, 0.95,
+                    0.95, 0.95, 0.02, 0.2 + random.nextDouble() * 0.6);
+            double[] site = new double[INTERVALS];
+            for (int t = 0; t < INTERVALS; t++) {
+                site[t] = energy * (0.2 + 0.3 * Math.sin(t * Math.PI / INTERVALS)) + random.nextDouble() * 20;
+            }
+            tasks.add(() -> new StorageDispatchSolver(101).solve(unit, price, exportPrice, site, 0.25));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            // warm-up
+            for (Future<StorageDispatchSolver.Schedule> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+            long started = System.nanoTime();
+            double savings = 0;
+            for (Future<StorageDispatchSolver.Schedule> f : pool.invokeAll(tasks)) {
+                StorageDispatchSolver.Schedule s = f.get();
+                savings += s.baselineCost() - s.cost();
+            }
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            System.out.printf("%d assets x %d intervals solved in %d ms (savings %.0f)%n",
+                    ASSETS, INTERVALS, elapsedMs, savings);
+            assertThat(savings).isPositive();
+            assertThat(elapsedMs).isLessThan(1000);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
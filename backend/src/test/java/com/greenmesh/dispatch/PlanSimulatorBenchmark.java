@@ -0,0 +1,60 @@
+package com.greenmesh.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * One park, 10k scenarios x 96 quarter-hours, 20 storage units following a valley-charge/peak-discharge plan.
+ * Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class PlanSimulatorBenchmark {
+
+    private static final int SCENARIOS = 10_000;
+    private static final int STEPS = 96;
+    private static final int UNITS = 20;
+
+    @Test
+    void simulatesTenThousandScenariosWithinSeconds() {
+        DispatchInputs.Forecasts forecasts = PlanSimulatorTest.forecasts(STEPS, 5_000, 1_200, 2_000, 1_500);
+        double[] price = new double[STEPS];
+        for (int t = 0; t < STEPS; t++) {
+            price[t] = t < 32 ? 0.32 : t >= 72 && t < 88 ? 1.25 : 0.75;
+        }
+        double[] carbon = new double[STEPS];
+        Arrays.fill(carbon, 0.58);
+        List<StorageUnit> units = new ArrayList<>();
+        double[][] setpoints = new double[UNITS][STEPS];
+        for (int u = 0; u < UNITS; u++) {
+            units.add(new StorageUnit(u, 1, 1_000, 250, 0.1, 0.95, 0.95, 0.95, 0.02, 0.3));
+            for (int t = 0; t < STEPS; t++) {
+                setpoints[u][t] = t < 32 ? -200 : t >= 72 && t < 88 ? 250 : 0;
+            }
+        }
+        PlanSimulator.Inputs in = PlanSimulator.Inputs.of(0.25, price, new double[STEPS], carbon, forecasts,
+                units, setpoints, false);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            PlanSimulator simulator = new PlanSimulator(pool);
+            simulator.run(in, 1_000, 1, 0.8);
+            long started = System.nanoTime();
+            PlanSimulator.Outcome outcome = simulator.run(in, SCENARIOS, 1, 0.8);
+            PlanSimulator.Distribution cost = outcome.costDistribution();
+            double[][] band = outcome.socBand();
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            System.out.printf("%d scenarios x %d steps x %d units in %d ms (cost p50 %.0f, p95 %.0f, end SOC p50 %.1f%%)%n",
+                    SCENARIOS, STEPS, UNITS, elapsedMs, cost.p50(), cost.p95(), band[1][STEPS - 1]);
+            assertThat(elapsedMs).isLessThan(3_000);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.greenmesh.dispatch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PlanSimulatorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    static DispatchInputs.Forecasts forecasts(int steps, double load, double loadSpread, double gen, double genSpread) {
+        DispatchInputs.Forecasts f = new DispatchInputs.Forecasts(steps);
+        Arrays.fill(f.loadP10, load - loadSpread);
+        Arrays.fill(f.loadP50, load);
+        Arrays.fill(f.loadP90, load + loadSpread);
+        Arrays.fill(f.genP10, Math.max(0, gen - genSpread));
+        Arrays.fill(f.genP50, gen);
+        Arrays.fill(f.genP90, gen + genSpread);
+        return f;
+    }
+
+    static PlanSimulator.Inputs inputs(DispatchInputs.Forecasts forecasts, double[] setpoints) {
+        int steps = setpoints.length;
+        double[] price = new double[steps];
+        for (int t = 0; t < steps; t++) {
+            price[t] = t < steps / 2 ? 0.3 : 1.2;
+        }
+        double[] carbon = new double[steps];
+        Arrays.fill(carbon, 0.5);
+        StorageUnit unit = new StorageUnit(1, 1, 100, 50, 0.1, 0.9, 1.0, 1.0, 0, 0.5);
+        return PlanSimulator.Inputs.of(1.0, price, new double[steps], carbon, forecasts, List.of(unit),
+                new double[][]{setpoints}, false);
+    }
+
+    @Test
+    void withoutForecastSpreadEveryScenarioMatchesTheDeterministicReplay() {
+        double[] plan = {-20, -20, 40, 40};
+        PlanSimulator.Outcome outcome = new PlanSimulator(pool)
+                .run(inputs(forecasts(4, 100, 0, 0, 0), plan), 500, 7, 0.8);
+
+        // import: 120, 120, 60, 60 kWh
+        double cost = 120 * 0.3 * 2 + 60 * 1.2 * 2;
+        assertThat(outcome.costDistribution().p5()).isCloseTo(cost, within(1e-9));
+        assertThat(outcome.costDistribution().p95()).isCloseTo(cost, within(1e-9));
+        assertThat(outcome.carbonDistribution().mean()).isCloseTo(360 * 0.5, within(1e-9));
+        assertThat(outcome.peakDistribution().p50()).isCloseTo(120, within(1e-9));
+        assertThat(outcome.deviationShare(1e-6)).isZero();
+        double[][] band = outcome.socBand();
+        assertThat(band[1]).containsExactly(new double[]{70, 90, 50, 10}, within(1e-4));
+    }
+
+    @Test
+    void setpointsBeyondTheSocBandOrIntoExportCountAsDeviations() {
+        // the second charge would exceed SOC_MAX; discharging 50 kW against 20 kW load would export
+        double[] plan = {-40, -40, 50, 0};
+        PlanSimulator.Outcome outcome = new PlanSimulator(pool)
+                .run(inputs(forecasts(4, 20, 0, 0, 0), plan), 100, 7, 0.8);
+
+        assertThat(outcome.deviationShare(1)).isEqualTo(1.0);
+        double[][] band = outcome.socBand();
+        assertThat(band[1]).containsExactly(new double[]{90, 90, 70, 70}, within(1e-4));
+        assertThat(outcome.costDistribution().mean()).isCloseTo(60 * 0.3 + 20 * 0.3 + 0 + 20 * 1.2, within(1e-9));
+    }
+
+    @Test
+    void sameSeedGivesTheSameScenariosRegardlessOfWorkers() {
+        double[] plan = new double[96];
+        for (int t = 0; t < 96; t++) {
+            plan[t] = t < 48 ? -10 : 10;
+        }
+        PlanSimulator.Inputs in = inputs(forecasts(96, 100, 30, 40, 25), plan);
+        PlanSimulator.Outcome a = new PlanSimulator(pool).run(in, 1000, 42, 0.8);
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            PlanSimulator.Outcome b = new PlanSimulator(single).run(in, 1000, 42, 0.8);
+            assertThat(b.cost()).containsExactly(a.cost());
+            assertThat(b.fleetSocPercent()).containsExactly(a.fleetSocPercent());
+        } finally {
+            single.shutdownNow();
+        }
+        PlanSimulator.Distribution cost = a.costDistribution();
+        assertThat(cost.p5()).isLessThan(cost.p50());
+        assertThat(cost.p50()).isLessThan(cost.p95());
+        assertThat(cost.cvar95()).isGreaterThanOrEqualTo(cost.p95());
+    }
+}
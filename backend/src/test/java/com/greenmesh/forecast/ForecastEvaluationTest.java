@@ -0,0 +1,161 @@
+package com.greenmesh.forecast;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+
+import com.greenmesh.jdbc.WatermarkStore;
+import com.greenmesh.masterdata.MasterDataStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class ForecastEvaluationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private WatermarkStore watermarks;
+
+    @Autowired
+    private ForecastEvaluator evaluator;
+
+    @Test
+    void scoresForecastsPerHorizonScenarioAndModelAndAddsLaterActualsToTheSameRows() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Forecast Eval Park', 'test'))
+                """, Long.class);
+        long assetId = jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME)
+                VALUES (?, 'PV', 'eval-test-pv'))
+                """, Long.class, parkId);
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ASSET_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', 'MW', 'N'))
+                """, Long.class, parkId, assetId);
+        // 0.1 MW every 15 minutes until 04:00
+        for (int q = 0; q <= 16; q++) {
+            jdbcTemplate.update("""
+                    INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL)
+                    VALUES (?, ?, 0.1, 'GOOD', 'raw')
+                    """, pointId, Timestamp.from(Instant.parse("2008-01-01T00:00:00Z").plusSeconds(q * 900L)));
+        }
+        // m1 issued at 00:00 runs 10 kW high; m2 issued at 02:00 runs 20 kW low
+        for (String at : new String[]{"01:00", "02:00", "03:00", "04:00", "06:00"}) {
+            insertForecast(assetId, "2008-01-01T00:00:00Z", "2008-01-01T" + at + ":00Z", 110, "m1");
+        }
+        for (String at : new String[]{"03:00", "04:00"}) {
+            insertForecast(assetId, "2008-01-01T02:00:00Z", "2008-01-01T" + at + ":00Z", 80, "m2");
+        }
+        // the physical scenario of the m1 issue is exact and must not be pooled with the base one
+        insertForecast(assetId, "2008-01-01T00:00:00Z", "2008-01-01T03:00:00Z", 100, "m1", "physical");
+        masterData.refresh();
+
+        watermarks.save(ForecastEvaluator.WATERMARK, null, Instant.parse("2008-01-01T01:30:00Z"));
+        ForecastEvaluator.Result rebuilt = evaluator.reevaluate(Instant.parse("2008-01-01T00:00:00Z"),
+                Instant.parse("2008-01-02T00:00:00Z"), assetId);
+        assertThat(rebuilt.forecastsScored()).isEqualTo(1);
+        assertThat(row(assetId, "2008-01-01T00:00:00Z", 60, "m1").get("SAMPLE_COUNT")).isEqualTo(1L);
+
+        ForecastEvaluator.Result incremental = evaluator.evaluateNew();
+        assertThat(incremental.forecastsScored()).isGreaterThanOrEqualTo(5);
+        assertThat(incremental.forecastsWithoutActual()).isGreaterThanOrEqualTo(1);
+
+        // 01:00 from the rebuild and 02:00 from the incremental run share the 60-minute bucket
+        Map<String, Object> m1Short = row(assetId, "2008-01-01T00:00:00Z", 60, "m1");
+        assertThat(m1Short.get("SAMPLE_COUNT")).isEqualTo(2L);
+        assertThat(((Number) m1Short.get("MAE")).doubleValue()).isCloseTo(10, within(1e-6));
+        assertThat(((Number) m1Short.get("MAPE")).doubleValue()).isCloseTo(10, within(1e-6));
+        assertThat(((Number) m1Short.get("BIAS")).doubleValue()).isCloseTo(10, within(1e-6));
+        assertThat(row(assetId, "2008-01-01T00:00:00Z", 180, "m1").get("SAMPLE_COUNT")).isEqualTo(2L);
+        Map<String, Object> physical = row(assetId, "2008-01-01T00:00:00Z", 180, "m1", "physical");
+        assertThat(physical.get("SAMPLE_COUNT")).isEqualTo(1L);
+        assertThat(((Number) physical.get("MAE")).doubleValue()).isCloseTo(0, within(1e-6));
+        Map<String, Object> m2 = row(assetId, "2008-01-01T02:00:00Z", 60, "m2");
+        assertThat(m2.get("SAMPLE_COUNT")).isEqualTo(2L);
+        assertThat(((Number) m2.get("BIAS")).doubleValue()).isCloseTo(-20, within(1e-6));
+
+        // a run that committed this asset but failed before moving the shared watermark neither loses nor repeats
+        // it, in a rebuild or in the retried run
+        watermarks.save(ForecastEvaluator.WATERMARK, null, Instant.parse("2008-01-01T01:30:00Z"));
+        evaluator.reevaluate(Instant.parse("2008-01-01T00:00:00Z"), Instant.parse("2008-01-02T00:00:00Z"), assetId);
+        assertThat(row(assetId, "2008-01-01T00:00:00Z", 60, "m1").get("SAMPLE_COUNT")).isEqualTo(2L);
+        assertThat(row(assetId, "2008-01-01T02:00:00Z", 60, "m2").get("SAMPLE_COUNT")).isEqualTo(2L);
+        evaluator.evaluateNew();
+        assertThat(row(assetId, "2008-01-01T00:00:00Z", 180, "m1").get("SAMPLE_COUNT")).isEqualTo(2L);
+        assertThat(row(assetId, "2008-01-01T02:00:00Z", 60, "m2").get("SAMPLE_COUNT")).isEqualTo(2L);
+
+        // a rebuild replaces rather than adds
+        evaluator.reevaluate(Instant.parse("2008-01-01T00:00:00Z"), Instant.parse("2008-01-02T00:00:00Z"), assetId);
+        assertThat(row(assetId, "2008-01-01T00:00:00Z", 60, "m1").get("SAMPLE_COUNT")).isEqualTo(2L);
+
+        mockMvc.perform(get("/api/forecast/eval")
+                        .param("assetId", String.valueOf(assetId))
+                        .param("issueFrom", "2008-01-01T00:00:00Z")
+                        .param("issueTo", "2008-01-02T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[2].modelVersion").value("m2"))
+                .andExpect(jsonPath("$[2].mae").value(20.0))
+                .andExpect(jsonPath("$[2].mape").value(20.0))
+                .andExpect(jsonPath("$[3].scenario").value("physical"))
+                .andExpect(jsonPath("$[3].mae").value(0.0));
+        mockMvc.perform(get("/api/forecast/eval")
+                        .param("assetId", String.valueOf(assetId))
+                        .param("scenario", "base")
+                        .param("issueFrom", "2008-01-01T00:00:00Z")
+                        .param("issueTo", "2008-01-02T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+    }
+
+    private void insertForecast(long assetId, String issue, String at, double kw, String model) {
+        insertForecast(assetId, issue, at, kw, model, "base");
+    }
+
+    private void insertForecast(long assetId, String issue, String at, double kw, String model, String scenario) {
+        jdbcTemplate.update("""
+                INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, MODEL_VERSION, SCENARIO)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """, assetId, ts(issue), ts(at), kw, model, scenario);
+    }
+
+    private Map<String, Object> row(long assetId, String issue, int horizonMin, String model) {
+        return row(assetId, issue, horizonMin, model, "base");
+    }
+
+    private Map<String, Object> row(long assetId, String issue, int horizonMin, String model, String scenario) {
+        return jdbcTemplate.queryForMap("""
+                SELECT SAMPLE_COUNT, MAE, MAPE, BIAS FROM LOG_FORECAST_EVAL
+                WHERE ASSET_ID = ? AND FORECAST_ISSUE_TS = ? AND HORIZON_MIN = ? AND SCENARIO = ? AND MODEL_VERSION = ?
+                """, assetId, ts(issue), horizonMin, scenario, model);
+    }
+
+    private static Timestamp ts(String iso) {
+        return Timestamp.from(Instant.parse(iso));
+    }
+}
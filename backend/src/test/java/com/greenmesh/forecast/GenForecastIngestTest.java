@@ -0,0 +1,98 @@
+package com.greenmesh.forecast;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class GenForecastIngestTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void resentBatchesWriteNothingAndChangedValuesAreUpdatedInPlace() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Forecast Ingest Park', 'test'))
+                """, Long.class);
+        long assetId = jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME)
+                VALUES (?, 'PV', 'ingest-test-pv'))
+                """, Long.class, parkId);
+        String batch = """
+                [{"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T01:00:00Z", "pKwPred": 10.5, "p10": 9, "p90": 12},
+                 {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T02:00:00Z", "pKwPred": 11.25, "modelVersion": "m1"},
+                 {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T03:00:00Z", "pKwPred": 12, "scenario": "high"},
+                 {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T03:00:00Z", "pKwPred": 13, "scenario": "high"}]
+                """.formatted(assetId);
+
+        mockMvc.perform(post("/api/forecast/gen/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records").value(4))
+                .andExpect(jsonPath("$.inserted").value(3))
+                .andExpect(jsonPath("$.rejected").value(0));
+        mockMvc.perform(post("/api/forecast/gen/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(0))
+                .andExpect(jsonPath("$.updated").value(0))
+                .andExpect(jsonPath("$.unchanged").value(3));
+        assertThat(rows(assetId)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT P_KW_PRED FROM GEN_FORECAST WHERE ASSET_ID = ? AND SCENARIO = 'high'
+                """, Double.class, assetId)).isEqualTo(13.0);
+
+        String ndjson = """
+                {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T01:00:00Z", "pKwPred": 10.5, "p10": 9, "p90": 12.5}
+                {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "not-a-time", "pKwPred": 1}
+                {"assetId": %1$d, "forecastIssueTs": "2010-01-01T00:00:00Z", "ts": "2010-01-01T04:00:00Z", "pKwPred": 14}
+                """.formatted(assetId);
+        mockMvc.perform(post("/api/forecast/gen/batch").contentType("application/x-ndjson").content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records").value(3))
+                .andExpect(jsonPath("$.inserted").value(1))
+                .andExpect(jsonPath("$.updated").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.chunks[0].error").value(startsWith("record 2:")));
+        assertThat(rows(assetId)).isEqualTo(4);
+
+        // a newer base issue from 02:00 onwards replaces the older one there
+        mockMvc.perform(post("/api/forecast/gen/batch").param("supersede", "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"assetId": %1$d, "forecastIssueTs": "2010-01-01T01:00:00Z", "ts": "2010-01-01T02:00:00Z", "pKwPred": 20},
+                                 {"assetId": %1$d, "forecastIssueTs": "2010-01-01T01:00:00Z", "ts": "2010-01-01T05:00:00Z", "pKwPred": 21}]
+                                """.formatted(assetId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(2))
+                .andExpect(jsonPath("$.superseded").value(2));
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT TS FROM GEN_FORECAST
+                WHERE ASSET_ID = ? AND SCENARIO = 'base' AND FORECAST_ISSUE_TS = TIMESTAMP '2010-01-01 00:00:00'
+                """, assetId)).hasSize(1);
+        assertThat(rows(assetId)).isEqualTo(4);
+    }
+
+    private int rows(long assetId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM GEN_FORECAST WHERE ASSET_ID = ?", Integer.class,
+                assetId);
+    }
+}
@@ -0,0 +1,186 @@
+package com.greenmesh.forecast;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class GenForecastResolutionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Test
+    void resolvesOverlappingIssuesLatestBlendedAndAsOf() throws Exception {
+        long parkId = park("Forecast Resolve Park");
+        long pv = asset(parkId, "resolve-test-pv");
+        long wind = asset(parkId, "resolve-test-wind");
+        // A (00:00) covers 01-04, B (02:00) covers 03-06, C (05:00) only 06
+        for (int h = 1; h <= 4; h++) {
+            insertForecast(pv, "2009-01-01T00:00:00Z", "2009-01-01T0" + h + ":00:00Z", 10);
+        }
+        for (int h = 3; h <= 6; h++) {
+            insertForecast(pv, "2009-01-01T02:00:00Z", "2009-01-01T0" + h + ":00:00Z", 20);
+        }
+        insertForecast(pv, "2009-01-01T05:00:00Z", "2009-01-01T06:00:00Z", 30);
+        for (int h = 1; h <= 6; h++) {
+            insertForecast(wind, "2009-01-01T00:00:00Z", "2009-01-01T0" + h + ":00:00Z", 5);
+        }
+        masterData.refresh();
+
+        mockMvc.perform(gen(pv).param("mode", "all"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(9));
+        mockMvc.perform(gen(pv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].forecastIssueTs").value("2009-01-01T05:00:00Z"))
+                .andExpect(jsonPath("$[0].pKwPred").value(30.0));
+        mockMvc.perform(gen(pv).param("mode", "blend"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].pKwPred", contains(10.0, 10.0, 20.0, 20.0, 20.0, 30.0)))
+                .andExpect(jsonPath("$[0].p10", nullValue()));
+        mockMvc.perform(gen(pv).param("asOf", "2009-01-01T03:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].pKwPred", contains(20.0, 20.0, 20.0, 20.0)));
+
+        mockMvc.perform(get("/api/forecast/gen/columns")
+                        .param("parkId", String.valueOf(parkId))
+                        .param("start", "2009-01-01T01:00:00Z")
+                        .param("end", "2009-01-01T06:00:00Z")
+                        .param("mode", "blend"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mode").value("blend"))
+                .andExpect(jsonPath("$.timestamps.length()").value(6))
+                .andExpect(jsonPath("$.series.length()").value(2))
+                .andExpect(jsonPath("$.series[0].assetId").value(pv))
+                .andExpect(jsonPath("$.series[0].timestamps").doesNotExist())
+                .andExpect(jsonPath("$.series[0].p50[5]").value(30.0))
+                .andExpect(jsonPath("$.series[1].p50[5]").value(5.0));
+        mockMvc.perform(get("/api/forecast/gen/columns")
+                        .param("assetIds", pv + "," + wind)
+                        .param("start", "2009-01-01T01:00:00Z")
+                        .param("end", "2009-01-01T06:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamps").doesNotExist())
+                .andExpect(jsonPath("$.series[0].p50.length()").value(1))
+                .andExpect(jsonPath("$.series[1].p50.length()").value(6));
+    }
+
+    @Test
+    void cachedCurveIsDroppedWhenBatchWritesANewerIssue() throws Exception {
+        long assetId = asset(park("Forecast Cache Park"), "cache-test-pv");
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        for (int h = 0; h < 3; h++) {
+            insertForecast(assetId, hour.minus(1, ChronoUnit.HOURS).toString(),
+                    hour.plus(h, ChronoUnit.HOURS).toString(), 50);
+        }
+        String start = hour.toString();
+        String end = hour.plus(2, ChronoUnit.HOURS).toString();
+
+        mockMvc.perform(get("/api/forecast/gen").param("assetId", String.valueOf(assetId))
+                        .param("start", start).param("end", end))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].pKwPred", contains(50.0, 50.0, 50.0)));
+        // written behind the cache's back: still served from the cached curve
+        insertForecast(assetId, hour.toString(), hour.plus(1, ChronoUnit.HOURS).toString(), 70);
+        mockMvc.perform(get("/api/forecast/gen").param("assetId", String.valueOf(assetId))
+                        .param("start", start).param("end", end))
+                .andExpect(jsonPath("$[*].pKwPred", contains(50.0, 50.0, 50.0)));
+
+        mockMvc.perform(post("/api/forecast/gen/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"assetId": %d, "forecastIssueTs": "%s", "ts": "%s", "pKwPred": 90}]
+                                """.formatted(assetId, hour.plus(1, ChronoUnit.MINUTES),
+                                hour.plus(2, ChronoUnit.HOURS))))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/forecast/gen").param("assetId", String.valueOf(assetId))
+                        .param("start", start).param("end", end).param("mode", "blend"))
+                .andExpect(jsonPath("$[*].pKwPred", contains(50.0, 70.0, 90.0)));
+    }
+
+    @Test
+    void scenariosAreResolvedSeparatelyAndBaseIsTheDefault() throws Exception {
+        long assetId = asset(park("Forecast Scenario Park"), "scenario-test-pv");
+        for (int h = 1; h <= 6; h++) {
+            insertForecast(assetId, "2009-01-01T00:00:00Z", "2009-01-01T0" + h + ":00:00Z", 10);
+        }
+        // a newer stress run must neither win the blend nor hide the base issue
+        jdbcTemplate.update("""
+                INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, SCENARIO)
+                VALUES (?, ?, ?, 99, 'stress')
+                """, assetId, Timestamp.from(Instant.parse("2009-01-01T05:00:00Z")),
+                Timestamp.from(Instant.parse("2009-01-01T06:00:00Z")));
+
+        mockMvc.perform(gen(assetId).param("mode", "blend"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].pKwPred", contains(10.0, 10.0, 10.0, 10.0, 10.0, 10.0)))
+                .andExpect(jsonPath("$[0].scenario").value("base"));
+        mockMvc.perform(gen(assetId).param("scenario", "stress"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].pKwPred", contains(99.0)));
+
+        mockMvc.perform(get("/api/forecast/gen/columns")
+                        .param("assetIds", String.valueOf(assetId))
+                        .param("start", "2009-01-01T01:00:00Z")
+                        .param("end", "2009-01-01T06:00:00Z")
+                        .param("mode", "all"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("mode must be latest or blend"));
+    }
+
+    private MockHttpServletRequestBuilder gen(long assetId) {
+        return get("/api/forecast/gen")
+                .param("assetId", String.valueOf(assetId))
+                .param("start", "2009-01-01T01:00:00Z")
+                .param("end", "2009-01-01T06:00:00Z");
+    }
+
+    private long park(String name) {
+        return jdbcTemplate.queryForObject(
+                "SELECT PARK_ID FROM FINAL TABLE (INSERT INTO DIM_PARK (NAME, REGION) VALUES (?, 'test'))",
+                Long.class, name);
+    }
+
+    private long asset(long parkId, String name) {
+        return jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME)
+                VALUES (?, 'PV', ?))
+                """, Long.class, parkId, name);
+    }
+
+    private void insertForecast(long assetId, String issue, String at, double kw) {
+        jdbcTemplate.update("""
+                INSERT INTO GEN_FORECAST (ASSET_ID, FORECAST_ISSUE_TS, TS, P_KW_PRED, MODEL_VERSION)
+                VALUES (?, ?, ?, ?, 'm1')
+                """, assetId, Timestamp.from(Instant.parse(issue)), Timestamp.from(Instant.parse(at)), kw);
+    }
+}
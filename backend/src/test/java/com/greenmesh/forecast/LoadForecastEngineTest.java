@@ -0,0 +1,201 @@
+package com.greenmesh.forecast;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.RollupService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class LoadForecastEngineTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2012, 7, 2);
+    private static final LocalDate ISSUE_DAY = LocalDate.of(2012, 7, 30);
+    private static final LocalDate HOLIDAY = LocalDate.of(2012, 7, 31);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private RollupService rollups;
+
+    @Test
+    void forecastsFollowDayTypeAndRefreshIncrementally() throws Exception {
+        ZoneId zone = rollups.zone();
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Load Forecast Park', 'test'))
+                """, Long.class);
+        long entId = jdbcTemplate.queryForObject("""
+                SELECT ENT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME)
+                VALUES (?, 'load-forecast-ent'))
+                """, Long.class, parkId);
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId, entId);
+        jdbcTemplate.update("INSERT INTO DIM_CALENDAR (CAL_DATE, DAY_OF_WEEK, IS_HOLIDAY, IS_WORKDAY) VALUES (?, 2, 'Y', 'N')",
+                Date.valueOf(HOLIDAY));
+        masterData.refresh();
+        // four weeks: weekdays 100 kW with 150 kW during 08-18, weekends 40 kW
+        List<Object[]> rows = new ArrayList<>();
+        for (LocalDate day = FIRST_DAY; day.isBefore(ISSUE_DAY); day = day.plusDays(1)) {
+            for (int h = 0; h < 24; h++) {
+                rows.add(bucket(pointId, day.atStartOfDay(zone).plusHours(h), pattern(day, h)));
+            }
+        }
+        insert(rows);
+
+        Instant asOf = ISSUE_DAY.atStartOfDay(zone).plusMinutes(5).toInstant();
+        mockMvc.perform(post("/api/forecast/load/run").param("entId", Long.toString(entId))
+                        .param("asOf", asOf.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.forecast").value(1))
+                .andExpect(jsonPath("$.points").value(48))
+                .andExpect(jsonPath("$.bucketsRead").value(28 * 24))
+                .andExpect(jsonPath("$.details[0].model").value(LoadModels.SIMILAR_DAY));
+
+        Instant issue = ISSUE_DAY.atStartOfDay(zone).toInstant();
+        assertThat(predicted(entId, ISSUE_DAY.atStartOfDay(zone).plusHours(12))).isCloseTo(150, within(1e-6));
+        assertThat(predicted(entId, ISSUE_DAY.atStartOfDay(zone).plusHours(3))).isCloseTo(100, within(1e-6));
+        // the calendar holiday falls on a Tuesday and is forecast like a weekend
+        assertThat(predicted(entId, HOLIDAY.atStartOfDay(zone).plusHours(12))).isCloseTo(40, within(1e-6));
+
+        // one new hour arrives: the next issue only reads it and the last bucket of the previous read
+        insert(List.<Object[]>of(bucket(pointId, ISSUE_DAY.atStartOfDay(zone), pattern(ISSUE_DAY, 0))));
+        Instant nextAsOf = asOf.plusSeconds(3600);
+        for (int run = 0; run < 2; run++) {
+            mockMvc.perform(post("/api/forecast/load/run").param("entId", Long.toString(entId))
+                            .param("asOf", nextAsOf.toString()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.points").value(48))
+                    .andExpect(jsonPath("$.bucketsRead").value(run == 0 ? 2 : 1));
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LOAD_FORECAST WHERE ENT_ID = ?", Integer.class,
+                entId)).isEqualTo(96);
+
+        Instant nextIssue = issue.plusSeconds(3600);
+        mockMvc.perform(get("/api/forecast/load").param("entId", Long.toString(entId))
+                        .param("start", issue.toString())
+                        .param("end", issue.plusSeconds(48 * 3600).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(49))
+                .andExpect(jsonPath("$[0].forecastIssueTs").value(issue.toString()))
+                .andExpect(jsonPath("$[1].forecastIssueTs").value(nextIssue.toString()));
+        mockMvc.perform(get("/api/forecast/load").param("entId", Long.toString(entId))
+                        .param("start", issue.toString())
+                        .param("end", issue.plusSeconds(48 * 3600).toString())
+                        .param("issueTs", issue.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(48));
+    }
+
+    @Test
+    void oneFailingEnterpriseIsSkippedAndTheOthersAreForecast() throws Exception {
+        ZoneId zone = rollups.zone();
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Load Failure Park', 'test'))
+                """, Long.class);
+        long[] ents = new long[2];
+        long[] points = new long[2];
+        for (int i = 0; i < 2; i++) {
+            ents[i] = jdbcTemplate.queryForObject(
+                    "SELECT ENT_ID FROM FINAL TABLE (INSERT INTO DIM_ENTERPRISE (PARK_ID, NAME) VALUES (?, ?))",
+                    Long.class, parkId, "load-failure-ent-" + i);
+            points[i] = jdbcTemplate.queryForObject("""
+                    SELECT POINT_ID FROM FINAL TABLE (
+                    INSERT INTO DIM_METER_POINT (PARK_ID, ENT_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                    VALUES (?, ?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                    """, Long.class, parkId, ents[i]);
+        }
+        masterData.refresh();
+        List<Object[]> rows = new ArrayList<>();
+        for (LocalDate day = FIRST_DAY; day.isBefore(ISSUE_DAY); day = day.plusDays(1)) {
+            for (int h = 0; h < 24; h++) {
+                for (long pointId : points) {
+                    rows.add(bucket(pointId, day.atStartOfDay(zone).plusHours(h), pattern(day, h)));
+                }
+            }
+        }
+        insert(rows);
+        // the second enterprise disappears behind the snapshot's back, so writing its forecast fails
+        jdbcTemplate.update("UPDATE DIM_METER_POINT SET ENT_ID = NULL WHERE POINT_ID = ?", points[1]);
+        jdbcTemplate.update("DELETE FROM DIM_ENTERPRISE WHERE ENT_ID = ?", ents[1]);
+
+        mockMvc.perform(post("/api/forecast/load/run").param("parkId", Long.toString(parkId))
+                        .param("asOf", ISSUE_DAY.atStartOfDay(zone).plusMinutes(5).toInstant().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enterprises").value(2))
+                .andExpect(jsonPath("$.forecast").value(1))
+                .andExpect(jsonPath("$.details[0].entId").value(ents[0]))
+                .andExpect(jsonPath("$.details[0].points").value(48))
+                .andExpect(jsonPath("$.details[1].entId").value(ents[1]))
+                .andExpect(jsonPath("$.details[1].model").doesNotExist())
+                .andExpect(jsonPath("$.details[1].skipped").value(startsWith("failed: ")));
+        masterData.refresh();
+    }
+
+    private static double pattern(LocalDate day, int hour) {
+        if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return 40;
+        }
+        return hour >= 8 && hour < 18 ? 150 : 100;
+    }
+
+    // the rollup of an hour is written once the hour is over
+    private static Object[] bucket(long pointId, ZonedDateTime start, double kw) {
+        Timestamp bucket = Timestamp.from(start.toInstant());
+        Timestamp updated = Timestamp.from(start.plusHours(1).toInstant());
+        return new Object[]{pointId, bucket, kw, kw, kw, kw, kw, kw, updated};
+    }
+
+    private void insert(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, MIN_V, MAX_V, AVG_V, SUM_V, CNT, FIRST_V, LAST_V,
+                                       UPDATED_AT)
+                VALUES (?, '1h', ?, ?, ?, ?, ?, 1, ?, ?, ?)
+                """, rows);
+    }
+
+    private double predicted(long entId, ZonedDateTime ts) {
+        return jdbcTemplate.queryForObject("""
+                SELECT P_KW_PRED FROM LOAD_FORECAST WHERE ENT_ID = ? AND FORECAST_ISSUE_TS = (
+                    SELECT MIN(FORECAST_ISSUE_TS) FROM LOAD_FORECAST WHERE ENT_ID = ?) AND TS = ?
+                """, Double.class, entId, entId, Timestamp.from(ts.toInstant()));
+    }
+}
@@ -0,0 +1,168 @@
+package com.greenmesh.forecast;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class PhysicalForecastEngineTest {
+
+    private static final String ISSUE = "2011-06-01T00:00:00Z";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Test
+    void weatherIssueTurnsIntoPvAndWindForecastsWithBands() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Physical Forecast Park', 'test'))
+                """, Long.class);
+        long pv = asset(parkId, "PV", "physical-pv", 1000.0);
+        long wind = asset(parkId, "WIND", "physical-wind", 2000.0);
+        asset(parkId, "PV", "physical-pv-unrated", null);
+        long west = station(parkId, "physical-west");
+        long east = station(parkId, "physical-east");
+        jdbcTemplate.update("INSERT INTO MAP_ASSET_WEATHER (ASSET_ID, STATION_ID, WEIGHT) VALUES (?, ?, 1)", pv, west);
+        jdbcTemplate.update("INSERT INTO MAP_ASSET_WEATHER (ASSET_ID, STATION_ID, WEIGHT) VALUES (?, ?, 1)", wind, west);
+        jdbcTemplate.update("INSERT INTO MAP_ASSET_WEATHER (ASSET_ID, STATION_ID, WEIGHT) VALUES (?, ?, 3)", wind, east);
+        masterData.refresh();
+        // night, clear noon at 25 °C with wind above rated, and a gap at the western station
+        weather(west, "2011-06-01T01:00:00Z", 15.0, 2.0, 0.0, 10.0);
+        weather(east, "2011-06-01T01:00:00Z", 15.0, 2.0, 0.0, 10.0);
+        weather(west, "2011-06-01T04:00:00Z", 25.0, 10.0, 1000.0, 0.0);
+        weather(east, "2011-06-01T04:00:00Z", 25.0, 10.0, 1000.0, 0.0);
+        weather(west, "2011-06-01T05:00:00Z", null, null, null, null);
+        weather(east, "2011-06-01T05:00:00Z", 20.0, 6.0, 800.0, 50.0);
+
+        mockMvc.perform(post("/api/forecast/physical/run").param("issueTs", ISSUE)
+                        .param("parkId", Long.toString(parkId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.assets").value(2))
+                .andExpect(jsonPath("$.assetsWithoutCapacity").value(1))
+                .andExpect(jsonPath("$.steps").value(3))
+                .andExpect(jsonPath("$.points").value(5))
+                .andExpect(jsonPath("$.inserted").value(5));
+
+        // NOCT cell temperature 56.25 °C -> 0.875 derate, times the 0.86 system derate
+        Map<String, Object> noon = row(pv, "2011-06-01 04:00:00");
+        assertThat(number(noon, "P_KW_PRED")).isCloseTo(752.5, within(0.01));
+        assertThat(number(noon, "P10")).isLessThan(752.5);
+        assertThat(number(noon, "P90")).isGreaterThan(752.5);
+        assertThat(noon.get("MODEL_VERSION")).isEqualTo("physical-pv-1");
+        assertThat(number(row(pv, "2011-06-01 01:00:00"), "P_KW_PRED")).isZero();
+
+        Map<String, Object> rated = row(wind, "2011-06-01 04:00:00");
+        assertThat(number(rated, "P_KW_PRED")).isCloseTo(1940.0, within(0.01));
+        assertThat(number(rated, "P90")).isCloseTo(1940.0, within(0.01));
+        assertThat(number(rated, "P10")).isLessThan(1940.0);
+        assertThat(number(row(wind, "2011-06-01 01:00:00"), "P_KW_PRED")).isZero();
+        // only the eastern station has wind at 05:00: 6 m/s lifted to hub height sits on the cubic part
+        double partial = number(row(wind, "2011-06-01 05:00:00"), "P_KW_PRED");
+        assertThat(partial).isBetween(400.0, 800.0);
+
+        mockMvc.perform(post("/api/forecast/physical/run").param("issueTs", ISSUE)
+                        .param("parkId", Long.toString(parkId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(0))
+                .andExpect(jsonPath("$.unchanged").value(5));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM GEN_FORECAST WHERE ASSET_ID IN (?, ?)",
+                Integer.class, pv, wind)).isEqualTo(5);
+    }
+
+    @Test
+    void vendorAndPhysicalForecastsOfTheSameIssueBothSurvive() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Physical Vendor Park', 'test'))
+                """, Long.class);
+        long pv = asset(parkId, "PV", "physical-vendor-pv", 1000.0);
+        long station = station(parkId, "physical-vendor-station");
+        masterData.refresh();
+        weather(station, "2011-06-01T04:00:00Z", 25.0, 10.0, 1000.0, 0.0);
+
+        mockMvc.perform(post("/api/forecast/gen/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"assetId": %d, "forecastIssueTs": "%s", "ts": "2011-06-01T04:00:00Z",
+                                  "pKwPred": 600, "modelVersion": "vendor-1"}]
+                                """.formatted(pv, ISSUE)))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/forecast/physical/run").param("issueTs", ISSUE)
+                        .param("parkId", Long.toString(parkId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(1));
+
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT SCENARIO || ':' || MODEL_VERSION FROM GEN_FORECAST WHERE ASSET_ID = ? ORDER BY SCENARIO
+                """, String.class, pv)).containsExactly("base:vendor-1", "physical:physical-pv-1");
+        mockMvc.perform(get("/api/forecast/gen").param("assetId", Long.toString(pv))
+                        .param("start", "2011-06-01T00:00:00Z").param("end", "2011-06-01T06:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].pKwPred").value(600.0));
+    }
+
+    private long asset(long parkId, String type, String name, Double capacity) {
+        return jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME, RATED_CAPACITY)
+                VALUES (?, ?, ?, ?))
+                """, Long.class, parkId, type, name, capacity);
+    }
+
+    private long station(long parkId, String name) {
+        return jdbcTemplate.queryForObject(
+                "SELECT STATION_ID FROM FINAL TABLE (INSERT INTO WEATHER_STATION (PARK_ID, NAME) VALUES (?, ?))",
+                Long.class, parkId, name);
+    }
+
+    private void weather(long stationId, String ts, Double temperature, Double wind, Double ghi, Double cloud) {
+        jdbcTemplate.update("""
+                INSERT INTO WEATHER_FORECAST (STATION_ID, FORECAST_ISSUE_TS, TS, TEMPERATURE_PRED, WIND_SPEED_PRED,
+                                              GHI_PRED, CLOUD_COVER_PRED, MODEL_NAME)
+                VALUES (?, ?, ?, ?, ?, ?, ?, 'test-nwp')
+                """, stationId, Timestamp.from(Instant.parse(ISSUE)), Timestamp.from(Instant.parse(ts)), temperature,
+                wind, ghi, cloud);
+    }
+
+    private Map<String, Object> row(long assetId, String ts) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+                SELECT P_KW_PRED, P10, P90, MODEL_VERSION FROM GEN_FORECAST
+                WHERE ASSET_ID = ? AND TS = TIMESTAMP '%s'
+                """.formatted(ts), assetId);
+        assertThat(rows).hasSize(1);
+        return rows.get(0);
+    }
+
+    private static double number(Map<String, Object> row, String column) {
+        return ((Number) row.get(column)).doubleValue();
+    }
+}
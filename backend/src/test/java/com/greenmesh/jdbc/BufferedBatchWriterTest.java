@@ -0,0 +1,78 @@
+package com.greenmesh.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class BufferedBatchWriterTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void poisonRowsAreDroppedAndTheRestIsWritten() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS TEST_BUFFERED_WRITE (NAME VARCHAR(8) NOT NULL)");
+        jdbcTemplate.update("DELETE FROM TEST_BUFFERED_WRITE");
+        BufferedBatchWriter<String> writer = new BufferedBatchWriter<>("test", transactionTemplate, 100,
+                batch -> jdbcTemplate.batchUpdate("INSERT INTO TEST_BUFFERED_WRITE (NAME) VALUES (?)", batch,
+                        batch.size(), (ps, name) -> ps.setString(1, name)));
+        writer.submit("a");
+        writer.submit("far too long");
+        writer.submit("b");
+        writer.submit("also too long");
+
+        assertThat(writer.flush()).isEqualTo(2);
+        assertThat(writer.pendingCount()).isZero();
+        assertThat(writer.droppedCount()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForList("SELECT NAME FROM TEST_BUFFERED_WRITE ORDER BY NAME", String.class))
+                .containsExactly("a", "b");
+    }
+
+    @Test
+    void otherFailuresPutTheBatchBackInOrder() {
+        List<List<String>> written = new ArrayList<>();
+        boolean[] down = {true};
+        BufferedBatchWriter<String> writer = new BufferedBatchWriter<>("test", transactionTemplate, 100, batch -> {
+            if (down[0]) {
+                throw new TransientDataAccessResourceException("database down");
+            }
+            written.add(List.copyOf(batch));
+        });
+        writer.submit("a");
+        writer.submit("b");
+
+        assertThatThrownBy(writer::flush).isInstanceOf(TransientDataAccessResourceException.class);
+        writer.submit("c");
+        assertThat(writer.pendingCount()).isEqualTo(3);
+
+        down[0] = false;
+        assertThat(writer.flush()).isEqualTo(3);
+        assertThat(written).containsExactly(List.of("a", "b", "c"));
+        assertThat(writer.droppedCount()).isZero();
+    }
+
+    @Test
+    void theQueueIsBounded() {
+        BufferedBatchWriter<String> writer = new BufferedBatchWriter<>("test", transactionTemplate, 2, batch -> {});
+        assertThat(writer.submit("a")).isTrue();
+        assertThat(writer.submit("b")).isTrue();
+        assertThat(writer.submit("c")).isFalse();
+        assertThat(writer.pendingCount()).isEqualTo(2);
+        assertThat(writer.droppedCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,78 @@
+package com.greenmesh.jdbc;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "app.pipeline.cleaning.enabled=false",
+        "app.partition.enabled=false",
+        "app.partition.fallback-slice-minutes=30"
+})
+@ActiveProfiles("dev")
+class PartitionManagerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2004, 3, 1);
+
+    @Autowired
+    private PartitionManager partitions;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void unpartitionedTableDeletesExpiredRowsInSlices() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS TEST_RETENTION_FACT (ID BIGINT IDENTITY PRIMARY KEY, TS TIMESTAMP NOT NULL)");
+        jdbcTemplate.update("DELETE FROM TEST_RETENTION_FACT");
+        // sparse history years back, a dense hour just before the cutoff, and rows that must stay
+        insert(LocalDateTime.of(1999, 5, 1, 7, 13));
+        for (int minute = 0; minute < 120; minute += 5) {
+            insert(LocalDateTime.of(2004, 2, 19, 22, 0).plusMinutes(minute));
+        }
+        insert(LocalDateTime.of(2004, 2, 20, 0, 0));
+        insert(LocalDateTime.of(2004, 2, 29, 12, 0));
+
+        PartitionManager.Policy policy = new PartitionManager.Policy("TEST_RETENTION_FACT", "TS",
+                PartitionManager.Granularity.DAY, 10, false);
+        PartitionManager.TableReport report = partitions.maintain(policy, TODAY);
+
+        assertThat(report.partitioned()).isFalse();
+        assertThat(report.deletedRows()).isEqualTo(25);
+        assertThat(jdbcTemplate.queryForObject("SELECT MIN(TS) FROM TEST_RETENTION_FACT", Timestamp.class))
+                .isEqualTo(Timestamp.valueOf(LocalDateTime.of(2004, 2, 20, 0, 0)));
+        assertThat(partitions.maintain(policy, TODAY).deletedRows()).isZero();
+    }
+
+    @Test
+    void archivePolicyWithoutArchiverKeepsRows() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS TEST_ARCHIVE_FACT (ID BIGINT IDENTITY PRIMARY KEY, TS TIMESTAMP NOT NULL)");
+        jdbcTemplate.update("INSERT INTO TEST_ARCHIVE_FACT (TS) VALUES (?)",
+                Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0)));
+
+        PartitionManager.TableReport report = partitions.maintain(new PartitionManager.Policy("TEST_ARCHIVE_FACT",
+                "TS", PartitionManager.Granularity.DAY, 10, true), TODAY);
+
+        assertThat(report.deletedRows()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TEST_ARCHIVE_FACT", Long.class)).isEqualTo(1);
+    }
+
+    @Test
+    void partitionNamesFollowTheLowerBound() {
+        assertThat(PartitionManager.Granularity.DAY.partitionName(TODAY)).isEqualTo("P20040301");
+        assertThat(PartitionManager.Granularity.MONTH.partitionName(
+                PartitionManager.Granularity.MONTH.floor(LocalDate.of(2004, 2, 29)))).isEqualTo("P200402");
+        assertThat(PartitionManager.Granularity.MONTH.next(LocalDate.of(2004, 12, 1))).isEqualTo("2005-01-01");
+    }
+
+    private void insert(LocalDateTime ts) {
+        jdbcTemplate.update("INSERT INTO TEST_RETENTION_FACT (TS) VALUES (?)", Timestamp.valueOf(ts));
+    }
+}
@@ -0,0 +1,69 @@
+package com.greenmesh.masterdata;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntervalIndexTest {
+
+    @Test
+    void laterStartWinsWhereIntervalsOverlap() {
+        IntervalIndex<String> index = IntervalIndex.<String>builder()
+                .add("a", 20, 40, 3.0, 3, "late")
+                .add("a", 0, 30, 1.0, 1, "early")
+                .add("a", 0, 10, 2.0, 2, "same start, higher id")
+                .add("a", 50, 50, 9.0, 9, "empty")
+                .build();
+        IntervalIndex.Series s = index.series("a");
+
+        assertThat(s.size()).isEqualTo(2);
+        assertThat(s.valueAt(5, -1)).isEqualTo(2.0);
+        assertThat(s.valueAt(10, -1)).isEqualTo(-1);
+        assertThat(s.valueAt(19, -1)).isEqualTo(-1);
+        assertThat(s.valueAt(20, -1)).isEqualTo(3.0);
+        assertThat(s.valueAt(40, -1)).isEqualTo(-1);
+        assertThat(s.label(s.indexAt(25))).isEqualTo("late");
+        assertThat(index.series("b").size()).isZero();
+        assertThat(index.series("b").valueAt(5, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void gridLookupMatchesPointLookups() {
+        SplittableRandom random = new SplittableRandom(7);
+        IntervalIndex.Builder<Long> builder = IntervalIndex.builder();
+        long at = 1_000;
+        for (int i = 0; i < 500; i++) {
+            // gaps and uneven slot lengths
+            at += random.nextInt(3) * 900_000L;
+            long length = (1 + random.nextInt(8)) * 900_000L;
+            builder.add(1L, at, at + length, random.nextDouble(), i, null);
+            at += length;
+        }
+        IntervalIndex.Series s = builder.build().series(1L);
+        long step = 300_000L;
+        for (long start : new long[]{-5_000_000L, 0, 1_000, 123_456_789L}) {
+            double[] grid = s.valuesOn(start, step, new double[2_000], -1);
+            for (int k = 0; k < grid.length; k++) {
+                assertThat(grid[k]).isEqualTo(s.valueAt(start + k * step, -1));
+            }
+        }
+    }
+
+    @Test
+    void windowBoundsCoverOverlappingIntervalsOnly() {
+        IntervalIndex.Series s = IntervalIndex.<Integer>builder()
+                .add(1, 0, 10, 1, 1, null)
+                .add(1, 10, 20, 2, 2, null)
+                .add(1, 30, 40, 3, 3, null)
+                .build()
+                .series(1);
+
+        assertThat(s.firstEndingAfter(10)).isEqualTo(1);
+        assertThat(s.firstEndingAfter(25)).isEqualTo(2);
+        assertThat(s.floor(29)).isEqualTo(1);
+        assertThat(s.floor(-1)).isEqualTo(-1);
+        assertThat(s.firstEndingAfter(40)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,73 @@
+package com.greenmesh.masterdata;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class MasterDataEtagTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MasterDataStore store;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void unchangedSnapshotAnswersNotModified() throws Exception {
+        String etag = mockMvc.perform(get("/api/parks"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotBlank();
+
+        mockMvc.perform(get("/api/meter-points").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        // a reload of identical content keeps both the etag and the version
+        long version = store.snapshot().version();
+        assertThat(store.refresh().version()).isEqualTo(version);
+        mockMvc.perform(get("/api/parks").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void writesAndExternalChangesMoveTheEtag() throws Exception {
+        String before = store.snapshot().etag();
+        String created = mockMvc.perform(post("/api/parks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"ETag Test Park\",\"region\":\"TEST\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("ETag Test Park"))
+                .andReturn().getResponse().getContentAsString();
+        String afterCreate = store.snapshot().etag();
+        assertThat(afterCreate).isNotEqualTo(before);
+        mockMvc.perform(get("/api/parks").header(HttpHeaders.IF_NONE_MATCH, "\"" + before + "\""))
+                .andExpect(status().isOk());
+
+        long parkId = JsonPath.parse(created).read("$.id", Long.class);
+        jdbcTemplate.update("INSERT INTO DIM_PRICE_ZONE (PARK_ID, GRID_COMPANY, TARIFF_RULE_VERSION) VALUES (?,?,?)",
+                parkId, "ETag Grid", "v1");
+        assertThat(store.snapshot().priceZones(parkId)).isEmpty();
+        store.refreshIfChanged();
+        assertThat(store.snapshot().etag()).isNotEqualTo(afterCreate);
+        assertThat(store.snapshot().priceZones(parkId)).hasSize(1);
+    }
+}
@@ -0,0 +1,88 @@
+package com.greenmesh.masterdata;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class PriceSlotsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private TimeSlotStore timeSlots;
+
+    @Test
+    void slotsAndGridsComeFromTheSnapshotWithItsEtag() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Price Slots Park', 'test'))
+                """, Long.class);
+        long zoneId = jdbcTemplate.queryForObject("""
+                SELECT ZONE_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PRICE_ZONE (PARK_ID, GRID_COMPANY)
+                VALUES (?, 'price-slots-test'))
+                """, Long.class, parkId);
+        jdbcTemplate.update("""
+                INSERT INTO PRICE_TIMESLOT (ZONE_ID, START_TS, END_TS, PRICE_PER_KWH, PRICE_TYPE)
+                VALUES (?, ?, ?, 0.30, 'VALLEY'), (?, ?, ?, 1.20, 'PEAK')
+                """, zoneId, ts("2006-02-03T00:00:00Z"), ts("2006-02-03T04:00:00Z"),
+                zoneId, ts("2006-02-03T04:00:00Z"), ts("2006-02-03T08:00:00Z"));
+        masterData.refresh();
+        timeSlots.refresh();
+
+        String etag = mockMvc.perform(get("/api/price/slots")
+                        .param("zoneId", String.valueOf(zoneId))
+                        .param("start", "2006-02-03T03:00:00Z")
+                        .param("end", "2006-02-03T12:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].priceType").value("PEAK"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotBlank();
+        mockMvc.perform(get("/api/price/slots")
+                        .param("zoneId", String.valueOf(zoneId))
+                        .param("start", "2006-02-03T03:00:00Z")
+                        .param("end", "2006-02-03T10:00:00Z")
+                        .param("stepMin", "180"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.values.length()").value(3))
+                .andExpect(jsonPath("$.values[0]").value(0.3))
+                .andExpect(jsonPath("$.values[1]").value(1.2))
+                .andExpect(jsonPath("$.values[2]").doesNotExist());
+        mockMvc.perform(get("/api/price/slots")
+                        .param("zoneId", String.valueOf(zoneId))
+                        .param("start", "2006-02-03T03:00:00Z")
+                        .param("end", "2006-02-03T10:00:00Z")
+                        .param("stepMin", "180")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    private static Timestamp ts(String instant) {
+        return Timestamp.from(Instant.parse(instant));
+    }
+}
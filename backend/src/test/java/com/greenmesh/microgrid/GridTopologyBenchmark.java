@@ -0,0 +1,66 @@
+package com.greenmesh.microgrid;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Switch event to solved state on a park far larger than real ones: 20k buses on random radial feeders with one
+ * sectionalizing switch per ten branches, each event toggling one switch and re-running the sweep. Run with
+ * {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class GridTopologyBenchmark {
+
+    private static final int BUSES = 20_000;
+    private static final int EVENTS = 2_000;
+
+    @Test
+    void switchEventsAreSolvedWithinAMillisecond() {
+        SplittableRandom random = new SplittableRandom(11);
+        GridTopology.Builder builder = GridTopology.builder();
+        for (int b = 1; b <= BUSES; b++) {
+            builder.bus(b, 10, b % 1000 == 0);
+        }
+        builder.pcc(1);
+        int[] switches = new int[BUSES / 10];
+        int branches = 0;
+        int switchCount = 0;
+        for (int b = 2; b <= BUSES; b++) {
+            int up = Math.max(1, b - 1 - random.nextInt(Math.min(b - 1, 50)));
+            if (b % 10 == 0) {
+                builder.breaker(b, up, b, true);
+                switches[switchCount++] = branches;
+            } else {
+                builder.line(b, up, b, 0.05 + random.nextDouble() * 0.1, 0.05 + random.nextDouble() * 0.1);
+            }
+            branches++;
+        }
+        GridTopology t = builder.build();
+        for (int b = 1; b < BUSES; b++) {
+            t.setLoad(b, 0.1 + random.nextDouble() * 0.4, 0.05 + random.nextDouble() * 0.1);
+        }
+        t.solve();
+
+        long[] nanos = new long[EVENTS];
+        for (int e = 0; e < EVENTS; e++) {
+            int sw = switches[random.nextInt(switchCount)];
+            long start = System.nanoTime();
+            t.setSwitch(sw, !t.isClosed(sw));
+            t.solve();
+            nanos[e] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        double p50 = nanos[EVENTS / 2] / 1e6;
+        double p99 = nanos[EVENTS * 99 / 100] / 1e6;
+        System.out.printf("grid topology: %d buses, %d islands, switch event + sweep p50 %.3f ms, p99 %.3f ms"
+                + " (%d iterations, %s)%n", BUSES, t.islandCount(), p50, p99, t.iterations(), t.mode());
+
+        assertThat(t.converged()).isTrue();
+        assertThat(p50).isLessThan(1);
+    }
+}
@@ -0,0 +1,178 @@
+package com.greenmesh.microgrid;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class GridTopologyTest {
+
+    @Test
+    void switchOperationsSplitAndMergeIslands() {
+        // grid -- 1 -[sw 10]- 2 -line- 3 -[sw 11]- 4(gen) ; tie switch 12 between 2 and 4, normally open
+        GridTopology t = GridTopology.builder()
+                .bus(1, 10, false).bus(2, 10, false).bus(3, 10, false).bus(4, 10, true)
+                .pcc(1)
+                .breaker(10, 1, 2, true)
+                .line(20, 2, 3, 0.5, 0.4)
+                .breaker(11, 3, 4, true)
+                .breaker(12, 2, 4, false)
+                .build();
+        assertThat(t.islandCount()).isEqualTo(1);
+        assertThat(t.mode()).isEqualTo(GridTopology.GRID_CONNECTED);
+
+        assertThat(t.setSwitch(branch(t, 11), false)).isTrue();
+        assertThat(t.islandCount()).isEqualTo(2);
+        assertThat(t.island(2)).isNotEqualTo(t.island(3));
+        assertThat(t.setSwitch(branch(t, 11), false)).isFalse();
+
+        // closing the tie rejoins bus 4 through the other path
+        t.setSwitch(branch(t, 12), true);
+        assertThat(t.islandCount()).isEqualTo(1);
+        t.setSwitch(branch(t, 11), true);
+        assertThat(t.meshedBranches()).isEqualTo(1);
+        // opening one side of the loop splits nothing
+        t.setSwitch(branch(t, 12), false);
+        assertThat(t.islandCount()).isEqualTo(1);
+
+        // losing the PCC leaves the generator supplying 2..4
+        t.setSwitch(branch(t, 10), false);
+        assertThat(t.mode()).isEqualTo(GridTopology.ISLANDED);
+        assertThat(t.energized(0)).isTrue();
+        assertThat(t.energized(2)).isTrue();
+        t.setSwitch(branch(t, 11), false);
+        assertThat(t.energized(1)).isFalse();
+        assertThat(t.mode()).isEqualTo(GridTopology.OUTAGE);
+
+        assertThatThrownBy(() -> t.setSwitch(branch(t, 20), false)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void incrementalIslandsMatchAFreshLabelling() {
+        SplittableRandom random = new SplittableRandom(7);
+        int buses = 400;
+        GridTopology.Builder builder = GridTopology.builder();
+        for (int b = 0; b < buses; b++) {
+            builder.bus(b + 1, 0.4, b % 97 == 5);
+        }
+        builder.pcc(1);
+        int[][] edges = new int[buses + 200][];
+        for (int b = 1; b < buses; b++) {
+            edges[b - 1] = new int[] {random.nextInt(b) + 1, b + 1};
+        }
+        for (int k = buses - 1; k < edges.length; k++) {
+            edges[k] = new int[] {random.nextInt(buses) + 1, random.nextInt(buses) + 1};
+        }
+        boolean[] state = new boolean[edges.length];
+        for (int k = 0; k < edges.length; k++) {
+            state[k] = random.nextInt(4) != 0;
+            builder.breaker(k, edges[k][0], edges[k][1], state[k]);
+        }
+        GridTopology t = builder.build();
+
+        for (int op = 0; op < 3000; op++) {
+            int k = random.nextInt(edges.length);
+            state[k] = !state[k];
+            t.setSwitch(k, state[k]);
+            if (op % 100 == 0) {
+                GridTopology.Builder fresh = GridTopology.builder();
+                for (int b = 0; b < buses; b++) {
+                    fresh.bus(b + 1, 0.4, b % 97 == 5);
+                }
+                fresh.pcc(1);
+                for (int e = 0; e < edges.length; e++) {
+                    fresh.breaker(e, edges[e][0], edges[e][1], state[e]);
+                }
+                GridTopology expected = fresh.build();
+                assertThat(t.islandCount()).isEqualTo(expected.islandCount());
+                Map<Integer, Integer> labels = new HashMap<>();
+                for (int b = 0; b < buses; b++) {
+                    int label = expected.island(b);
+                    assertThat(labels.computeIfAbsent(t.island(b), x -> label)).isEqualTo(label);
+                    assertThat(t.energized(b)).isEqualTo(expected.energized(b));
+                }
+                assertThat(t.mode()).isEqualTo(expected.mode());
+            }
+        }
+    }
+
+    @Test
+    void sweepSatisfiesTheBranchEquationsAndPowerBalance() {
+        // 10 kV: PCC 1 -> line (1 + j2 ohm) -> 2 -> 1000 kVA / 6 % transformer -> 3 (0.4 kV)
+        GridTopology t = GridTopology.builder()
+                .bus(1, 10, false).bus(2, 10, false).bus(3, 0.4, false)
+                .pcc(1)
+                .line(1, 1, 2, 1.0, 2.0)
+                .transformer(2, 2, 3, 1000, 6)
+                .build();
+        t.setLoad(0, 200, 0);
+        t.setLoad(1, 300, 100);
+        t.setLoad(2, 800, 300);
+        t.solve();
+        assertThat(t.converged()).isTrue();
+
+        // branch currents in pu on 1 MVA: I = conj(S / V), line z = (1 + j2) / 100, transformer z = j0.06
+        double v2 = t.voltagePu(1);
+        double v3 = t.voltagePu(2);
+        assertThat(v2).isLessThan(1).isGreaterThan(0.97);
+        assertThat(v3).isLessThan(v2);
+        assertThat(t.voltageKv(2)).isCloseTo(0.4 * v3, within(1e-12));
+
+        double loss = t.lossKw();
+        double load = 200 + 300 + 800;
+        assertThat(t.sourceKw()).isCloseTo(load + loss, within(1e-9));
+        assertThat(t.gridKw()).isEqualTo(t.sourceKw());
+        // only the line is resistive: loss = |I_line|^2 * r, with the transformer's reactive loss in the line flow
+        double iTf = Math.hypot(0.8, 0.3) / v3;
+        double iLine = Math.hypot(1.1, 0.4 + iTf * iTf * 0.06) / v2;
+        assertThat(loss).isCloseTo(iLine * iLine * 0.01 * 1000, within(1e-3));
+        assertThat(t.sourceKvar()).isGreaterThan(400);
+        assertThat(t.minVoltagePu()).isEqualTo(v3);
+    }
+
+    @Test
+    void eachIslandIsRootedAtItsOwnSource() {
+        // PCC 1 -line- 2 -[sw 2]- 4 -[sw 4, open]- 3(gen)
+        GridTopology t = GridTopology.builder()
+                .bus(1, 0.4, false).bus(2, 0.4, false).bus(3, 0.4, true).bus(4, 0.4, false)
+                .pcc(1)
+                .line(1, 1, 2, 0.001, 0.001)
+                .breaker(2, 2, 4, true)
+                .breaker(4, 4, 3, false)
+                .build();
+        t.setLoad(1, 50, 0);
+        t.setLoad(3, 20, 0);
+        t.solve();
+        assertThat(t.gridKw()).isCloseTo(70, within(0.5));
+        assertThat(t.sourceKw()).isEqualTo(t.gridKw());
+
+        t.setSwitch(branch(t, 4), true);
+        t.setSwitch(branch(t, 2), false);
+        t.solve();
+        assertThat(t.mode()).isEqualTo(GridTopology.GRID_CONNECTED);
+        assertThat(t.islandCount()).isEqualTo(2);
+        assertThat(t.gridKw()).isCloseTo(50, within(0.5));
+        assertThat(t.sourceKw() - t.gridKw()).isCloseTo(20, within(1e-9));
+        assertThat(t.voltagePu(3)).isEqualTo(1);
+
+        t.setSwitch(branch(t, 4), false);
+        t.solve();
+        assertThat(t.energized(3)).isFalse();
+        assertThat(t.voltagePu(3)).isZero();
+        assertThat(t.sourceKw()).isEqualTo(t.gridKw());
+    }
+
+    private static int branch(GridTopology t, long id) {
+        for (int br = 0; br < t.branchCount(); br++) {
+            if (t.branchId(br) == id) {
+                return br;
+            }
+        }
+        throw new AssertionError("no branch " + id);
+    }
+}
@@ -0,0 +1,169 @@
+package com.greenmesh.microgrid;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.greenmesh.masterdata.MasterDataStore;
+import com.greenmesh.telemetry.MeasurementWriter;
+import com.greenmesh.telemetry.QualityFlags;
+import com.greenmesh.telemetry.RawTimeseriesWriter;
+import com.greenmesh.telemetry.SampleBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.hamcrest.Matchers.closeTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class MicrogridEngineTest {
+
+    private static final long T0 = Instant.parse("2013-03-01T00:00:00Z").toEpochMilli();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataStore masterData;
+
+    @Autowired
+    private MeasurementWriter measurementWriter;
+
+    @Autowired
+    private RawTimeseriesWriter rawWriter;
+
+    @Autowired
+    private MicrogridEngine engine;
+
+    @Test
+    void rawSwitchEventsQueueRuntimeStateWithoutTheCleaningPipeline() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("""
+                SELECT PARK_ID FROM FINAL TABLE (
+                INSERT INTO DIM_PARK (NAME, REGION)
+                VALUES ('Microgrid Park', 'test'))
+                """, Long.class);
+        long status = point(parkId, "SWITCH_STATUS", null);
+        long load = point(parkId, "ACTIVE_POWER", "kW");
+        long pccP = point(parkId, "ACTIVE_POWER", "MW");
+        long freq = point(parkId, "FREQUENCY", "Hz");
+        masterData.refresh();
+
+        // PCC 10 kV -[breaker]- 10 kV -[1000 kVA, 6 %]- 0.4 kV load bus -line- 0.4 kV storage bus
+        long pcc = bus(parkId, "pcc", 10, "PCC", null);
+        long mv = bus(parkId, "mv", 10, null, null);
+        long lv = bus(parkId, "lv", 0.4, null, load);
+        long ess = bus(parkId, "ess", 0.4, "STORAGE", null);
+        jdbcTemplate.update("""
+                INSERT INTO MG_SWITCH (PARK_ID, FROM_BUS_ID, TO_BUS_ID, POINT_ID_STATUS, NORMAL_STATE)
+                VALUES (?, ?, ?, ?, 'CLOSED')
+                """, parkId, pcc, mv, status);
+        jdbcTemplate.update("""
+                INSERT INTO MG_TRANSFORMER (PARK_ID, HV_BUS_ID, LV_BUS_ID, RATED_KVA, IMPEDANCE_PERCENT)
+                VALUES (?, ?, ?, 1000, 6)
+                """, parkId, mv, lv);
+        jdbcTemplate.update("""
+                INSERT INTO MG_LINE (PARK_ID, FROM_BUS_ID, TO_BUS_ID, R_OHM, X_OHM) VALUES (?, ?, ?, 0.002, 0.001)
+                """, parkId, lv, ess);
+        jdbcTemplate.update("""
+                INSERT INTO MG_CONNECTION_POINT (PARK_ID, BUS_ID, POINT_ID_P, POINT_ID_FREQ, CONTRACT_CAPACITY_KW)
+                VALUES (?, ?, ?, ?, 2000)
+                """, parkId, pcc, pccP, freq);
+        assertThat(engine.reload()).isPositive();
+
+        SampleBatch readings = new SampleBatch(3);
+        readings.add(load, T0, 300, QualityFlags.GOOD, "test");
+        readings.add(pccP, T0, 0.31, QualityFlags.GOOD, "test");
+        readings.add(freq, T0, 50.01, QualityFlags.GOOD, "test");
+        measurementWriter.upsert(readings);
+        rawWriter.insert(sample(status, T0, 1));
+        engine.flush();
+        // the breaker was already closed: nothing changed, nothing written
+        assertThat(states(parkId)).isEmpty();
+
+        // switch states come from the raw stream; the cleaning pipeline is off in this test
+        rawWriter.insert(sample(status, T0 + 1000, 0));
+        // a cleaned copy of a switch sample does not count twice
+        measurementWriter.upsert(sample(status, T0 + 1500, 1));
+        engine.flush();
+        List<Map<String, Object>> rows = states(parkId);
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).get("MODE")).isEqualTo(GridTopology.ISLANDED);
+        assertThat(rows.get(0).get("ISLAND_FLAG")).isEqualTo("Y");
+        // the storage bus carries the load bus and the line loss alone: 0.3^2 pu * 0.002 / 0.16 ohm ~ 1.13 kW
+        assertThat(((Number) rows.get(0).get("P_TOTAL_KW")).doubleValue()).isCloseTo(301.13, within(0.05));
+        assertThat(rows.get(0).get("FREQ_HZ")).isNull();
+
+        rawWriter.insert(sample(status, T0 + 500, 1));
+        engine.flush();
+        assertThat(states(parkId)).hasSize(1);
+
+        rawWriter.insert(sample(status, T0 + 2000, 1));
+        engine.flush();
+        rows = states(parkId);
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(1).get("MODE")).isEqualTo(GridTopology.GRID_CONNECTED);
+        assertThat(rows.get(1).get("ISLAND_FLAG")).isEqualTo("N");
+        assertThat(((Number) rows.get(1).get("P_TOTAL_KW")).doubleValue()).isCloseTo(310, within(1e-6));
+        assertThat(((Number) rows.get(1).get("FREQ_HZ")).doubleValue()).isCloseTo(50.01, within(1e-6));
+
+        MicrogridEngine.GridView view = engine.view(parkId);
+        assertThat(view.islands()).isEqualTo(1);
+        // fed from the PCC again; the transformer is lossless and the storage line carries nothing
+        assertThat(view.gridKw()).isCloseTo(300, within(1e-6));
+        assertThat(view.minVoltagePu()).isLessThan(1);
+        assertThat(view.buses()).allMatch(MicrogridEngine.BusView::energized);
+
+        mockMvc.perform(get("/api/mg/topology").param("parkId", String.valueOf(parkId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mode").value(GridTopology.GRID_CONNECTED))
+                .andExpect(jsonPath("$.buses.length()").value(4));
+        mockMvc.perform(get("/api/mg/state/latest").param("parkId", String.valueOf(parkId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.islandFlag").value(false))
+                .andExpect(jsonPath("$.pTotalKw", closeTo(310, 1e-6)));
+    }
+
+    private static SampleBatch sample(long pointId, long ts, double value) {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(pointId, ts, value, QualityFlags.GOOD, "test");
+        return batch;
+    }
+
+    private long point(long parkId, String measType, String unit) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', ?, ?, 'N'))
+                """, Long.class, parkId, measType, unit);
+    }
+
+    private long bus(long parkId, String name, double kv, String type, Long pointIdP) {
+        return jdbcTemplate.queryForObject("""
+                SELECT BUS_ID FROM FINAL TABLE (
+                INSERT INTO MG_BUS (PARK_ID, NAME, VOLTAGE_LEVEL_KV, BUS_TYPE, POINT_ID_P)
+                VALUES (?, ?, ?, ?, ?))
+                """, Long.class, parkId, name, kv, type, pointIdP);
+    }
+
+    private List<Map<String, Object>> states(long parkId) {
+        return jdbcTemplate.queryForList("""
+                SELECT MODE, ISLAND_FLAG, P_TOTAL_KW, FREQ_HZ FROM MG_RUNTIME_STATE
+                WHERE PARK_ID = ? AND TS < ? ORDER BY TS
+                """, parkId, new Timestamp(T0 + 86_400_000L));
+    }
+}
@@ -0,0 +1,177 @@
+package com.greenmesh.telemetry;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class ColumnarSeriesQueryTest {
+
+    private static final long T0 = Instant.parse("2014-01-05T00:00:00Z").toEpochMilli();
+    private static final String START = "2014-01-05T00:00:00Z";
+    private static final String END = "2014-01-05T01:00:00Z";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeasurementWriter measurementWriter;
+
+    @Autowired
+    private TieredMeasurementReader reader;
+
+    @Autowired
+    private RollupService rollups;
+
+    @Test
+    void sharedTimestampsAreSentOnceAndOffGridSeriesCarryTheirOwn() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long a = point(parkId, 60);
+        long b = point(parkId, 60);
+        long c = point(parkId, 60);
+        SampleBatch batch = new SampleBatch(7);
+        for (int i = 0; i < 3; i++) {
+            batch.add(a, T0 + i * 60_000L, i, QualityFlags.GOOD, "test");
+            batch.add(b, T0 + i * 60_000L, 10 + i, QualityFlags.GOOD, "test");
+        }
+        batch.add(c, T0 + 30_000L, 5, QualityFlags.GOOD, "test");
+        measurementWriter.upsert(batch);
+
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("pointIds", a + "," + b)
+                        .param("start", START)
+                        .param("end", END))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.aggLevel").value("raw"))
+                .andExpect(jsonPath("$.timestamps.length()").value(3))
+                .andExpect(jsonPath("$.timestamps[1]").value(T0 + 60_000L))
+                .andExpect(jsonPath("$.series[0].timestamps").doesNotExist())
+                .andExpect(jsonPath("$.series[1].pointId").value(b))
+                .andExpect(jsonPath("$.series[1].values[2]").value(12.0));
+
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("pointIds", a + "," + c)
+                        .param("start", START)
+                        .param("end", END))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamps").doesNotExist())
+                .andExpect(jsonPath("$.series[0].timestamps.length()").value(3))
+                .andExpect(jsonPath("$.series[1].timestamps[0]").value(T0 + 30_000L))
+                .andExpect(jsonPath("$.series[1].values[0]").value(5.0));
+    }
+
+    @Test
+    void maxPointsIsCheckedAgainstTheDensestPointAcrossIdChunks() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long slow = point(parkId, 60);
+        long fast = point(parkId, 1);
+        // the 1 s point sits in the second IN list chunk, behind ids that match no point
+        List<Long> ids = new ArrayList<>();
+        ids.add(slow);
+        LongStream.range(0, 598).forEach(i -> ids.add(-1 - i));
+        ids.add(550, fast);
+        String pointIds = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("pointIds", String.valueOf(slow))
+                        .param("start", START)
+                        .param("end", END)
+                        .param("maxPoints", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.aggLevel").value("raw"));
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("pointIds", pointIds)
+                        .param("start", START)
+                        .param("end", END)
+                        .param("maxPoints", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.aggLevel").value(RollupLevel.MINUTE.code()))
+                .andExpect(jsonPath("$.series.length()").value(600));
+    }
+
+    @Test
+    void tooManySeriesAreRejected() throws Exception {
+        String pointIds = LongStream.rangeClosed(1, 2001).mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("pointIds", pointIds)
+                        .param("start", START)
+                        .param("end", END))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("start", START)
+                        .param("end", END))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rawReadsOverTheRowBudgetFallBackToRollups() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long a = point(parkId, 60);
+        SampleBatch batch = new SampleBatch(10);
+        for (int i = 0; i < 10; i++) {
+            batch.add(a, T0 + i * 60_000L, i, QualityFlags.GOOD, "test");
+        }
+        measurementWriter.upsert(batch);
+        rollups.flushDirty();
+        ColumnarSeriesQuery small = new ColumnarSeriesQuery(jdbcTemplate, reader, 4);
+        Instant start = Instant.parse(START);
+        Instant end = Instant.parse(END);
+
+        ColumnarSeriesQuery.Result result = small.query(List.of(a), start, end, null, false);
+        // an hour in at most four buckets; all ten samples fall in the first quarter
+        assertThat(result.aggLevel()).isEqualTo(RollupLevel.QUARTER.code());
+        assertThat(result.series().get(0).values()).containsExactly(4.5);
+
+        assertThatThrownBy(() -> small.query(List.of(a), start, end, null, true))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(new ColumnarSeriesQuery(jdbcTemplate, reader, 10).query(List.of(a), start, end, null, true)
+                .series().get(0).values()).hasSize(10);
+    }
+
+    @Test
+    void attributeFiltersAloneAreASelector() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'COLUMNS_SELECTOR', 'kW', 'N'))
+                """, Long.class, parkId);
+        mockMvc.perform(get("/api/timeseries/columns")
+                        .param("measType", "COLUMNS_SELECTOR")
+                        .param("start", START)
+                        .param("end", END))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.series.length()").value(1))
+                .andExpect(jsonPath("$.series[0].pointId").value(pointId));
+    }
+
+    private long point(long parkId, int samplingIntervalS) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, SAMPLING_INTERVAL_S, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', ?, 'N'))
+                """, Long.class, parkId, samplingIntervalS);
+    }
+}
@@ -0,0 +1,72 @@
+package com.greenmesh.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownsamplerTest {
+
+    private static final int SAMPLES = 10_000;
+    private static final int SPIKE_AT = 6_789;
+
+    @Test
+    void lttb_keepsEndpointsAndPeakWithinBudget() {
+        Downsampler.Series out = run(Downsampler.of("lttb", 0, SAMPLES - 1, 200));
+
+        assertThat(out.size()).isBetween(100, 200);
+        assertThat(out.timestamp(0)).isEqualTo(0);
+        assertThat(out.timestamp(out.size() - 1)).isEqualTo(SAMPLES - 1);
+        assertAscending(out);
+        assertThat(contains(out, SPIKE_AT)).isTrue();
+    }
+
+    @Test
+    void m4_keepsColumnExtremes() {
+        Downsampler.Series out = run(Downsampler.of("M4", 0, SAMPLES - 1, 400));
+
+        assertThat(out.size()).isLessThanOrEqualTo(400);
+        assertAscending(out);
+        assertThat(contains(out, SPIKE_AT)).isTrue();
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < out.size(); i++) {
+            min = Math.min(min, out.value(i));
+        }
+        assertThat(min).isLessThan(-0.99);
+    }
+
+    @Test
+    void tolerateSparseAndEmptyInput() {
+        assertThat(Downsampler.of("lttb", 0, 1000, 100).finish().size()).isZero();
+        Downsampler single = Downsampler.of("lttb", 0, 1000, 100);
+        single.add(5, 1.0);
+        single.add(6, Double.NaN);
+        assertThat(single.finish().size()).isEqualTo(1);
+        Downsampler two = Downsampler.of("m4", 0, 1000, 100);
+        two.add(5, 1.0);
+        two.add(900, 2.0);
+        assertThat(two.finish().size()).isEqualTo(2);
+    }
+
+    private static Downsampler.Series run(Downsampler downsampler) {
+        for (int i = 0; i < SAMPLES; i++) {
+            double value = i == SPIKE_AT ? 50.0 : Math.sin(i / 300.0);
+            downsampler.add(i, value);
+        }
+        return downsampler.finish();
+    }
+
+    private static void assertAscending(Downsampler.Series series) {
+        for (int i = 1; i < series.size(); i++) {
+            assertThat(series.timestamp(i)).isGreaterThan(series.timestamp(i - 1));
+        }
+    }
+
+    private static boolean contains(Downsampler.Series series, long ts) {
+        for (int i = 0; i < series.size(); i++) {
+            if (series.timestamp(i) == ts) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,72 @@
+package com.greenmesh.telemetry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class IngestValidationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void batch_rejectsUnknownAndDecommissionedPointsAndWritesTheRest() throws Exception {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        // created behind the snapshot's back: the first miss must pick it up
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, MEAS_TYPE, IS_CRITICAL)
+                VALUES (?, 'validation-test', 'N'))
+                """, Long.class, parkId);
+        long assetId = jdbcTemplate.queryForObject("""
+                SELECT ASSET_ID FROM FINAL TABLE (
+                INSERT INTO DIM_ASSET (PARK_ID, ASSET_TYPE, NAME, STATUS)
+                VALUES (?, 'METER', 'validation-retired', 'DECOMMISSIONED'))
+                """, Long.class, parkId);
+        long retiredId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ASSET_ID, MEAS_TYPE, IS_CRITICAL)
+                VALUES (?, ?, 'validation-retired', 'N'))
+                """, Long.class, parkId, assetId);
+
+        String body = "["
+                + sample(pointId, "2005-02-03T00:00:00Z") + ","
+                + sample(987654321L, "2005-02-03T00:00:00Z") + ","
+                + sample(retiredId, "2005-02-03T00:00:00Z") + ","
+                + sample(pointId, "2005-02-03T00:01:00Z") + "]";
+
+        mockMvc.perform(post("/api/timeseries/raw/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(2))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.rejects[0].index").value(1))
+                .andExpect(jsonPath("$.rejects[0].reason").value("unknown pointId 987654321"))
+                .andExpect(jsonPath("$.rejects[1].index").value(2))
+                .andExpect(jsonPath("$.rejects[1].reason").value("decommissioned pointId " + retiredId));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RAW_TIMESERIES WHERE POINT_ID = ?",
+                Long.class, pointId)).isEqualTo(2L);
+    }
+
+    private static String sample(long pointId, String ts) {
+        return "{\"pointId\":" + pointId + ",\"ts\":\"" + ts + "\",\"value\":1.5,\"sourceSystem\":\"validation-test\"}";
+    }
+}
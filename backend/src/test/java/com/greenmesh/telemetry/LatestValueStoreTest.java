@@ -0,0 +1,94 @@
+package com.greenmesh.telemetry;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class LatestValueStoreTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void olderSamplesNeverReplaceNewerOnes() {
+        LatestValueStore store = new LatestValueStore(jdbcTemplate, 30);
+        SampleBatch batch = new SampleBatch(4);
+        batch.add(1, 2000, 2.0, QualityFlags.GOOD, null);
+        batch.add(1, 1000, 1.0, QualityFlags.GOOD, null);
+        batch.add(2, 1000, Double.NaN, QualityFlags.BAD, null);
+        store.onMeasurements(batch);
+        batch.clear();
+        batch.add(2, 3000, 3.0, QualityFlags.SPIKE, null);
+        store.onMeasurements(batch);
+
+        List<LatestValueStore.Latest> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        store.lookup(List.of(1L, 2L, 3L), found, missing);
+
+        assertThat(found).containsExactly(
+                new LatestValueStore.Latest(1, 2000, 2.0, QualityFlags.GOOD),
+                new LatestValueStore.Latest(2, 3000, 3.0, QualityFlags.SPIKE));
+        assertThat(missing).containsExactly(3L);
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        LatestValueStore store = new LatestValueStore(jdbcTemplate, 30);
+        SampleBatch batch = new SampleBatch(10_000);
+        for (long id = 1; id <= 10_000; id++) {
+            batch.add(id, id, id, QualityFlags.GOOD, null);
+        }
+        store.onMeasurements(batch);
+
+        assertThat(store.size()).isEqualTo(10_000);
+        List<LatestValueStore.Latest> found = new ArrayList<>();
+        store.lookup(List.of(1L, 4097L, 10_000L), found, new ArrayList<>());
+        assertThat(found).extracting(LatestValueStore.Latest::value).containsExactly(1.0, 4097.0, 10_000.0);
+    }
+
+    @Test
+    void warmUpTakesEachPointsLatestRowWithinTheWindow() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long recent = point(parkId);
+        long silent = point(parkId);
+        Instant now = Instant.now();
+        measurement(recent, now.minus(Duration.ofHours(2)), 1.0);
+        measurement(recent, now.minus(Duration.ofHours(1)), 2.0);
+        measurement(silent, now.minus(Duration.ofDays(40)), 9.0);
+
+        LatestValueStore store = new LatestValueStore(jdbcTemplate, 30);
+        store.warm();
+
+        List<LatestValueStore.Latest> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        store.lookup(List.of(recent, silent), found, missing);
+        assertThat(found).extracting(LatestValueStore.Latest::value).containsExactly(2.0);
+        assertThat(missing).containsExactly(silent);
+    }
+
+    private long point(long parkId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId);
+    }
+
+    private void measurement(long pointId, Instant ts, double value) {
+        jdbcTemplate.update("""
+                INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL) VALUES (?, ?, ?, 'GOOD', 'raw')
+                """, pointId, Timestamp.from(ts), value);
+    }
+}
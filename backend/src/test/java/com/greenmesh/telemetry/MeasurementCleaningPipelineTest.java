@@ -0,0 +1,192 @@
+package com.greenmesh.telemetry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.greenmesh.jdbc.BatchUpserts;
+import com.greenmesh.jdbc.WatermarkStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "app.pipeline.cleaning.enabled=false",
+        "app.pipeline.cleaning.settle-ms=0",
+        "app.pipeline.cleaning.shards=2"
+})
+@ActiveProfiles("dev")
+class MeasurementCleaningPipelineTest {
+
+    private static final long T0 = 1044230400000L; // 2003-02-03T00:00:00Z
+
+    @Autowired
+    private MeasurementCleaningPipeline pipeline;
+
+    @Autowired
+    private LatestValueStore latestValues;
+
+    @Autowired
+    private RollupService rollups;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private WatermarkStore watermarks;
+
+    @Autowired
+    private ObjectProvider<MeasurementListener> listeners;
+
+    @Test
+    void alignsDeduplicatesAndFlags() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        long pointId = jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, MEAS_TYPE, SAMPLING_INTERVAL_S, IS_CRITICAL)
+                VALUES (?, 'cleaning-test', 60, 'N'))
+                """, Long.class, parkId);
+
+        raw(pointId, 2, 10.0, null);
+        raw(pointId, 59, 10.1, null);
+        raw(pointId, 60, 10.2, "GOOD");   // same grid slot, ingested later -> wins
+        raw(pointId, 120, 10.3, null);
+        raw(pointId, 180, 10.2, null);
+        raw(pointId, 240, 10.4, null);
+        raw(pointId, 300, 10.3, null);
+        raw(pointId, 360, 500.0, null);   // spike
+        raw(pointId, 420, 10.4, null);    // baseline was not moved by the spike
+        raw(pointId, 900, 10.5, null);    // gap of 8 intervals
+        raw(pointId, 960, 10.5, "BAD");
+
+        pipeline.runOnce();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT TS, VALUE, QUALITY_FLAG FROM TS_MEASUREMENT WHERE POINT_ID = ? ORDER BY TS", pointId);
+        assertThat(rows).hasSize(10);
+        assertThat(rows).extracting(r -> ((Timestamp) r.get("TS")).getTime() - T0)
+                .containsExactly(0L, 60_000L, 120_000L, 180_000L, 240_000L, 300_000L, 360_000L, 420_000L,
+                        900_000L, 960_000L);
+        assertThat(((Number) rows.get(1).get("VALUE")).doubleValue()).isEqualTo(10.2);
+        assertThat(rows).extracting(r -> r.get("QUALITY_FLAG"))
+                .containsExactly("GOOD", "GOOD", "GOOD", "GOOD", "GOOD", "GOOD", "SPIKE", "GOOD", "GAP", "BAD");
+
+        List<LatestValueStore.Latest> latest = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        latestValues.lookup(List.of(pointId), latest, missing);
+        assertThat(missing).isEmpty();
+        assertThat(latest).containsExactly(new LatestValueStore.Latest(pointId, T0 + 960_000L, 10.5, QualityFlags.BAD));
+
+        rollups.flushDirty();
+        Instant from = Instant.ofEpochMilli(T0);
+        Instant to = from.plusSeconds(3600);
+        // BAD and SPIKE samples are left out of the aggregates
+        assertThat(rollups.read(pointId, RollupLevel.QUARTER, from, to, 10))
+                .extracting(RollupService.RollupRow::count)
+                .containsExactly(7L, 1L);
+        RollupService.RollupRow hour = rollups.read(pointId, RollupLevel.HOUR, from, to, 10).get(0);
+        assertThat(hour.count()).isEqualTo(8);
+        assertThat(hour.max().doubleValue()).isEqualTo(10.5);
+        assertThat(hour.first().doubleValue()).isEqualTo(10.0);
+        assertThat(hour.last().doubleValue()).isEqualTo(10.5);
+        assertThat(rollups.read(pointId, RollupLevel.DAY, from, to, 10))
+                .extracting(RollupService.RollupRow::count)
+                .containsExactly(8L);
+    }
+
+    @Test
+    void rowsCommittedAfterTheWatermarkPassedThemAreStillCleaned() throws Exception {
+        long pointId = point("cleaning-hole-test");
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO RAW_TIMESERIES (POINT_ID, TS, VALUE, SOURCE_SYSTEM) VALUES (?,?,?, 'cleaning-test')")) {
+                ps.setLong(1, pointId);
+                ps.setTimestamp(2, new Timestamp(T0));
+                ps.setDouble(3, 1.0);
+                ps.executeUpdate();
+            }
+            // committed with a higher ID while the first insert is still open
+            raw(pointId, 60, 2.0, null);
+            pipeline.runOnce();
+            assertThat(measurementTimes(pointId)).containsExactly(60_000L);
+            con.commit();
+        }
+
+        pipeline.runOnce();
+        assertThat(measurementTimes(pointId)).containsExactly(0L, 60_000L);
+    }
+
+    @Test
+    void aFailedWriteLeavesTheBaselineForTheRetry() {
+        long pointId = point("cleaning-retry-test");
+        FlakyWriter writer = new FlakyWriter(jdbcTemplate, listeners);
+        MeasurementCleaningPipeline retrying = new MeasurementCleaningPipeline(jdbcTemplate, writer, watermarks,
+                false, 50_000, 0, 8, 3, 1, 600_000, 10_000);
+        try {
+            for (int i = 0; i < 6; i++) {
+                raw(pointId, i * 60, 10.0 + i * 0.1, null);
+            }
+            retrying.runOnce();
+            raw(pointId, 360, 500.0, null);
+            writer.failNext = true;
+            assertThatThrownBy(retrying::runOnce).isInstanceOf(IllegalStateException.class);
+            retrying.runOnce();
+        } finally {
+            retrying.shutdown();
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT QUALITY_FLAG FROM TS_MEASUREMENT WHERE POINT_ID = ? AND TS = ?",
+                String.class, pointId, new Timestamp(T0 + 360_000L))).isEqualTo("SPIKE");
+    }
+
+    private long point(String measType) {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, MEAS_TYPE, SAMPLING_INTERVAL_S, IS_CRITICAL)
+                VALUES (?, ?, 60, 'N'))
+                """, Long.class, parkId, measType);
+    }
+
+    private List<Long> measurementTimes(long pointId) {
+        return jdbcTemplate.queryForList("SELECT TS FROM TS_MEASUREMENT WHERE POINT_ID = ? ORDER BY TS",
+                Timestamp.class, pointId).stream().map(ts -> ts.getTime() - T0).toList();
+    }
+
+    private void raw(long pointId, int offsetSec, double value, String quality) {
+        jdbcTemplate.update("INSERT INTO RAW_TIMESERIES (POINT_ID, TS, VALUE, QUALITY_FLAG, SOURCE_SYSTEM) VALUES (?,?,?,?, 'cleaning-test')",
+                pointId, new Timestamp(T0 + offsetSec * 1000L), value, quality);
+    }
+
+    private static final class FlakyWriter extends MeasurementWriter {
+        volatile boolean failNext;
+
+        FlakyWriter(JdbcTemplate jdbcTemplate, ObjectProvider<MeasurementListener> listeners) {
+            super(jdbcTemplate, listeners);
+        }
+
+        @Override
+        public BatchUpserts.Result upsert(SampleBatch batch) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("write failed");
+            }
+            return super.upsert(batch);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.greenmesh.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class MeasurementExporterTest {
+
+    private static final Instant T0 = Instant.parse("2014-02-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2014-02-02T00:00:00Z");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeasurementExporter exporter;
+
+    @Test
+    void pagesResumeFromTheCursorWithoutGapsOrRepeats() throws Exception {
+        List<Long> ids = List.of(point(), point());
+        // microsecond neighbours would collapse onto one millisecond cursor
+        for (long id : ids) {
+            for (int i = 0; i < 4; i++) {
+                measurement(id, T0.plusSeconds(60L * (i / 2)).plusNanos(1000L * (i % 2)), i);
+            }
+        }
+
+        List<String> all = rows(export(ids, null, 0));
+        assertThat(all).hasSize(8);
+        assertThat(mapper.readTree(all.get(1)).get("ts").asText()).isEqualTo("2014-02-01T00:00:00.000001Z");
+
+        List<String> paged = new ArrayList<>();
+        MeasurementExporter.Cursor cursor = null;
+        int pages = 0;
+        while (true) {
+            List<String> lines = export(ids, cursor, 3);
+            JsonNode control = mapper.readTree(lines.get(lines.size() - 1));
+            paged.addAll(lines.subList(0, lines.size() - 1));
+            pages++;
+            if (control.get("done").asBoolean()) {
+                break;
+            }
+            cursor = MeasurementExporter.Cursor.decode(control.get("cursor").asText());
+        }
+        assertThat(pages).isEqualTo(3);
+        assertThat(paged).containsExactlyElementsOf(all);
+    }
+
+    @Test
+    void gzipIsUsedWhenAccepted() throws Exception {
+        long id = point();
+        measurement(id, T0, 1.5);
+        measurement(id, T0.plusSeconds(60), 2.5);
+
+        MvcResult started = mockMvc.perform(get("/api/timeseries/export")
+                        .param("pointIds", String.valueOf(id))
+                        .param("start", T0.toString())
+                        .param("end", END.toString())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult done = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        byte[] body = done.getResponse().getContentAsByteArray();
+        String text;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> lines = text.lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(mapper.readTree(lines.get(1)).get("value").asDouble()).isEqualTo(2.5);
+        assertThat(mapper.readTree(lines.get(2)).get("done").asBoolean()).isTrue();
+
+        MvcResult plainStarted = mockMvc.perform(get("/api/timeseries/export")
+                        .param("pointIds", String.valueOf(id))
+                        .param("start", T0.toString())
+                        .param("end", END.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult plain = mockMvc.perform(asyncDispatch(plainStarted))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn();
+        assertThat(plain.getResponse().getContentAsString().lines().toList()).isEqualTo(lines);
+    }
+
+    private List<String> export(List<Long> ids, MeasurementExporter.Cursor after, long limit) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(ids, T0, END, after, limit, out);
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    private static List<String> rows(List<String> lines) {
+        assertThat(lines.get(lines.size() - 1)).isEqualTo("{\"done\":true}");
+        return lines.subList(0, lines.size() - 1);
+    }
+
+    private long point() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId);
+    }
+
+    private void measurement(long pointId, Instant ts, double value) {
+        jdbcTemplate.update("""
+                INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL) VALUES (?, ?, ?, 'GOOD', 'raw')
+                """, pointId, Timestamp.from(ts), value);
+    }
+}
@@ -0,0 +1,74 @@
+package com.greenmesh.telemetry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "app.ingest.kafka.enabled=true",
+        "app.ingest.kafka.partitions=3",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+@EmbeddedKafka(partitions = 3, topics = "greenmesh.telemetry.raw")
+class RawIngestKafkaTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void asyncIngest_redeliveredSamplesAreWrittenOnce() throws Exception {
+        Long pointId = jdbcTemplate.queryForObject("SELECT MIN(POINT_ID) FROM DIM_METER_POINT", Long.class);
+        Instant base = Instant.parse("2001-02-03T00:00:00Z");
+        List<Map<String, Object>> payload = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            payload.add(Map.of(
+                    "pointId", pointId,
+                    "ts", base.plusSeconds(60L * i).toString(),
+                    "value", 100 + i,
+                    "qualityFlag", "GOOD",
+                    "sourceSystem", "kafka-test"));
+        }
+        String body = objectMapper.writeValueAsString(payload);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(post("/api/timeseries/raw/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.accepted").value(50))
+                    .andExpect(jsonPath("$.failed").value(0))
+                    .andExpect(jsonPath("$.mode").value("async"));
+        }
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM RAW_TIMESERIES WHERE SOURCE_SYSTEM = ? AND POINT_ID = ?",
+                Long.class, "kafka-test", pointId)).isEqualTo(50L));
+    }
+}
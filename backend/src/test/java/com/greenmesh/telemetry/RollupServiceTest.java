@@ -0,0 +1,145 @@
+package com.greenmesh.telemetry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+
+import com.greenmesh.coldstore.ColdSegment;
+import com.greenmesh.coldstore.ColdSegmentStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@ActiveProfiles("dev")
+class RollupServiceTest {
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long DAY_MS = 86_400_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TieredMeasurementReader reader;
+
+    @Autowired
+    private ColdSegmentStore coldStore;
+
+    @DynamicPropertySource
+    static void coldDir(DynamicPropertyRegistry registry) throws IOException {
+        String dir = Files.createTempDirectory("rollup-test").toString();
+        registry.add("app.coldstore.dir", () -> dir);
+    }
+
+    @Test
+    void nullChildColumnsDoNotCountAsZero() {
+        long point = point();
+        long quarter = Instant.parse("2016-05-01T10:00:00Z").toEpochMilli();
+        // a 1m row written outside the pipeline with only its sum and count
+        jdbcTemplate.update("""
+                INSERT INTO TS_ROLLUP (POINT_ID, AGG_LEVEL, BUCKET_TS, AVG_V, SUM_V, CNT) VALUES (?, '1m', ?, 5, 5, 1)
+                """, point, new Timestamp(quarter + MINUTE_MS));
+        measurement(point, quarter + 5 * MINUTE_MS, 7);
+
+        RollupService rollups = rollups();
+        rollups.markDirty(point, quarter + 5 * MINUTE_MS, quarter + 5 * MINUTE_MS);
+        rollups.flushDirty();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("""
+                SELECT MIN_V, MAX_V, SUM_V, CNT, FIRST_V, LAST_V FROM TS_ROLLUP
+                WHERE POINT_ID = ? AND AGG_LEVEL = '15m' AND BUCKET_TS = ?
+                """, point, new Timestamp(quarter));
+        assertThat(decimal(row, "MIN_V")).isEqualTo(7);
+        assertThat(decimal(row, "MAX_V")).isEqualTo(7);
+        assertThat(decimal(row, "SUM_V")).isEqualTo(12);
+        assertThat(decimal(row, "CNT")).isEqualTo(2);
+        assertThat(decimal(row, "FIRST_V")).isEqualTo(7);
+        assertThat(decimal(row, "LAST_V")).isEqualTo(7);
+    }
+
+    @Test
+    void dirtyRangesSurviveARestart() {
+        long point = point();
+        long ts = Instant.parse("2016-05-02T08:30:00Z").toEpochMilli();
+        measurement(point, ts, 3);
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(point, ts, 3, QualityFlags.GOOD, null);
+
+        // marked, then the process dies before the scheduled flush
+        rollups().onMeasurements(batch);
+        assertThat(journaled(point)).isEqualTo(1);
+        assertThat(buckets(point, "1h")).isZero();
+
+        RollupService restarted = rollups();
+        restarted.recover();
+        restarted.flushDirty();
+        assertThat(buckets(point, "1h")).isEqualTo(1);
+        assertThat(journaled(point)).isZero();
+    }
+
+    @Test
+    void rebuildingAllPointsIncludesTheColdTier() throws IOException {
+        long point = point();
+        long window = coldStore.windowStart(Instant.parse("2016-04-01T00:00:00Z").toEpochMilli());
+        long[] timestamps = {window + MINUTE_MS, window + 2 * MINUTE_MS, window + 3 * MINUTE_MS};
+        double[] values = {1, 2, 3};
+        byte[] qualities = {QualityFlags.GOOD, QualityFlags.GOOD, QualityFlags.GOOD};
+        try (ColdSegment.Writer writer = coldStore.newWriter(window)) {
+            writer.add(point, timestamps, values, qualities, 3);
+            coldStore.install(writer.finish());
+        }
+
+        Map<RollupLevel, Integer> counts = rollups().rebuild(null, Instant.ofEpochMilli(window),
+                Instant.ofEpochMilli(window + DAY_MS));
+
+        assertThat(counts.get(RollupLevel.MINUTE)).isGreaterThanOrEqualTo(3);
+        assertThat(buckets(point, "1m")).isEqualTo(3);
+        assertThat(buckets(point, "1d")).isEqualTo(1);
+    }
+
+    private RollupService rollups() {
+        return new RollupService(jdbcTemplate, transactionTemplate, reader, coldStore, true, "UTC");
+    }
+
+    private long point() {
+        long parkId = jdbcTemplate.queryForObject("SELECT MIN(PARK_ID) FROM DIM_PARK", Long.class);
+        return jdbcTemplate.queryForObject("""
+                SELECT POINT_ID FROM FINAL TABLE (
+                INSERT INTO DIM_METER_POINT (PARK_ID, ENERGY_TYPE, MEAS_TYPE, UNIT, IS_CRITICAL)
+                VALUES (?, 'ELEC', 'ACTIVE_POWER', 'kW', 'N'))
+                """, Long.class, parkId);
+    }
+
+    private void measurement(long pointId, long ts, double value) {
+        jdbcTemplate.update("""
+                INSERT INTO TS_MEASUREMENT (POINT_ID, TS, VALUE, QUALITY_FLAG, AGG_LEVEL) VALUES (?, ?, ?, 'GOOD', 'raw')
+                """, pointId, new Timestamp(ts), value);
+    }
+
+    private int buckets(long pointId, String level) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TS_ROLLUP WHERE POINT_ID = ? AND AGG_LEVEL = ?",
+                Integer.class, pointId, level);
+    }
+
+    private int journaled(long pointId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TS_ROLLUP_DIRTY WHERE POINT_ID = ?", Integer.class,
+                pointId);
+    }
+
+    private static double decimal(Map<String, Object> row, String column) {
+        return ((Number) row.get(column)).doubleValue();
+    }
+}
@@ -0,0 +1,97 @@
+package com.greenmesh.telemetry;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.ingest.stream.chunk-size=2")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class StreamingRawIngestTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void ndjson_invalidRecordsAreRejectedWithoutFailingTheirChunk() throws Exception {
+        long pointId = jdbcTemplate.queryForObject("SELECT MIN(POINT_ID) FROM DIM_METER_POINT", Long.class);
+        String body = String.join("\n",
+                "{\"pointId\":" + pointId + ",\"ts\":1012694400000,\"value\":1.5,\"qualityFlag\":\"GOOD\"}",
+                "{\"pointId\":" + pointId + ",\"ts\":\"2002-02-03T00:01:00Z\",\"value\":2.5}",
+                "{oops",
+                "{\"pointId\":" + pointId + ",\"ts\":1012694520000,\"value\":3.5}",
+                "{\"pointId\":987654321,\"ts\":1012694580000,\"value\":4.5}",
+                "{\"pointId\":" + pointId + ",\"ts\":1012694640000,\"value\":null}");
+
+        mockMvc.perform(post("/api/timeseries/raw/stream")
+                        .param("source", "ndjson-test")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records").value(6))
+                .andExpect(jsonPath("$.inserted").value(4))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.chunks.length()").value(3))
+                .andExpect(jsonPath("$.chunks[0].inserted").value(2))
+                .andExpect(jsonPath("$.chunks[1].inserted").value(1))
+                .andExpect(jsonPath("$.chunks[1].rejected").value(2))
+                .andExpect(jsonPath("$.chunks[2].inserted").value(1));
+    }
+
+    @Test
+    void ndjson_failedChunkWritesNothing() throws Exception {
+        long pointId = jdbcTemplate.queryForObject("SELECT MIN(POINT_ID) FROM DIM_METER_POINT", Long.class);
+        // the second row of the chunk overflows SOURCE_SYSTEM after the first one was already sent
+        String body = String.join("\n",
+                "{\"pointId\":" + pointId + ",\"ts\":1044057600000,\"value\":1,\"sourceSystem\":\"chunk-test\"}",
+                "{\"pointId\":" + pointId + ",\"ts\":1044057660000,\"value\":2,\"sourceSystem\":\""
+                        + "x".repeat(100) + "\"}",
+                "{\"pointId\":" + pointId + ",\"ts\":1044057720000,\"value\":3,\"sourceSystem\":\"chunk-test\"}");
+
+        mockMvc.perform(post("/api/timeseries/raw/stream")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(1))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.chunks[0].inserted").value(0))
+                .andExpect(jsonPath("$.chunks[0].rejected").value(2))
+                .andExpect(jsonPath("$.chunks[1].inserted").value(1));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM RAW_TIMESERIES WHERE POINT_ID = ? AND SOURCE_SYSTEM = 'chunk-test'",
+                Integer.class, pointId)).isEqualTo(1);
+    }
+
+    @Test
+    void binaryFrames_reportTruncatedTail() throws Exception {
+        long pointId = jdbcTemplate.queryForObject("SELECT MIN(POINT_ID) FROM DIM_METER_POINT", Long.class);
+        ByteBuffer frames = ByteBuffer.allocate(RawSampleCodec.FRAME_BYTES * 3 + 8);
+        for (int i = 0; i < 3; i++) {
+            frames.put(RawSampleCodec.encode(pointId, 981244800000L + i * 60_000L, 10 + i, QualityFlags.GOOD));
+        }
+        frames.putLong(pointId);
+
+        mockMvc.perform(post("/api/timeseries/raw/stream")
+                        .param("source", "binary-test")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(frames.array()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(3))
+                .andExpect(jsonPath("$.rejected").value(1));
+    }
+}
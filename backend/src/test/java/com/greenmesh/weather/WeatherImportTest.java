@@ -0,0 +1,157 @@
+package com.greenmesh.weather;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.List;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.pipeline.cleaning.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+class WeatherImportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void reissuedForecastsReplaceValuesAndUnknownStationsAreRejected() throws Exception {
+        long parkId = park("Weather Import Park");
+        long north = station(parkId, "wx-north");
+        long south = station(parkId, "wx-south");
+        String csv = """
+                station,forecast_issue_ts,ts,temperature_pred,ghi_pred,cloud_cover_pred,model_name
+                wx-north,2011-03-01T00:00:00Z,2011-03-01T01:00:00Z,4.5,0,80,gfs
+                wx-north,2011-03-01 00:00,2011-03-01 02:00,5.0,,75,gfs
+                "WX-SOUTH",2011-03-01T00:00:00Z,2011-03-01T01:00:00Z,6.25,12.5,,
+                wx-nowhere,2011-03-01T00:00:00Z,2011-03-01T01:00:00Z,1,1,1,gfs
+                wx-south,2011-03-01T00:00:00Z,yesterday,1,1,1,gfs
+                """;
+
+        mockMvc.perform(post("/api/weather/import").param("kind", "forecast").param("parkId", Long.toString(parkId))
+                        .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("DONE"))
+                .andExpect(jsonPath("$.rows").value(5))
+                .andExpect(jsonPath("$.inserted").value(3))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.unknownStations[0]").value("wx-nowhere"));
+        assertThat(forecasts(north)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT MODEL_NAME FROM WEATHER_FORECAST WHERE STATION_ID = ?", String.class, south)).isEqualTo("-");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT GHI_PRED FROM WEATHER_FORECAST WHERE STATION_ID = ? AND CLOUD_COVER_PRED = 75",
+                Double.class, north)).isNull();
+
+        // the provider re-sends the same issue with corrected values
+        mockMvc.perform(post("/api/weather/import").param("kind", "forecast")
+                        .contentType("text/csv").content("""
+                                station,issue,ts,temperature,model
+                                %d,2011-03-01T00:00:00Z,2011-03-01T01:00:00Z,3.5,gfs
+                                wx-north,2011-03-01T00:00:00Z,2011-03-01T03:00:00Z,5.5,gfs
+                                """.formatted(north)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(1))
+                .andExpect(jsonPath("$.updated").value(1));
+        assertThat(forecasts(north)).isEqualTo(3);
+        // the whole row is replaced, columns missing from the new file included
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM WEATHER_FORECAST WHERE STATION_ID = ? AND CLOUD_COVER_PRED = 80
+                """, Integer.class, north)).isZero();
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM WEATHER_FORECAST WHERE STATION_ID = ? AND TEMPERATURE_PRED = 3.5
+                """, Integer.class, north)).isEqualTo(1);
+    }
+
+    @Test
+    void columnarFramesLoadObservationsIdempotently() throws Exception {
+        long parkId = park("Weather Frames Park");
+        long stationId = station(parkId, "wx-frames");
+        int rows = 48;
+        long[] stations = new long[rows];
+        long[] ts = new long[rows];
+        double[] ghi = new double[rows];
+        String[] flags = new String[rows];
+        long start = Instant.parse("2011-04-01T00:00:00Z").toEpochMilli();
+        for (int i = 0; i < rows; i++) {
+            stations[i] = i == rows - 1 ? -42 : stationId;
+            ts[i] = start + i * 3_600_000L;
+            ghi[i] = i % 24 < 6 ? Double.NaN : i * 10.0;
+            flags[i] = i % 2 == 0 ? "OK" : null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WeatherFrameCodec.Writer writer = new WeatherFrameCodec.Writer(bytes, List.of(
+                new WeatherFrameCodec.Column("STATION_ID", WeatherFrameCodec.INT64),
+                new WeatherFrameCodec.Column("TS", WeatherFrameCodec.INT64),
+                new WeatherFrameCodec.Column("GHI", WeatherFrameCodec.FLOAT64),
+                new WeatherFrameCodec.Column("QUALITY_FLAG", WeatherFrameCodec.UTF8)));
+        writer.batch(rows, stations, ts, ghi, flags);
+        writer.finish();
+
+        String body = mockMvc.perform(post("/api/weather/import").param("kind", "obs")
+                        .contentType("application/vnd.greenmesh.weather-frames").content(bytes.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.format").value("frames"))
+                .andExpect(jsonPath("$.inserted").value(rows - 1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.unknownStations[0]").value("-42"))
+                .andReturn().getResponse().getContentAsString();
+        int jobId = JsonPath.read(body, "$.id");
+        mockMvc.perform(post("/api/weather/import").param("kind", "obs")
+                        .contentType("application/octet-stream").content(bytes.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(0))
+                .andExpect(jsonPath("$.updated").value(rows - 1));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM WEATHER_OBS WHERE STATION_ID = ?", Integer.class, stationId)).isEqualTo(rows - 1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM WEATHER_OBS WHERE STATION_ID = ? AND GHI IS NULL", Integer.class, stationId))
+                .isEqualTo(12);
+
+        mockMvc.perform(get("/api/weather/import/jobs/" + jobId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.kind").value("obs"))
+                .andExpect(jsonPath("$.status").value("DONE"));
+        mockMvc.perform(post("/api/weather/import").param("kind", "obs")
+                        .contentType("application/octet-stream").content(new byte[]{1, 2, 3, 4, 5}))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/weather/import").param("kind", "forecast")
+                        .contentType("text/csv").content("station,ts,temperature\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long park(String name) {
+        return jdbcTemplate.queryForObject(
+                "SELECT PARK_ID FROM FINAL TABLE (INSERT INTO DIM_PARK (NAME, REGION) VALUES (?, 'test'))",
+                Long.class, name);
+    }
+
+    private long station(long parkId, String name) {
+        return jdbcTemplate.queryForObject("""
+                SELECT STATION_ID FROM FINAL TABLE (
+                INSERT INTO WEATHER_STATION (PARK_ID, NAME, PROVIDER)
+                VALUES (?, ?, 'test'))
+                """, Long.class, parkId, name);
+    }
+
+    private int forecasts(long stationId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM WEATHER_FORECAST WHERE STATION_ID = ?",
+                Integer.class, stationId);
+    }
+}